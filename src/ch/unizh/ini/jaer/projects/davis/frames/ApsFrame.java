@@ -0,0 +1,124 @@
+package ch.unizh.ini.jaer.projects.davis.frames;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A complete APS frame published by {@link ApsFrameExtractor} through an
+ * {@link ApsFrameExchange}. The pixel arrays are indexed by
+ * <code>y * width + x</code> as returned by ApsFrameExtractor.getIndex(), with
+ * 0,0 at the lower left.
+ * <p>
+ * A frame is immutable while it is held: consumers must not write to the
+ * arrays, and must call {@link #release()} exactly once for each frame they
+ * acquired, after which the arrays may be reused for a later frame.
+ */
+public class ApsFrame {
+
+    private final ApsFrameExchange owner;
+    private final int width, height;
+    private final float[] pixels, rawPixels;
+    private int timestamp;
+    private long frameNumber;
+    private final AtomicInteger refCount = new AtomicInteger(0);
+
+    ApsFrame(ApsFrameExchange owner, int width, int height) {
+        this.owner = owner;
+        this.width = width;
+        this.height = height;
+        pixels = new float[width * height];
+        rawPixels = new float[width * height];
+    }
+
+    /**
+     * Fills the frame before it is published.
+     */
+    void set(float[] displayFrame, float[] displayBuffer, int timestamp, long frameNumber) {
+        System.arraycopy(displayFrame, 0, pixels, 0, pixels.length);
+        System.arraycopy(displayBuffer, 0, rawPixels, 0, rawPixels.length);
+        this.timestamp = timestamp;
+        this.frameNumber = frameNumber;
+    }
+
+    /**
+     * Sets the count to one for the reference held by the exchange slot.
+     */
+    void publish() {
+        refCount.set(1);
+    }
+
+    /**
+     * Adds a reference unless the frame has already been released by everyone
+     * and may be being refilled.
+     *
+     * @return true if the reference was added
+     */
+    boolean tryRetain() {
+        while (true) {
+            int c = refCount.get();
+            if (c <= 0) {
+                return false;
+            }
+            if (refCount.compareAndSet(c, c + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a reference to this frame. The frame must not be used after
+     * this call.
+     */
+    public void release() {
+        int c = refCount.decrementAndGet();
+        if (c == 0) {
+            owner.recycle(this);
+        } else if (c < 0) {
+            throw new IllegalStateException("frame " + frameNumber + " released more often than acquired");
+        }
+    }
+
+    /**
+     * @return the frame pixel values as rendered, after brightness, contrast,
+     * log intensity conversion etc., in the range 0-1
+     */
+    public float[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * @return the raw pixel values from the sensor, before conversion,
+     * brightness etc., as ApsFrameExtractor.getDisplayBuffer()
+     */
+    public float[] getRawPixels() {
+        return rawPixels;
+    }
+
+    /**
+     * @return the timestamp of the end of frame event, usually in us
+     */
+    public int getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the number of the frame, counting up from 0 for each frame
+     * published by the exchange; consumers can compare it to know if a frame
+     * is new
+     */
+    public long getFrameNumber() {
+        return frameNumber;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public String toString() {
+        return "ApsFrame #" + frameNumber + " " + width + "x" + height + " at t=" + timestamp + " refCount=" + refCount.get();
+    }
+}
@@ -0,0 +1,102 @@
+package ch.unizh.ini.jaer.projects.davis.frames;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands complete APS frames from a single writer, the
+ * {@link ApsFrameExtractor}, to any number of consumers on any threads, e.g.
+ * CNN processors, AVI writers, calibration and display.
+ * <p>
+ * The latest frame is held in a single slot. The writer fills a pooled
+ * {@link ApsFrame} and swaps it into the slot, releasing the previous frame.
+ * Consumers call {@link #acquireLatest()} to get a counted reference to the
+ * latest frame without copying it, and release it when done. Neither side ever
+ * locks or waits for the other, so a slow consumer does not hold up the
+ * extractor; it just keeps an older frame alive until it releases it. Frames
+ * whose last reference is released are returned to the pool and refilled.
+ * <p>
+ * Consumers must not modify the frames. {@link #publish} must only be called
+ * by one thread at a time.
+ */
+public class ApsFrameExchange {
+
+    private final AtomicReference<ApsFrame> latest = new AtomicReference<ApsFrame>();
+    private final ConcurrentLinkedQueue<ApsFrame> pool = new ConcurrentLinkedQueue<ApsFrame>();
+    private volatile int width = 0, height = 0;
+    private volatile long frameCounter = 0;
+
+    /**
+     * Copies a frame into a pooled buffer and makes it the latest frame.
+     *
+     * @param displayFrame the rendered pixel values
+     * @param displayBuffer the raw pixel values
+     * @param width the frame width
+     * @param height the frame height
+     * @param timestamp the frame timestamp
+     */
+    public void publish(float[] displayFrame, float[] displayBuffer, int width, int height, int timestamp) {
+        if (width != this.width || height != this.height) {
+            pool.clear(); // frames of the old size that are still held are dropped when released
+            this.width = width;
+            this.height = height;
+        }
+        ApsFrame f = pool.poll();
+        if (f == null) {
+            f = new ApsFrame(this, width, height);
+        }
+        f.set(displayFrame, displayBuffer, timestamp, frameCounter++);
+        f.publish();
+        ApsFrame old = latest.getAndSet(f);
+        if (old != null) {
+            old.release(); // the slot's reference
+        }
+    }
+
+    /**
+     * Acquires the latest frame. The caller must call ApsFrame.release() when
+     * done with it.
+     *
+     * @return the latest frame, or null if no frame has been published since
+     * construction or the last clear()
+     */
+    public ApsFrame acquireLatest() {
+        while (true) {
+            ApsFrame f = latest.get();
+            if (f == null) {
+                return null;
+            }
+            if (f.tryRetain()) {
+                // if f was recycled and republished between get() and tryRetain(), it is still the latest or a newer frame
+                return f;
+            }
+            // f was released by the writer after we read the slot; the slot already holds a newer frame
+        }
+    }
+
+    /**
+     * Drops the latest frame, e.g. on reset.
+     */
+    public void clear() {
+        ApsFrame old = latest.getAndSet(null);
+        if (old != null) {
+            old.release();
+        }
+    }
+
+    /**
+     * @return the number of frames published so far
+     */
+    public long getFrameCount() {
+        return frameCounter;
+    }
+
+    /**
+     * Returns a frame to the pool once its last reference is released.
+     */
+    void recycle(ApsFrame f) {
+        if (f.getWidth() == width && f.getHeight() == height) {
+            pool.offer(f);
+        }
+    }
+}
@@ -51,6 +51,8 @@ import org.apache.commons.io.FilenameUtils;
  * <li>hasNewFrame() to check whether a new frame is available
  * <li>getDisplayBuffer() to get a clone of the latest raw pixel values
  * <li>getNewFrame() to get the latest double buffer of displayed values
+ * <li>acquireLatestFrame() to get the latest complete frame without copying it,
+ * from any thread; see {@link ApsFrameExchange}
  * </ul>
  *
  * @author Christian Brändli
@@ -90,6 +92,7 @@ public class ApsFrameExtractor extends EventFilter2D
      */
     public static final String EVENT_NEW_FRAME = AEFrameChipRenderer.EVENT_NEW_FRAME_AVAILBLE;
     private int lastFrameTimestamp = -1;
+    private final ApsFrameExchange frameExchange = new ApsFrameExchange();
 
     @Override
     public void update(final Observable o, final Object arg) {
@@ -176,6 +179,7 @@ public class ApsFrameExtractor extends EventFilter2D
             Arrays.fill(displayFrame, 0.0f);
             Arrays.fill(displayBuffer, 0.0f);
             Arrays.fill(apsDisplayPixmapBuffer, 0.0f);
+            frameExchange.clear();
         } else {
             EventFilter.log.warning("The filter ApsFrameExtractor can only be used for chips that extend the ApsDvsChip class");
             return;
@@ -238,6 +242,7 @@ public class ApsFrameExtractor extends EventFilter2D
             }
             newFrame = true;
             lastFrameTimestamp = e.timestamp;
+            frameExchange.publish(displayFrame, displayBuffer, width, height, e.timestamp);
             getSupport().firePropertyChange(ApsFrameExtractor.EVENT_NEW_FRAME, null, displayFrame);
             return;
         }
@@ -441,6 +446,29 @@ public class ApsFrameExtractor extends EventFilter2D
         return displayBuffer.clone();
     }
 
+    /**
+     * Acquires the latest complete frame, holding both the displayed and the
+     * raw pixel values. Unlike getNewFrame() and getDisplayBuffer() this
+     * method can be called from any thread, e.g. a CNN or file writer thread,
+     * and the frame is not changed by later frames while it is held. The
+     * frame must not be modified and must be released by calling
+     * ApsFrame.release() when done. The newFrame flag is not changed; use
+     * ApsFrame.getFrameNumber() to detect new frames.
+     *
+     * @return the latest frame, or null if no frame has been completed since
+     * the last reset
+     */
+    public ApsFrame acquireLatestFrame() {
+        return frameExchange.acquireLatest();
+    }
+
+    /**
+     * @return the exchange through which complete frames are published
+     */
+    public ApsFrameExchange getFrameExchange() {
+        return frameExchange;
+    }
+
     /**
      * Tell chip to acquire new frame, return immediately.
      *
@@ -17,6 +17,7 @@ import eu.seebetter.ini.chips.DavisChip;
 import net.sf.jaer.Description;
 import net.sf.jaer.DevelopmentStatus;
 import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.ChipEventBus;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.eventio.AEInputStream;
 import net.sf.jaer.graphics.AEFrameChipRenderer;
@@ -32,11 +33,11 @@ import net.sf.jaer.util.avioutput.AbstractAviWriter;
 
 @Description("Writes AVI file from DAVIS APS frames, using ApsFrameExtractor. This AVI has spatial resolution the same as the AEChip (not the display resolution)")
 @DevelopmentStatus(DevelopmentStatus.Status.Stable)
-public class DavisFrameAviWriter extends AbstractAviWriter {
+public class DavisFrameAviWriter extends AbstractAviWriter implements ChipEventBus.FrameListener {
 
 //    ApsFrameExtractor apsFrameExtractor;
     DavisChip apsDvsChip = null;
-    private boolean rendererPropertyChangeListenerAdded=false;
+    private ChipEventBus.Subscription frameSubscription=null;
     private AEFrameChipRenderer renderer=null;
 
     public DavisFrameAviWriter(AEChip chip) {
@@ -55,10 +56,9 @@ public class DavisFrameAviWriter extends AbstractAviWriter {
     @Override
     synchronized public EventPacket<?> filterPacket(EventPacket<?> in) {
         super.filterPacket(in); // adds propertychangelistener for rewind event
-        if(!rendererPropertyChangeListenerAdded){
-            rendererPropertyChangeListenerAdded=true;
+        if(frameSubscription==null){
             renderer=(AEFrameChipRenderer)chip.getRenderer();
-            renderer.getSupport().addPropertyChangeListener(this);
+            frameSubscription=chip.getEventBus().subscribeFrames(this); // called by the renderer when it completes a frame
         }
         apsDvsChip = (DavisChip) chip;
 //        apsFrameExtractor.filterPacket(in);
@@ -76,9 +76,8 @@ public class DavisFrameAviWriter extends AbstractAviWriter {
 //    }
 
     @Override
-    synchronized public void propertyChange(PropertyChangeEvent evt) {
+    synchronized public void frameCompleted(int startTimestampUs, int endTimestampUs) {
         if ((getAviOutputStream() != null && isWriteEnabled())
-                && (evt.getPropertyName() == AEFrameChipRenderer.EVENT_NEW_FRAME_AVAILBLE)
                 && !chip.getAeViewer().isPaused()) {
             FloatBuffer frame = ((AEFrameChipRenderer)chip.getRenderer()).getPixmap();
 
@@ -99,15 +98,19 @@ public class DavisFrameAviWriter extends AbstractAviWriter {
                 }
             }
             try {
-                getAviOutputStream().writeFrame(bufferedImage);
-                int timestamp = renderer.getTimestampFrameEnd();
-                writeTimecode(timestamp);
+                writeFrame(bufferedImage);
+                writeTimecode(endTimestampUs);
                 incrementFramecountAndMaybeCloseOutput();
 
             } catch (IOException ex) {
                 Logger.getLogger(DavisFrameAviWriter.class.getName()).log(Level.SEVERE, null, ex);
             }
-        } else if (evt.getPropertyName() == AEInputStream.EVENT_REWOUND) {
+        }
+    }
+
+    @Override
+    synchronized public void propertyChange(PropertyChangeEvent evt) {
+        if (evt.getPropertyName() == AEInputStream.EVENT_REWOUND) {
             doCloseFile();
         }
     }
@@ -0,0 +1,144 @@
+package ch.unizh.ini.jaer.projects.integrateandfire;
+
+import java.util.Arrays;
+
+/**
+ * A population of leaky integrate-and-fire neurons held as primitive arrays
+ * rather than one {@link Neuron} object per unit. The dynamics are the same as
+ * those of Neuron: the membrane potential decays lazily, i.e. only when a
+ * neuron receives input or is read, and an input's weight is scaled by the
+ * saturation factor that depends on the time since the neuron last fired.
+ * <p>
+ * Neurons are addressed by index. Different indices may be updated from
+ * different threads concurrently, the same index may not.
+ */
+public class LIFPopulation implements LIFcontroller {
+
+    private static final int NEVER = -10000;
+    final int n;
+    final float[] vmem;       // Membrane potential at previous update
+    final int[] tlast;        // microsecond timestamp of previous vmem update
+    final int[] slast;        // timestamp of last spike, for refractory effects
+    final float[] thresh;     // Threshold (arb units)
+    final float[] tau;        // Time constant (seconds)
+    final float[] sat;        // Time constant of firing saturation
+    boolean doublethresh = false; // Spike also on negative threshold?
+
+    public LIFPopulation(int n) {
+        this.n = n;
+        vmem = new float[n];
+        tlast = new int[n];
+        slast = new int[n];
+        thresh = new float[n];
+        tau = new float[n];
+        sat = new float[n];
+        Arrays.fill(thresh, 1);
+        Arrays.fill(tau, 0.2f);
+        Arrays.fill(sat, 0.05f);
+        reset();
+    }
+
+    /**
+     * Applies an input to a neuron.
+     *
+     * @param i the neuron index
+     * @param w the input weight
+     * @param timestamp in us
+     * @return true if the neuron fired
+     */
+    public boolean spike(int i, float w, int timestamp) {
+        double dt = (timestamp - tlast[i]) / 1000000.; // Time in seconds
+        float v;
+        if (dt < 0) {
+            v = 0; // timestamp wrapped, see Neuron
+        } else {
+            v = (float) (vmem[i] * Math.exp(-dt / tau[i]));
+            tlast[i] = timestamp;
+        }
+        double dts = (timestamp - slast[i]) / 1000000.;
+        if (sat[i] == 0 && dts == 0) {
+            dts = 1; // To deal with 0/0 limit case
+        }
+        v = v + (w * (float) (1 - Math.exp(-dts / sat[i])));
+        if (v > thresh[i] || (doublethresh && v < -thresh[i])) {
+            vmem[i] = 0;
+            slast[i] = timestamp;
+            return true;
+        }
+        vmem[i] = v;
+        return false;
+    }
+
+    /**
+     * Applies a batch of inputs that arrive at the same time.
+     *
+     * @param dest the neuron indices
+     * @param w the weights, w[k] goes to neuron dest[k]
+     * @param count the number of inputs
+     * @param timestamp in us
+     * @param fired filled with the indices of neurons that fired, must hold
+     * count entries
+     * @return the number of neurons that fired
+     */
+    public int spike(int[] dest, float[] w, int count, int timestamp, int[] fired) {
+        int nf = 0;
+        for (int k = 0; k < count; k++) {
+            if (spike(dest[k], w[k], timestamp)) {
+                fired[nf++] = dest[k];
+            }
+        }
+        return nf;
+    }
+
+    /**
+     * Gets the membrane potential decayed to timestamp without changing
+     * anything.
+     *
+     * @param i the neuron index
+     * @param timestamp in us
+     * @return the membrane potential
+     */
+    public float getVmem(int i, int timestamp) {
+        double dt = (timestamp - tlast[i]) / 1000000.;
+        if (dt < 0) {
+            return 0;
+        }
+        return (float) (vmem[i] * Math.exp(-dt / tau[i]));
+    }
+
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public void setThresholds(float thresh) {
+        Arrays.fill(this.thresh, thresh);
+    }
+
+    @Override
+    public void setTaus(float tc) {
+        Arrays.fill(tau, tc);
+    }
+
+    @Override
+    public void setSats(float tc) {
+        Arrays.fill(sat, tc);
+    }
+
+    @Override
+    public void setDoubleThresh(boolean v) {
+        doublethresh = v;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(vmem, 0);
+        Arrays.fill(tlast, NEVER);
+        Arrays.fill(slast, NEVER);
+    }
+
+    @Override
+    public String networkStatus() {
+        return "Population of " + n + " neurons";
+    }
+}
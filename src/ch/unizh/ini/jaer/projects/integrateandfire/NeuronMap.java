@@ -4,15 +4,33 @@
  */
 package ch.unizh.ini.jaer.projects.integrateandfire;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
 import net.sf.jaer.event.OutputEventIterator;
+import net.sf.jaer.event.TypedEvent;
 
 /**
+ * A 2D map of leaky integrate-and-fire neurons driven through an input kernel
+ * and optionally coupled through an auto kernel. The neuron state is held in a
+ * {@link LIFPopulation}, indexed by x+y*dimx.
+ * <p>
+ * A packet of inputs can be applied with {@link #inputSigs}. Without auto
+ * connections the map can then be split into row bands that are updated by
+ * worker threads; each neuron still sees its inputs in packet order and the
+ * output spikes are emitted in the same order as by the serial path.
  *
  * @author Peter
  */
 public class NeuronMap implements LIFcontroller {
     
-    ENeuron[][] N;
+    LIFPopulation N;             // Neuron states, N index is x+y*dimx
+    boolean[] out;               // Is the neuron an output neuron?
     private float[][]   Wi;  // Input weight kernel
     private float[][]   Wa;  // Auto-weight kernel
     byte type;
@@ -26,6 +44,12 @@ public class NeuronMap implements LIFcontroller {
     
     int maxdepth=100;
     
+    int numWorkers=1;               // Number of row bands updated in parallel by inputSigs
+    int minEventsForParallel=256;   // Smaller packets are always applied serially
+    private ExecutorService executor=null;
+    private int[][] bandFired=new int[0][];     // Per band pairs of (input index, neuron index) that fired
+    private int[] bandFiredCount=new int[0];
+    
     
     // =========================================================================
     // Active Methods
@@ -33,40 +57,159 @@ public class NeuronMap implements LIFcontroller {
     
     // Signal from input
     public void inputSpike(short cx, short cy, int timestamp, OutputEventIterator outItr) throws Exception
-    {   // Equivalent to inputSpike(1,cx,cy,timestamp,outItr); // Left separate for minor performance gain.
-        int midy=(short)(Wi.length-1)/2;
-        for (int i=0;i<Wi.length;i++) // Iterate through connections
-        {   short y=(short)(cy+i-midy);
-            int midx=(short)(Wi[i].length-1)/2;
-            for (int j=0;j<Wi[i].length;j++)
-            {   short x=(short) (cx+j-midx);
-                if (y<0 || y>=dimy || x<0 ||x>=dimx) continue;
-                
-                boolean fire=N[y][x].spike(Wi[i][j],timestamp,outItr);
-                if (fire && Wa.length>0){ // Second clause is for optimization: avoiding unnecessary method call.
-                    propagate(x,y,1,timestamp,outItr);
-                }
-            }
-        }
+    {   inputSig(1,cx,cy,timestamp,outItr);
     }
     
     // Signal from input
     public void inputSig(float val,short cx, short cy, int timestamp, OutputEventIterator outItr) throws Exception
     {
-        int midy=(short)(Wi.length-1)/2;
+        int midy=(Wi.length-1)/2;
         for (int i=0;i<Wi.length;i++) // Iterate through connections
-        {   short y=(short)(cy+i-midy);
-            int midx=(short)(Wi[i].length-1)/2;
-            for (int j=0;j<Wi[i].length;j++)
-            {   short x=(short) (cx+j-midx);
-                if (y<0 || y>=dimy || x<0 ||x>=dimx) continue;
+        {   int y=cy+i-midy;
+            if (y<0 || y>=dimy) continue;
+            int midx=(Wi[i].length-1)/2;
+            float[] wi=Wi[i];
+            for (int j=0;j<wi.length;j++)
+            {   int x=cx+j-midx;
+                if (x<0 ||x>=dimx) continue;
                 
-                boolean fire=N[y][x].spike(Wi[i][j]*val,timestamp,outItr);
-                if (fire && Wa.length>0){ // Second clause is for optimization: avoiding unnecessary method call.
-                    propagate(x,y,1,timestamp,outItr);
+                if (fire(x+y*dimx,wi[j]*val,timestamp,outItr) && Wa.length>0){ // Second clause is for optimization: avoiding unnecessary method call.
+                    propagate((short)x,(short)y,1,timestamp,outItr);
+                }
+            }
+        }
+    }
+    
+    /** Applies a packet of input signals, equivalent to calling inputSig for
+     * each input in order. Uses the worker threads if numWorkers>1, there are
+     * no auto connections and the packet is large enough.
+     * 
+     * @param vals the input values
+     * @param xs the input x addresses
+     * @param ys the input y addresses
+     * @param timestamps the input timestamps
+     * @param n the number of inputs
+     * @param outItr the iterator output spikes are written to
+     */
+    public void inputSigs(final float[] vals, final short[] xs, final short[] ys, final int[] timestamps, final int n, OutputEventIterator outItr) throws Exception
+    {   if (numWorkers<=1 || n<minEventsForParallel || Wa.length>0)
+        {   for (int k=0;k<n;k++)
+                inputSig(vals[k],xs[k],ys[k],timestamps[k],outItr);
+            return;
+        }
+        final int bands=numWorkers;
+        if (executor==null)
+        {   executor=Executors.newFixedThreadPool(bands, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "NeuronMap");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        if (bandFired.length!=bands) 
+        {   bandFired=new int[bands][0];
+            bandFiredCount=new int[bands];
+        }
+        final int rowsPerBand=(dimy+bands-1)/bands;
+        ArrayList<Future<?>> futures=new ArrayList<Future<?>>(bands);
+        for (int b=0;b<bands;b++)
+        {   final int band=b;
+            final int y0=b*rowsPerBand, y1=Math.min(dimy,y0+rowsPerBand);
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    inputSigsBand(band,y0,y1,vals,xs,ys,timestamps,n);
+                }
+            }));
+        }
+        for (Future<?> f:futures)
+        {   try 
+            {   f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new Exception("NeuronMap band failed: "+e.getCause(), e.getCause());
+            }
+        }
+        // Merge spikes in input order; within an input the bands are in row order as in the serial path
+        int[] pos=new int[bands];
+        for (int k=0;k<n;k++)
+            for (int b=0;b<bands;b++)
+            {   int[] fired=bandFired[b];
+                while (pos[b]<bandFiredCount[b] && fired[pos[b]]==k)
+                {   emit(fired[pos[b]+1],timestamps[k],outItr);
+                    pos[b]+=2;
+                }
+            }
+    }
+    
+    /** Applies the inputs to rows y0 to y1-1 and records the neurons that fired. */
+    private void inputSigsBand(int band, int y0, int y1, float[] vals, short[] xs, short[] ys, int[] timestamps, int n)
+    {   int[] fired=bandFired[band];
+        int nf=0;
+        int midy=(Wi.length-1)/2;
+        for (int k=0;k<n;k++)
+        {   int cy=ys[k];
+            if (cy-midy+Wi.length<=y0 || cy-midy>=y1) continue; // kernel does not reach this band
+            int cx=xs[k], timestamp=timestamps[k];
+            float val=vals[k];
+            for (int i=0;i<Wi.length;i++)
+            {   int y=cy+i-midy;
+                if (y<y0 || y>=y1) continue;
+                int midx=(Wi[i].length-1)/2;
+                float[] wi=Wi[i];
+                for (int j=0;j<wi.length;j++)
+                {   int x=cx+j-midx;
+                    if (x<0 ||x>=dimx) continue;
+                    int ix=x+y*dimx;
+                    if (N.spike(ix,wi[j]*val,timestamp) && out[ix])
+                    {   if (nf+2>fired.length)
+                            fired=Arrays.copyOf(fired,Math.max(64,fired.length*2));
+                        fired[nf++]=k;
+                        fired[nf++]=ix;
+                    }
                 }
             }
         }
+        bandFired[band]=fired;
+        bandFiredCount[band]=nf;
+    }
+    
+    /** Applies an input to neuron ix and emits an output spike if it fires and is an output neuron. */
+    private boolean fire(int ix, float w, int timestamp, OutputEventIterator outItr)
+    {   boolean didit=N.spike(ix,w,timestamp);
+        if (didit && out[ix])
+            emit(ix,timestamp,outItr);
+        return didit;
+    }
+    
+    private void emit(int ix, int timestamp, OutputEventIterator outItr)
+    {   TypedEvent e=(TypedEvent)outItr.nextOutput();
+        e.x=(short)(ix%dimx);
+        e.y=(short)(ix/dimx);
+        e.type=type;
+        e.timestamp=timestamp;
+    }
+    
+    public void setNumWorkers(int numWorkers)
+    {   if (numWorkers<1) numWorkers=1;
+        if (numWorkers!=this.numWorkers) shutdown();
+        this.numWorkers=numWorkers;
+    }
+    
+    public int getNumWorkers()
+    {   return numWorkers;
+    }
+    
+    /** Stops the worker threads; they are restarted when needed. */
+    public void shutdown()
+    {   if (executor!=null)
+        {   executor.shutdown();
+            executor=null;
+        }
     }
     
     // Propagate 
@@ -78,17 +221,17 @@ public class NeuronMap implements LIFcontroller {
         if (depth>maxdepth){
             throw new Exception("This spike has triggered too many (>"+maxdepth+") propagations.  See maxdepth");
         }
-        int midy=(short)(Wa.length/2);
+        int midy=Wa.length/2;
         
         for (int i=0;i<Wa.length;i++) // Iterate through connections
-        {   short y=(short)(i-midy);
-            int midx=(short)(Wa[i].length/2);
+        {   short y=(short)(cy+i-midy);
+            int midx=Wa[i].length/2;
             for (int j=0;j<Wa[i].length;j++)
             {   
-                short x=(short) (j-midx);
+                short x=(short) (cx+j-midx);
                 if (y<0 || y>=dimy || x<0 ||x>=dimx) continue;
                 
-                boolean fire=N[y][x].spike(Wa[i][j]*autoStrength,timestamp,outItr); // TODO: make this more efficient by pre-multiplying
+                boolean fire=fire(x+y*dimx,Wa[i][j]*autoStrength,timestamp,outItr); // TODO: make this more efficient by pre-multiplying
                 if (fire){
                     propagate(x,y,depth+1,timestamp,outItr);
                 }
@@ -105,7 +248,7 @@ public class NeuronMap implements LIFcontroller {
     public void stimulate(short cx, short cy, float weight, OutputEventIterator outItr, int timestamp) throws Exception
     {   // Directly stimulate a neuron with a given weight
         
-        boolean fire=N[cy][cx].spike(weight,timestamp,outItr);
+        boolean fire=fire(cx+cy*dimx,weight,timestamp,outItr);
         if (fire){
             propagate(cx,cy,1,timestamp,outItr);
         }
@@ -199,45 +342,33 @@ public class NeuronMap implements LIFcontroller {
     // Global Network Settings Change Methods
     
     public void setAllOutputStates(boolean state)
-    {   for (ENeuron[] nr:N)
-            for (ENeuron n:nr)
-                n.out=state;    
+    {   Arrays.fill(out,state);
     }
     
     @Override
     public void setDoubleThresh(boolean dubStep)
-    {   for (Neuron[] nr:N)
-            for (Neuron n:nr)
-                n.doublethresh=dubStep;  
+    {   N.setDoubleThresh(dubStep);
     }
     
     @Override
     public void setThresholds(float thresh)
-    {   for (Neuron[] nr:N)
-            for (Neuron n:nr)
-                n.thresh=thresh;    
+    {   N.setThresholds(thresh);
     }
     
     @Override
     public void setTaus(float tc)
-    {   for (Neuron[] nr:N)
-            for (Neuron n:nr)
-                n.tau=tc;      
+    {   N.setTaus(tc);
     }
     
     
     @Override
     public void setSats(float tc)
-    {   for (Neuron[] nr:N)
-            for (Neuron n:nr)
-                n.sat=tc;      
+    {   N.setSats(tc);
     }
     
     @Override
     public void reset()
-    {   for (Neuron[] nr:N)
-            for (Neuron n:nr)
-                n.reset();    
+    {   N.reset();
     }
     
     public void build(short idimx,short idimy)
@@ -245,25 +376,8 @@ public class NeuronMap implements LIFcontroller {
         dimx=idimx;
         dimy=idimy;
         
-        N=new ENeuron[dimy][dimx];
-        
-        //short sWy=(short) Math.floor(W.length);
-        //short sWx=(short) Math.floor(W[0].length);
-        //W=new float[sWy][sWx];       
-        
-        //short wdim=(short) (Math.floor(W.length)*Math.floor(W[0].length));
-        
-        for (short i=0;i<dimy;i++)
-        {
-            for (short j=0; j<dimx; j++)
-            {   coord co=ind2xy(i);
-                N[i][j]=new ENeuron();
-                N[i][j].y=i;
-                N[i][j].x=j;
-                N[i][j].type=type;
-            }
-            
-        }
+        N=new LIFPopulation(dimx*dimy);
+        out=new boolean[dimx*dimy];
         
         // Default filter settings
         setInputFilter(builtFilt.buffer);
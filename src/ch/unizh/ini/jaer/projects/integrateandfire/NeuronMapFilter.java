@@ -37,6 +37,13 @@ public class NeuronMapFilter  extends SuperLIFFilter {
     
     float autoStrength=1;
     
+    int numWorkers=getPrefs().getInt("NeuronMapFilter.numWorkers",1);
+    
+    // Reused input arrays for NeuronMap.inputSigs
+    private float[] vals=new float[0];
+    private short[] xs=new short[0], ys=new short[0];
+    private int[] timestamps=new int[0];
+    
     NeuronMap NM;           // Alias of superclass field NM.  To make the compiler happy.
     
     @Override
@@ -52,6 +59,14 @@ public class NeuronMapFilter  extends SuperLIFFilter {
         try
         {
             out.setEventClass(TypedEvent.class);
+            int n=P.getSize();
+            if (vals.length<n)
+            {   vals=new float[n];
+                xs=new short[n];
+                ys=new short[n];
+                timestamps=new int[n];
+            }
+            int k=0;
             for (Object p:P)
             { // iterate over the input packet**
                 
@@ -68,7 +83,11 @@ public class NeuronMapFilter  extends SuperLIFFilter {
                     case diff:
                         if (e.polarity==Polarity.Off) vv=-1;
                 }
-                NM.inputSig(vv,(short)(e.x),(short)(e.y),e.timestamp,outItr);
+                vals[k]=vv;
+                xs[k]=e.x;
+                ys[k]=e.y;
+                timestamps[k]=e.timestamp;
+                k++;
                 /*
                 if ((polarityPass==0) || (polarityPass<0 && (e.polarity==e.polarity.Off)) || (polarityPass>0 && (e.polarity==e.polarity.On)))
                 {   
@@ -78,6 +97,7 @@ public class NeuronMapFilter  extends SuperLIFFilter {
                 }*/
                 
             }
+            NM.inputSigs(vals,xs,ys,timestamps,k,outItr);
             return out;
         }
         catch(Exception ME)
@@ -123,6 +143,7 @@ public class NeuronMapFilter  extends SuperLIFFilter {
         setPropertyTooltip("Mapping","inputFilter","Input Filter to use");
         setPropertyTooltip("Mapping","autoFilter","Auto Filter to use");
         setPropertyTooltip("Mapping","autoStrength","Modulate Strength of Auto-Connections");
+        setPropertyTooltip("Network","numWorkers","Number of threads updating row bands of the map for large packets; only used without auto-connections");
         
     }
     
@@ -148,6 +169,7 @@ public class NeuronMapFilter  extends SuperLIFFilter {
         NM.setAllOutputStates(true);
         NM.setTaus(tau);
         NM.setThresholds(thresh);
+        NM.setNumWorkers(numWorkers);
         
         NN=NM; 
         
@@ -215,6 +237,26 @@ public class NeuronMapFilter  extends SuperLIFFilter {
     public float getAutoStrength() {
         return this.NM.autoStrength;
     }
+    
+    public void setNumWorkers(int v) {
+        if (v<1) v=1;
+        else if (v>Runtime.getRuntime().availableProcessors()) v=Runtime.getRuntime().availableProcessors();
+        int old=this.numWorkers;
+        this.numWorkers=v;
+        if (NM!=null) NM.setNumWorkers(v);
+        getPrefs().putInt("NeuronMapFilter.numWorkers",v);
+        support.firePropertyChange("numWorkers",old,v);
+    }
+    
+    public int getNumWorkers() {
+        return this.numWorkers;
+    }
+    
+    @Override
+    public synchronized void setFilterEnabled(boolean yes) {
+        super.setFilterEnabled(yes);
+        if (!yes && NM!=null) NM.shutdown();
+    }
 }
 
-        
\ No newline at end of file
+        
\ No newline at end of file
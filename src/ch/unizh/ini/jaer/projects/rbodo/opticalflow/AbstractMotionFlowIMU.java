@@ -10,6 +10,7 @@ import com.jogamp.opengl.GLAutoDrawable;
 import com.jogamp.opengl.GLException;
 import com.jogamp.opengl.util.gl2.GLUT;
 import eu.seebetter.ini.chips.davis.imu.IMUSample;
+import eu.seebetter.ini.chips.davis.imu.ImuSampleBuffer;
 import java.awt.Color;
 import java.awt.geom.Point2D;
 import java.beans.PropertyChangeEvent;
@@ -142,6 +143,10 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2D implements Obs
     // Conversion factor is atan(pixelWidth/focalLength).
     private float radPerPixel;
 
+    // IMU samples shared with other filters, for rates interpolated at each event timestamp
+    private final ImuSampleBuffer imuSampleBuffer;
+    private boolean interpolateImuRates = getBoolean("interpolateImuRates", false);
+
     private boolean addedViewerPropertyChangeListener = false; // TODO promote these to base EventFilter class
     private boolean addTimeStampsResetPropertyChangeListener = false;
 
@@ -215,6 +220,7 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2D implements Obs
     public AbstractMotionFlowIMU(AEChip chip) {
         super(chip);
         addObservers(chip);
+        imuSampleBuffer = ImuSampleBuffer.getShared(chip);
         imuFlowEstimator = new ImuFlowEstimator();
         dirPacket = new EventPacket(ApsDvsMotionOrientationEvent.class);
         filterClassName = getClass().getSimpleName();
@@ -267,6 +273,7 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2D implements Obs
 //        setPropertyTooltip(imuTT, "discardOutliersForStatisticalMeasurementEnabled", "discard measured local motion vector if it deviates from IMU estimate");
 //        setPropertyTooltip(imuTT, "discardOutliersForStatisticalMeasurementMaxAngleDifferenceDeg", "threshold angle in degree. Discard measured optical flow vector if it deviates from IMU-estimate by more than discardOutliersForStatisticalMeasurementMaxAngleDifferenceDeg");
         setPropertyTooltip(imuTT, "lensFocalLengthMm", "lens focal length in mm. Used for computing the IMU flow from pan and tilt camera rotations. 4.5mm is focal length for dataset data.");
+        setPropertyTooltip(imuTT, "interpolateImuRates", "Computes the IMU flow of each event from the gyro rates interpolated at the event timestamp, rather than from the last IMU sample before the event.");
         setPropertyTooltip(imuTT, "calibrationSamples", "number of IMU samples to average over for measuring IMU offset.");
         setPropertyTooltip(imuTT, "startIMUCalibration", "<html> Starts estimating the IMU offsets based on next calibrationSamples samples. Should be used only with stationary recording to store these offsets in the preferences. <p> <b>measureAccuracy</b> must be selected as well to actually do the calibration.");
         setPropertyTooltip(imuTT, "eraseIMUCalibration", "Erases the IMU offsets to zero. Can be used to observe effect of these offsets on a stationary recording in the IMUFlow filter.");
@@ -436,6 +443,8 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2D implements Obs
         private static final int FLUSH_COUNT = 1;
         private int flushCounter;
 
+        private final float[] interpolatedRates = new float[3];
+
         protected ImuFlowEstimator() {
             panCalibrator = new Measurand();
             tiltCalibrator = new Measurand();
@@ -542,6 +551,11 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2D implements Obs
                 int nx = e.x - sizex / 2; // TODO assumes principal point is at center of image
                 int ny = e.y - sizey / 2;
 //                panRateDps=0; tiltRateDps=0; // debug
+                if (interpolateImuRates && !calibrating && imuSampleBuffer.getRatesAt(ts, interpolatedRates)) {
+                    tiltRateDps = interpolatedRates[0] - tiltOffset;
+                    panRateDps = interpolatedRates[1] - panOffset;
+                    rollRateDps = interpolatedRates[2] - rollOffset;
+                }
                 final float rrrad = -(float) (rollRateDps * Math.PI / 180);
                 final float radfac = (float) (Math.PI / 180);
                 final float pixfac = radfac / radPerPixel;
@@ -1443,6 +1457,24 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2D implements Obs
         radPerPixel = (float) Math.atan(chip.getPixelWidthUm() / (1000 * lensFocalLengthMm));
     }
 
+    /**
+     * @return true if IMU flow uses gyro rates interpolated at each event
+     * timestamp
+     */
+    public boolean isInterpolateImuRates() {
+        return interpolateImuRates;
+    }
+
+    /**
+     * @param interpolateImuRates true to compute IMU flow from gyro rates
+     * interpolated at each event timestamp from the shared ImuSampleBuffer,
+     * false to use the last IMU sample
+     */
+    public void setInterpolateImuRates(boolean interpolateImuRates) {
+        this.interpolateImuRates = interpolateImuRates;
+        putBoolean("interpolateImuRates", interpolateImuRates);
+    }
+
     protected boolean outlierMotionFilteringKeepThisEvent(MotionOrientationEventInterface e) {
         if (outlierMotionFilteringLastAngles == null) {
             outlierMotionFilteringLastAngles = new int[chip.getSizeX()][chip.getSizeY()];
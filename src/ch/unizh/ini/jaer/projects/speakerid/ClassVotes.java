@@ -0,0 +1,50 @@
+package ch.unizh.ini.jaer.projects.speakerid;
+
+/**
+ * The decaying class votes that CochleaSVMTwoEars accumulates over
+ * successive predictions. Each prediction adds its class probabilities,
+ * weighted by its largest probability, to the votes of the previous
+ * predictions multiplied by a decay factor.
+ */
+final class ClassVotes {
+
+    private ClassVotes() {
+    }
+
+    /**
+     * Adds the class probabilities of one prediction to the votes.
+     *
+     * @param pred the votes of each class, updated in place; may be longer
+     * than prob_estimates
+     * @param prob_estimates the class probabilities of the new prediction
+     * @param decay the factor the old votes are multiplied with
+     * @return the class with the most votes
+     */
+    static int vote(double[] pred, double[] prob_estimates, double decay) {
+        double maxProb = maxOfArray(prob_estimates);
+        for (int i = 0; i < prob_estimates.length; i++) {
+            pred[i] = prob_estimates[i] * maxProb + pred[i] * decay;  //use the probaility for class(i) multiplied by the max probability and appendCopy some history to it multiplied by a decay
+        }
+        return maxOfArrayIndex(pred);
+    }
+
+    private static double maxOfArray(double[] array) {
+        double max = Double.MIN_VALUE;
+        for (double i : array) {
+            max = Math.max(max, i);
+        }
+        return max;
+    }
+
+    private static int maxOfArrayIndex(double[] array) {
+        double max = Double.MIN_VALUE;
+        int index = -1;
+        for (int i = 0; i < array.length; i++) {
+            max = Math.max(max, array[i]);
+            if (max == array[i]) {
+                index = i;
+            }
+        }
+        return index;
+    }
+}
@@ -81,6 +81,12 @@ public class CochleaSVMTwoEars extends ISIFilterTwoEars implements FrameAnnotate
     private svm_model model;    //the trained SVM model
 
     //variables for prediction
+    protected boolean useDensePredictor = getBoolean("useDensePredictor", false);   //classify with the allocation-free dense predictor instead of libsvm
+    private DenseSvmPredictor densePredictor;   //dense copy of model, rebuilt when the model or feature length changes
+    private svm_model densePredictorModel;
+    private double[] features;  //reused dense feature vector
+    private double[] denseProbEstimates;
+    private float[] channelEventRates;
     protected int classLabel;   //label of the data
     private double[] pred = new double[64];
     private double[] predClass = new double[64];
@@ -141,6 +147,7 @@ public class CochleaSVMTwoEars extends ISIFilterTwoEars implements FrameAnnotate
         setPropertyTooltip("useEventLimit", "use event limit to decide if a new feature vector is recorded");
         setPropertyTooltip("useTimeLimit", "use time inteval to decide if a new feature vector is recorded");
         setPropertyTooltip("hasModel", "indicates if a valid model is loaded");
+        setPropertyTooltip("useDensePredictor", "classify the recorded feature vectors with the allocation-free dense SVM predictor instead of libsvm; gives the same probabilities");
         channelEventRateFilter.addObserver(this);
         setNBins(numOfBins);
         chooser = new JFileChooser();   //file chooser for loading and saving files
@@ -208,55 +215,7 @@ public class CochleaSVMTwoEars extends ISIFilterTwoEars implements FrameAnnotate
                     prob2.y[i] = prob.y[i];
                 }
                 prob2.y[prob2.l - 1] = classLabel;  //assigns the current classLabel to the last vector
-                int binsLength = 0;
-                if (useISI) {
-                    binsLength += binsLeft.length;    //save the number of bins
-                    binsLength += binsRight.length;    //save the number of bins
-                }
-                if (usePerChannelEventRate) {
-                    binsLength += this.chip.getSizeX(); //increase the number of vector items by the number of cochlea channels
-                }
-                svm_node[] x = new svm_node[binsLength];       //declare and initialize a new array x of svm_nodes with a size that equals the number of features (vector items)
-                int counter = 1;
-                if (useISI) {
-                    if (normalizeISIBins) {
-                        normalizeISIBins(binsLeft, binsRight);
-                        for (int j = 0; j < normBinsLeft.length; j++) {
-                            x[counter - 1] = new svm_node();              //create a new node in the array for each ISI bin
-                            x[counter - 1].index = counter;               //assigns the current feature number to the node
-                            x[counter - 1].value = normBinsLeft[j];        //assigns the bin value to the node;
-                            counter++;
-                        }
-                        for (int j = 0; j < normBinsRight.length; j++) {
-                            x[counter - 1] = new svm_node();              //create a new node in the array for each ISI bin
-                            x[counter - 1].index = counter;               //assigns the current feature number to the node
-                            x[counter - 1].value = normBinsRight[j];        //assigns the bin value to the node;
-                            counter++;
-                        }
-                    } else {
-                        for (int j = 0; j < binsLeft.length; j++) {
-                            x[counter - 1] = new svm_node();
-                            x[counter - 1].index = counter;
-                            x[counter - 1].value = binsLeft[j];
-                            counter++;
-                        }
-                        for (int j = 0; j < binsRight.length; j++) {
-                            x[counter - 1] = new svm_node();              //create a new node in the array for each ISI bin
-                            x[counter - 1].index = counter;               //assigns the current feature number to the node
-                            x[counter - 1].value = binsRight[j];        //assigns the bin value to the node;
-                            counter++;
-                        }
-                    }
-                }
-                if (usePerChannelEventRate) {
-                    float[] channelEventRates = perChannelEventRate();
-                    for (int i = 0; i < this.chip.getSizeX(); i++) {
-                        x[counter - 1] = new svm_node();
-                        x[counter - 1].index = counter;                     //assigns the current feature number to the node
-                        x[counter - 1].value = channelEventRates[i];        //add per channel activity to the array
-                        counter++;
-                    }
-                }
+                svm_node[] x = DenseSvmPredictor.toNodes(fillFeatureVector(binsLeft, binsRight));   //the feature vector as svm_nodes numbered 1..n
                 prob2.x[prob2.l - 1] = x;                   //add the new feature vector to the problem set
                 //copy from prob2 to prob
                 prob = new svm_problem();   //new problem
@@ -275,7 +234,11 @@ public class CochleaSVMTwoEars extends ISIFilterTwoEars implements FrameAnnotate
             if (isClassifyEvents()) {
                 if (prob != null) {
                     timeSinceLastPrediction = now - timeSinceLastPrediction;
-                    predict();    //predict the class of the incoming data
+                    if (useDensePredictor && model != null) {
+                        predictDense(prob.x[prob.x.length - 1]);    //the same recorded vector that predict() classifies
+                    } else {
+                        predict();    //predict the class of the incoming data
+                    }
                     timeSinceLastPrediction = now;    //updates the variable containing the last time a line was written
                     doResetFeatureVectors();
                 } else {
@@ -452,32 +415,89 @@ public class CochleaSVMTwoEars extends ISIFilterTwoEars implements FrameAnnotate
         }
         double[] prob_estimates = new double[model.nr_class];
         svm.svm_predict_probability(model, prob.x[prob.x.length - 1], prob_estimates); //use the loaded model to predict a new feature vector (prob.x) and write the probability estimates for each class into an array (prob_estimates)
-        for (int i = 0; i < prob_estimates.length; i++) {
-            pred[i] = prob_estimates[i] * maxOfArray(prob_estimates) + pred[i] * Math.exp(-timeSinceLastPrediction / (getTauMS() * 1000));  //use the probaility for class(i) multiplied by the max probability and appendCopy some history to it multiplied by a decay
-            values[i] = pred[i];
+        updatePrediction(prob_estimates);
+    }
+
+    /**
+     * Predicts the label of the last recorded feature vector with the
+     * DenseSvmPredictor, which gives the same probabilities as
+     * svm_predict_probability.
+     *
+     * @param nodes the recorded feature vector
+     */
+    private void predictDense(svm_node[] nodes) {
+        int n = 0;
+        for (svm_node node : nodes) {
+            n = Math.max(n, node.index);
         }
-        labeledClass = maxOfArrayIndex(pred);
-        labelBarChart.repaint();
+        if (features == null || features.length != n) {
+            features = new double[n];
+        }
+        double[] x = DenseSvmPredictor.toDense(nodes, features);
+        if (densePredictor == null || densePredictorModel != model || densePredictor.getNumFeatures() != x.length) {
+            try {
+                densePredictor = new DenseSvmPredictor(model, x.length);
+                densePredictorModel = model;
+                denseProbEstimates = new double[model.nr_class];
+            } catch (IllegalArgumentException e) {
+                log.warning("cannot use dense predictor, using libsvm: " + e.getMessage());
+                setUseDensePredictor(false);
+                return;
+            }
+        }
+        densePredictor.predictProbability(x, denseProbEstimates);
+        updatePrediction(denseProbEstimates);
     }
 
-    private double maxOfArray(double[] array) {
-        double max = Double.MIN_VALUE;
-        for (double i : array) {
-            max = Math.max(max, i);
+    private void updatePrediction(double[] prob_estimates) {
+        labeledClass = ClassVotes.vote(pred, prob_estimates, Math.exp(-timeSinceLastPrediction / (getTauMS() * 1000)));
+        if (values != null) {
+            System.arraycopy(pred, 0, values, 0, Math.min(values.length, prob_estimates.length));
         }
-        return max;
+        labelBarChart.repaint();
     }
 
-    private int maxOfArrayIndex(double[] array) {
-        double max = Double.MIN_VALUE;
-        int index = -1;
-        for (int i = 0; i < array.length; i++) {
-            max = Math.max(max, array[i]);
-            if (max == array[i]) {
-                index = i;
+    /**
+     * Fills the reused dense feature vector from the ISI bins and the channel
+     * event rates, in the same order as the recorded feature vectors.
+     *
+     * @param binsLeft the ISI bins of the left ear
+     * @param binsRight the ISI bins of the right ear
+     * @return the feature vector, reused on the next call
+     */
+    private double[] fillFeatureVector(float[] binsLeft, float[] binsRight) {
+        int n = 0;
+        if (useISI) {
+            n += binsLeft.length + binsRight.length;
+        }
+        if (usePerChannelEventRate) {
+            n += this.chip.getSizeX();  //one feature per cochlea channel
+        }
+        if (features == null || features.length != n) {
+            features = new double[n];
+        }
+        int i = 0;
+        if (useISI) {
+            float[] left = binsLeft, right = binsRight;
+            if (normalizeISIBins) {
+                normalizeISIBins(binsLeft, binsRight);
+                left = normBinsLeft;
+                right = normBinsRight;
+            }
+            for (float v : left) {
+                features[i++] = v;
+            }
+            for (float v : right) {
+                features[i++] = v;
+            }
+        }
+        if (usePerChannelEventRate) {
+            float[] rates = perChannelEventRate();
+            for (int c = 0; c < this.chip.getSizeX(); c++) {
+                features[i++] = rates[c];    //add per channel activity to the vector
             }
         }
-        return index;
+        return features;
     }
 
     private void saveTrainingData(svm_problem prob) throws IOException {
@@ -572,10 +592,16 @@ public class CochleaSVMTwoEars extends ISIFilterTwoEars implements FrameAnnotate
     }
 
     private void normalizeISIBins(float[] leftBins, float[] rightBins) {               //normalize the ISI bins by the maximum bin value
-        normBinsLeft = new float[leftBins.length]; //array to hold the normalized ISI bins
-        normBinsRight = new float[rightBins.length]; //array to hold the normalized ISI bins
+        if (normBinsLeft == null || normBinsLeft.length != leftBins.length) {
+            normBinsLeft = new float[leftBins.length]; //array to hold the normalized ISI bins
+        }
+        if (normBinsRight == null || normBinsRight.length != rightBins.length) {
+            normBinsRight = new float[rightBins.length]; //array to hold the normalized ISI bins
+        }
+        float maxBinLeft = super.getLeftMaxBin();   //find the bin with the highest number
+        float maxBinRight = super.getRightMaxBin();
         for (int i = 0; i < leftBins.length; i++) {
-            float maxBin = super.getLeftMaxBin();   //find the bin with the highest number
+            float maxBin = maxBinLeft;
             if (maxBin != 0) {
                 normBinsLeft[i] = (float) leftBins[i] / maxBin; //normalize between 0:1
             } else {
@@ -583,7 +609,7 @@ public class CochleaSVMTwoEars extends ISIFilterTwoEars implements FrameAnnotate
             }
         }
         for (int i = 0; i < rightBins.length; i++) {
-            float maxBin = super.getRightMaxBin();
+            float maxBin = maxBinRight;
             if (maxBin != 0) {
                 normBinsRight[i] = (float) rightBins[i] / maxBin;
             } else {
@@ -593,7 +619,9 @@ public class CochleaSVMTwoEars extends ISIFilterTwoEars implements FrameAnnotate
     }
 
     float[] perChannelEventRate() {
-        float[] channelEventRates = new float[this.getChip().getSizeX()];
+        if (channelEventRates == null || channelEventRates.length != this.getChip().getSizeX()) {
+            channelEventRates = new float[this.getChip().getSizeX()];
+        }
         float maxChannelEventRate = 0;
         for (int i = 0; i < channelEventRates.length; i++) {
             channelEventRates[i] = channelEventRateFilter.getFilteredEventRate(i);     //get the event rate of channel i
@@ -767,6 +795,17 @@ public class CochleaSVMTwoEars extends ISIFilterTwoEars implements FrameAnnotate
         support.firePropertyChange("recordFeatures", oldrecordFeatures, recordFeatures);
     }
 
+    public boolean isUseDensePredictor() {
+        return this.useDensePredictor;
+    }
+
+    public void setUseDensePredictor(boolean useDensePredictor) {
+        putBoolean("useDensePredictor", useDensePredictor);
+        boolean olduseDensePredictor = this.useDensePredictor;
+        this.useDensePredictor = useDensePredictor;
+        support.firePropertyChange("useDensePredictor", olduseDensePredictor, useDensePredictor);
+    }
+
     public boolean isHasModel() {
         return this.hasModel;
     }
@@ -0,0 +1,402 @@
+package ch.unizh.ini.jaer.projects.speakerid;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm_model;
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm_node;
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm_parameter;
+
+/**
+ * Allocation-free prediction for a trained libsvm classification model on
+ * dense feature vectors.
+ * <p>
+ * The support vectors of the model are copied once into a flat row-major
+ * <code>double[]</code> matrix (missing sparse indices become 0), so the kernel
+ * of a feature vector with all support vectors is a set of plain loops over
+ * contiguous arrays that the JIT can unroll and vectorize. All scratch arrays
+ * for kernel values, decision values and the pairwise coupling of probability
+ * estimates are preallocated. The results equal those of
+ * <code>svm.svm_predict_probability</code> and <code>svm.svm_predict</code>
+ * up to floating point summation order.
+ * <p>
+ * Batches of feature vectors can be classified together; the support vector
+ * matrix is then streamed once per batch instead of once per vector.
+ */
+public class DenseSvmPredictor {
+
+    private static final Logger log = Logger.getLogger("CochleaSVM");
+
+    private final int numFeatures, numSV, numClasses, numPairs;
+    private final int kernelType, degree;
+    private final double gamma, coef0;
+    /**
+     * Support vectors, [sv][feature] flattened
+     */
+    private final double[] sv;
+    /**
+     * Coefficients, [class-1][sv] as in svm_model.sv_coef
+     */
+    private final double[][] svCoef;
+    private final double[] rho, probA, probB;
+    private final int[] label, start, count;
+    private final boolean hasProbability;
+
+    // scratch
+    private final double[] kvalue, decValues, qp;
+    private final double[][] pairwiseProb, q;
+    private final int[] vote;
+    private double[] batchKvalues = new double[0];
+
+    /**
+     * Builds the dense predictor.
+     *
+     * @param model a trained C_SVC or NU_SVC model
+     * @param numFeatures the length of the dense feature vectors; feature i is
+     * libsvm index i+1
+     * @throws IllegalArgumentException if the model is not a classification
+     * model with a supported kernel
+     */
+    public DenseSvmPredictor(svm_model model, int numFeatures) {
+        if (model.param.svm_type != svm_parameter.C_SVC && model.param.svm_type != svm_parameter.NU_SVC) {
+            throw new IllegalArgumentException("only C_SVC and NU_SVC classification models are supported");
+        }
+        if (model.param.kernel_type == svm_parameter.PRECOMPUTED) {
+            throw new IllegalArgumentException("precomputed kernels are not supported");
+        }
+        this.numFeatures = numFeatures;
+        numSV = model.l;
+        numClasses = model.nr_class;
+        numPairs = (numClasses * (numClasses - 1)) / 2;
+        kernelType = model.param.kernel_type;
+        degree = model.param.degree;
+        gamma = model.param.gamma;
+        coef0 = model.param.coef0;
+        sv = new double[numSV * numFeatures];
+        for (int i = 0; i < numSV; i++) {
+            for (svm_node n : model.SV[i]) {
+                if (n.index >= 1 && n.index <= numFeatures) {
+                    sv[(i * numFeatures) + n.index - 1] = n.value;
+                } else if (n.index > numFeatures) {
+                    log.warning("support vector " + i + " has feature index " + n.index + " beyond the " + numFeatures + " dense features, ignoring it");
+                }
+            }
+        }
+        svCoef = model.sv_coef;
+        rho = model.rho;
+        label = model.label;
+        hasProbability = model.probA != null && model.probB != null;
+        probA = model.probA;
+        probB = model.probB;
+        count = model.nSV;
+        start = new int[numClasses];
+        for (int i = 1; i < numClasses; i++) {
+            start[i] = start[i - 1] + count[i - 1];
+        }
+        kvalue = new double[numSV];
+        decValues = new double[numPairs];
+        vote = new int[numClasses];
+        pairwiseProb = new double[numClasses][numClasses];
+        q = new double[numClasses][numClasses];
+        qp = new double[numClasses];
+    }
+
+    /**
+     * Converts a dense feature vector to libsvm nodes, for comparison with
+     * the libsvm path.
+     *
+     * @param x the dense features
+     * @return nodes with indices 1..x.length
+     */
+    public static svm_node[] toNodes(double[] x) {
+        svm_node[] nodes = new svm_node[x.length];
+        for (int i = 0; i < x.length; i++) {
+            nodes[i] = new svm_node();
+            nodes[i].index = i + 1;
+            nodes[i].value = x[i];
+        }
+        return nodes;
+    }
+
+    /**
+     * Converts libsvm nodes to a dense feature vector, the inverse of
+     * {@link #toNodes}. Features without a node are 0.
+     *
+     * @param nodes nodes with indices 1..x.length
+     * @param x receives the dense features
+     * @return x
+     */
+    public static double[] toDense(svm_node[] nodes, double[] x) {
+        Arrays.fill(x, 0);
+        for (svm_node node : nodes) {
+            if ((node.index >= 1) && (node.index <= x.length)) {
+                x[node.index - 1] = node.value;
+            }
+        }
+        return x;
+    }
+
+    /**
+     * @return true if the model has pairwise probability information
+     */
+    public boolean hasProbability() {
+        return hasProbability;
+    }
+
+    /**
+     * @return the number of classes
+     */
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    /**
+     * @return the dense feature vector length
+     */
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    /**
+     * Predicts the class of a feature vector by pairwise voting, like
+     * svm.svm_predict.
+     *
+     * @param x the dense features
+     * @return the predicted class label
+     */
+    public synchronized double predict(double[] x) {
+        computeKernel(x, 0, kvalue, 0);
+        return label[vote(kvalue, 0)];
+    }
+
+    /**
+     * Predicts class probabilities of a feature vector, like
+     * svm.svm_predict_probability. Falls back to voting if the model has no
+     * probability information, leaving probEstimates untouched.
+     *
+     * @param x the dense features
+     * @param probEstimates filled with the probability of each class
+     * @return the predicted class label
+     */
+    public synchronized double predictProbability(double[] x, double[] probEstimates) {
+        computeKernel(x, 0, kvalue, 0);
+        return finishProbability(kvalue, 0, probEstimates);
+    }
+
+    /**
+     * Predicts class probabilities of a batch of feature vectors. The kernel
+     * values of all vectors are computed in one pass over the support vectors.
+     *
+     * @param xs n feature vectors, [vector][feature] flattened
+     * @param n the number of vectors
+     * @param probEstimates filled with the class probabilities, [vector][class]
+     * flattened
+     * @param labels filled with the predicted label of each vector
+     */
+    public synchronized void predictProbabilityBatch(double[] xs, int n, double[] probEstimates, double[] labels) {
+        if (batchKvalues.length < n * numSV) {
+            batchKvalues = new double[n * numSV];
+        }
+        // stream each support vector once, against all vectors of the batch
+        for (int s = 0; s < numSV; s++) {
+            final int so = s * numFeatures;
+            for (int v = 0; v < n; v++) {
+                batchKvalues[(v * numSV) + s] = kernel(xs, v * numFeatures, so);
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            if (hasProbability) {
+                labels[v] = finishProbabilityInto(batchKvalues, v * numSV, probEstimates, v * numClasses);
+            } else {
+                labels[v] = label[vote(batchKvalues, v * numSV)];
+            }
+        }
+    }
+
+    private void computeKernel(double[] x, int xo, double[] k, int ko) {
+        if (x.length - xo < numFeatures) {
+            throw new IllegalArgumentException("feature vector has " + (x.length - xo) + " features but model needs " + numFeatures);
+        }
+        for (int s = 0; s < numSV; s++) {
+            k[ko + s] = kernel(x, xo, s * numFeatures);
+        }
+    }
+
+    private double kernel(double[] x, int xo, int so) {
+        final double[] v = sv;
+        final int nf = numFeatures;
+        switch (kernelType) {
+            case svm_parameter.RBF: {
+                double sum = 0;
+                for (int i = 0; i < nf; i++) {
+                    double d = x[xo + i] - v[so + i];
+                    sum += d * d;
+                }
+                return Math.exp(-gamma * sum);
+            }
+            case svm_parameter.LINEAR:
+                return dot(x, xo, so);
+            case svm_parameter.POLY:
+                return powi((gamma * dot(x, xo, so)) + coef0, degree);
+            case svm_parameter.SIGMOID:
+                return Math.tanh((gamma * dot(x, xo, so)) + coef0);
+            default:
+                return 0;
+        }
+    }
+
+    private double dot(double[] x, int xo, int so) {
+        final double[] v = sv;
+        double sum = 0;
+        for (int i = 0; i < numFeatures; i++) {
+            sum += x[xo + i] * v[so + i];
+        }
+        return sum;
+    }
+
+    private static double powi(double base, int times) {
+        double tmp = base, ret = 1.0;
+        for (int t = times; t > 0; t /= 2) {
+            if (t % 2 == 1) {
+                ret *= tmp;
+            }
+            tmp = tmp * tmp;
+        }
+        return ret;
+    }
+
+    /**
+     * Computes the pairwise decision values into decValues and returns the
+     * index of the class with most votes.
+     */
+    private int vote(double[] k, int ko) {
+        for (int i = 0; i < numClasses; i++) {
+            vote[i] = 0;
+        }
+        int p = 0;
+        for (int i = 0; i < numClasses; i++) {
+            for (int j = i + 1; j < numClasses; j++) {
+                double sum = 0;
+                final int si = start[i], sj = start[j];
+                final int ci = count[i], cj = count[j];
+                final double[] coef1 = svCoef[j - 1];
+                final double[] coef2 = svCoef[i];
+                for (int s = 0; s < ci; s++) {
+                    sum += coef1[si + s] * k[ko + si + s];
+                }
+                for (int s = 0; s < cj; s++) {
+                    sum += coef2[sj + s] * k[ko + sj + s];
+                }
+                sum -= rho[p];
+                decValues[p] = sum;
+                if (sum > 0) {
+                    ++vote[i];
+                } else {
+                    ++vote[j];
+                }
+                p++;
+            }
+        }
+        int voteMaxIdx = 0;
+        for (int i = 1; i < numClasses; i++) {
+            if (vote[i] > vote[voteMaxIdx]) {
+                voteMaxIdx = i;
+            }
+        }
+        return voteMaxIdx;
+    }
+
+    private double finishProbability(double[] k, int ko, double[] probEstimates) {
+        if (!hasProbability) {
+            return label[vote(k, ko)];
+        }
+        return finishProbabilityInto(k, ko, probEstimates, 0);
+    }
+
+    private double finishProbabilityInto(double[] k, int ko, double[] probEstimates, int po) {
+        vote(k, ko);
+        final double minProb = 1e-7;
+        int p = 0;
+        for (int i = 0; i < numClasses; i++) {
+            for (int j = i + 1; j < numClasses; j++) {
+                pairwiseProb[i][j] = Math.min(Math.max(sigmoidPredict(decValues[p], probA[p], probB[p]), minProb), 1 - minProb);
+                pairwiseProb[j][i] = 1 - pairwiseProb[i][j];
+                p++;
+            }
+        }
+        multiclassProbability(probEstimates, po);
+        int probMaxIdx = 0;
+        for (int i = 1; i < numClasses; i++) {
+            if (probEstimates[po + i] > probEstimates[po + probMaxIdx]) {
+                probMaxIdx = i;
+            }
+        }
+        return label[probMaxIdx];
+    }
+
+    private static double sigmoidPredict(double decisionValue, double A, double B) {
+        double fApB = (decisionValue * A) + B;
+        if (fApB >= 0) {
+            return Math.exp(-fApB) / (1.0 + Math.exp(-fApB));
+        } else {
+            return 1.0 / (1 + Math.exp(fApB));
+        }
+    }
+
+    /**
+     * Method 2 from the multiclass_prob paper by Wu, Lin, and Weng, as in
+     * libsvm, on the preallocated Q matrix.
+     */
+    private void multiclassProbability(double[] pr, int po) {
+        final int k = numClasses;
+        final double[][] r = pairwiseProb;
+        final int maxIter = Math.max(100, k);
+        final double eps = 0.005 / k;
+        for (int t = 0; t < k; t++) {
+            pr[po + t] = 1.0 / k;  // Valid if k = 1
+            q[t][t] = 0;
+            for (int j = 0; j < t; j++) {
+                q[t][t] += r[j][t] * r[j][t];
+                q[t][j] = q[j][t];
+            }
+            for (int j = t + 1; j < k; j++) {
+                q[t][t] += r[j][t] * r[j][t];
+                q[t][j] = -r[j][t] * r[t][j];
+            }
+        }
+        int iter;
+        for (iter = 0; iter < maxIter; iter++) {
+            // stopping condition, recalculate QP,pQP for numerical accuracy
+            double pQp = 0;
+            for (int t = 0; t < k; t++) {
+                qp[t] = 0;
+                for (int j = 0; j < k; j++) {
+                    qp[t] += q[t][j] * pr[po + j];
+                }
+                pQp += pr[po + t] * qp[t];
+            }
+            double maxError = 0;
+            for (int t = 0; t < k; t++) {
+                double error = Math.abs(qp[t] - pQp);
+                if (error > maxError) {
+                    maxError = error;
+                }
+            }
+            if (maxError < eps) {
+                break;
+            }
+            for (int t = 0; t < k; t++) {
+                double diff = (-qp[t] + pQp) / q[t][t];
+                pr[po + t] += diff;
+                pQp = (pQp + (diff * ((diff * q[t][t]) + (2 * qp[t])))) / (1 + diff) / (1 + diff);
+                for (int j = 0; j < k; j++) {
+                    qp[j] = (qp[j] + (diff * q[t][j])) / (1 + diff);
+                    pr[po + j] /= (1 + diff);
+                }
+            }
+        }
+        if (iter >= maxIter) {
+            log.fine("Exceeds max_iter in multiclass_prob");
+        }
+    }
+}
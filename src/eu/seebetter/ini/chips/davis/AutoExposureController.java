@@ -34,6 +34,7 @@ public class AutoExposureController extends Observable implements HasPropertyToo
     private float highBoundary;
     private boolean pidControllerEnabled;
     protected boolean centerWeighted;
+    private int histogramSubsampling;
     private boolean debuggingLogEnabled = false;
 
     public AutoExposureController(final DavisBaseCamera davisChip) {
@@ -52,6 +53,7 @@ public class AutoExposureController extends Observable implements HasPropertyToo
         highBoundary = davisChip.getPrefs().getFloat("AutoExposureController.highBoundary", 0.75F);
         pidControllerEnabled = davisChip.getPrefs().getBoolean("pidControllerEnabled", false);
         centerWeighted = davisChip.getPrefs().getBoolean("centerWeighted", false);
+        histogramSubsampling = davisChip.getPrefs().getInt("AutoExposureController.histogramSubsampling", 1);
         tooltipSupport.setPropertyTooltip("expDelta", "fractional change of exposure when under or overexposed");
         tooltipSupport.setPropertyTooltip("underOverFractionThreshold",
                 "fraction of pixel values under xor over exposed to trigger exposure change");
@@ -62,6 +64,8 @@ public class AutoExposureController extends Observable implements HasPropertyToo
                 "<html>Enable proportional integral derivative (actually just proportional) controller rather than fixed-size step control. <p><i>expDelta</i> is multiplied by the fractional error from mid-range exposure when <i>pidControllerEnabled</i> is set");
         tooltipSupport.setPropertyTooltip("centerWeighted",
                 "<html>Enable center-weighted control so that center of image is weighted more heavily in controlling exposure");
+        tooltipSupport.setPropertyTooltip("histogramSubsampling",
+                "<html>Only every n'th pixel in x and y is added to the histogram of sample values, <br>to save time on large sensors. 1 uses all pixels.");
         tooltipSupport.setPropertyTooltip("debuggingLogEnabled",
                 "Enable logging of autoexposure control. See console for this output.");
     }
@@ -242,6 +246,26 @@ public class AutoExposureController extends Observable implements HasPropertyToo
         this.centerWeighted = centerWeighted;
     }
 
+    /**
+     * @return the spacing in pixels in x and y of the pixels added to the
+     * histogram; 1 adds all pixels
+     */
+    public int getHistogramSubsampling() {
+        return histogramSubsampling;
+    }
+
+    /**
+     * @param histogramSubsampling the spacing in pixels in x and y of the
+     * pixels added to the histogram; 1 adds all pixels
+     */
+    public void setHistogramSubsampling(int histogramSubsampling) {
+        if (histogramSubsampling < 1) {
+            histogramSubsampling = 1;
+        }
+        this.histogramSubsampling = histogramSubsampling;
+        davisChip.getPrefs().putInt("AutoExposureController.histogramSubsampling", histogramSubsampling);
+    }
+
     /**
      * @return the debuggingLogEnabled
      */
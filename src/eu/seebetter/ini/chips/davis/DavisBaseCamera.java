@@ -456,6 +456,7 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
                             imuEvent.setTimestamp(imuSample.getTimestampUs());
                             imuEvent.setImuSample(imuSample);
                             outItr.writeToNextOutput(imuEvent); // also write the event out to the next output event
+                            getEventBus().publishImu(imuSample);
                             // System.out.println("lastImu dt="+(imuSample.timestamp-lastImuTs));
                             // lastImuTs=imuSample.timestamp;
                             continue;
@@ -793,6 +794,7 @@ abstract public class DavisBaseCamera extends DavisChip implements RemoteControl
                             imuEvent.setTimestamp(imuSample.getTimestampUs());
                             imuEvent.setImuSample(imuSample);
                             outItr.writeToNextOutput(imuEvent); // also write the event out to the next output event
+                            getEventBus().publishImu(imuSample);
                             // System.out.println("lastImu dt="+(imuSample.timestamp-lastImuTs));
                             // lastImuTs=imuSample.timestamp;
                             continue;
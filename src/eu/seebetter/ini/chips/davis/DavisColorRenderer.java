@@ -8,7 +8,6 @@
  */
 package eu.seebetter.ini.chips.davis;
 
-import java.util.Random;
 
 import eu.seebetter.ini.chips.DavisChip;
 import net.sf.jaer.chip.AEChip;
@@ -378,7 +377,6 @@ public class DavisColorRenderer extends AEFrameChipRenderer {
 		}
 	}
 
-	private final Random random = new Random();
 
 	@Override
 	protected void updateFrameBuffer(final ApsDvsEvent e) {
@@ -427,21 +425,7 @@ public class DavisColorRenderer extends AEFrameChipRenderer {
 
 			// right here sample-reset value of this pixel is in val
 			if (computeHistograms) {
-				if (!((DavisChip) chip).getAutoExposureController().isCenterWeighted()) {
-					nextHist.add(val);
-				}
-				else {
-					// randomly appendCopy histogram values to histogram depending on distance from center of image
-					// to implement a simple form of center weighting of the histogram
-					float d = (1 - Math.abs(((float) e.x - (sizeX / 2)) / sizeX)) + Math.abs(((float) e.y - (sizeY / 2)) / sizeY);
-					// d is zero at center, 1 at corners
-					d *= d;
-
-					final float r = random.nextFloat();
-					if (r > d) {
-						nextHist.add(val);
-					}
-				}
+				addHistogramSample(e, val);
 			}
 
 			final float fval = normalizeFramePixel(val);
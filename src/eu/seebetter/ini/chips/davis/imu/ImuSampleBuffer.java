@@ -0,0 +1,359 @@
+package eu.seebetter.ini.chips.davis.imu;
+
+import java.util.WeakHashMap;
+
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.ChipEventBus;
+
+/**
+ * Time-indexed ring buffer of recent IMU samples held in primitive arrays.
+ * Samples are appended in O(1) and looked up by timestamp with a binary search,
+ * or in O(1) when successive queries move forward in time, as they do for the
+ * events of a packet. The gyro rates can be read linearly interpolated at any
+ * event timestamp, and the rates are integrated at append time so that the
+ * camera rotation between any two timestamps costs two lookups.
+ * <p>
+ * The integrated angles use the raw gyro rates. A consumer that subtracts
+ * calibrated offsets must subtract offset*dt from the rotation between two
+ * times itself.
+ * <p>
+ * {@link #getShared(AEChip)} returns one buffer per chip that is filled from
+ * the chip event bus by the event extractor, so filters that compensate
+ * motion all see the same samples. The buffer is not synchronized; it is
+ * meant to be filled and read on the thread that extracts and filters the
+ * packets.
+ */
+public class ImuSampleBuffer implements ChipEventBus.ImuListener, ChipEventBus.TimestampResetListener {
+
+    /** Capacity of the shared buffers, about 4s of samples at 1kHz */
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final WeakHashMap<AEChip, ImuSampleBuffer> shared = new WeakHashMap<AEChip, ImuSampleBuffer>();
+
+    private final int capacity, mask;
+    private final int[] timestamps;
+    private final float[] accelX, accelY, accelZ, gyroTiltX, gyroYawY, gyroRollZ, temperature;
+    // integrated raw rates in deg at each sample, relative to the first sample after clear()
+    private final double[] tiltDeg, panDeg, rollDeg;
+    private long count = 0; // total samples appended since clear(); the ring holds the last min(count,capacity)
+    private int hint = 0; // logical index of the last lookup, to make forward queries O(1)
+
+    /**
+     * Creates a buffer.
+     *
+     * @param capacity the number of samples kept, rounded up to a power of two
+     */
+    public ImuSampleBuffer(int capacity) {
+        int c = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.capacity = c;
+        mask = c - 1;
+        timestamps = new int[c];
+        accelX = new float[c];
+        accelY = new float[c];
+        accelZ = new float[c];
+        gyroTiltX = new float[c];
+        gyroYawY = new float[c];
+        gyroRollZ = new float[c];
+        temperature = new float[c];
+        tiltDeg = new double[c];
+        panDeg = new double[c];
+        rollDeg = new double[c];
+    }
+
+    /**
+     * Returns the buffer shared by consumers of this chip's IMU samples,
+     * creating it and subscribing it to the chip event bus on first use.
+     *
+     * @param chip the chip
+     * @return the shared buffer
+     */
+    public static synchronized ImuSampleBuffer getShared(AEChip chip) {
+        ImuSampleBuffer b = shared.get(chip);
+        if (b == null) {
+            b = new ImuSampleBuffer(DEFAULT_CAPACITY);
+            chip.getEventBus().subscribeImu(b);
+            chip.getEventBus().subscribeTimestampReset(b, false);
+            shared.put(chip, b);
+        }
+        return b;
+    }
+
+    /**
+     * Appends a sample. A sample older than the last one, e.g. after a rewind
+     * or timestamp reset, clears the buffer first.
+     *
+     * @param sample the sample
+     */
+    public void append(IMUSample sample) {
+        append(sample.getTimestampUs(), sample.getAccelX(), sample.getAccelY(), sample.getAccelZ(),
+                sample.getGyroTiltX(), sample.getGyroYawY(), sample.getGyroRollZ(), sample.getTemperature());
+    }
+
+    /**
+     * Appends a sample. A sample older than the last one, e.g. after a rewind
+     * or timestamp reset, clears the buffer first.
+     *
+     * @param timestampUs the sample timestamp in us
+     * @param accelX acceleration in g
+     * @param accelY acceleration in g
+     * @param accelZ acceleration in g
+     * @param gyroTiltX tilt rate in deg/s
+     * @param gyroYawY yaw (pan) rate in deg/s
+     * @param gyroRollZ roll rate in deg/s
+     * @param temperature temperature in deg C
+     */
+    public void append(int timestampUs, float accelX, float accelY, float accelZ, float gyroTiltX, float gyroYawY, float gyroRollZ, float temperature) {
+        double tilt = 0, pan = 0, roll = 0;
+        if (count > 0) {
+            int last = (int) ((count - 1) & mask);
+            int dtUs = timestampUs - timestamps[last];
+            if (dtUs < 0) {
+                clear();
+            } else {
+                double dtS = dtUs * 1e-6;
+                tilt = tiltDeg[last] + (0.5 * (this.gyroTiltX[last] + gyroTiltX) * dtS); // trapezoidal rule
+                pan = panDeg[last] + (0.5 * (this.gyroYawY[last] + gyroYawY) * dtS);
+                roll = rollDeg[last] + (0.5 * (this.gyroRollZ[last] + gyroRollZ) * dtS);
+            }
+        }
+        int k = (int) (count & mask);
+        timestamps[k] = timestampUs;
+        this.accelX[k] = accelX;
+        this.accelY[k] = accelY;
+        this.accelZ[k] = accelZ;
+        this.gyroTiltX[k] = gyroTiltX;
+        this.gyroYawY[k] = gyroYawY;
+        this.gyroRollZ[k] = gyroRollZ;
+        this.temperature[k] = temperature;
+        tiltDeg[k] = tilt;
+        panDeg[k] = pan;
+        rollDeg[k] = roll;
+        if (count >= capacity) {
+            hint--; // logical indices shift down as the oldest sample is overwritten
+        }
+        count++;
+    }
+
+    /**
+     * Empties the buffer.
+     */
+    public void clear() {
+        count = 0;
+        hint = 0;
+    }
+
+    @Override
+    public void imuSample(int timestampUs, float accelX, float accelY, float accelZ, float gyroTiltX, float gyroYawY, float gyroRollZ, float temperature) {
+        append(timestampUs, accelX, accelY, accelZ, gyroTiltX, gyroYawY, gyroRollZ, temperature);
+    }
+
+    @Override
+    public void timestampsReset() {
+        clear();
+    }
+
+    /**
+     * @return the number of samples held
+     */
+    public int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    /**
+     * @return true if no samples are held
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return the maximum number of samples held
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private int slot(int i) {
+        return (int) ((count - size() + i) & mask);
+    }
+
+    /**
+     * @param i the index from 0, the oldest sample held, to size()-1
+     * @return the timestamp in us of sample i
+     */
+    public int getTimestamp(int i) {
+        return timestamps[slot(i)];
+    }
+
+    /**
+     * @param i the sample index
+     * @return the acceleration in g
+     */
+    public float getAccelX(int i) {
+        return accelX[slot(i)];
+    }
+
+    /**
+     * @param i the sample index
+     * @return the acceleration in g
+     */
+    public float getAccelY(int i) {
+        return accelY[slot(i)];
+    }
+
+    /**
+     * @param i the sample index
+     * @return the acceleration in g
+     */
+    public float getAccelZ(int i) {
+        return accelZ[slot(i)];
+    }
+
+    /**
+     * @param i the sample index
+     * @return the tilt rate in deg/s
+     */
+    public float getGyroTiltX(int i) {
+        return gyroTiltX[slot(i)];
+    }
+
+    /**
+     * @param i the sample index
+     * @return the yaw (pan) rate in deg/s
+     */
+    public float getGyroYawY(int i) {
+        return gyroYawY[slot(i)];
+    }
+
+    /**
+     * @param i the sample index
+     * @return the roll rate in deg/s
+     */
+    public float getGyroRollZ(int i) {
+        return gyroRollZ[slot(i)];
+    }
+
+    /**
+     * @param i the sample index
+     * @return the temperature in deg C
+     */
+    public float getTemperature(int i) {
+        return temperature[slot(i)];
+    }
+
+    /**
+     * Finds the last sample at or before a timestamp.
+     *
+     * @param timestampUs the timestamp in us
+     * @return the sample index, or -1 if the buffer is empty or all samples
+     * are later than timestampUs
+     */
+    public int indexAtOrBefore(int timestampUs) {
+        int n = size();
+        if (n == 0 || timestampUs - getTimestamp(0) < 0) {
+            return -1;
+        }
+        int h = hint;
+        if (h >= 0 && h < n && timestampUs - getTimestamp(h) >= 0) {
+            // usual case: the query is at or after the last one, so the answer is this sample or one of the next few
+            while (h + 1 < n && timestampUs - getTimestamp(h + 1) >= 0 && h - hint < 4) {
+                h++;
+            }
+            if (h + 1 >= n || timestampUs - getTimestamp(h + 1) < 0) {
+                hint = h;
+                return h;
+            }
+        }
+        int lo = 0, hi = n - 1; // timestamps[lo] <= timestampUs
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (timestampUs - getTimestamp(mid) >= 0) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        hint = lo;
+        return lo;
+    }
+
+    /**
+     * Returns the gyro rates linearly interpolated at a timestamp. Timestamps
+     * before the oldest or after the newest sample get the rates of that
+     * sample.
+     *
+     * @param timestampUs the timestamp in us
+     * @param rates filled with the tilt (x), pan (y) and roll (z) rates in
+     * deg/s
+     * @return false if the buffer is empty and rates was not filled
+     */
+    public boolean getRatesAt(int timestampUs, float[] rates) {
+        int n = size();
+        if (n == 0) {
+            return false;
+        }
+        int i = Math.max(0, indexAtOrBefore(timestampUs));
+        int a = slot(i);
+        if (i + 1 >= n || timestampUs - timestamps[a] <= 0) {
+            rates[0] = gyroTiltX[a];
+            rates[1] = gyroYawY[a];
+            rates[2] = gyroRollZ[a];
+            return true;
+        }
+        int b = slot(i + 1);
+        float f = (float) (timestampUs - timestamps[a]) / (timestamps[b] - timestamps[a]);
+        rates[0] = gyroTiltX[a] + (f * (gyroTiltX[b] - gyroTiltX[a]));
+        rates[1] = gyroYawY[a] + (f * (gyroYawY[b] - gyroYawY[a]));
+        rates[2] = gyroRollZ[a] + (f * (gyroRollZ[b] - gyroRollZ[a]));
+        return true;
+    }
+
+    /**
+     * Returns the camera rotation between two timestamps, integrated from the
+     * raw gyro rates. The rates are interpolated linearly between samples and
+     * held constant before the oldest and after the newest sample.
+     *
+     * @param fromUs the start timestamp in us
+     * @param toUs the end timestamp in us
+     * @param rotationDeg filled with the tilt (x), pan (y) and roll (z)
+     * rotation in deg
+     * @return false if the buffer is empty and rotationDeg was not filled
+     */
+    public boolean getRotationDeg(int fromUs, int toUs, float[] rotationDeg) {
+        if (count == 0) {
+            return false;
+        }
+        int i = indexAtOrBefore(fromUs);
+        double t0 = integrated(tiltDeg, gyroTiltX, i, fromUs), p0 = integrated(panDeg, gyroYawY, i, fromUs), r0 = integrated(rollDeg, gyroRollZ, i, fromUs);
+        int j = indexAtOrBefore(toUs);
+        rotationDeg[0] = (float) (integrated(tiltDeg, gyroTiltX, j, toUs) - t0);
+        rotationDeg[1] = (float) (integrated(panDeg, gyroYawY, j, toUs) - p0);
+        rotationDeg[2] = (float) (integrated(rollDeg, gyroRollZ, j, toUs) - r0);
+        return true;
+    }
+
+    /**
+     * The integrated angle at timestampUs, given the sample i at or before it
+     * (or -1 if it is before the oldest sample).
+     */
+    private double integrated(double[] angle, float[] rate, int i, int timestampUs) {
+        if (i < 0) {
+            int a = slot(0);
+            return angle[a] + (rate[a] * (timestampUs - timestamps[a]) * 1e-6);
+        }
+        int a = slot(i);
+        double dtS = (timestampUs - timestamps[a]) * 1e-6;
+        if (i + 1 >= size()) {
+            return angle[a] + (rate[a] * dtS);
+        }
+        int b = slot(i + 1);
+        double slope = (rate[b] - rate[a]) / ((timestamps[b] - timestamps[a]) * 1e-6);
+        return angle[a] + (rate[a] * dtS) + (0.5 * slope * dtS * dtS); // exact integral of the interpolated rate
+    }
+
+    @Override
+    public String toString() {
+        int n = size();
+        return "ImuSampleBuffer with " + n + " of " + capacity + " samples"
+                + (n > 0 ? (" from " + getTimestamp(0) + " to " + getTimestamp(n - 1) + " us") : "");
+    }
+}
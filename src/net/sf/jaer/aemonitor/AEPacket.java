@@ -40,8 +40,8 @@ public abstract class AEPacket {
     protected int capacity = 0;
     public int[] timestamps;
 
-    public EventType[] eventtypes;    //Just for jAER 3.0
-    public int[] pixelDataArray;               //Just for jAER 3.0 Frame Event
+    public EventType[] eventtypes;    //Just for jAER 3.0, allocated on first use by getEventtypes()
+    public int[] pixelDataArray;               //Just for jAER 3.0 Frame Event, allocated on first use by getPixelDataArray()
 
     protected EventRaw[] events;
 
@@ -75,22 +75,31 @@ public abstract class AEPacket {
     }
 
     /**
-     * Returns the event types array. Just for jAER 3.0 data
+     * Returns the event types array. Just for jAER 3.0 data. The array is
+     * allocated to the capacity of the packet on the first call, so packets
+     * that never hold jAER 3.0 data do not carry it.
      *
      * @return the array of event types. Only elements up to numEvents-1 are
      * valid.
      */
     public EventType[] getEventtypes() {
+        if ((eventtypes == null) && (capacity > 0)) {
+            eventtypes = new EventType[capacity];
+        }
         return this.eventtypes;
     }
 
     /**
-     * Returns the data array. Just for jAER 3.0 Frame Event
+     * Returns the data array. Just for jAER 3.0 Frame Event. Allocated on the
+     * first call like {@link #getEventtypes()}.
      *
      * @return the array of event types. Only elements up to numEvents-1 are
      * valid.
      */
     public int[] getPixelDataArray() {
+        if ((pixelDataArray == null) && (capacity > 0)) {
+            pixelDataArray = new int[capacity];
+        }
         return this.pixelDataArray;
     }
 
@@ -180,6 +189,9 @@ public abstract class AEPacket {
      * Ensure the capacity given. If present capacity is less than capacity,
      * then arrays are newly allocated and old contents are copied to the new
      * arrays.
+     * <p>
+     * The capacity grows at least by ENLARGE_CAPACITY_FACTOR so that adding
+     * events one by one costs amortized constant time.
      *
      * @param c the desired capacity
      * @see #getCapacity()
@@ -188,20 +200,24 @@ public abstract class AEPacket {
 //        System.out.println("ensure capacity "+c);
         if (timestamps == null) {
             timestamps = new int[c]; // if we have no timestamps, just allocate c
-            eventtypes = new EventType[c]; // EventTypes and pixelDataArray just for AER3.0 Data file, no influence on 2.0
-            pixelDataArray = new int[c];
+            eventtypes = null; // EventTypes and pixelDataArray just for AER3.0 Data file, allocated when first asked for
+            pixelDataArray = null;
             this.capacity = c;
         } else if (this.capacity < c) {
-            int newcap = (int) ENLARGE_CAPACITY_FACTOR * c;
+            int newcap = Math.max(c, (int) (ENLARGE_CAPACITY_FACTOR * this.capacity));
             int[] newtimestamps = new int[newcap];
-            EventType[] newEventTypes = new EventType[newcap];
-            int[] newPixelDataArray = new int[newcap];
-            System.arraycopy(timestamps, 0, newtimestamps, 0, this.capacity);
-            System.arraycopy(eventtypes, 0, newEventTypes, 0, this.capacity);
-            System.arraycopy(pixelDataArray, 0, newPixelDataArray, 0, this.capacity);
+            System.arraycopy(timestamps, 0, newtimestamps, 0, Math.min(newcap, timestamps.length));
             timestamps = newtimestamps;
-            eventtypes = newEventTypes; // EventTypes and pixelDataArray just for AER3.0 Data file, no influence on 2.0
-            pixelDataArray = newPixelDataArray;
+            if (eventtypes != null) { // EventTypes and pixelDataArray just for AER3.0 Data file, no influence on 2.0
+                EventType[] newEventTypes = new EventType[newcap];
+                System.arraycopy(eventtypes, 0, newEventTypes, 0, Math.min(newcap, eventtypes.length));
+                eventtypes = newEventTypes;
+            }
+            if (pixelDataArray != null) {
+                int[] newPixelDataArray = new int[newcap];
+                System.arraycopy(pixelDataArray, 0, newPixelDataArray, 0, Math.min(newcap, pixelDataArray.length));
+                pixelDataArray = newPixelDataArray;
+            }
             this.capacity = newcap; // only if we enlarge capacity to desired set the new capacity, otherwise leave it untouched!
         }
 
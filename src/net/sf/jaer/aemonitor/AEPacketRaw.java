@@ -9,6 +9,8 @@
  */
 package net.sf.jaer.aemonitor;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import net.sf.jaer.aemonitor.EventRaw.EventType;
 
@@ -24,6 +26,9 @@ import net.sf.jaer.aemonitor.EventRaw.EventType;
  * <p>
  * These AEPacketRaw are used only for device events (raw events). For processed
  * events, see the net.sf.jaer.event package.
+ * <p>
+ * Readers that fill packets in bulk should use {@link #appendRange} rather
+ * than {@link #addEvent(EventRaw)}.
  *
  * @author tobi
  */
@@ -135,13 +140,9 @@ public class AEPacketRaw extends AEPacket {
      * @param two
      */
     public AEPacketRaw(AEPacketRaw one, AEPacketRaw two) {
-        this(one.getNumEvents() + two.getNumEvents());
-        System.arraycopy(one.getAddresses(), 0, getAddresses(), 0, one.getNumEvents());
-        System.arraycopy(two.getAddresses(), 0, getAddresses(), one.getNumEvents(), two.getNumEvents());
-        System.arraycopy(one.getTimestamps(), 0, getTimestamps(), 0, one.getNumEvents());
-        System.arraycopy(two.getTimestamps(), 0, getTimestamps(), one.getNumEvents(), two.getNumEvents());
-        numEvents = addresses.length;
-        capacity = numEvents;
+        ensureCapacity(one.getNumEvents() + two.getNumEvents());
+        append(one);
+        append(two);
     }
 
     /**
@@ -156,32 +157,14 @@ public class AEPacketRaw extends AEPacket {
      * @param collection to copy from.
      */
     public AEPacketRaw(Collection<AEPacketRaw> collection) {
-        int n = 0;
-        for (AEPacketRaw packet : collection) {
-            n += packet.getNumEvents();
-        }
-        allocateArrays(n);
-        //setNumEvents(n);
-        int counter = 0;
-        for (AEPacketRaw packet : collection) {
-            try {
-                int ne = packet.getNumEvents();
-                System.arraycopy(packet.getAddresses(), 0, getAddresses(), counter, ne);
-                System.arraycopy(packet.getTimestamps(), 0, getTimestamps(), counter, ne);
-                counter += ne;
-            } catch (ArrayIndexOutOfBoundsException e) {
-                log.warning("caught " + e.toString() + "when constructing new RawPacket from Collection.");
-                continue;
-            }
-        }
-        setNumEvents(counter);
+        appendAll(collection);
     }
 
     private void allocateArrays(int size) {
-        addresses = new int[size]; //new E[size];
-        timestamps = new int[size];
-        eventtypes = new EventType[size];
-        pixelDataArray = new int[size];
+        setAddresses(new int[size]); //new E[size];
+        setTimestamps(new int[size]);
+        eventtypes = null; // allocated by getEventtypes() and getPixelDataArray() for jAER 3.0 data
+        pixelDataArray = null;
         this.capacity = size;
         numEvents = 0;
     }
@@ -206,8 +189,8 @@ public class AEPacketRaw extends AEPacket {
     final public EventRaw getEvent(int k) {
         event.timestamp = timestamps[k];
         event.address = addresses[k];
-        event.eventtype = eventtypes[k];
-        event.pixelData = pixelDataArray[k];
+        event.eventtype = eventtypes == null ? null : eventtypes[k];
+        event.pixelData = pixelDataArray == null ? 0 : pixelDataArray[k];
         return event;
     }
 
@@ -221,16 +204,14 @@ public class AEPacketRaw extends AEPacket {
      */
     @Override
     final public void ensureCapacity(final int c) {
-        super.ensureCapacity(c);
-        if (addresses == null) {
-            addresses = new int[c];
-            this.capacity = c;
-        } else if (addresses.length < c) {
-            int newcap = (int) ENLARGE_CAPACITY_FACTOR * c;
-            int[] newaddresses = new int[newcap]; // TODO can use all of heap and OutOfMemoryError here if we keep adding events
-            System.arraycopy(addresses, 0, newaddresses, 0, addresses.length);
+        super.ensureCapacity(c); // sets capacity to the length of the timestamp array if it grows
+        if ((addresses == null) || (addresses.length < c)) {
+            int[] newaddresses = new int[Math.max(c, capacity)]; // TODO can use all of heap and OutOfMemoryError here if we keep adding events
+            if (addresses != null) {
+                System.arraycopy(addresses, 0, newaddresses, 0, Math.min(addresses.length, newaddresses.length));
+            }
             addresses = newaddresses;
-            this.capacity = newcap;
+            this.capacity = Math.min(addresses.length, timestamps.length);
         }
     }
 
@@ -252,6 +233,98 @@ public class AEPacketRaw extends AEPacket {
         // numEvents++; // we already incremented the number of events in the super call
     }
 
+    /**
+     * Appends an event given by its address and timestamp, enlarging the
+     * packet if necessary, without going through an EventRaw. Not thread
+     * safe.
+     *
+     * @param address the raw address
+     * @param timestamp the timestamp
+     */
+    final public void addEvent(int address, int timestamp) {
+        if ((addresses == null) || (timestamps == null) || (numEvents >= capacity)) {
+            ensureCapacity(numEvents + 1);
+        }
+        addresses[numEvents] = address;
+        timestamps[numEvents++] = timestamp;
+    }
+
+    /**
+     * Appends a range of events from address and timestamp arrays, enlarging
+     * the packet if necessary. Not thread safe.
+     *
+     * @param srcAddresses the addresses
+     * @param srcTimestamps the timestamps
+     * @param offset the index of the first event to append
+     * @param length the number of events to append
+     * @return this packet
+     */
+    public AEPacketRaw appendRange(int[] srcAddresses, int[] srcTimestamps, int offset, int length) {
+        if (length <= 0) {
+            return this;
+        }
+        ensureCapacity(numEvents + length);
+        System.arraycopy(srcAddresses, offset, addresses, numEvents, length);
+        System.arraycopy(srcTimestamps, offset, timestamps, numEvents, length);
+        numEvents += length;
+        return this;
+    }
+
+    /**
+     * Appends events stored in a ByteBuffer as pairs of 32 bit ints, address
+     * first and then timestamp, in the byte order of the buffer; this is the
+     * layout of jAER 2.0 data files and of the default jAER network
+     * datagrams. The position of the buffer is advanced past the events.
+     * Not thread safe.
+     *
+     * @param buffer the buffer, positioned at the first event
+     * @param length the number of events to append
+     * @return this packet
+     * @throws BufferUnderflowException if the buffer has fewer than length
+     * events remaining
+     */
+    public AEPacketRaw appendRange(ByteBuffer buffer, int length) {
+        if (length <= 0) {
+            return this;
+        }
+        if (buffer.remaining() < (8 * length)) {
+            throw new BufferUnderflowException();
+        }
+        ensureCapacity(numEvents + length);
+        int[] a = addresses, ts = timestamps;
+        int p = buffer.position(), n = numEvents, end = numEvents + length;
+        for (; n < end; n++, p += 8) {
+            a[n] = buffer.getInt(p);
+            ts[n] = buffer.getInt(p + 4);
+        }
+        buffer.position(p);
+        numEvents = end;
+        return this;
+    }
+
+    /**
+     * Appends all the events of a collection of packets in the order of its
+     * iterator, enlarging this packet once for all of them.
+     *
+     * @param collection the packets to append
+     * @return this packet
+     */
+    public AEPacketRaw appendAll(Collection<AEPacketRaw> collection) {
+        int n = numEvents;
+        for (AEPacketRaw packet : collection) {
+            n += packet.getNumEvents();
+        }
+        ensureCapacity(n);
+        for (AEPacketRaw packet : collection) {
+            try {
+                append(packet);
+            } catch (ArrayIndexOutOfBoundsException e) {
+                log.warning("caught " + e.toString() + " when appending packet " + packet);
+            }
+        }
+        return this;
+    }
+
     /**
      * Allocates a new AEPacketRaw and copies the events from this packet into
      * the new one, returning it. The size of the new packet that is returned is
@@ -296,11 +369,7 @@ public class AEPacketRaw extends AEPacket {
         if (source == null || source.getNumEvents() == 0) {
             return this;
         }
-        ensureCapacity(getNumEvents() + source.getNumEvents());
-        System.arraycopy(source.getAddresses(), 0, addresses, numEvents, source.getNumEvents());
-        System.arraycopy(source.getTimestamps(), 0, timestamps, numEvents, source.getNumEvents());
-        setNumEvents(getNumEvents() + source.getNumEvents());
-        return this;
+        return appendRange(source.getAddresses(), source.getTimestamps(), 0, source.getNumEvents());
     }
 
     /**
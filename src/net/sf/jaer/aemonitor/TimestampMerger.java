@@ -0,0 +1,397 @@
+package net.sf.jaer.aemonitor;
+
+/**
+ * Merges k timestamp-sorted event sources into one timestamp-ordered stream.
+ * Each source is a range of a pair of primitive timestamp and address arrays,
+ * e.g. those of an AEPacketRaw.
+ * <p>
+ * The earliest source is found with a loser (tournament) tree. Replacing the
+ * winner costs log2(k) comparisons rather than the k of scanning all sources.
+ * When the same source wins repeatedly, its whole run of events up to the
+ * head of the runner-up source is located. The first few events are scanned
+ * linearly, then the search gallops (exponential then binary search). The run
+ * is copied with System.arraycopy. A source that is ahead of the others, which
+ * is common for cameras with different event rates or with buffering delays,
+ * is therefore copied in bulk.
+ * <p>
+ * With two sources there is no tree; the two heads are compared directly,
+ * with the same search for runs, since the tree bookkeeping costs more than
+ * it saves at k=2.
+ * <p>
+ * Equal timestamps are taken from the source with the lower index first.
+ * The read position of each source is kept between calls to
+ * {@link #merge}, so that a caller can stop the merge when one source runs
+ * dry and continue when it has been refilled with
+ * {@link #setSource(int, int[], int[], int, int)}.
+ */
+public class TimestampMerger {
+
+    /** Number of events of a run that are scanned linearly before galloping */
+    private static final int MIN_GALLOP = 8;
+    /** Number of consecutive wins of one source before its run is searched for */
+    private static final int MIN_STREAK = 2;
+
+    private final int numSources, numLeaves;
+    private final int[][] timestamps, addresses;
+    private final int[] pos, end;
+    // key of the head event of each leaf: timestamp in the high word, source index in the low word, so that
+    // ties go to the lower source index; EXHAUSTED for sources without events and for the padding leaves
+    private final long[] keys;
+    private static final long EXHAUSTED = Long.MAX_VALUE;
+    // tree[1..numLeaves-1] hold the loser of the match at that node, tree[0] the overall winner
+    private final int[] tree;
+    private final int[] winners;
+
+    /**
+     * Creates a merger.
+     *
+     * @param numSources the number of sources, at least 1
+     */
+    public TimestampMerger(int numSources) {
+        if (numSources < 1) {
+            throw new IllegalArgumentException("numSources=" + numSources + " must be at least 1");
+        }
+        this.numSources = numSources;
+        int k = 2;
+        while (k < numSources) {
+            k <<= 1;
+        }
+        numLeaves = k;
+        timestamps = new int[numSources][];
+        addresses = new int[numSources][];
+        pos = new int[numSources];
+        end = new int[numSources];
+        keys = new long[numLeaves];
+        tree = new int[numLeaves];
+        winners = new int[2 * numLeaves];
+    }
+
+    /**
+     * @return the number of sources
+     */
+    public int getNumSources() {
+        return numSources;
+    }
+
+    /**
+     * Sets the events of a source. The timestamps must be sorted in
+     * nondecreasing order from start to end.
+     *
+     * @param source the source index
+     * @param timestamps the timestamps, or null for an empty source
+     * @param addresses the addresses, or null to output the array index of
+     * each event instead of its address
+     * @param start the index of the first event
+     * @param end one past the index of the last event
+     */
+    public void setSource(int source, int[] timestamps, int[] addresses, int start, int end) {
+        this.timestamps[source] = timestamps;
+        this.addresses[source] = addresses;
+        pos[source] = start;
+        this.end[source] = timestamps == null ? start : end;
+    }
+
+    /**
+     * Sets a source to the events of a raw packet.
+     *
+     * @param source the source index
+     * @param packet the packet, or null for an empty source
+     * @param start the index of the first event to merge
+     */
+    public void setSource(int source, AEPacketRaw packet, int start) {
+        if (packet == null) {
+            setSource(source, null, null, 0, 0);
+        } else {
+            setSource(source, packet.getTimestamps(), packet.getAddresses(), start, packet.getNumEvents());
+        }
+    }
+
+    /**
+     * @param source the source index
+     * @return the index of the next event of the source that has not been
+     * merged yet
+     */
+    public int getPosition(int source) {
+        return pos[source];
+    }
+
+    /**
+     * @param source the source index
+     * @return the number of events of the source that have not been merged yet
+     */
+    public int getRemaining(int source) {
+        return end[source] - pos[source];
+    }
+
+    /**
+     * @param source the source index
+     * @return true if all events of the source have been merged
+     */
+    public boolean isExhausted(int source) {
+        return pos[source] >= end[source];
+    }
+
+    /**
+     * Merges events into output arrays in timestamp order.
+     *
+     * @param outTimestamps the output timestamps
+     * @param outAddresses the output addresses
+     * @param outSources the source index of each output event, or null
+     * @param outStart the index of the first output event
+     * @param maxEvents the maximum number of events to write
+     * @param untilTimestamp only events with timestamps up to and including
+     * this one are merged; Integer.MAX_VALUE for no limit
+     * @param stopWhenAnyExhausted true to stop as soon as a source that had
+     * events runs out. Later events from the other sources are then held back,
+     * since the exhausted source may still deliver earlier ones. Sources that
+     * were empty at the start of the call are ignored.
+     * @return the number of events written
+     */
+    public int merge(int[] outTimestamps, int[] outAddresses, int[] outSources, int outStart, int maxEvents, int untilTimestamp, boolean stopWhenAnyExhausted) {
+        if (numSources == 2) {
+            return merge2(outTimestamps, outAddresses, outSources, outStart, maxEvents, untilTimestamp, stopWhenAnyExhausted);
+        }
+        build();
+        final long[] keys = this.keys;
+        final int[] tree = this.tree;
+        int n = 0, last = -1, streak = 0;
+        while (n < maxEvents) {
+            final int s = tree[0];
+            final long key = keys[s];
+            if (key == EXHAUSTED || (int) (key >> 32) > untilTimestamp) {
+                break;
+            }
+            final int[] ts = timestamps[s];
+            final int[] a = addresses[s];
+            final int p = pos[s], e = end[s];
+            final int o = outStart + n;
+            int runEnd = p + 1;
+            if (s == last && ++streak >= MIN_STREAK) {
+                // s keeps winning, so look for a run that extends up to the head of the runner-up,
+                // which is the best loser on the path of s to the root
+                long runnerUp = EXHAUSTED;
+                for (int node = (numLeaves + s) >>> 1; node >= 1; node >>>= 1) {
+                    long k = keys[tree[node]];
+                    if (k < runnerUp) {
+                        runnerUp = k;
+                    }
+                }
+                int bound = untilTimestamp;
+                boolean inclusive = true;
+                if (runnerUp != EXHAUSTED) {
+                    int rt = (int) (runnerUp >> 32), r = (int) runnerUp;
+                    if (rt < bound || (rt == bound && r < s)) {
+                        bound = rt;
+                        inclusive = s < r; // ties go to the lower source index
+                    }
+                }
+                runEnd = runEnd(ts, p, Math.min(e, p + (maxEvents - n)), bound, inclusive);
+            } else if (s != last) {
+                last = s;
+                streak = 0;
+            }
+            copy(s, ts, a, p, runEnd, outTimestamps, outAddresses, outSources, o);
+            n += runEnd - p;
+            pos[s] = runEnd;
+            if (runEnd == e) {
+                keys[s] = EXHAUSTED;
+                if (stopWhenAnyExhausted) {
+                    break;
+                }
+            } else {
+                keys[s] = key(ts[runEnd], s);
+            }
+            replay(s);
+        }
+        return n;
+    }
+
+    /**
+     * The two source case of merge: compares the two heads directly instead
+     * of going through the tree.
+     */
+    private int merge2(int[] outTimestamps, int[] outAddresses, int[] outSources, int outStart, int maxEvents, int untilTimestamp, boolean stopWhenAnyExhausted) {
+        final int[] ts0 = timestamps[0], ts1 = timestamps[1];
+        final int e0 = end[0], e1 = end[1];
+        int p0 = pos[0], p1 = pos[1];
+        int n = 0, last = -1, streak = 0;
+        while (n < maxEvents) {
+            final boolean more0 = p0 < e0, more1 = p1 < e1;
+            final int s;
+            if (more0 && (!more1 || ts0[p0] <= ts1[p1])) { // ties go to source 0
+                s = 0;
+            } else if (more1) {
+                s = 1;
+            } else {
+                break;
+            }
+            final int[] ts = s == 0 ? ts0 : ts1;
+            final int p = s == 0 ? p0 : p1, e = s == 0 ? e0 : e1;
+            if (ts[p] > untilTimestamp) {
+                break;
+            }
+            int runEnd = p + 1;
+            if (s == last && ++streak >= MIN_STREAK) {
+                int bound = untilTimestamp;
+                boolean inclusive = true;
+                if (s == 0 ? more1 : more0) {
+                    int rt = s == 0 ? ts1[p1] : ts0[p0];
+                    if (rt < bound || (rt == bound && s == 1)) {
+                        bound = rt;
+                        inclusive = s == 0;
+                    }
+                }
+                runEnd = runEnd(ts, p, Math.min(e, p + (maxEvents - n)), bound, inclusive);
+            } else if (s != last) {
+                last = s;
+                streak = 0;
+            }
+            copy(s, ts, addresses[s], p, runEnd, outTimestamps, outAddresses, outSources, outStart + n);
+            n += runEnd - p;
+            if (s == 0) {
+                p0 = runEnd;
+            } else {
+                p1 = runEnd;
+            }
+            if (runEnd == e && stopWhenAnyExhausted) {
+                break;
+            }
+        }
+        pos[0] = p0;
+        pos[1] = p1;
+        return n;
+    }
+
+    /**
+     * Copies the events from p up to runEnd of source s to the output at o.
+     */
+    private static void copy(int s, int[] ts, int[] a, int p, int runEnd, int[] outTimestamps, int[] outAddresses, int[] outSources, int o) {
+        if (runEnd == p + 1) {
+            outTimestamps[o] = ts[p]; // most runs are single events when sources have similar rates
+            outAddresses[o] = a != null ? a[p] : p;
+            if (outSources != null) {
+                outSources[o] = s;
+            }
+            return;
+        }
+        int len = runEnd - p;
+        System.arraycopy(ts, p, outTimestamps, o, len);
+        if (a != null) {
+            System.arraycopy(a, p, outAddresses, o, len);
+        } else {
+            for (int i = 0; i < len; i++) {
+                outAddresses[o + i] = p + i;
+            }
+        }
+        if (outSources != null) {
+            for (int i = 0; i < len; i++) {
+                outSources[o + i] = s;
+            }
+        }
+    }
+
+    /**
+     * Merges the remaining events of the sources into a raw packet, appending
+     * them after its current events.
+     *
+     * @param out the output packet
+     * @param stopWhenAnyExhausted see
+     * {@link #merge(int[], int[], int[], int, int, int, boolean)}
+     * @return the number of events appended
+     */
+    public int mergeInto(AEPacketRaw out, boolean stopWhenAnyExhausted) {
+        int total = 0;
+        for (int s = 0; s < numSources; s++) {
+            total += getRemaining(s);
+        }
+        int start = out.getNumEvents();
+        out.ensureCapacity(start + total);
+        int n = merge(out.getTimestamps(), out.getAddresses(), null, start, total, Integer.MAX_VALUE, stopWhenAnyExhausted);
+        out.setNumEvents(start + n);
+        return n;
+    }
+
+    /**
+     * Finds the end of the run starting at p of events with timestamps up to
+     * bound (inclusive) or below it.
+     */
+    private static int runEnd(int[] ts, int p, int limit, int bound, boolean inclusive) {
+        if (!inclusive) {
+            if (bound == Integer.MIN_VALUE) {
+                return p + 1; // the winner's own event is always taken
+            }
+            bound--; // ts < bound is ts <= bound-1
+        }
+        int i = p + 1; // the first event is the winner, so it is always in the run
+        int scanEnd = Math.min(limit, i + MIN_GALLOP);
+        while (i < scanEnd && ts[i] <= bound) {
+            i++;
+        }
+        if (i < scanEnd || i >= limit) {
+            return i;
+        }
+        // gallop: ts[lo-1] <= bound, find hi with ts[hi] > bound or hi == limit
+        int lo = i, step = 1, hi = i;
+        while (hi < limit && ts[hi] <= bound) {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+        }
+        if (hi > limit) {
+            hi = limit;
+        }
+        // binary search in [lo,hi) for the first ts > bound
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ts[mid] <= bound) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static long key(int timestamp, int source) {
+        return ((long) timestamp << 32) | source;
+    }
+
+    private void build() {
+        for (int i = 0; i < numLeaves; i++) {
+            keys[i] = (i < numSources && pos[i] < end[i]) ? key(timestamps[i][pos[i]], i) : EXHAUSTED;
+            winners[numLeaves + i] = i;
+        }
+        for (int node = numLeaves - 1; node >= 1; node--) {
+            int a = winners[2 * node], b = winners[(2 * node) + 1];
+            if (keys[a] <= keys[b]) { // equal keys are only possible between exhausted leaves
+                winners[node] = a;
+                tree[node] = b;
+            } else {
+                winners[node] = b;
+                tree[node] = a;
+            }
+        }
+        tree[0] = winners[1];
+    }
+
+    /**
+     * Replays the matches on the path of source s to the root after its head
+     * has changed.
+     */
+    private void replay(int s) {
+        final long[] keys = this.keys;
+        final int[] tree = this.tree;
+        int winner = s;
+        long winnerKey = keys[s];
+        for (int node = (numLeaves + s) >>> 1; node >= 1; node >>>= 1) {
+            int c = tree[node];
+            long k = keys[c];
+            if (k < winnerKey) {
+                tree[node] = winner;
+                winner = c;
+                winnerKey = k;
+            }
+        }
+        tree[0] = winner;
+    }
+}
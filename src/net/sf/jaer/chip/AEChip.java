@@ -35,6 +35,8 @@ import net.sf.jaer.eventio.AEDataFile;
 import net.sf.jaer.eventio.AEFileInputStream;
 import net.sf.jaer.eventio.AEFileInputStreamInterface;
 import net.sf.jaer.eventio.AEFileOutputStream;
+import net.sf.jaer.eventio.Hdf5EventFileInputStream;
+import net.sf.jaer.eventio.Hdf5EventFileOutputStream;
 import net.sf.jaer.eventio.ros.RosbagFileInputStream;
 import net.sf.jaer.eventprocessing.EventFilter;
 import net.sf.jaer.eventprocessing.FilterChain;
@@ -232,6 +234,7 @@ public class AEChip extends Chip2D {
         this.numCellTypes = numCellTypes;
         setChanged();
         notifyObservers(EVENT_NUM_CELL_TYPES);
+        getEventBus().publishSize(sizeX, sizeY, numCellTypes);
         int newsize = sizeX * sizeY * numCellTypes;
         if (newsize > 0) {
             getSupport().firePropertyChange(EVENT_SIZE_SET, oldsize, newsize);
@@ -467,8 +470,10 @@ public class AEChip extends Chip2D {
         } else if (FilenameUtils.isExtension(file.getName(), AEDataFile.DATA_FILE_EXTENSION.substring(1))
                 || FilenameUtils.isExtension(file.getName(), AEDataFile.OLD_DATA_FILE_EXTENSION.substring(1))) {
             aeInputStream = new AEFileInputStream(file, this);
+        } else if (FilenameUtils.isExtension(file.getName(), Hdf5EventFileOutputStream.DATA_FILE_EXTENSION) && Hdf5EventFileInputStream.isEventFile(file)) {
+            aeInputStream = new Hdf5EventFileInputStream(file);
         }else{
-            throw new FileNotFoundException("file "+file+" file type is not known; .dat, .aedat or .bag files are currently supported");
+            throw new FileNotFoundException("file "+file+" file type is not known; .dat, .aedat, .bag or jAER .h5 event files are currently supported");
         }
         return aeInputStream;
     }
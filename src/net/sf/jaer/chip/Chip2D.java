@@ -54,6 +54,10 @@ public class Chip2D extends Chip {
      * the filter frame holding filters that can be applied to the events
      */
     protected FilterFrame filterFrame = null;
+    /**
+     * Typed bus for size, IMU, frame and timestamp reset events
+     */
+    private final ChipEventBus eventBus = new ChipEventBus();
 
     /**
      * Size of chip in x (horizontal) direction.
@@ -65,7 +69,8 @@ public class Chip2D extends Chip {
     }
 
     /**
-     * Updates the chip size and calls Observers with the string EVENT_SIZEX.
+     * Updates the chip size, calls Observers with the string EVENT_SIZEX and
+     * publishes the new size on the event bus.
      *
      * @param sizeX the horizontal dimension
      */
@@ -74,6 +79,7 @@ public class Chip2D extends Chip {
         this.sizeX = sizeX;
         setChanged();
         notifyObservers(EVENT_SIZEX);
+        eventBus.publishSize(this.sizeX, this.sizeY, this.numCellTypes);
         int newsize = sizeX * sizeY * numCellTypes;
         if (newsize > 0) {
             getSupport().firePropertyChange(EVENT_SIZE_SET, oldsize, newsize);
@@ -90,7 +96,8 @@ public class Chip2D extends Chip {
     }
 
     /**
-     * Updates the chip size and calls Observers with the string EVENT_SIZEY.
+     * Updates the chip size, calls Observers with the string EVENT_SIZEY and
+     * publishes the new size on the event bus.
      *
      * @param sizeY the vertical dimension
      */
@@ -99,12 +106,24 @@ public class Chip2D extends Chip {
         this.sizeY = sizeY;
         setChanged();
         notifyObservers(EVENT_SIZEY);
+        eventBus.publishSize(this.sizeX, this.sizeY, this.numCellTypes);
         int newsize = sizeX * sizeY * numCellTypes;
         if (newsize > 0) {
             getSupport().firePropertyChange(EVENT_SIZE_SET, oldsize, newsize);
         }
     }
 
+    /**
+     * Returns the typed event bus of this chip. Prefer subscribing to it over
+     * adding an Observer when only size changes, IMU samples, frames or
+     * timestamp resets are of interest.
+     *
+     * @return the event bus
+     */
+    public ChipEventBus getEventBus() {
+        return eventBus;
+    }
+
     public int getMaxSize() {
         return (int) Math.max(sizeX, sizeY);
     }
@@ -0,0 +1,530 @@
+package net.sf.jaer.chip;
+
+import eu.seebetter.ini.chips.davis.imu.IMUSample;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Typed event bus for the chip events that are raised from the event
+ * extraction loop: chip size changes, IMU samples, completed APS frames and
+ * timestamp resets.
+ * <p>
+ * Unlike {@link java.util.Observable#notifyObservers(java.lang.Object)} and
+ * PropertyChangeSupport, listeners are typed and receive primitive payloads,
+ * and each kind of event has its own subscriber list, so publishing an IMU
+ * sample does not call every Observer of the chip and does not box or
+ * allocate anything. Publishing with no subscribers costs one volatile read.
+ * <p>
+ * A subscription can be limited to at most one delivery per minimum interval
+ * of event time, e.g. to sample the IMU at 100Hz rather than 1kHz. A
+ * subscription can also be asynchronous; then its events are copied into
+ * pooled messages and delivered in order by a single daemon thread owned by
+ * the bus, so a slow listener does not hold up extraction. If the queue to
+ * that thread is full the event is dropped and counted in
+ * {@link Subscription#getDroppedCount()}.
+ * <p>
+ * Events of one kind must be published by one thread at a time.
+ * Subscribing and cancelling may be done from any thread.
+ *
+ * @see Chip2D#getEventBus()
+ */
+public class ChipEventBus {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+
+    /**
+     * Size of the queue to the asynchronous delivery thread.
+     */
+    public static final int ASYNC_QUEUE_CAPACITY = 4096;
+
+    /**
+     * Listens for chip size changes.
+     */
+    public interface SizeListener {
+
+        /**
+         * Called when the sizeX, sizeY or numCellTypes of the chip changes.
+         * Some of the values may still be 0 while the chip is being
+         * constructed.
+         *
+         * @param sizeX the horizontal size in pixels
+         * @param sizeY the vertical size in pixels
+         * @param numCellTypes the number of cell types per pixel
+         */
+        void chipSizeChanged(int sizeX, int sizeY, int numCellTypes);
+    }
+
+    /**
+     * Listens for IMU samples.
+     */
+    public interface ImuListener {
+
+        /**
+         * Called for each IMU sample.
+         *
+         * @param timestampUs the sample timestamp in us
+         * @param accelX acceleration in g
+         * @param accelY acceleration in g
+         * @param accelZ acceleration in g
+         * @param gyroTiltX tilt rate in deg/s
+         * @param gyroYawY yaw (pan) rate in deg/s
+         * @param gyroRollZ roll rate in deg/s
+         * @param temperature temperature in deg C
+         */
+        void imuSample(int timestampUs, float accelX, float accelY, float accelZ, float gyroTiltX, float gyroYawY, float gyroRollZ, float temperature);
+    }
+
+    /**
+     * Listens for completed APS frames.
+     */
+    public interface FrameListener {
+
+        /**
+         * Called when an APS frame has been completed.
+         *
+         * @param startTimestampUs the frame start timestamp in us
+         * @param endTimestampUs the frame end timestamp in us
+         */
+        void frameCompleted(int startTimestampUs, int endTimestampUs);
+    }
+
+    /**
+     * Listens for timestamp resets.
+     */
+    public interface TimestampResetListener {
+
+        /**
+         * Called after the device timestamps have been reset.
+         */
+        void timestampsReset();
+    }
+
+    private static final int KIND_SIZE = 0, KIND_IMU = 1, KIND_FRAME = 2, KIND_TIMESTAMP_RESET = 3;
+    private static final Subscription[] NONE = new Subscription[0];
+
+    private volatile Subscription[] sizeSubscriptions = NONE;
+    private volatile Subscription[] imuSubscriptions = NONE;
+    private volatile Subscription[] frameSubscriptions = NONE;
+    private volatile Subscription[] timestampResetSubscriptions = NONE;
+
+    private final ArrayBlockingQueue<Message> asyncQueue = new ArrayBlockingQueue<Message>(ASYNC_QUEUE_CAPACITY);
+    private final ConcurrentLinkedQueue<Message> messagePool = new ConcurrentLinkedQueue<Message>();
+    private Thread asyncThread = null;
+
+    /**
+     * A subscription to one kind of event.
+     */
+    public final class Subscription {
+
+        private final int kind;
+        private final Object listener;
+        private final int minIntervalUs;
+        private final boolean asynchronous;
+        // written by publishTimestampReset, which may run on another thread than the publisher of the events
+        private volatile boolean delivered = false;
+        private volatile int lastDeliveredTimestamp;
+        private volatile boolean cancelled = false;
+        private volatile long droppedCount = 0;
+
+        private Subscription(int kind, Object listener, int minIntervalUs, boolean asynchronous) {
+            if (listener == null) {
+                throw new IllegalArgumentException("null listener");
+            }
+            this.kind = kind;
+            this.listener = listener;
+            this.minIntervalUs = minIntervalUs;
+            this.asynchronous = asynchronous;
+        }
+
+        /**
+         * Removes this subscription from the bus. Asynchronous events already
+         * queued for it are discarded.
+         */
+        public void cancel() {
+            cancelled = true;
+            remove(this);
+        }
+
+        /**
+         * @return true if cancel() has been called
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return true if events are delivered on the bus delivery thread
+         */
+        public boolean isAsynchronous() {
+            return asynchronous;
+        }
+
+        /**
+         * @return the minimum event time between deliveries in us, or 0 if
+         * every event is delivered
+         */
+        public int getMinIntervalUs() {
+            return minIntervalUs;
+        }
+
+        /**
+         * @return the number of asynchronous events dropped because the
+         * delivery queue was full
+         */
+        public long getDroppedCount() {
+            return droppedCount;
+        }
+
+        /**
+         * Applies the minimum interval. A timestamp earlier than the last
+         * delivered one, e.g. after a rewind, is always delivered.
+         */
+        private boolean accept(int timestamp) {
+            if (minIntervalUs > 0 && delivered) {
+                int dt = timestamp - lastDeliveredTimestamp;
+                if (dt >= 0 && dt < minIntervalUs) {
+                    return false;
+                }
+            }
+            delivered = true;
+            lastDeliveredTimestamp = timestamp;
+            return true;
+        }
+    }
+
+    /**
+     * An event copied for asynchronous delivery.
+     */
+    private static final class Message {
+
+        Subscription subscription;
+        int i0, i1;
+        final float[] f = new float[7];
+    }
+
+    /**
+     * Subscribes synchronously to chip size changes.
+     *
+     * @param listener the listener
+     * @return the subscription
+     */
+    public Subscription subscribeSize(SizeListener listener) {
+        return add(new Subscription(KIND_SIZE, listener, 0, false));
+    }
+
+    /**
+     * Subscribes synchronously to every IMU sample.
+     *
+     * @param listener the listener
+     * @return the subscription
+     */
+    public Subscription subscribeImu(ImuListener listener) {
+        return subscribeImu(listener, 0, false);
+    }
+
+    /**
+     * Subscribes to IMU samples.
+     *
+     * @param listener the listener
+     * @param minIntervalUs samples less than this time after the last one
+     * delivered are skipped; 0 delivers all samples
+     * @param asynchronous true to deliver on the bus delivery thread, false to
+     * deliver on the publishing thread
+     * @return the subscription
+     */
+    public Subscription subscribeImu(ImuListener listener, int minIntervalUs, boolean asynchronous) {
+        return add(new Subscription(KIND_IMU, listener, minIntervalUs, asynchronous));
+    }
+
+    /**
+     * Subscribes synchronously to every completed APS frame.
+     *
+     * @param listener the listener
+     * @return the subscription
+     */
+    public Subscription subscribeFrames(FrameListener listener) {
+        return subscribeFrames(listener, 0, false);
+    }
+
+    /**
+     * Subscribes to completed APS frames.
+     *
+     * @param listener the listener
+     * @param minIntervalUs frames ending less than this time after the last
+     * one delivered are skipped; 0 delivers all frames
+     * @param asynchronous true to deliver on the bus delivery thread, false to
+     * deliver on the publishing thread
+     * @return the subscription
+     */
+    public Subscription subscribeFrames(FrameListener listener, int minIntervalUs, boolean asynchronous) {
+        return add(new Subscription(KIND_FRAME, listener, minIntervalUs, asynchronous));
+    }
+
+    /**
+     * Subscribes to timestamp resets.
+     *
+     * @param listener the listener
+     * @param asynchronous true to deliver on the bus delivery thread, false to
+     * deliver on the publishing thread
+     * @return the subscription
+     */
+    public Subscription subscribeTimestampReset(TimestampResetListener listener, boolean asynchronous) {
+        return add(new Subscription(KIND_TIMESTAMP_RESET, listener, 0, asynchronous));
+    }
+
+    /**
+     * Publishes a chip size change.
+     *
+     * @param sizeX the horizontal size
+     * @param sizeY the vertical size
+     * @param numCellTypes the number of cell types
+     */
+    public void publishSize(int sizeX, int sizeY, int numCellTypes) {
+        final Subscription[] subs = sizeSubscriptions;
+        for (Subscription s : subs) {
+            try {
+                ((SizeListener) s.listener).chipSizeChanged(sizeX, sizeY, numCellTypes);
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "size listener " + s.listener + " threw " + e.toString(), e);
+            }
+        }
+    }
+
+    /**
+     * Publishes an IMU sample.
+     *
+     * @param sample the sample
+     */
+    public void publishImu(IMUSample sample) {
+        if (imuSubscriptions.length == 0) {
+            return;
+        }
+        publishImu(sample.getTimestampUs(), sample.getAccelX(), sample.getAccelY(), sample.getAccelZ(),
+                sample.getGyroTiltX(), sample.getGyroYawY(), sample.getGyroRollZ(), sample.getTemperature());
+    }
+
+    /**
+     * Publishes an IMU sample.
+     *
+     * @param timestampUs the sample timestamp in us
+     * @param accelX acceleration in g
+     * @param accelY acceleration in g
+     * @param accelZ acceleration in g
+     * @param gyroTiltX tilt rate in deg/s
+     * @param gyroYawY yaw (pan) rate in deg/s
+     * @param gyroRollZ roll rate in deg/s
+     * @param temperature temperature in deg C
+     */
+    public void publishImu(int timestampUs, float accelX, float accelY, float accelZ, float gyroTiltX, float gyroYawY, float gyroRollZ, float temperature) {
+        final Subscription[] subs = imuSubscriptions;
+        for (Subscription s : subs) {
+            if (!s.accept(timestampUs)) {
+                continue;
+            }
+            if (s.asynchronous) {
+                Message m = obtainMessage(s);
+                m.i0 = timestampUs;
+                m.f[0] = accelX;
+                m.f[1] = accelY;
+                m.f[2] = accelZ;
+                m.f[3] = gyroTiltX;
+                m.f[4] = gyroYawY;
+                m.f[5] = gyroRollZ;
+                m.f[6] = temperature;
+                enqueue(m);
+            } else {
+                try {
+                    ((ImuListener) s.listener).imuSample(timestampUs, accelX, accelY, accelZ, gyroTiltX, gyroYawY, gyroRollZ, temperature);
+                } catch (RuntimeException e) {
+                    log.log(Level.WARNING, "IMU listener " + s.listener + " threw " + e.toString(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes a completed APS frame.
+     *
+     * @param startTimestampUs the frame start timestamp in us
+     * @param endTimestampUs the frame end timestamp in us
+     */
+    public void publishFrame(int startTimestampUs, int endTimestampUs) {
+        final Subscription[] subs = frameSubscriptions;
+        for (Subscription s : subs) {
+            if (!s.accept(endTimestampUs)) {
+                continue;
+            }
+            if (s.asynchronous) {
+                Message m = obtainMessage(s);
+                m.i0 = startTimestampUs;
+                m.i1 = endTimestampUs;
+                enqueue(m);
+            } else {
+                try {
+                    ((FrameListener) s.listener).frameCompleted(startTimestampUs, endTimestampUs);
+                } catch (RuntimeException e) {
+                    log.log(Level.WARNING, "frame listener " + s.listener + " threw " + e.toString(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes a timestamp reset. The minimum interval of IMU and frame
+     * subscriptions restarts with the next event.
+     */
+    public void publishTimestampReset() {
+        for (Subscription s : imuSubscriptions) {
+            s.delivered = false;
+        }
+        for (Subscription s : frameSubscriptions) {
+            s.delivered = false;
+        }
+        final Subscription[] subs = timestampResetSubscriptions;
+        for (Subscription s : subs) {
+            if (s.asynchronous) {
+                enqueue(obtainMessage(s));
+            } else {
+                try {
+                    ((TimestampResetListener) s.listener).timestampsReset();
+                } catch (RuntimeException e) {
+                    log.log(Level.WARNING, "timestamp reset listener " + s.listener + " threw " + e.toString(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if there are any IMU subscriptions; lets publishers skip
+     * work done only to publish
+     */
+    public boolean hasImuSubscriptions() {
+        return imuSubscriptions.length > 0;
+    }
+
+    /**
+     * @return true if there are any frame subscriptions
+     */
+    public boolean hasFrameSubscriptions() {
+        return frameSubscriptions.length > 0;
+    }
+
+    private synchronized Subscription add(Subscription s) {
+        switch (s.kind) {
+            case KIND_SIZE:
+                sizeSubscriptions = append(sizeSubscriptions, s);
+                break;
+            case KIND_IMU:
+                imuSubscriptions = append(imuSubscriptions, s);
+                break;
+            case KIND_FRAME:
+                frameSubscriptions = append(frameSubscriptions, s);
+                break;
+            case KIND_TIMESTAMP_RESET:
+                timestampResetSubscriptions = append(timestampResetSubscriptions, s);
+                break;
+        }
+        if (s.asynchronous && asyncThread == null) {
+            asyncThread = new Thread(new AsyncDelivery(), "ChipEventBus");
+            asyncThread.setDaemon(true);
+            asyncThread.start();
+        }
+        return s;
+    }
+
+    private synchronized void remove(Subscription s) {
+        switch (s.kind) {
+            case KIND_SIZE:
+                sizeSubscriptions = without(sizeSubscriptions, s);
+                break;
+            case KIND_IMU:
+                imuSubscriptions = without(imuSubscriptions, s);
+                break;
+            case KIND_FRAME:
+                frameSubscriptions = without(frameSubscriptions, s);
+                break;
+            case KIND_TIMESTAMP_RESET:
+                timestampResetSubscriptions = without(timestampResetSubscriptions, s);
+                break;
+        }
+    }
+
+    private static Subscription[] append(Subscription[] subs, Subscription s) {
+        Subscription[] n = new Subscription[subs.length + 1];
+        System.arraycopy(subs, 0, n, 0, subs.length);
+        n[subs.length] = s;
+        return n;
+    }
+
+    private static Subscription[] without(Subscription[] subs, Subscription s) {
+        for (int i = 0; i < subs.length; i++) {
+            if (subs[i] == s) {
+                Subscription[] n = new Subscription[subs.length - 1];
+                System.arraycopy(subs, 0, n, 0, i);
+                System.arraycopy(subs, i + 1, n, i, subs.length - i - 1);
+                return n;
+            }
+        }
+        return subs;
+    }
+
+    private Message obtainMessage(Subscription s) {
+        Message m = messagePool.poll();
+        if (m == null) {
+            m = new Message();
+        }
+        m.subscription = s;
+        return m;
+    }
+
+    private void enqueue(Message m) {
+        if (!asyncQueue.offer(m)) {
+            m.subscription.droppedCount++;
+            recycle(m);
+        }
+    }
+
+    private void recycle(Message m) {
+        m.subscription = null;
+        messagePool.offer(m);
+    }
+
+    /**
+     * Delivers queued events to asynchronous subscriptions in order.
+     */
+    private class AsyncDelivery implements Runnable {
+
+        @Override
+        public void run() {
+            while (true) {
+                Message m;
+                try {
+                    m = asyncQueue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Subscription s = m.subscription;
+                if (!s.cancelled) {
+                    try {
+                        switch (s.kind) {
+                            case KIND_IMU:
+                                ((ImuListener) s.listener).imuSample(m.i0, m.f[0], m.f[1], m.f[2], m.f[3], m.f[4], m.f[5], m.f[6]);
+                                break;
+                            case KIND_FRAME:
+                                ((FrameListener) s.listener).frameCompleted(m.i0, m.i1);
+                                break;
+                            case KIND_TIMESTAMP_RESET:
+                                ((TimestampResetListener) s.listener).timestampsReset();
+                                break;
+                        }
+                    } catch (RuntimeException e) {
+                        log.log(Level.WARNING, "asynchronous listener " + s.listener + " threw " + e.toString(), e);
+                    }
+                }
+                recycle(m);
+            }
+        }
+    }
+}
@@ -7,7 +7,6 @@ package net.sf.jaer.event;
 
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
-import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.logging.Level;
@@ -589,14 +588,17 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
         }
     }
 
-    /*
-	 * Method for ordering events by ascending timestamp, i.e. oldest to newest
+    /**
+     * Orders the events by ascending timestamp, i.e. oldest to newest. Events
+     * with equal timestamps keep their order. A packet that is already in
+     * order costs one pass over it; see {@link TimestampSort} for the
+     * methods used for disordered packets.
      */
     public void sortByTimeStamp() {
         if (size == 0) {
             return;
         }
-        Arrays.sort(elementData, 0, size, TIMESTAMP_COMPARATOR);
+        TimestampSort.sort(elementData, 0, size);
     }
 
     /**
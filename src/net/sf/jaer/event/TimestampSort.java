@@ -0,0 +1,311 @@
+package net.sf.jaer.event;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Stable sorting of events by timestamp, for packets that are out of order
+ * after merging several sources or correcting timestamps. The timestamps are
+ * copied to an int array and sorted together with an index array, and the
+ * event references are then gathered in the sorted order and copied back to
+ * the packet, so no events are copied and no Comparator is called.
+ * <p>
+ * The method is chosen by how disordered the packet is:
+ * <ul>
+ * <li>A packet that is already in order is detected in one pass and left
+ * alone.
+ * <li>A packet made of a few ordered runs, e.g. concatenated or merged
+ * packets, is sorted by merging its natural runs.
+ * <li>Other packets are radix sorted on the timestamps, with as many 11 bit
+ * passes as the span of the timestamps needs.
+ * <li>Very large packets are radix sorted in chunks on all processors, and
+ * the chunks are then merged.
+ * </ul>
+ * Timestamps are compared relative to the first event of the packet, so a
+ * packet that spans a wrap of the 32 bit timestamp is ordered like with the
+ * difference of timestamps that {@link EventPacket#TIMESTAMP_COMPARATOR} uses.
+ * <p>
+ * The work arrays are kept per thread and grow to the largest packet sorted
+ * on the thread.
+ */
+public final class TimestampSort {
+
+    /** Ranges up to this size are insertion sorted */
+    static final int INSERTION_SORT_MAX = 32;
+    /** Ranges of at least this size are sorted in parallel */
+    public static final int PARALLEL_MIN = 1 << 18;
+    /** Ranges with up to 1/MERGE_RUNS_RATIO as many runs as events are merged rather than radix sorted */
+    static final int MERGE_RUNS_RATIO = 16;
+    private static final int RADIX_BITS = 11, RADIX = 1 << RADIX_BITS;
+
+    private static final ThreadLocal<WorkArrays> work = new ThreadLocal<WorkArrays>() {
+        @Override
+        protected WorkArrays initialValue() {
+            return new WorkArrays();
+        }
+    };
+
+    private TimestampSort() {
+    }
+
+    /** Per thread work arrays */
+    private static final class WorkArrays {
+
+        int[] keys = new int[0], keys2 = new int[0], index = new int[0], index2 = new int[0], runs = new int[0];
+        final int[] count = new int[RADIX];
+        BasicEvent[] events = new BasicEvent[0];
+
+        void ensure(int n) {
+            if (keys.length < n) {
+                int c = Math.max(n, keys.length * 2);
+                keys = new int[c];
+                keys2 = new int[c];
+                index = new int[c];
+                index2 = new int[c];
+                runs = new int[c + 1];
+            }
+        }
+    }
+
+    /**
+     * @param events the events
+     * @param from the index of the first event
+     * @param to the index after the last event
+     * @return true if the events are in nondecreasing timestamp order
+     */
+    public static boolean isSorted(BasicEvent[] events, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            if ((events[i].timestamp - events[i - 1].timestamp) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts a range of events by ascending timestamp. Events with equal
+     * timestamps keep their order.
+     *
+     * @param events the events
+     * @param from the index of the first event
+     * @param to the index after the last event
+     */
+    public static void sort(BasicEvent[] events, int from, int to) {
+        int n = to - from;
+        if ((n < 2) || isSorted(events, from, to)) {
+            return;
+        }
+        WorkArrays w = work.get();
+        w.ensure(n);
+        int[] keys = w.keys;
+        int base = events[from].timestamp;
+        for (int i = 0; i < n; i++) {
+            keys[i] = events[from + i].timestamp - base;
+        }
+        int[] order = order(w, n);
+        if (order == null) {
+            return;
+        }
+        if (w.events.length < n) {
+            w.events = new BasicEvent[w.keys.length];
+        }
+        // gathering is faster than following the cycles of the permutation in place, since the loads are independent
+        BasicEvent[] sorted = w.events;
+        for (int i = 0; i < n; i++) {
+            sorted[i] = events[from + order[i]];
+        }
+        System.arraycopy(sorted, 0, events, from, n);
+        Arrays.fill(sorted, 0, n, null); // don't keep the events alive
+    }
+
+    /**
+     * Sorts a range of raw events, given by parallel arrays of timestamps and
+     * addresses, by ascending timestamp. Events with equal timestamps keep
+     * their order.
+     *
+     * @param timestamps the timestamps
+     * @param addresses the addresses, permuted with the timestamps
+     * @param from the index of the first event
+     * @param to the index after the last event
+     */
+    public static void sort(int[] timestamps, int[] addresses, int from, int to) {
+        int n = to - from;
+        if (n < 2) {
+            return;
+        }
+        WorkArrays w = work.get();
+        w.ensure(n);
+        int[] keys = w.keys;
+        int base = timestamps[from];
+        for (int i = 0; i < n; i++) {
+            keys[i] = timestamps[from + i] - base;
+        }
+        int[] order = order(w, n);
+        if (order == null) {
+            return;
+        }
+        int[] sorted = order == w.index ? w.index2 : w.index; // the index array that order() did not return
+        for (int i = 0; i < n; i++) {
+            sorted[i] = addresses[from + order[i]];
+        }
+        System.arraycopy(sorted, 0, addresses, from, n);
+        for (int i = 0; i < n; i++) {
+            sorted[i] = timestamps[from + order[i]];
+        }
+        System.arraycopy(sorted, 0, timestamps, from, n);
+    }
+
+    /**
+     * Computes the sorted order of w.keys[0..n).
+     *
+     * @return an array whose element i is the index of the key that goes to
+     * position i, or null if the keys are already in order
+     */
+    private static int[] order(final WorkArrays w, final int n) {
+        int[] keys = w.keys, runs = w.runs;
+        int numRuns = 0;
+        runs[numRuns++] = 0;
+        for (int i = 1; i < n; i++) {
+            if (keys[i] < keys[i - 1]) {
+                runs[numRuns++] = i;
+            }
+        }
+        if (numRuns == 1) {
+            return null;
+        }
+        runs[numRuns] = n;
+        int[] index = w.index;
+        for (int i = 0; i < n; i++) {
+            index[i] = i;
+        }
+        if (n <= INSERTION_SORT_MAX) {
+            insertionSort(keys, index, n);
+            return index;
+        }
+        if (numRuns <= (n / MERGE_RUNS_RATIO)) {
+            return mergeRuns(w, n, numRuns, false);
+        }
+        int min = keys[0], max = min;
+        for (int i = 1; i < n; i++) {
+            int k = keys[i];
+            if (k < min) {
+                min = k;
+            } else if (k > max) {
+                max = k;
+            }
+        }
+        final int kmin = min, bits = 32 - Integer.numberOfLeadingZeros(max - min); // max-min fits in 32 unsigned bits
+        final boolean inSecond = (((bits + RADIX_BITS) - 1) / RADIX_BITS) % 2 == 1; // odd number of passes ends in keys2 and index2
+        int chunks = n >= PARALLEL_MIN ? Math.min(Runtime.getRuntime().availableProcessors(), n / (PARALLEL_MIN / 4)) : 1;
+        if (chunks < 2) {
+            radixSort(w.keys, w.index, w.keys2, w.index2, 0, n, kmin, bits, w.count);
+            return inSecond ? w.index2 : w.index;
+        }
+        // radix sort equal chunks in parallel, then merge them as runs
+        for (int c = 0; c <= chunks; c++) {
+            runs[c] = (int) (((long) n * c) / chunks);
+        }
+        IntStream.range(0, chunks).parallel().forEach(c -> radixSort(w.keys, w.index, w.keys2, w.index2, w.runs[c], w.runs[c + 1], kmin, bits, new int[RADIX]));
+        return mergeRuns(w, n, chunks, inSecond);
+    }
+
+    private static void insertionSort(int[] keys, int[] index, int n) {
+        for (int i = 1; i < n; i++) {
+            int k = keys[i], x = index[i];
+            int j = i - 1;
+            while ((j >= 0) && (keys[j] > k)) {
+                keys[j + 1] = keys[j];
+                index[j + 1] = index[j];
+                j--;
+            }
+            keys[j + 1] = k;
+            index[j + 1] = x;
+        }
+    }
+
+    /**
+     * Merges adjacent pairs of the runs in w.runs until one is left,
+     * alternating between the two pairs of arrays.
+     *
+     * @param inSecond true if the runs are in keys2 and index2 rather than in
+     * keys and index
+     */
+    private static int[] mergeRuns(WorkArrays w, int n, int numRuns, boolean inSecond) {
+        int[] srcKeys = w.keys, srcIndex = w.index, dstKeys = w.keys2, dstIndex = w.index2, runs = w.runs;
+        if (inSecond) {
+            srcKeys = w.keys2;
+            srcIndex = w.index2;
+            dstKeys = w.keys;
+            dstIndex = w.index;
+        }
+        while (numRuns > 1) {
+            int merged = 0;
+            for (int r = 0; r < numRuns; r += 2) {
+                int lo = runs[r], mid = runs[r + 1];
+                if (r + 1 == numRuns) { // odd run out, copy it
+                    System.arraycopy(srcKeys, lo, dstKeys, lo, mid - lo);
+                    System.arraycopy(srcIndex, lo, dstIndex, lo, mid - lo);
+                } else {
+                    int hi = runs[r + 2], i = lo, j = mid, o = lo;
+                    while ((i < mid) && (j < hi)) {
+                        if (srcKeys[j] < srcKeys[i]) {
+                            dstKeys[o] = srcKeys[j];
+                            dstIndex[o++] = srcIndex[j++];
+                        } else {
+                            dstKeys[o] = srcKeys[i];
+                            dstIndex[o++] = srcIndex[i++];
+                        }
+                    }
+                    System.arraycopy(srcKeys, i, dstKeys, o, mid - i);
+                    System.arraycopy(srcIndex, i, dstIndex, o, mid - i);
+                    o += mid - i;
+                    System.arraycopy(srcKeys, j, dstKeys, o, hi - j);
+                    System.arraycopy(srcIndex, j, dstIndex, o, hi - j);
+                }
+                runs[merged++] = lo;
+            }
+            runs[merged] = n;
+            numRuns = merged;
+            int[] t = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = t;
+            t = srcIndex;
+            srcIndex = dstIndex;
+            dstIndex = t;
+        }
+        return srcIndex;
+    }
+
+    /**
+     * Least significant digit radix sort of the range [lo,hi) on the keys
+     * minus min, alternating between the two pairs of arrays, so the result
+     * is in keys2 and index2 after an odd number of passes.
+     */
+    private static void radixSort(int[] keys, int[] index, int[] keys2, int[] index2, int lo, int hi, int min, int bits, int[] count) {
+        int[] srcKeys = keys, srcIndex = index, dstKeys = keys2, dstIndex = index2;
+        for (int shift = 0; shift < bits; shift += RADIX_BITS) {
+            Arrays.fill(count, 0);
+            for (int i = lo; i < hi; i++) {
+                count[((srcKeys[i] - min) >>> shift) & (RADIX - 1)]++;
+            }
+            int sum = lo;
+            for (int d = 0; d < RADIX; d++) {
+                int c = count[d];
+                count[d] = sum;
+                sum += c;
+            }
+            for (int i = lo; i < hi; i++) {
+                int k = srcKeys[i];
+                int o = count[((k - min) >>> shift) & (RADIX - 1)]++;
+                dstKeys[o] = k;
+                dstIndex[o] = srcIndex[i];
+            }
+            int[] t = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = t;
+            t = srcIndex;
+            srcIndex = dstIndex;
+            dstIndex = t;
+        }
+    }
+}
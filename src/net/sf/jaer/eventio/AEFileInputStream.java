@@ -711,8 +711,10 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         int startTimestamp = mostRecentTimestamp;
         int[] addr = packet.getAddresses();
         int[] ts = packet.getTimestamps();
-        EventType[] etypes = packet.getEventtypes(); // For jAER 3.0, no influence on jAER 2.0
-        int[] pixelDataArray = packet.getPixelDataArray();
+        // the eventtype and pixelData arrays are allocated on first access, so only get them for jAER 3.0 files
+        EventType[] etypes = jaer3EnableFlg ? packet.getEventtypes() : null;
+        int[] pixelDataArray = jaer3EnableFlg ? packet.getPixelDataArray() : null;
+        final int cap = packet.getCapacity(); // the addr array may be longer than the capacity, which is the length of the jAER 3.0 arrays
         long oldPosition = position();
         EventRaw ae;
         int i = 0;
@@ -728,10 +730,12 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
                         }
                         addr[i] = ae.address;
                         ts[i] = ae.timestamp;
-                        etypes[i] = ae.eventtype;
-                        pixelDataArray[i] = ae.pixelData;
+                        if (etypes != null) {
+                            etypes[i] = ae.eventtype;
+                            pixelDataArray[i] = ae.pixelData;
+                        }
                         i++;
-                    } while ((mostRecentTimestamp < endTimestamp) && (i < addr.length) && (mostRecentTimestamp >= startTimestamp)); // if
+                    } while ((mostRecentTimestamp < endTimestamp) && (i < cap) && (mostRecentTimestamp >= startTimestamp)); // if
                     // time
                     // jumps
                     // backwards
@@ -757,10 +761,12 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
                         }
                         addr[i] = ae.address;
                         ts[i] = ae.timestamp;
-                        etypes[i] = ae.eventtype;
-                        pixelDataArray[i] = ae.pixelData;
+                        if (etypes != null) {
+                            etypes[i] = ae.eventtype;
+                            pixelDataArray[i] = ae.pixelData;
+                        }
                         i++;
-                    } while ((mostRecentTimestamp > 0) && (i < addr.length)); // read to where bigwrap occurs, then
+                    } while ((mostRecentTimestamp > 0) && (i < cap)); // read to where bigwrap occurs, then
                     // terminate - but wrapped time exception
                     // will happen first
                     // never gets here because of wrap exception
@@ -778,14 +784,14 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
                         addr[i] = ae.address;
                         ts[i] = ae.timestamp;
                         i++;
-                    } while ((mostRecentTimestamp > endTimestamp) && (i < addr.length) && (mostRecentTimestamp <= startTimestamp));
+                    } while ((mostRecentTimestamp > endTimestamp) && (i < cap) && (mostRecentTimestamp <= startTimestamp));
                 } else {
                     do {
                         ae = readEventBackwards();
                         addr[i] = ae.address;
                         ts[i] = ae.timestamp;
                         i++;
-                    } while ((mostRecentTimestamp < 0) && (i < (addr.length - 1)));
+                    } while ((mostRecentTimestamp < 0) && (i < (cap - 1)));
 
                     ae = readEventBackwards();
                     addr[i] = ae.address;
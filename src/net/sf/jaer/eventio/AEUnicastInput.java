@@ -614,6 +614,20 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
                 return;
             }
 
+            if (addressFirstEnabled && use4ByteAddrTs && timestampsEnabled && !localTimestampsEnabled
+                    && (timestampMultiplier == 1) && readTimeZeroAlready && (timeZero == 0)) {
+                // plain address,timestamp int pairs need no per event conversion, so copy them in bulk;
+                // reading the ints in the opposite byte order is the same as maybeSwapByteOrder
+                ByteOrder order = buffer.order();
+                if (swapBytesEnabled) {
+                    buffer.order(order == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+                }
+                packet.setNumEvents(startingIndex);
+                packet.appendRange(buffer, nEventsInPacket);
+                buffer.order(order);
+                return;
+            }
+
             for (int i = 0; i < nEventsInPacket; i++) {
                 if (addressFirstEnabled) {
                     if (use4ByteAddrTs) {
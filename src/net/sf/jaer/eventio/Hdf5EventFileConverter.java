@@ -0,0 +1,100 @@
+package net.sf.jaer.eventio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+
+/**
+ * Converts recordings that jAER can play back, e.g. .aedat files, to HDF5
+ * event files written by {@link Hdf5EventFileOutputStream}.
+ * <p>
+ * Run from the command line with
+ * <pre>
+ * java net.sf.jaer.eventio.Hdf5EventFileConverter chipClass input [output.h5]
+ * </pre> where chipClass is the AEChip class the recording was made with, e.g.
+ * eu.seebetter.ini.chips.davis.DAVIS240C. The output defaults to the input
+ * with the extension .h5.
+ */
+public class Hdf5EventFileConverter {
+
+    private static final Logger log = Logger.getLogger("Hdf5EventFileConverter");
+    /** Number of events read per packet while converting */
+    public static final int PACKET_SIZE_EVENTS = 1 << 16;
+
+    private Hdf5EventFileConverter() {
+    }
+
+    /**
+     * Copies the events of a stream, from where rewind positions it to the
+     * end, to a new HDF5 event file. The repeat setting of the stream is
+     * restored afterwards.
+     *
+     * @param in the stream to convert
+     * @param out the HDF5 file, replaced if it exists
+     * @return the number of events written
+     * @throws IOException if reading or writing fails
+     */
+    public static long convert(AEFileInputStreamInterface in, File out) throws IOException {
+        boolean repeat = in.isRepeat();
+        in.setRepeat(false);
+        Hdf5EventFileOutputStream os = new Hdf5EventFileOutputStream(out);
+        try {
+            in.rewind();
+            long remaining = in.size() - in.position();
+            while (remaining > 0) {
+                AEPacketRaw packet = in.readPacketByNumber((int) Math.min(remaining, PACKET_SIZE_EVENTS));
+                int n = packet.getNumEvents();
+                if (n == 0) {
+                    break;
+                }
+                os.writePacket(packet);
+                remaining -= n;
+            }
+        } finally {
+            os.close();
+            in.setRepeat(repeat);
+        }
+        return os.getNumEventsWritten();
+    }
+
+    /**
+     * Converts a recording.
+     *
+     * @param args chipClass input [output.h5]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || args.length > 3) {
+            log.warning("usage: java " + Hdf5EventFileConverter.class.getName() + " chipClass input [output." + Hdf5EventFileOutputStream.DATA_FILE_EXTENSION + "]");
+            return;
+        }
+        File input = new File(args[1]);
+        File output;
+        if (args.length == 3) {
+            output = new File(args[2]);
+        } else {
+            String name = input.getName();
+            int dot = name.lastIndexOf('.');
+            output = new File(input.getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + "." + Hdf5EventFileOutputStream.DATA_FILE_EXTENSION);
+        }
+        AEFileInputStreamInterface in = null;
+        try {
+            AEChip chip = (AEChip) Class.forName(args[0]).newInstance();
+            in = chip.constuctFileInputStream(input, null);
+            long n = convert(in, output);
+            log.info("converted " + n + " events of " + input + " to " + output);
+        } catch (Exception ex) {
+            log.log(Level.SEVERE, "could not convert " + input + " to " + output + ": " + ex.toString(), ex);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                    log.warning("closing " + input + ": " + ex.toString());
+                }
+            }
+        }
+    }
+}
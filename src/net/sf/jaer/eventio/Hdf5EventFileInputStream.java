@@ -0,0 +1,626 @@
+package net.sf.jaer.eventio;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.logging.Logger;
+import ncsa.hdf.hdf5lib.H5;
+import ncsa.hdf.hdf5lib.HDF5Constants;
+import ncsa.hdf.hdf5lib.exceptions.HDF5Exception;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import static net.sf.jaer.eventio.Hdf5EventFileOutputStream.ABSOLUTE_STARTING_TIME_ATTRIBUTE;
+import static net.sf.jaer.eventio.Hdf5EventFileOutputStream.ADDRESSES_DATASET;
+import static net.sf.jaer.eventio.Hdf5EventFileOutputStream.EVENTS_GROUP;
+import static net.sf.jaer.eventio.Hdf5EventFileOutputStream.TIMESTAMPS_DATASET;
+import static net.sf.jaer.eventio.Hdf5EventFileOutputStream.TIME_INDEX_DATASET;
+
+/**
+ * Plays back HDF5 event files written by {@link Hdf5EventFileOutputStream}.
+ * <p>
+ * Events are read one HDF5 chunk at a time with a hyperslab selection straight
+ * into int arrays, and copied from there into the returned AEPacketRaw with
+ * System.arraycopy. There is no per event parsing. Seeking by time uses the
+ * time index of chunk starting timestamps, so it costs one binary search and
+ * one chunk read. If the time index is missing or does not cover all chunks,
+ * e.g. in a file written by an older version or a recording that was not
+ * closed, it is rebuilt from the timestamps when the file is opened.
+ * <p>
+ * Positions are event numbers. Timestamps are assumed to be monotonic, as
+ * they are when written from a single device.
+ * <p>
+ * Other HDF5 files, e.g. DDD17 recordings, have a different layout and are
+ * rejected, see {@link #isEventFile}.
+ */
+public class Hdf5EventFileInputStream implements AEFileInputStreamInterface {
+
+    protected static Logger log = Logger.getLogger("Hdf5EventFileInputStream");
+
+    private File file;
+    private int file_id = -1, timestamps_id = -1, addresses_id = -1;
+    private final long numEvents;
+    private final int chunkSize;
+    private final int[] timeIndex; // timestamp of first event of each chunk
+    private final int[] chunkTimestamps, chunkAddresses;
+    private long loadedChunk = -1;
+    private int loadedChunkLength = 0;
+    private long position = 0;
+    private long markIn = 0, markOut;
+    private boolean repeat = true;
+    private final int firstTimestamp, lastTimestamp;
+    private int mostRecentTimestamp, currentStartTimestamp;
+    private long absoluteStartingTimeMs = 0;
+    private int timestampResetBitmask = 0;
+    private boolean nonMonotonicTimeExceptionsChecked = true;
+    private boolean firstReadCompleted = false;
+    private boolean rewindFlag = false;
+    private final AEPacketRaw packet = new AEPacketRaw();
+    private final PropertyChangeSupport support = new PropertyChangeSupport(this);
+
+    /**
+     * Opens a file.
+     *
+     * @param f the file
+     * @throws IOException if the file is not an HDF5 event file or is empty
+     */
+    public Hdf5EventFileInputStream(File f) throws IOException {
+        this.file = f;
+        try {
+            file_id = H5.H5Fopen(f.getPath(), HDF5Constants.H5F_ACC_RDONLY, HDF5Constants.H5P_DEFAULT);
+            if (!hasEventColumns(file_id)) {
+                throw new IOException(f + " is not a jAER HDF5 event file, it has no int32 " + TIMESTAMPS_DATASET + " and " + ADDRESSES_DATASET + " columns");
+            }
+            timestamps_id = H5.H5Dopen(file_id, TIMESTAMPS_DATASET, HDF5Constants.H5P_DEFAULT);
+            addresses_id = H5.H5Dopen(file_id, ADDRESSES_DATASET, HDF5Constants.H5P_DEFAULT);
+            numEvents = getLength(timestamps_id);
+            chunkSize = getChunkSize(timestamps_id);
+            timeIndex = readTimeIndex();
+            if (H5.H5Aexists(timestamps_id, ABSOLUTE_STARTING_TIME_ATTRIBUTE)) {
+                int attribute_id = H5.H5Aopen(timestamps_id, ABSOLUTE_STARTING_TIME_ATTRIBUTE, HDF5Constants.H5P_DEFAULT);
+                long[] t = new long[1];
+                H5.H5Aread(attribute_id, HDF5Constants.H5T_NATIVE_LLONG, t);
+                H5.H5Aclose(attribute_id);
+                absoluteStartingTimeMs = t[0];
+            }
+        } catch (HDF5Exception ex) {
+            closeIds();
+            throw new IOException("could not open HDF5 event file " + f + ": " + ex.toString(), ex);
+        } catch (IOException ex) {
+            closeIds();
+            throw ex;
+        }
+        if (numEvents == 0) {
+            closeIds();
+            throw new IOException("HDF5 event file " + f + " contains no events");
+        }
+        chunkTimestamps = new int[chunkSize];
+        chunkAddresses = new int[chunkSize];
+        markOut = numEvents;
+        firstTimestamp = timestampAt(0);
+        lastTimestamp = timestampAt(numEvents - 1);
+        mostRecentTimestamp = firstTimestamp;
+        currentStartTimestamp = firstTimestamp;
+        log.info("opened " + f + " with " + numEvents + " events in " + timeIndex.length + " chunks of " + chunkSize + " events");
+    }
+
+    /**
+     * Checks whether a file has the layout written by
+     * {@link Hdf5EventFileOutputStream}: 1-d int32 timestamp and address
+     * columns of equal length. Other files, including HDF5 files of other
+     * tools, return false.
+     *
+     * @param f the file
+     * @return true if the file can be opened as an Hdf5EventFileInputStream
+     */
+    public static boolean isEventFile(File f) {
+        if (!f.isFile()) {
+            return false;
+        }
+        int file_id = -1;
+        try {
+            if (!H5.H5Fis_hdf5(f.getPath())) {
+                return false;
+            }
+            file_id = H5.H5Fopen(f.getPath(), HDF5Constants.H5F_ACC_RDONLY, HDF5Constants.H5P_DEFAULT);
+            return hasEventColumns(file_id);
+        } catch (HDF5Exception ex) {
+            log.info(f + " is not a readable HDF5 file: " + ex.toString());
+            return false;
+        } finally {
+            if (file_id >= 0) {
+                try {
+                    H5.H5Fclose(file_id);
+                } catch (HDF5Exception ex) {
+                    log.warning("closing " + f + ": " + ex.toString());
+                }
+            }
+        }
+    }
+
+    private static boolean hasEventColumns(int file_id) throws HDF5Exception {
+        if (!H5.H5Lexists(file_id, EVENTS_GROUP, HDF5Constants.H5P_DEFAULT)) {
+            return false;
+        }
+        long n = getIntColumnLength(file_id, TIMESTAMPS_DATASET);
+        return n >= 0 && n == getIntColumnLength(file_id, ADDRESSES_DATASET);
+    }
+
+    /**
+     * @return the length of a 1-d 32 bit integer dataset, or -1 if path is not
+     * one
+     */
+    private static long getIntColumnLength(int file_id, String path) throws HDF5Exception {
+        if (!H5.H5Lexists(file_id, path, HDF5Constants.H5P_DEFAULT)
+                || H5.H5Oget_info_by_name(file_id, path, HDF5Constants.H5P_DEFAULT).type != HDF5Constants.H5O_TYPE_DATASET) {
+            return -1;
+        }
+        int dataset_id = H5.H5Dopen(file_id, path, HDF5Constants.H5P_DEFAULT);
+        try {
+            int type_id = H5.H5Dget_type(dataset_id);
+            try {
+                if (H5.H5Tget_class(type_id) != HDF5Constants.H5T_INTEGER || H5.H5Tget_size(type_id) != 4) {
+                    return -1;
+                }
+            } finally {
+                H5.H5Tclose(type_id);
+            }
+            int space_id = H5.H5Dget_space(dataset_id);
+            try {
+                if (H5.H5Sget_simple_extent_ndims(space_id) != 1) {
+                    return -1;
+                }
+            } finally {
+                H5.H5Sclose(space_id);
+            }
+            return getLength(dataset_id);
+        } finally {
+            H5.H5Dclose(dataset_id);
+        }
+    }
+
+    /**
+     * Reads the time index, or rebuilds it from the first timestamp of each
+     * chunk if it is missing or does not have one entry per chunk.
+     */
+    private int[] readTimeIndex() throws HDF5Exception {
+        int numChunks = (int) ((numEvents + chunkSize - 1) / chunkSize);
+        if (H5.H5Lexists(file_id, TIME_INDEX_DATASET, HDF5Constants.H5P_DEFAULT)) {
+            int index_id = H5.H5Dopen(file_id, TIME_INDEX_DATASET, HDF5Constants.H5P_DEFAULT);
+            try {
+                if (getLength(index_id) == numChunks) {
+                    int[] index = new int[numChunks];
+                    if (numChunks > 0) {
+                        H5.H5Dread(index_id, HDF5Constants.H5T_NATIVE_INT, HDF5Constants.H5S_ALL, HDF5Constants.H5S_ALL, HDF5Constants.H5P_DEFAULT, index);
+                    }
+                    return index;
+                }
+            } finally {
+                H5.H5Dclose(index_id);
+            }
+        }
+        log.warning("time index of " + file + " is missing or incomplete, rebuilding it from the timestamps of " + numChunks + " chunks");
+        int[] index = new int[numChunks];
+        int[] first = new int[1];
+        for (int c = 0; c < numChunks; c++) {
+            readColumn(timestamps_id, (long) c * chunkSize, 1, first);
+            index[c] = first[0];
+        }
+        return index;
+    }
+
+    private static long getLength(int dataset_id) throws HDF5Exception {
+        int space_id = H5.H5Dget_space(dataset_id);
+        try {
+            long[] dims = new long[1];
+            H5.H5Sget_simple_extent_dims(space_id, dims, null);
+            return dims[0];
+        } finally {
+            H5.H5Sclose(space_id);
+        }
+    }
+
+    private static int getChunkSize(int dataset_id) throws HDF5Exception {
+        int dcpl_id = H5.H5Dget_create_plist(dataset_id);
+        try {
+            long[] dims = {Hdf5EventFileOutputStream.CHUNK_SIZE};
+            if (H5.H5Pget_layout(dcpl_id) == HDF5Constants.H5D_CHUNKED) {
+                H5.H5Pget_chunk(dcpl_id, 1, dims);
+            }
+            return (int) dims[0];
+        } finally {
+            H5.H5Pclose(dcpl_id);
+        }
+    }
+
+    /**
+     * Makes sure the chunk holding event number n is in the chunk arrays.
+     *
+     * @return the index of event n in the chunk arrays
+     */
+    private int loadChunkOf(long n) throws IOException {
+        long chunk = n / chunkSize;
+        if (chunk != loadedChunk) {
+            long start = chunk * chunkSize;
+            int length = (int) Math.min(chunkSize, numEvents - start);
+            try {
+                readColumn(timestamps_id, start, length, chunkTimestamps);
+                readColumn(addresses_id, start, length, chunkAddresses);
+            } catch (HDF5Exception ex) {
+                loadedChunk = -1;
+                throw new IOException("reading events " + start + " to " + (start + length) + " of " + file + ": " + ex.toString(), ex);
+            }
+            loadedChunk = chunk;
+            loadedChunkLength = length;
+        }
+        return (int) (n - (chunk * chunkSize));
+    }
+
+    private static void readColumn(int dataset_id, long start, int length, int[] dest) throws HDF5Exception {
+        int filespace_id = H5.H5Dget_space(dataset_id);
+        int memspace_id = H5.H5Screate_simple(1, new long[]{length}, null);
+        try {
+            H5.H5Sselect_hyperslab(filespace_id, HDF5Constants.H5S_SELECT_SET, new long[]{start}, new long[]{1}, new long[]{length}, new long[]{1});
+            H5.H5Dread(dataset_id, HDF5Constants.H5T_NATIVE_INT, memspace_id, filespace_id, HDF5Constants.H5P_DEFAULT, dest);
+        } finally {
+            H5.H5Sclose(memspace_id);
+            H5.H5Sclose(filespace_id);
+        }
+    }
+
+    private int timestampAt(long n) throws IOException {
+        return chunkTimestamps[loadChunkOf(n)];
+    }
+
+    /**
+     * Called to signal first read from file. Fires PropertyChange
+     * AEInputStream.EVENT_INIT, with new value this.
+     */
+    protected void fireInitPropertyChange() {
+        getSupport().firePropertyChange(AEInputStream.EVENT_INIT, null, this);
+        firstReadCompleted = true;
+    }
+
+    /**
+     * Handles reaching mark out: fires EVENT_EOF, then rewinds if repeat is
+     * set and otherwise throws EOFException.
+     */
+    private void endOfFile() throws IOException {
+        getSupport().firePropertyChange(AEInputStream.EVENT_EOF, null, position());
+        if (!repeat) {
+            throw new EOFException("reached end of file " + file);
+        }
+        rewind();
+    }
+
+    @Override
+    synchronized public AEPacketRaw readPacketByNumber(int n) throws IOException {
+        if (!firstReadCompleted) {
+            fireInitPropertyChange();
+        }
+        long oldPosition = position;
+        if (position >= markOut) {
+            endOfFile();
+        }
+        n = (int) Math.min(Math.min(n, AEPacketRaw.MAX_PACKET_SIZE_EVENTS), markOut - position);
+        copyEvents(n);
+        if (packet.getNumEvents() > 0) {
+            currentStartTimestamp = mostRecentTimestamp;
+        }
+        getSupport().firePropertyChange(AEInputStream.EVENT_POSITION, oldPosition, position());
+        maybeSendRewoundEvent(oldPosition);
+        return packet;
+    }
+
+    @Override
+    synchronized public AEPacketRaw readPacketByTime(int dt) throws IOException {
+        if (!firstReadCompleted) {
+            fireInitPropertyChange();
+        }
+        long oldPosition = position;
+        if (position >= markOut) {
+            endOfFile();
+        }
+        int endTimestamp = currentStartTimestamp + dt;
+        currentStartTimestamp = endTimestamp;
+        // count the events before endTimestamp, chunk by chunk
+        long end = position;
+        long limit = Math.min(markOut, position + AEPacketRaw.MAX_PACKET_SIZE_EVENTS);
+        while (end < limit) {
+            int i = loadChunkOf(end);
+            int chunkEnd = (int) Math.min(loadedChunkLength, i + (limit - end));
+            while (i < chunkEnd && chunkTimestamps[i] < endTimestamp) {
+                i++;
+                end++;
+            }
+            if (i < chunkEnd) {
+                break; // found an event at or after endTimestamp
+            }
+        }
+        copyEvents((int) (end - position));
+        getSupport().firePropertyChange(AEInputStream.EVENT_POSITION, oldPosition, position());
+        maybeSendRewoundEvent(oldPosition);
+        return packet;
+    }
+
+    /**
+     * Copies n events from the current position into packet and advances the
+     * position.
+     */
+    private void copyEvents(int n) throws IOException {
+        packet.ensureCapacity(n);
+        int[] ts = packet.getTimestamps(), addr = packet.getAddresses();
+        int k = 0;
+        while (k < n) {
+            int i = loadChunkOf(position);
+            int m = Math.min(n - k, loadedChunkLength - i);
+            System.arraycopy(chunkTimestamps, i, ts, k, m);
+            System.arraycopy(chunkAddresses, i, addr, k, m);
+            k += m;
+            position += m;
+        }
+        packet.setNumEvents(n);
+        if (n > 0) {
+            mostRecentTimestamp = ts[n - 1];
+        }
+    }
+
+    /**
+     * Positions the stream at the first event whose timestamp is at or after
+     * a timestamp, using the time index.
+     *
+     * @param timestamp the timestamp in us
+     * @throws IOException if reading the chunk failed
+     */
+    synchronized public void seekToTimestamp(int timestamp) throws IOException {
+        long oldPosition = position;
+        // last chunk starting at or before timestamp
+        int lo = 0, hi = timeIndex.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (timeIndex[mid] <= timestamp) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        long n = (long) lo * chunkSize;
+        int i = loadChunkOf(n);
+        while (i < loadedChunkLength && chunkTimestamps[i] < timestamp) {
+            i++;
+            n++;
+        }
+        position = Math.min(n, numEvents);
+        mostRecentTimestamp = position < numEvents ? timestampAt(position) : lastTimestamp;
+        currentStartTimestamp = timestamp;
+        getSupport().firePropertyChange(AEInputStream.EVENT_POSITION, oldPosition, position());
+    }
+
+    @Override
+    public boolean isNonMonotonicTimeExceptionsChecked() {
+        return nonMonotonicTimeExceptionsChecked;
+    }
+
+    @Override
+    public void setNonMonotonicTimeExceptionsChecked(boolean yes) {
+        nonMonotonicTimeExceptionsChecked = yes;
+    }
+
+    @Override
+    public long getAbsoluteStartingTimeMs() {
+        return absoluteStartingTimeMs;
+    }
+
+    @Override
+    public ZoneId getZoneId() {
+        return ZoneId.systemDefault();
+    }
+
+    @Override
+    public int getDurationUs() {
+        return lastTimestamp - firstTimestamp;
+    }
+
+    @Override
+    public int getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    @Override
+    public PropertyChangeSupport getSupport() {
+        return support;
+    }
+
+    @Override
+    public void addPropertyChangeListener(PropertyChangeListener listener) {
+        support.addPropertyChangeListener(listener);
+    }
+
+    @Override
+    public void removePropertyChangeListener(PropertyChangeListener listener) {
+        support.removePropertyChangeListener(listener);
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public int getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    @Override
+    public int getMostRecentTimestamp() {
+        return mostRecentTimestamp;
+    }
+
+    @Override
+    public int getTimestampResetBitmask() {
+        return timestampResetBitmask;
+    }
+
+    @Override
+    public void setTimestampResetBitmask(int timestampResetBitmask) {
+        this.timestampResetBitmask = timestampResetBitmask;
+    }
+
+    @Override
+    public int getCurrentStartTimestamp() {
+        return currentStartTimestamp;
+    }
+
+    /**
+     * Sets the start of the next readPacketByTime and seeks to it with the
+     * time index.
+     *
+     * @param currentStartTimestamp the timestamp in us
+     */
+    @Override
+    synchronized public void setCurrentStartTimestamp(int currentStartTimestamp) {
+        try {
+            seekToTimestamp(currentStartTimestamp);
+        } catch (IOException ex) {
+            log.warning("could not seek to timestamp " + currentStartTimestamp + ": " + ex.toString());
+        }
+    }
+
+    @Override
+    synchronized public void close() throws IOException {
+        closeIds();
+    }
+
+    private void closeIds() {
+        try {
+            if (timestamps_id >= 0) {
+                H5.H5Dclose(timestamps_id);
+            }
+            if (addresses_id >= 0) {
+                H5.H5Dclose(addresses_id);
+            }
+            if (file_id >= 0) {
+                H5.H5Fclose(file_id);
+            }
+        } catch (HDF5Exception ex) {
+            log.warning("closing " + file + ": " + ex.toString());
+        }
+        timestamps_id = -1;
+        addresses_id = -1;
+        file_id = -1;
+    }
+
+    @Override
+    public float getFractionalPosition() {
+        return (float) position / numEvents;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    synchronized public void position(long n) {
+        long oldPosition = position;
+        position = Math.max(0, Math.min(n, numEvents));
+        try {
+            mostRecentTimestamp = position < numEvents ? timestampAt(position) : lastTimestamp;
+        } catch (IOException ex) {
+            log.warning("could not read timestamp at position " + position + ": " + ex.toString());
+        }
+        currentStartTimestamp = mostRecentTimestamp;
+        getSupport().firePropertyChange(AEInputStream.EVENT_POSITION, oldPosition, position());
+    }
+
+    /**
+     * rewind to the start, or to the marked position, if it has been set.
+     * Fires a property change "position" followed by "rewind".
+     */
+    @Override
+    synchronized public void rewind() throws IOException {
+        position(markIn);
+        rewindFlag = true;
+    }
+
+    private void maybeSendRewoundEvent(long oldPosition) {
+        if (rewindFlag) {
+            getSupport().firePropertyChange(AEInputStream.EVENT_REWOUND, oldPosition, position());
+            rewindFlag = false;
+        }
+    }
+
+    @Override
+    synchronized public void setFractionalPosition(float frac) {
+        position((long) (frac * numEvents));
+    }
+
+    @Override
+    public long size() {
+        return numEvents;
+    }
+
+    @Override
+    public void clearMarks() {
+        markIn = 0;
+        markOut = numEvents;
+        getSupport().firePropertyChange(AEInputStream.EVENT_MARKS_CLEARED, null, null);
+    }
+
+    @Override
+    public long setMarkIn() {
+        long old = markIn;
+        markIn = position;
+        getSupport().firePropertyChange(AEInputStream.EVENT_MARK_IN_SET, old, markIn);
+        return markIn;
+    }
+
+    @Override
+    public long setMarkOut() {
+        long old = markOut;
+        markOut = position;
+        getSupport().firePropertyChange(AEInputStream.EVENT_MARK_OUT_SET, old, markOut);
+        return markOut;
+    }
+
+    @Override
+    public long getMarkInPosition() {
+        return markIn;
+    }
+
+    @Override
+    public long getMarkOutPosition() {
+        return markOut;
+    }
+
+    @Override
+    public boolean isMarkInSet() {
+        return markIn > 0;
+    }
+
+    @Override
+    public boolean isMarkOutSet() {
+        return markOut < numEvents;
+    }
+
+    @Override
+    public void setRepeat(boolean repeat) {
+        this.repeat = repeat;
+    }
+
+    @Override
+    public boolean isRepeat() {
+        return repeat;
+    }
+
+    @Override
+    public String toString() {
+        return "Hdf5EventFileInputStream with " + numEvents + " events from " + file;
+    }
+}
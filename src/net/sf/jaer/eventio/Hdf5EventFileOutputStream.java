@@ -0,0 +1,229 @@
+package net.sf.jaer.eventio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+import ncsa.hdf.hdf5lib.H5;
+import ncsa.hdf.hdf5lib.HDF5Constants;
+import ncsa.hdf.hdf5lib.exceptions.HDF5Exception;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+
+/**
+ * Writes raw AER events to an HDF5 file as chunked columns of primitive ints,
+ * so that they can be read back in bulk by {@link Hdf5EventFileInputStream}
+ * and by e.g. h5py without any per event parsing.
+ * <p>
+ * The file layout is
+ * <ul>
+ * <li>{@value #TIMESTAMPS_DATASET}: int32 timestamps in us, extendible, in
+ * chunks of {@value #CHUNK_SIZE} events
+ * <li>{@value #ADDRESSES_DATASET}: int32 raw addresses, chunked like the
+ * timestamps
+ * <li>{@value #TIME_INDEX_DATASET}: int32 timestamp of the first event of each
+ * chunk, for seeking, extended together with the columns
+ * </ul>
+ * The timestamps dataset carries the attribute
+ * {@value #ABSOLUTE_STARTING_TIME_ATTRIBUTE}, the int64 wall clock time in ms
+ * since 1970 when the file was created.
+ * <p>
+ * Events are collected into whole chunks before they are written, so each
+ * write extends the columns by exactly one chunk and the time index by one
+ * entry, and the file is flushed after each chunk. A recording that was not
+ * closed, e.g. after a crash, can thus be read up to its last whole chunk.
+ */
+public class Hdf5EventFileOutputStream {
+
+    protected static Logger log = Logger.getLogger("Hdf5EventFileOutputStream");
+
+    /** File extension, without the dot */
+    public static final String DATA_FILE_EXTENSION = "h5";
+    public static final String EVENTS_GROUP = "/events";
+    public static final String TIMESTAMPS_DATASET = "/events/timestamps";
+    public static final String ADDRESSES_DATASET = "/events/addresses";
+    public static final String TIME_INDEX_DATASET = "/events/timeIndex";
+    public static final String ABSOLUTE_STARTING_TIME_ATTRIBUTE = "absoluteStartingTimeMs";
+    /** Number of events per HDF5 chunk and per time index entry */
+    public static final int CHUNK_SIZE = 1 << 16;
+    // entries per HDF5 chunk of the time index
+    private static final int INDEX_CHUNK_SIZE = 1024;
+
+    private final File file;
+    private int file_id = -1, timestamps_id = -1, addresses_id = -1, index_id = -1;
+    private final int[] timestampChunk = new int[CHUNK_SIZE], addressChunk = new int[CHUNK_SIZE];
+    private int chunkFill = 0;
+    private long numEventsWritten = 0;
+    private int numChunks = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates the file, replacing an existing one.
+     *
+     * @param f the file
+     * @throws IOException if the file or its datasets cannot be created
+     */
+    public Hdf5EventFileOutputStream(File f) throws IOException {
+        this.file = f;
+        try {
+            file_id = H5.H5Fcreate(f.getPath(), HDF5Constants.H5F_ACC_TRUNC, HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT);
+            int group_id = H5.H5Gcreate(file_id, EVENTS_GROUP, HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT);
+            H5.H5Gclose(group_id);
+            timestamps_id = createColumn(TIMESTAMPS_DATASET, CHUNK_SIZE);
+            addresses_id = createColumn(ADDRESSES_DATASET, CHUNK_SIZE);
+            index_id = createColumn(TIME_INDEX_DATASET, INDEX_CHUNK_SIZE);
+            writeLongAttribute(timestamps_id, ABSOLUTE_STARTING_TIME_ATTRIBUTE, System.currentTimeMillis());
+        } catch (HDF5Exception ex) {
+            closeIds();
+            throw new IOException("could not create " + f + ": " + ex.toString(), ex);
+        }
+        log.info("opened HDF5 event file " + f);
+    }
+
+    /**
+     * Creates an empty extendible chunked 1-d int32 dataset
+     */
+    private int createColumn(String path, int chunkSize) throws HDF5Exception {
+        int space_id = H5.H5Screate_simple(1, new long[]{0}, new long[]{HDF5Constants.H5S_UNLIMITED});
+        int dcpl_id = H5.H5Pcreate(HDF5Constants.H5P_DATASET_CREATE);
+        try {
+            H5.H5Pset_chunk(dcpl_id, 1, new long[]{chunkSize});
+            return H5.H5Dcreate(file_id, path, HDF5Constants.H5T_STD_I32LE, space_id,
+                    HDF5Constants.H5P_DEFAULT, dcpl_id, HDF5Constants.H5P_DEFAULT);
+        } finally {
+            H5.H5Pclose(dcpl_id);
+            H5.H5Sclose(space_id);
+        }
+    }
+
+    private void writeLongAttribute(int object_id, String name, long value) throws HDF5Exception {
+        int space_id = H5.H5Screate(HDF5Constants.H5S_SCALAR);
+        try {
+            int attribute_id = H5.H5Acreate(object_id, name, HDF5Constants.H5T_STD_I64LE, space_id, HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT);
+            H5.H5Awrite(attribute_id, HDF5Constants.H5T_NATIVE_LLONG, new long[]{value});
+            H5.H5Aclose(attribute_id);
+        } finally {
+            H5.H5Sclose(space_id);
+        }
+    }
+
+    /**
+     * Writes the events of a packet.
+     *
+     * @param packet the packet
+     * @throws IOException if writing a chunk failed
+     */
+    synchronized public void writePacket(AEPacketRaw packet) throws IOException {
+        write(packet.getTimestamps(), packet.getAddresses(), packet.getNumEvents());
+    }
+
+    /**
+     * Writes events held in arrays.
+     *
+     * @param timestamps the timestamps in us
+     * @param addresses the raw addresses
+     * @param n the number of events
+     * @throws IOException if writing a chunk failed
+     */
+    synchronized public void write(int[] timestamps, int[] addresses, int n) throws IOException {
+        if (closed) {
+            throw new IOException("file " + file + " is closed");
+        }
+        int i = 0;
+        while (i < n) {
+            int k = Math.min(n - i, CHUNK_SIZE - chunkFill);
+            System.arraycopy(timestamps, i, timestampChunk, chunkFill, k);
+            System.arraycopy(addresses, i, addressChunk, chunkFill, k);
+            chunkFill += k;
+            i += k;
+            if (chunkFill == CHUNK_SIZE) {
+                writeChunk();
+            }
+        }
+    }
+
+    /**
+     * Appends the collected events to both columns, appends their first
+     * timestamp to the time index and flushes the file.
+     */
+    private void writeChunk() throws IOException {
+        if (chunkFill == 0) {
+            return;
+        }
+        try {
+            appendToColumn(timestamps_id, numEventsWritten, timestampChunk, chunkFill);
+            appendToColumn(addresses_id, numEventsWritten, addressChunk, chunkFill);
+            appendToColumn(index_id, numChunks, new int[]{timestampChunk[0]}, 1);
+            H5.H5Fflush(file_id, HDF5Constants.H5F_SCOPE_LOCAL);
+        } catch (HDF5Exception ex) {
+            throw new IOException("writing to " + file + ": " + ex.toString(), ex);
+        }
+        numChunks++;
+        numEventsWritten += chunkFill;
+        chunkFill = 0;
+    }
+
+    private void appendToColumn(int dataset_id, long offset, int[] data, int n) throws HDF5Exception {
+        H5.H5Dset_extent(dataset_id, new long[]{offset + n});
+        int filespace_id = H5.H5Dget_space(dataset_id);
+        int memspace_id = H5.H5Screate_simple(1, new long[]{n}, null);
+        try {
+            H5.H5Sselect_hyperslab(filespace_id, HDF5Constants.H5S_SELECT_SET, new long[]{offset}, new long[]{1}, new long[]{n}, new long[]{1});
+            H5.H5Dwrite(dataset_id, HDF5Constants.H5T_NATIVE_INT, memspace_id, filespace_id, HDF5Constants.H5P_DEFAULT, data);
+        } finally {
+            H5.H5Sclose(memspace_id);
+            H5.H5Sclose(filespace_id);
+        }
+    }
+
+    /**
+     * Writes the remaining events and closes the file.
+     *
+     * @throws IOException
+     */
+    synchronized public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writeChunk();
+        } finally {
+            closeIds();
+        }
+        log.info("closed HDF5 event file " + file + " with " + numEventsWritten + " events");
+    }
+
+    private void closeIds() {
+        try {
+            if (timestamps_id >= 0) {
+                H5.H5Dclose(timestamps_id);
+            }
+            if (addresses_id >= 0) {
+                H5.H5Dclose(addresses_id);
+            }
+            if (index_id >= 0) {
+                H5.H5Dclose(index_id);
+            }
+            if (file_id >= 0) {
+                H5.H5Fclose(file_id);
+            }
+        } catch (HDF5Exception ex) {
+            log.warning("closing " + file + ": " + ex.toString());
+        }
+        timestamps_id = -1;
+        addresses_id = -1;
+        index_id = -1;
+        file_id = -1;
+    }
+
+    /**
+     * @return the number of events written so far, including those not yet
+     * flushed as a chunk
+     */
+    synchronized public long getNumEventsWritten() {
+        return numEventsWritten + chunkFill;
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
@@ -42,6 +42,7 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -49,15 +50,24 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.ClosedByInterruptException;
 import java.nio.channels.FileChannel;
 import java.sql.Timestamp;
 import java.time.ZoneId;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.ProgressMonitor;
@@ -142,6 +152,31 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
     private AEFifo[] aeFifos = {dvsFifo, apsFifo, imuFifo};
     private int MAX_RAW_EVENTS_BUFFER_SIZE=1000000;
 
+    /**
+     * Number of messages that are read and decoded ahead on the prefetch
+     * thread.
+     */
+    public static final int PREFETCH_MESSAGES = 32;
+    // all reads from bagFile after indexing happen on this single thread, so the bag reader is never used concurrently
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "RosbagPrefetch");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    private final ArrayDeque<Future<MessageWithIndex>> prefetchedMsgs = new ArrayDeque();
+    private int prefetchedMsgNumber = 0; // message number of the head of prefetchedMsgs
+
+    /**
+     * Version of the message index cache file, incremented when its layout
+     * changes
+     */
+    private static final int MSG_INDEX_CACHE_VERSION = 2;
+    // size of serialized dvs_msgs/Event: uint16 x, uint16 y, time ts (uint32 secs, uint32 nsecs), bool polarity
+    private static final int DVS_EVENT_MSG_SIZE = 13;
+
 
     private enum RosbagFileType {
         RPG(RPG_TOPIC_HEADER), MVSEC(MVSEC_TOPIC_HEADER), Unknown("???");
@@ -256,6 +291,11 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
 
         public MessageType messageType;
         public BagFile.MessageIndex messageIndex;
+        /**
+         * For dvs_msgs/EventArray messages, the events decoded on the prefetch
+         * thread, otherwise null
+         */
+        public DvsEventArray dvsEvents;
 
         public MessageWithIndex(MessageType messageType, BagFile.MessageIndex messageIndex) {
             this.messageType = messageType;
@@ -264,8 +304,113 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
 
     }
 
+    /**
+     * The events of a dvs_msgs/EventArray message decoded into primitive
+     * arrays
+     */
+    public static class DvsEventArray {
+
+        public final int numEvents;
+        public final short[] x, y;
+        public final boolean[] polarity; // false==off, true==on
+        public final long[] timestampsUs; // absolute ROS time in us
+
+        private DvsEventArray(int numEvents) {
+            this.numEvents = numEvents;
+            x = new short[numEvents];
+            y = new short[numEvents];
+            polarity = new boolean[numEvents];
+            timestampsUs = new long[numEvents];
+        }
+
+        /**
+         * Decodes the serialized events array of a dvs_msgs/EventArray
+         * directly from its bytes, without parsing each event into fields.
+         *
+         * @param events the events field of the message
+         * @return the events, or null if the field does not hold the bytes of
+         * dvs_msgs/Event elements
+         */
+        static DvsEventArray decode(ArrayType events) {
+            byte[] bytes;
+            try {
+                bytes = events.getAsBytes();
+            } catch (Exception ex) {
+                return null;
+            }
+            if (bytes == null || bytes.length % DVS_EVENT_MSG_SIZE != 0) {
+                return null;
+            }
+            DvsEventArray a = new DvsEventArray(bytes.length / DVS_EVENT_MSG_SIZE);
+            ByteBuffer b = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN); // ROS serialization is little endian
+            for (int i = 0, p = 0; i < a.numEvents; i++, p += DVS_EVENT_MSG_SIZE) {
+                a.x[i] = b.getShort(p);
+                a.y[i] = b.getShort(p + 2);
+                long secs = b.getInt(p + 4) & 0xffffffffL, nsecs = b.getInt(p + 8) & 0xffffffffL;
+                a.timestampsUs[i] = 1000000 * secs + nsecs / 1000;
+                a.polarity[i] = b.get(p + 12) != 0;
+            }
+            return a;
+        }
+    }
+
+    /**
+     * Reads a message and decodes DVS events on the prefetch thread
+     */
+    private class MessageLoader implements Callable<MessageWithIndex> {
+
+        final List<BagFile.MessageIndex> indexes;
+        final int number;
+
+        MessageLoader(List<BagFile.MessageIndex> indexes, int number) {
+            this.indexes = indexes;
+            this.number = number;
+        }
+
+        @Override
+        public MessageWithIndex call() throws Exception {
+            MessageType msg = bagFile.getMessageFromIndex(indexes, number);
+            MessageWithIndex rtn = new MessageWithIndex(msg, indexes.get(number));
+            if ("dvs_msgs".equals(msg.getPackage()) && "EventArray".equals(msg.getType())) {
+                ArrayType data = msg.<ArrayType>getField("events");
+                if (data != null) {
+                    rtn.dvsEvents = DvsEventArray.decode(data);
+                }
+            }
+            return rtn;
+        }
+    }
+
+    /**
+     * Cancels the prefetched messages that have not been read yet.
+     */
+    private void cancelPrefetchedMsgs() {
+        for (Future<MessageWithIndex> f : prefetchedMsgs) {
+            f.cancel(false);
+        }
+        prefetchedMsgs.clear();
+    }
+
+    /**
+     * Cancels the prefetched messages and waits for a message being read to
+     * finish.
+     */
+    synchronized private void clearPrefetchedMsgs() {
+        cancelPrefetchedMsgs();
+        if (!prefetchExecutor.isShutdown()) {
+            try {
+                prefetchExecutor.submit(new Runnable() { // the executor has one thread, so this runs after the task in progress
+                    @Override
+                    public void run() {
+                    }
+                }).get();
+            } catch (InterruptedException | ExecutionException ex) {
+                log.warning("waiting for prefetch thread: " + ex.toString());
+            }
+        }
+    }
+
     synchronized private MessageWithIndex getNextMsg() throws BagReaderException, EOFException {
-        MessageType msg = null;
         if (nextMessageNumber == markOut) { // TODO check exceptions here for markOut set before markIn
             getSupport().firePropertyChange(AEInputStream.EVENT_EOF, null, position());
             if (isRepeat()) {
@@ -280,13 +425,37 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
                 return null;
             }
         }
-        try {
-            msg = bagFile.getMessageFromIndex(msgIndexes, nextMessageNumber);
-        } catch (ArrayIndexOutOfBoundsException e) {
+        if (nextMessageNumber < 0 || nextMessageNumber >= msgIndexes.size()) {
             throw new EOFException();
         }
-
-        MessageWithIndex rtn = new MessageWithIndex(msg, msgIndexes.get(nextMessageNumber));
+        if (prefetchedMsgNumber != nextMessageNumber) { // repositioned, e.g. by rewind or seek
+            cancelPrefetchedMsgs();
+            prefetchedMsgNumber = nextMessageNumber;
+        }
+        int end = Math.min(msgIndexes.size(), markOut > nextMessageNumber ? markOut : msgIndexes.size());
+        while (prefetchedMsgs.size() < PREFETCH_MESSAGES && prefetchedMsgNumber + prefetchedMsgs.size() < end) {
+            prefetchedMsgs.add(prefetchExecutor.submit(new MessageLoader(msgIndexes, prefetchedMsgNumber + prefetchedMsgs.size())));
+        }
+        Future<MessageWithIndex> next = prefetchedMsgs.poll();
+        MessageWithIndex rtn;
+        try {
+            rtn = next.get();
+        } catch (InterruptedException ex) {
+            prefetchedMsgs.addFirst(next); // not consumed, read it again next time
+            Thread.currentThread().interrupt();
+            throw new BagReaderException(new ClosedByInterruptException()); // treated like an interrupted read of the bag channel
+        } catch (ExecutionException ex) {
+            cancelPrefetchedMsgs();
+            prefetchedMsgNumber = -1;
+            Throwable cause = ex.getCause();
+            if (cause instanceof ArrayIndexOutOfBoundsException) {
+                throw new EOFException();
+            } else if (cause instanceof BagReaderException) {
+                throw (BagReaderException) cause;
+            }
+            throw new BagReaderException(cause);
+        }
+        prefetchedMsgNumber++;
         nextMessageNumber++;
         return rtn;
     }
@@ -303,11 +472,24 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
      * @return timestamp for jAER in us
      */
     private int getTimestampUsRelative(Timestamp timestamp, boolean updateLargestTimestamp) {
-        updateLargestTimestamp = true; // TODO hack before removing
         long tsNs = timestamp.getNanos(); // gets the fractional seconds in ns
         // https://docs.oracle.com/javase/8/docs/api/java/sql/Timestamp.html "Only integral seconds are stored in the java.util.Date component. The fractional seconds - the nanos - are separate."
         long tsMs = timestamp.getTime(); // the time in ms including ns, i.e. time(s)*1000+ns/1000000. 
         long timestampUsAbsolute = (1000000 * (tsMs / 1000)) + tsNs / 1000; // truncate ms back to s, then turn back to us, then appendCopy fractional part of s in us
+        return getTimestampUsRelative(timestampUsAbsolute, updateLargestTimestamp);
+    }
+
+    /**
+     * Computes the us timestamp relative to the first timestamp in the
+     * recording from an absolute ROS time in us.
+     *
+     * @param timestampUsAbsolute the ROS time in us
+     * @param updateLargestTimestamp see
+     * {@link #getTimestampUsRelative(java.sql.Timestamp, boolean)}
+     * @return timestamp for jAER in us
+     */
+    private int getTimestampUsRelative(long timestampUsAbsolute, boolean updateLargestTimestamp) {
+        updateLargestTimestamp = true; // TODO hack before removing
         if (!firstTimestampWasRead) {
             firstTimestampUsAbsolute = timestampUsAbsolute;
             firstTimestampWasRead = true;
@@ -322,7 +504,7 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
         final int dt = ts - mostRecentTimestamp;
         if (dt < 0 && nonMonotonicTimestampExceptionsChecked) {
             if (nonmonotonicTimestampCounter % NONMONOTONIC_TIMESTAMP_WARNING_INTERVAL == 0) {
-                log.warning("Nonmonotonic timestamp=" + timestamp + " with dt=" + dt + "; replacing with largest timestamp=" + largestTimestamp + "; skipping next " + NONMONOTONIC_TIMESTAMP_WARNING_INTERVAL + " warnings");
+                log.warning("Nonmonotonic timestamp=" + timestampUsAbsolute + "us with dt=" + dt + "; replacing with largest timestamp=" + largestTimestamp + "; skipping next " + NONMONOTONIC_TIMESTAMP_WARNING_INTERVAL + " warnings");
             }
             nonmonotonicTimestampCounter++;
             ts = largestTimestamp; // replace actual timestamp with largest one so far
@@ -546,6 +728,16 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
                         hasDvs.setTrue();
                         switch (type) {
                             case "EventArray":
+                                int sizeY = chip.getSizeY();
+                                DvsEventArray events = message.dvsEvents;
+                                if (events != null) { // decoded from the message bytes on the prefetch thread
+                                    gotEventsOrFrame = true;
+                                    for (int i = 0; i < events.numEvents; i++) {
+                                        int ts = getTimestampUsRelative(events.timestampsUs[i], true);
+                                        pushDvsEvent(e, ts, events.x[i] & 0xffff, events.y[i] & 0xffff, events.polarity[i], sizeY, outItr);
+                                    }
+                                    break;
+                                }
                                 MessageType messageType = message.messageType;
                                 ArrayType data = messageType.<ArrayType>getField("events");
                                 if (data == null) {
@@ -555,8 +747,6 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
                                 List<Field> eventFields = data.getFields();
                                 gotEventsOrFrame = true;
 
-                                int sizeY = chip.getSizeY();
-                                int eventIdxThisPacket = 0;
                                 //            int nEvents = eventFields.size();
                                 for (Field eventField : eventFields) {
                                     MessageType eventMsg = (MessageType) eventField;
@@ -566,15 +756,7 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
                                     boolean pol = eventMsg.<BoolType>getField("polarity").getValue(); // false==off, true=on
                                     Timestamp timestamp = (Timestamp) eventMsg.<TimeType>getField("ts").getValue();
                                     int ts = getTimestampUsRelative(timestamp, true); // sets nonMonotonicTimestampDetected flag, faster than throwing exception, updates largest timestamp
-//                                    ApsDvsEvent e = outItr.nextOutput();
-                                    e.setReadoutType(ApsDvsEvent.ReadoutType.DVS);
-                                    e.timestamp = ts;
-                                    e.x = (short) x;
-                                    e.y = (short) (sizeY - y - 1);
-                                    e.polarity = pol ? PolarityEvent.Polarity.Off : PolarityEvent.Polarity.On;
-                                    e.type = (byte) (pol ? 0 : 1);
-                                    maybePushEvent(e, dvsFifo, outItr);
-                                    eventIdxThisPacket++;
+                                    pushDvsEvent(e, ts, x, y, pol, sizeY, outItr);
                                 }
                         }
                         break;
@@ -598,6 +780,22 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
         return aePacketRawCollecting;
     }
 
+    /**
+     * Fills e with a DVS event in jAER coordinates and pushes it.
+     *
+     * @param y the rpg-dvs y address, which has 0 at the top
+     * @param pol the rpg-dvs polarity, false==off, true==on
+     */
+    private void pushDvsEvent(ApsDvsEvent e, int ts, int x, int y, boolean pol, int sizeY, OutputEventIterator<ApsDvsEvent> outItr) {
+        e.setReadoutType(ApsDvsEvent.ReadoutType.DVS);
+        e.timestamp = ts;
+        e.x = (short) x;
+        e.y = (short) (sizeY - y - 1);
+        e.polarity = pol ? PolarityEvent.Polarity.Off : PolarityEvent.Polarity.On;
+        e.type = (byte) (pol ? 0 : 1);
+        maybePushEvent(e, dvsFifo, outItr);
+    }
+
     /**
      * Either pushes event to fifo or just directly writes it to output packet,
      * depending on flag nonMonotonicTimestampExceptionsChecked.
@@ -953,6 +1151,8 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
 
     @Override
     synchronized public void close() throws IOException {
+        prefetchExecutor.shutdownNow();
+        cancelPrefetchedMsgs();
         if (channel != null && channel.isOpen()) {
             try {
                 channel.close();
@@ -1036,12 +1236,16 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
         }
 
         addPropertyChangeListener(listener);
+        clearPrefetchedMsgs(); // the prefetch thread must not read the bag while it is indexed
         List<BagFile.MessageIndex> idx = bagFile.generateIndexesForTopicList(topicsToAdd, progressMonitor);
-        msgIndexes.addAll(idx);
+        // build a new list, since prefetched messages were submitted with the old one
+        List<BagFile.MessageIndex> newIndexes = new ArrayList(msgIndexes);
+        newIndexes.addAll(idx);
+        Collections.sort(newIndexes);
+        msgIndexes = newIndexes;
         for (String topic : topics) {
             msgListeners.put(topic, listener);
         }
-        Collections.sort(msgIndexes);
     }
 
     /**
@@ -1070,18 +1274,38 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
         return nonMonotonicTimestampDetected;
     }
 
+    /**
+     * Stores the message index in a sidecar file. The file starts with the
+     * cache version, the length and modification time of the bag file and the
+     * indexed topics, so that a cache that does not match the bag is not used.
+     * The cache is written to a temporary file that is renamed when complete,
+     * so an interrupted write never leaves a truncated cache.
+     */
     synchronized private void cacheMsgIndexes() {
         try {
             File file = new File(messageIndexesCacheFileName());
-            if (file.exists() && file.canRead() && file.isFile()) {
-                log.info("cached indexes " + file + " for file " + getFile() + " already exists, not storing it again");
+            File tmpFile = new File(file.getPath() + ".tmp");
+            log.info("caching the index for rosbag file " + getFile() + " in " + file);
+            ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                oos.writeInt(MSG_INDEX_CACHE_VERSION);
+                oos.writeLong(getFile().length());
+                oos.writeLong(getFile().lastModified());
+                oos.writeObject(new ArrayList<String>(topicList));
+                oos.writeObject(msgIndexes);
+            } finally {
+                oos.close();
+            }
+            if (file.exists() && !file.delete()) {
+                log.warning("could not replace old cached index " + file);
+                tmpFile.delete();
+                return;
+            }
+            if (!tmpFile.renameTo(file)) {
+                log.warning("could not rename " + tmpFile + " to " + file);
+                tmpFile.delete();
                 return;
             }
-            log.info("caching the index for rosbag file " + getFile() + " in " + file);
-            FileOutputStream out = new FileOutputStream(file);
-            ObjectOutputStream oos = new ObjectOutputStream(out);
-            oos.writeObject(msgIndexes);
-            oos.flush();
             log.info("cached the index for rosbag file " + getFile() + " in " + file);
         } catch (Exception e) {
             log.warning("could not cache the message index to disk: " + e.toString());
@@ -1104,9 +1328,23 @@ public class RosbagFileInputStream implements AEFileInputStreamInterface, Rosbag
                 }
                 progressMonitor.setNote("reading cached index from " + file);
             }
-            FileInputStream in = new FileInputStream(file);
-            ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(in));
-            List<BagFile.MessageIndex> tmpIdx = (List<BagFile.MessageIndex>) ois.readObject();
+            List<BagFile.MessageIndex> tmpIdx;
+            ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            try {
+                if (ois.readInt() != MSG_INDEX_CACHE_VERSION
+                        || ois.readLong() != getFile().length()
+                        || ois.readLong() != getFile().lastModified()
+                        || !topicList.equals(ois.readObject())) {
+                    log.info("cached index " + file + " does not match " + getFile() + ", regenerating it");
+                    return false;
+                }
+                tmpIdx = (List<BagFile.MessageIndex>) ois.readObject();
+            } finally {
+                ois.close();
+            }
+            if (tmpIdx.isEmpty()) {
+                return false;
+            }
             msgIndexes = tmpIdx;
             long ms = System.currentTimeMillis() - startTime;
             log.info("done after " + ms + "ms with reading cached index for rosbag file " + getFile() + " from " + file);
@@ -0,0 +1,548 @@
+package net.sf.jaer.eventio.synthetic;
+
+import java.awt.Point;
+import java.util.ArrayList;
+
+import eu.seebetter.ini.chips.DavisChip;
+import eu.seebetter.ini.chips.davis.DavisBaseCamera;
+import eu.seebetter.ini.chips.davis.imu.IMUSample;
+import eu.seebetter.ini.chips.davis.imu.IMUSampleType;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.event.OutputEventIterator;
+import net.sf.jaer.event.PolarityEvent;
+import net.sf.jaer.hardwareinterface.sim.SimulatedEventSource;
+
+/**
+ * Generates deterministic streams of raw DVS events from a set of
+ * {@link SyntheticStimulus}, optionally interleaved with DAVIS APS frames
+ * and IMU samples, for load tests, benchmarks and regression tests of event
+ * filters. The same seed and stimuli always give the same stream.
+ * <p>
+ * DVS events are a Poisson process whose rate is the sum of the rates of the
+ * stimuli. The raw addresses are encoded in the format of the chip given to
+ * {@link #forChip}, so the packets can be extracted by the chip's own event
+ * extractor, played back by a
+ * {@link net.sf.jaer.hardwareinterface.sim.SimulatedAEMonitor}, or written to
+ * a file. {@link #nextPolarityPacket} skips the raw encoding and fills
+ * PolarityEvents directly, for benchmarks of filters alone.
+ * <p>
+ * For example, 2 Meps of noise and a moving edge on a DAVIS346:
+ * <pre>
+ * SyntheticEventGenerator g = SyntheticEventGenerator.forChip(chip, 42);
+ * g.addStimulus(new SyntheticStimulus.Noise(2e6f));
+ * g.addStimulus(new SyntheticStimulus.MovingEdge(5e6f, 30, 500, 2, true));
+ * EventPacket packet = chip.getEventExtractor().extractPacket(g.nextPacketByTime(raw, 10000));
+ * </pre>
+ */
+public class SyntheticEventGenerator implements SimulatedEventSource {
+
+    /** Encodes DVS events as raw addresses of a chip */
+    public interface AddressEncoder {
+
+        /**
+         * @param x the x address as extracted
+         * @param y the y address as extracted
+         * @param on true for an ON event
+         * @return the raw address
+         */
+        public int encode(int x, int y, boolean on);
+    }
+
+    /**
+     * Encodes events in the DAVIS format of {@link DavisChip}, where the raw x
+     * address is flipped.
+     */
+    public static class DavisAddressEncoder implements AddressEncoder {
+
+        private final int sx1;
+
+        public DavisAddressEncoder(int sizeX) {
+            sx1 = sizeX - 1;
+        }
+
+        @Override
+        public int encode(int x, int y, boolean on) {
+            return DavisChip.ADDRESS_TYPE_DVS | ((sx1 - x) << DavisChip.XSHIFT) | (y << DavisChip.YSHIFT) | (on ? DavisChip.POLMASK : 0);
+        }
+    }
+
+    /**
+     * Encodes events with {@link EventExtractor2D#getAddressFromCell}, with
+     * cell type 1 for ON events, which suits the DVS128 family.
+     */
+    public static class ExtractorAddressEncoder implements AddressEncoder {
+
+        private final EventExtractor2D extractor;
+
+        public ExtractorAddressEncoder(EventExtractor2D extractor) {
+            this.extractor = extractor;
+        }
+
+        @Override
+        public int encode(int x, int y, boolean on) {
+            return extractor.getAddressFromCell(x, y, on ? 1 : 0);
+        }
+    }
+
+    private final int sizeX, sizeY;
+    private final long seed;
+    private final AddressEncoder encoder;
+    private final AEChip chip;
+    private final ArrayList<SyntheticStimulus> stimuli = new ArrayList<SyntheticStimulus>();
+    // stimuli and their cumulative rates as fractions of the total rate, for picking the stimulus of each event
+    private SyntheticStimulus[] stimulusArray = new SyntheticStimulus[0];
+    private float[] cumulativeRate = new float[0];
+    private double meanIntervalUs = Double.POSITIVE_INFINITY;
+
+    private long rng;
+    private double nextDvsUs;
+    private long lastTimestampUs;
+    // true once events were generated since the last rewind
+    private boolean started;
+
+    // APS frames, DAVIS only
+    private int frameIntervalUs = 0, exposureUs = 10000, readoutUs = 5000;
+    private Point apsFirstPixel, apsLastPixel;
+    private long frameStartUs;
+    private int apsIndex, frameNumber;
+
+    // IMU samples, DAVIS only
+    private int imuIntervalUs = 0;
+    private long nextImuUs;
+    private final short[] imuData = new short[IMUSample.SIZE_EVENTS];
+
+    /**
+     * Creates a generator for an array of the given size that encodes events
+     * in the DAVIS format.
+     *
+     * @param sizeX the number of columns
+     * @param sizeY the number of rows
+     * @param seed the seed of the random numbers
+     */
+    public SyntheticEventGenerator(int sizeX, int sizeY, long seed) {
+        this(sizeX, sizeY, seed, new DavisAddressEncoder(sizeX), null);
+    }
+
+    /**
+     * Creates a generator with a custom address encoding.
+     *
+     * @param sizeX the number of columns
+     * @param sizeY the number of rows
+     * @param seed the seed of the random numbers
+     * @param encoder the address encoder
+     */
+    public SyntheticEventGenerator(int sizeX, int sizeY, long seed, AddressEncoder encoder) {
+        this(sizeX, sizeY, seed, encoder, null);
+    }
+
+    private SyntheticEventGenerator(int sizeX, int sizeY, long seed, AddressEncoder encoder, AEChip chip) {
+        if ((sizeX < 1) || (sizeY < 1)) {
+            throw new IllegalArgumentException("array size " + sizeX + "x" + sizeY + " is empty");
+        }
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.seed = seed;
+        this.encoder = encoder;
+        this.chip = chip;
+        apsFirstPixel = new Point(0, 0);
+        apsLastPixel = new Point(sizeX - 1, sizeY - 1);
+        if (chip instanceof DavisBaseCamera) {
+            DavisBaseCamera davis = (DavisBaseCamera) chip;
+            if ((davis.getApsFirstPixelReadOut() != null) && (davis.getApsLastPixelReadOut() != null)) {
+                apsFirstPixel = davis.getApsFirstPixelReadOut();
+                apsLastPixel = davis.getApsLastPixelReadOut();
+            }
+        }
+        rewind();
+    }
+
+    /**
+     * Creates a generator with the size and raw address format of a chip.
+     * DAVIS chips get the DAVIS format and may generate frames and IMU
+     * samples; other chips must have an EventExtractor2D.
+     *
+     * @param chip the chip
+     * @param seed the seed of the random numbers
+     * @return the generator
+     */
+    public static SyntheticEventGenerator forChip(AEChip chip, long seed) {
+        AddressEncoder encoder;
+        if (chip instanceof DavisChip) {
+            encoder = new DavisAddressEncoder(chip.getSizeX());
+        } else if (chip.getEventExtractor() instanceof EventExtractor2D) {
+            encoder = new ExtractorAddressEncoder((EventExtractor2D) chip.getEventExtractor());
+        } else {
+            throw new IllegalArgumentException(chip + " has no EventExtractor2D to encode raw addresses");
+        }
+        return new SyntheticEventGenerator(chip.getSizeX(), chip.getSizeY(), seed, encoder, chip);
+    }
+
+    /**
+     * Adds a stimulus to the scene. Its rate adds to the total event rate.
+     *
+     * @param stimulus the stimulus
+     */
+    public void addStimulus(SyntheticStimulus stimulus) {
+        stimulus.setSize(sizeX, sizeY);
+        stimuli.add(stimulus);
+        updateRates();
+    }
+
+    /** Removes all stimuli. */
+    public void clearStimuli() {
+        stimuli.clear();
+        updateRates();
+    }
+
+    private void updateRates() {
+        stimulusArray = stimuli.toArray(new SyntheticStimulus[stimuli.size()]);
+        cumulativeRate = new float[stimulusArray.length];
+        double total = 0;
+        for (SyntheticStimulus s : stimulusArray) {
+            total += s.getRateEps();
+        }
+        double sum = 0;
+        for (int i = 0; i < stimulusArray.length; i++) {
+            sum += stimulusArray[i].getRateEps();
+            cumulativeRate[i] = (float) (sum / total);
+        }
+        if (cumulativeRate.length > 0) {
+            cumulativeRate[cumulativeRate.length - 1] = 1; // guard against rounding
+        }
+        meanIntervalUs = total > 0 ? 1e6 / total : Double.POSITIVE_INFINITY;
+        if (!started) { // draw the first interval from the total rate, as after a rewind
+            rewind();
+        } else if (Double.isInfinite(nextDvsUs)) { // there were no stimuli, start the DVS events from now on
+            nextDvsUs = lastTimestampUs + nextInterval();
+        }
+    }
+
+    /**
+     * @return the total DVS event rate of the stimuli in events/s
+     */
+    public double getEventRateEps() {
+        return 1e6 / meanIntervalUs;
+    }
+
+    /**
+     * Enables APS frames, which are only available for the DAVIS format. Each
+     * frame consists of a reset read and a signal read of every pixel, read
+     * out over readoutUs starting at the start of the frame and at the end of
+     * the exposure.
+     *
+     * @param frameIntervalUs the frame interval in us, 0 to disable frames
+     * @param exposureUs the exposure in us, at least readoutUs
+     * @param readoutUs the time to read out all pixels once
+     */
+    public void setFrames(int frameIntervalUs, int exposureUs, int readoutUs) {
+        if (frameIntervalUs > 0) {
+            if (!(encoder instanceof DavisAddressEncoder)) {
+                throw new IllegalStateException("APS frames need the DAVIS address format");
+            }
+            if ((readoutUs < 1) || (exposureUs < readoutUs) || ((exposureUs + readoutUs) > frameIntervalUs)) {
+                throw new IllegalArgumentException("need 1<=readoutUs<=exposureUs and exposureUs+readoutUs<=frameIntervalUs, got frameIntervalUs="
+                        + frameIntervalUs + " exposureUs=" + exposureUs + " readoutUs=" + readoutUs);
+            }
+        }
+        this.frameIntervalUs = Math.max(0, frameIntervalUs);
+        this.exposureUs = exposureUs;
+        this.readoutUs = readoutUs;
+    }
+
+    /**
+     * Enables IMU samples, which are only available for the DAVIS format.
+     *
+     * @param imuIntervalUs the sample interval in us, 0 to disable IMU
+     * samples
+     * @param gyroTiltXDps the constant tilt rate in deg/s
+     * @param gyroYawYDps the constant pan rate in deg/s
+     * @param gyroRollZDps the constant roll rate in deg/s
+     */
+    public void setImu(int imuIntervalUs, float gyroTiltXDps, float gyroYawYDps, float gyroRollZDps) {
+        if ((imuIntervalUs > 0) && !(encoder instanceof DavisAddressEncoder)) {
+            throw new IllegalStateException("IMU samples need the DAVIS address format");
+        }
+        this.imuIntervalUs = Math.max(0, imuIntervalUs);
+        // invert the scalings of the IMUSample getters
+        float gyroScale = IMUSample.getGyroSensitivityScaleFactorDegPerSecPerLsb();
+        imuData[IMUSampleType.ax.code] = 0;
+        imuData[IMUSampleType.ay.code] = 0;
+        imuData[IMUSampleType.az.code] = (short) (1 / IMUSample.getAccelSensitivityScaleFactorGPerLsb()); // 1g
+        imuData[IMUSampleType.temp.code] = (short) ((25 - 35) * 340); // 25C
+        imuData[IMUSampleType.gx.code] = clipShort(-gyroTiltXDps / gyroScale);
+        imuData[IMUSampleType.gy.code] = clipShort(gyroYawYDps / gyroScale);
+        imuData[IMUSampleType.gz.code] = clipShort(-gyroRollZDps / gyroScale);
+    }
+
+    private static short clipShort(float v) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(v)));
+    }
+
+    /** Restarts the stream from time 0 with the initial seed. */
+    @Override
+    public void rewind() {
+        rng = seed ^ 0x9E3779B97F4A7C15L;
+        if (rng == 0) {
+            rng = 1;
+        }
+        lastTimestampUs = 0;
+        nextDvsUs = nextInterval();
+        started = false;
+        frameStartUs = 0;
+        apsIndex = 0;
+        frameNumber = 0;
+        nextImuUs = 0;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Fills arrays with the next events. The stream never ends.
+     *
+     * @return max
+     */
+    @Override
+    public int read(int[] addresses, int[] timestamps, int offset, int max) {
+        return generate(addresses, timestamps, offset, max, Long.MAX_VALUE);
+    }
+
+    /**
+     * Appends the next n events to a raw packet.
+     *
+     * @param out the packet, or null to allocate one
+     * @param n the number of events
+     * @return the packet
+     */
+    public AEPacketRaw nextPacketByNumber(AEPacketRaw out, int n) {
+        if (out == null) {
+            out = new AEPacketRaw(n);
+        }
+        int start = out.getNumEvents();
+        out.ensureCapacity(start + n);
+        int m = generate(out.getAddresses(), out.getTimestamps(), start, n, Long.MAX_VALUE);
+        out.setNumEvents(start + m);
+        return out;
+    }
+
+    /**
+     * Appends the events of the next dtUs to a raw packet.
+     *
+     * @param out the packet, or null to allocate one
+     * @param dtUs the duration in us
+     * @return the packet
+     */
+    public AEPacketRaw nextPacketByTime(AEPacketRaw out, int dtUs) {
+        if (out == null) {
+            out = new AEPacketRaw();
+        }
+        long untilUs = (long) Math.floor(nextDvsUs);
+        if (imuIntervalUs > 0) {
+            untilUs = Math.min(untilUs, nextImuUs);
+        }
+        if (frameIntervalUs > 0) {
+            untilUs = Math.min(untilUs, apsTimeUs(apsIndex));
+        }
+        untilUs += dtUs;
+        // the expected number of events plus a margin, grown if the packet turns out too small
+        int expected = (int) Math.min(Integer.MAX_VALUE / 2, (dtUs / meanIntervalUs) + (frameIntervalUs > 0 ? ((2L * sizeX * sizeY * dtUs) / frameIntervalUs) : 0)
+                + (imuIntervalUs > 0 ? ((IMUSample.SIZE_EVENTS * (long) dtUs) / imuIntervalUs) : 0));
+        int chunk = Math.max(1024, expected + (expected >> 3) + IMUSample.SIZE_EVENTS);
+        while (true) {
+            int start = out.getNumEvents();
+            out.ensureCapacity(start + chunk);
+            int m = generate(out.getAddresses(), out.getTimestamps(), start, chunk, untilUs);
+            out.setNumEvents(start + m);
+            if (m < chunk - IMUSample.SIZE_EVENTS) { // stopped by the time limit, not by the room left
+                return out;
+            }
+        }
+    }
+
+    /**
+     * Fills a packet of PolarityEvents with the next n DVS events, without
+     * encoding raw addresses. APS frames and IMU samples are not generated.
+     *
+     * @param out the packet, which is cleared first
+     * @param n the number of events
+     * @return the packet
+     */
+    public EventPacket<PolarityEvent> nextPolarityPacket(EventPacket<PolarityEvent> out, int n) {
+        OutputEventIterator<PolarityEvent> outItr = out.outputIterator();
+        if (stimulusArray.length == 0) {
+            return out;
+        }
+        started = true;
+        for (int i = 0; i < n; i++) {
+            int p = nextStimulusEvent();
+            PolarityEvent e = outItr.nextOutput();
+            e.x = (short) (p & SyntheticStimulus.COORD_MASK);
+            e.y = (short) ((p >>> SyntheticStimulus.COORD_BITS) & SyntheticStimulus.COORD_MASK);
+            boolean on = (p & SyntheticStimulus.ON_BIT) != 0;
+            e.polarity = on ? PolarityEvent.Polarity.On : PolarityEvent.Polarity.Off;
+            e.type = (byte) (on ? 1 : 0);
+            e.timestamp = (int) nextDvsUs;
+            e.address = 0;
+            nextDvsUs += nextInterval();
+        }
+        return out;
+    }
+
+    /**
+     * @return the chip given to {@link #forChip}, or null
+     */
+    public AEChip getChip() {
+        return chip;
+    }
+
+    /**
+     * Writes up to max events with timestamps before untilUs.
+     *
+     * @return the number of events written
+     */
+    private int generate(int[] addresses, int[] timestamps, int offset, int max, long untilUs) {
+        final AddressEncoder encoder = this.encoder;
+        final boolean dvs = stimulusArray.length > 0;
+        started = true;
+        int n = 0;
+        while (n < max) {
+            long imuUs = imuIntervalUs > 0 ? nextImuUs : Long.MAX_VALUE;
+            long apsUs = frameIntervalUs > 0 ? apsTimeUs(apsIndex) : Long.MAX_VALUE;
+            long bound = Math.min(untilUs, Math.min(imuUs, apsUs));
+            // DVS events until the next IMU or APS event
+            if (dvs) {
+                double t = nextDvsUs, last = -1;
+                while ((n < max) && (t < bound)) {
+                    int p = nextStimulusEvent(t);
+                    int o = offset + n++;
+                    addresses[o] = encoder.encode(p & SyntheticStimulus.COORD_MASK, (p >>> SyntheticStimulus.COORD_BITS) & SyntheticStimulus.COORD_MASK,
+                            (p & SyntheticStimulus.ON_BIT) != 0);
+                    timestamps[o] = (int) (long) t;
+                    last = t;
+                    t += nextInterval();
+                }
+                if (last >= 0) {
+                    lastTimestampUs = (long) last;
+                }
+                nextDvsUs = t;
+                if (n >= max) {
+                    break;
+                }
+            }
+            if (bound >= untilUs) {
+                break;
+            }
+            if (imuUs <= apsUs) {
+                if (max - n < IMUSample.SIZE_EVENTS) {
+                    break; // samples are not split across packets
+                }
+                IMUSample sample = new IMUSample((int) imuUs, imuData);
+                for (IMUSampleType type : IMUSampleType.values()) {
+                    int o = offset + n + type.code;
+                    addresses[o] = IMUSample.computeAddress(sample, type);
+                    timestamps[o] = (int) imuUs;
+                }
+                lastTimestampUs = imuUs;
+                n += IMUSample.SIZE_EVENTS;
+                nextImuUs += imuIntervalUs;
+            } else {
+                addresses[offset + n] = apsAddress(apsIndex);
+                timestamps[offset + n] = (int) apsUs;
+                lastTimestampUs = apsUs;
+                n++;
+                if (++apsIndex == 2 * sizeX * sizeY) {
+                    apsIndex = 0;
+                    frameNumber++;
+                    frameStartUs += frameIntervalUs;
+                }
+            }
+        }
+        return n;
+    }
+
+    private int nextStimulusEvent() {
+        return nextStimulusEvent(nextDvsUs);
+    }
+
+    private int nextStimulusEvent(double t) {
+        final SyntheticStimulus[] s = stimulusArray;
+        int k = 0;
+        if (s.length > 1) {
+            final float u = nextFloat();
+            final float[] c = cumulativeRate;
+            while ((k < (c.length - 1)) && (u >= c[k])) {
+                k++;
+            }
+        }
+        return s[k].next(t, this);
+    }
+
+    /** @return an exponentially distributed interval between DVS events */
+    private double nextInterval() {
+        // 53 random bits in (0,1]
+        return -Math.log(((nextLong() >>> 11) + 1) * 0x1.0p-53) * meanIntervalUs;
+    }
+
+    /** The time of an APS sample; reset reads start at the frame start, signal reads after the exposure */
+    private long apsTimeUs(int index) {
+        int n = sizeX * sizeY;
+        if (index < n) {
+            return frameStartUs + (((long) index * readoutUs) / n);
+        }
+        return frameStartUs + exposureUs + (((long) (index - n) * readoutUs) / n);
+    }
+
+    /**
+     * The raw address of an APS sample. Pixels are read column by column from
+     * the first to the last readout pixel of the chip, which is how the DAVIS
+     * extractor finds the start and end of frames.
+     */
+    private int apsAddress(int index) {
+        int n = sizeX * sizeY;
+        boolean reset = index < n;
+        int k = reset ? index : index - n;
+        int col = k / sizeY, row = k - (col * sizeY);
+        int x = apsLastPixel.x >= apsFirstPixel.x ? apsFirstPixel.x + col : apsFirstPixel.x - col;
+        int y = apsLastPixel.y >= apsFirstPixel.y ? apsFirstPixel.y + row : apsFirstPixel.y - row;
+        int resetLevel = DavisChip.MAX_ADC - 100, adc;
+        if (reset) {
+            adc = resetLevel;
+        } else {
+            // a diagonal grating that drifts by a few pixels per frame
+            int phase = (x + y + (frameNumber * 4)) & 63;
+            int intensity = phase < 32 ? phase : 63 - phase;
+            adc = resetLevel - 100 - (intensity * 20);
+        }
+        return DavisChip.ADDRESS_TYPE_APS | (y << DavisChip.YSHIFT) | (x << DavisChip.XSHIFT)
+                | ((reset ? 0 : 1) << DavisChip.ADC_READCYCLE_SHIFT) | (adc & DavisChip.ADC_DATA_MASK);
+    }
+
+    // xorshift64* random numbers, which are much cheaper than java.util.Random
+
+    final long nextLong() {
+        long x = rng;
+        x ^= x >>> 12;
+        x ^= x << 25;
+        x ^= x >>> 27;
+        rng = x;
+        return x * 0x2545F4914F6CDD1DL;
+    }
+
+    /** @return a uniformly distributed float in [0,1) */
+    final float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    /** @return a uniformly distributed int in [0,n) */
+    final int nextInt(int n) {
+        return (int) (((nextLong() >>> 32) * n) >>> 32);
+    }
+
+    final boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+}
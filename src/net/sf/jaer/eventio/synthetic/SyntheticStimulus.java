@@ -0,0 +1,279 @@
+package net.sf.jaer.eventio.synthetic;
+
+/**
+ * A component of the scene of a {@link SyntheticEventGenerator}, e.g. a
+ * moving edge or background noise. Each stimulus emits DVS events as a
+ * Poisson process with its own rate; the generator decides when the next
+ * event occurs and which stimulus emits it, and the stimulus decides where
+ * and with which polarity.
+ * <p>
+ * Stimuli draw all their random numbers from the generator, so the whole
+ * stream is determined by the seed of the generator.
+ */
+abstract public class SyntheticStimulus {
+
+    /** Bits of x and y in a packed event */
+    static final int COORD_BITS = 15, COORD_MASK = (1 << COORD_BITS) - 1, ON_BIT = 1 << 30;
+
+    protected float rateEps;
+    protected int sizeX, sizeY;
+
+    /**
+     * @param rateEps the mean event rate of this stimulus in events/s
+     */
+    public SyntheticStimulus(float rateEps) {
+        setRateEps(rateEps);
+    }
+
+    /**
+     * Returns the next event of this stimulus.
+     *
+     * @param timeUs the time of the event in us since the generator started
+     * @param g the generator, which supplies the random numbers
+     * @return the event packed with {@link #pack}
+     */
+    abstract int next(double timeUs, SyntheticEventGenerator g);
+
+    /** Called by the generator when the stimulus is added. */
+    void setSize(int sizeX, int sizeY) {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+    }
+
+    /** Packs a pixel and polarity, clipping the pixel to the array. */
+    final int pack(int x, int y, boolean on) {
+        if (x < 0) {
+            x = 0;
+        } else if (x >= sizeX) {
+            x = sizeX - 1;
+        }
+        if (y < 0) {
+            y = 0;
+        } else if (y >= sizeY) {
+            y = sizeY - 1;
+        }
+        return x | (y << COORD_BITS) | (on ? ON_BIT : 0);
+    }
+
+    /**
+     * @return the mean event rate of this stimulus in events/s
+     */
+    public float getRateEps() {
+        return rateEps;
+    }
+
+    /**
+     * Sets the rate. Takes effect for a generator when the stimulus is added.
+     *
+     * @param rateEps the mean event rate of this stimulus in events/s
+     */
+    public final void setRateEps(float rateEps) {
+        if (rateEps < 0) {
+            throw new IllegalArgumentException("rateEps=" + rateEps + " must not be negative");
+        }
+        this.rateEps = rateEps;
+    }
+
+    /** Folds a coordinate into [0,size) like a ball bouncing between walls. */
+    static float bounce(double p, float size) {
+        if (size <= 0) {
+            return 0;
+        }
+        double period = 2 * size;
+        double q = p % period;
+        if (q < 0) {
+            q += period;
+        }
+        return (float) (q < size ? q : period - q);
+    }
+
+    /** Background activity: uniformly distributed pixels of random polarity. */
+    public static class Noise extends SyntheticStimulus {
+
+        /**
+         * @param rateEps the total noise rate over the array in events/s
+         */
+        public Noise(float rateEps) {
+            super(rateEps);
+        }
+
+        @Override
+        int next(double timeUs, SyntheticEventGenerator g) {
+            return pack(g.nextInt(sizeX), g.nextInt(sizeY), g.nextBoolean());
+        }
+    }
+
+    /**
+     * A straight bright edge of infinite length that moves across the array
+     * and reappears on the other side. Events lie within a band of the given
+     * width behind the edge and are ON events, or OFF events for a dark edge.
+     */
+    public static class MovingEdge extends SyntheticStimulus {
+
+        private final float nx, ny, speedPxPerUs, widthPx;
+        private final boolean on;
+        private float cx, cy, span;
+        // the edge position and the part of it inside the array are recomputed once per us,
+        // which is shared by many events at high rates
+        private long cachedUs = Long.MIN_VALUE;
+        private float cachedAlong, acrossLo, acrossHi;
+
+        /**
+         * @param rateEps the event rate in events/s
+         * @param directionDeg the direction of motion, 0 for rightwards, 90
+         * for upwards
+         * @param speedPps the speed in pixels/s
+         * @param widthPx the width of the band of events behind the edge
+         * @param on true for a bright edge (ON events), false for a dark one
+         */
+        public MovingEdge(float rateEps, float directionDeg, float speedPps, float widthPx, boolean on) {
+            super(rateEps);
+            double a = Math.toRadians(directionDeg);
+            nx = (float) Math.cos(a);
+            ny = (float) Math.sin(a);
+            speedPxPerUs = speedPps * 1e-6f;
+            this.widthPx = widthPx;
+            this.on = on;
+        }
+
+        @Override
+        void setSize(int sizeX, int sizeY) {
+            super.setSize(sizeX, sizeY);
+            cx = sizeX / 2f;
+            cy = sizeY / 2f;
+            span = (Math.abs(nx) * sizeX) + (Math.abs(ny) * sizeY); // the extent of the array along the motion
+        }
+
+        @Override
+        int next(double timeUs, SyntheticEventGenerator g) {
+            long us = (long) timeUs;
+            if (us != cachedUs) {
+                cachedUs = us;
+                cachedAlong = (float) ((us * (double) speedPxPerUs) % span) - (span / 2);
+                // the edge is the line c + n*along + (-ny,nx)*across; find the range of across inside the array
+                float px = cx + (nx * cachedAlong), py = cy + (ny * cachedAlong);
+                acrossLo = -Float.MAX_VALUE;
+                acrossHi = Float.MAX_VALUE;
+                clipAcross(px, -ny, sizeX);
+                clipAcross(py, nx, sizeY);
+                if (acrossLo > acrossHi) {
+                    acrossLo = acrossHi = 0;
+                }
+            }
+            float along = cachedAlong - (g.nextFloat() * widthPx); // signed distance of the event from the center along the motion
+            float across = acrossLo + (g.nextFloat() * (acrossHi - acrossLo));
+            return pack((int) ((cx + (nx * along)) - (ny * across)), (int) (cy + (ny * along) + (nx * across)), on);
+        }
+
+        /** Narrows the range of across to where 0 <= p + d*across < size. */
+        private void clipAcross(float p, float d, int size) {
+            if (Math.abs(d) < 1e-6f) {
+                return;
+            }
+            float a = -p / d, b = (size - p) / d;
+            acrossLo = Math.max(acrossLo, Math.min(a, b));
+            acrossHi = Math.min(acrossHi, Math.max(a, b));
+        }
+    }
+
+    /**
+     * A bright disk that moves with constant velocity and bounces off the
+     * borders of the array. Events lie on its circumference: ON events on the
+     * leading half, OFF events on the trailing half.
+     */
+    public static class MovingBlob extends SyntheticStimulus {
+
+        private static final int ANGLES = 256;
+        private static final float[] COS = new float[ANGLES], SIN = new float[ANGLES];
+
+        static {
+            for (int i = 0; i < ANGLES; i++) {
+                COS[i] = (float) Math.cos((2 * Math.PI * i) / ANGLES);
+                SIN[i] = (float) Math.sin((2 * Math.PI * i) / ANGLES);
+            }
+        }
+
+        private final float radiusPx, x0, y0, vxPxPerUs, vyPxPerUs;
+        // center and direction of motion, recomputed once per us
+        private long cachedUs = Long.MIN_VALUE;
+        private float x, y, vx, vy;
+
+        /**
+         * @param rateEps the event rate in events/s
+         * @param radiusPx the radius of the disk in pixels
+         * @param x0 the x position of the center at time 0
+         * @param y0 the y position of the center at time 0
+         * @param vxPps the x velocity in pixels/s
+         * @param vyPps the y velocity in pixels/s
+         */
+        public MovingBlob(float rateEps, float radiusPx, float x0, float y0, float vxPps, float vyPps) {
+            super(rateEps);
+            this.radiusPx = radiusPx;
+            this.x0 = x0;
+            this.y0 = y0;
+            vxPxPerUs = vxPps * 1e-6f;
+            vyPxPerUs = vyPps * 1e-6f;
+        }
+
+        @Override
+        int next(double timeUs, SyntheticEventGenerator g) {
+            long us = (long) timeUs;
+            if (us != cachedUs) {
+                cachedUs = us;
+                // the center moves within the array shrunk by the radius
+                x = radiusPx + bounce((x0 - radiusPx) + (us * vxPxPerUs), sizeX - (2 * radiusPx));
+                y = radiusPx + bounce((y0 - radiusPx) + (us * vyPxPerUs), sizeY - (2 * radiusPx));
+                // the direction of motion flips at the borders, so take it from the derivative of the folded position
+                vx = bounce((x0 - radiusPx) + ((us + 1000) * vxPxPerUs), sizeX - (2 * radiusPx)) - (x - radiusPx);
+                vy = bounce((y0 - radiusPx) + ((us + 1000) * vyPxPerUs), sizeY - (2 * radiusPx)) - (y - radiusPx);
+            }
+            int a = g.nextInt(ANGLES);
+            boolean on = ((COS[a] * vx) + (SIN[a] * vy)) >= 0;
+            return pack((int) (x + (radiusPx * COS[a])), (int) (y + (radiusPx * SIN[a])), on);
+        }
+    }
+
+    /**
+     * A rectangle that flickers at a fixed frequency, e.g. a lamp on mains
+     * power. Its events are uniformly distributed over the rectangle; they are
+     * ON events during the first half of each period and OFF events during the
+     * second half.
+     */
+    public static class Flicker extends SyntheticStimulus {
+
+        private final int x, y, width, height;
+        private final double frequencyPerUs;
+        private long cachedUs = Long.MIN_VALUE;
+        private boolean on;
+
+        /**
+         * @param rateEps the event rate in events/s
+         * @param x the left column of the rectangle
+         * @param y the bottom row of the rectangle
+         * @param width the width of the rectangle
+         * @param height the height of the rectangle
+         * @param frequencyHz the flicker frequency in Hz
+         */
+        public Flicker(float rateEps, int x, int y, int width, int height, float frequencyHz) {
+            super(rateEps);
+            if ((width < 1) || (height < 1)) {
+                throw new IllegalArgumentException("empty flicker rectangle " + width + "x" + height);
+            }
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            frequencyPerUs = frequencyHz * 1e-6;
+        }
+
+        @Override
+        int next(double timeUs, SyntheticEventGenerator g) {
+            long us = (long) timeUs;
+            if (us != cachedUs) {
+                cachedUs = us;
+                on = ((us * frequencyPerUs) % 1) < 0.5;
+            }
+            return pack(x + g.nextInt(width), y + g.nextInt(height), on);
+        }
+    }
+}
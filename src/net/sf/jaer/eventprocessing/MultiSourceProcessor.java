@@ -6,13 +6,10 @@ package net.sf.jaer.eventprocessing;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.LinkedList;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import net.sf.jaer.aemonitor.TimestampMerger;
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
@@ -25,13 +22,14 @@ import net.sf.jaer.event.OutputEventIterator;
  */
 public abstract class MultiSourceProcessor extends EventFilter2D {
     
-    ArrayList<Queue<BasicEvent>> buffers=new ArrayList();   // Stores events to ensure monotonicity between calls.
+    SourceBuffer[] buffers;   // Stores events to ensure monotonicity between calls.
     
-    PriorityQueue<BasicEvent> pq;
+    TimestampMerger merger;
     
-    private int maxWaitTime=100000; // Maximum time to wait (in microseconds) for events from one source before continuing
+    // merge output: timestamp, index into the source buffer and source of each merged event
+    private int[] mergedTimestamps=new int[0], mergedIndices=new int[0], mergedSources=new int[0];
     
-    boolean[] queueAlive;
+    private int maxWaitTime=100000; // Maximum time to wait (in microseconds) for events from one source before continuing
     
     public int lastEventTime=Integer.MIN_VALUE;
     
@@ -53,14 +51,14 @@ public abstract class MultiSourceProcessor extends EventFilter2D {
         if (nInputs==0)
             nInputs=1;
     
-        pq=new PriorityQueue(nInputs,new EventComp());
+        merger=new TimestampMerger(nInputs);
         
+        buffers=new SourceBuffer[nInputs];
         for (int i=0; i<nInputs; i++)
-            buffers.add(new LinkedList());
+            buffers[i]=new SourceBuffer();
         
-        queueAlive=new boolean[buffers.size()];
-        bufferStarts = new int[buffers.size()];
-        bufferPrevTimes = new int[buffers.size()];
+        bufferStarts = new int[buffers.length];
+        bufferPrevTimes = new int[buffers.length];
         
         // Ensure proper comparison
         Arrays.fill(bufferStarts,Integer.MIN_VALUE);
@@ -108,13 +106,36 @@ public abstract class MultiSourceProcessor extends EventFilter2D {
         this.maxWaitTime = maxWaitTime;
     }
     
-    /** Comparator class for events, compares by timestamp */
-    class EventComp implements Comparator<BasicEvent>
-    {   @Override
-        public int compare(BasicEvent o1, BasicEvent o2) {
-            return o1.getTimestamp()-o2.getTimestamp(); // Compare might be more efficient.
+    /** Events of one source waiting to be merged. The timestamps are kept in
+     * a primitive array that the TimestampMerger reads directly. */
+    static final class SourceBuffer
+    {
+        BasicEvent[] events=new BasicEvent[256];
+        int[] timestamps=new int[256];
+        int head=0, tail=0;
+        
+        void add(BasicEvent ev)
+        {   if (tail==events.length)
+            {   int n=tail-head;
+                if (n*2>events.length)
+                {   events=Arrays.copyOf(events, events.length*2);
+                    timestamps=Arrays.copyOf(timestamps, timestamps.length*2);
+                }
+                // move the waiting events to the start
+                System.arraycopy(events, head, events, 0, n);
+                System.arraycopy(timestamps, head, timestamps, 0, n);
+                Arrays.fill(events, n, tail, null);
+                head=0;
+                tail=n;
+            }
+            events[tail]=ev;
+            timestamps[tail++]=ev.timestamp;
+        }
+        
+        void clear()
+        {   Arrays.fill(events, head, tail, null);
+            head=tail=0;
         }
-
     }
     
     /** Take in a set of EventPackets and merge them into a single packet, 
@@ -131,6 +152,8 @@ public abstract class MultiSourceProcessor extends EventFilter2D {
      * Call 2:
      * Source 1 produces a packet starting at t=2;
      * 
+     * The buffered events are merged by a TimestampMerger, which copies runs
+     * of events from one source at a time.
      *  
      * @return 
      */
@@ -203,12 +226,7 @@ public abstract class MultiSourceProcessor extends EventFilter2D {
                     evo.copyFrom(ev);
                     evo.source = (byte) i;
                     
-                    LinkedList<BasicEvent> testBuf=(LinkedList)buffers.get(i);
-                    
-                    //if (!testBuf.isEmpty() && testBuf.getLast().timestamp>evo.timestamp)
-                    //     System.out.println("NonMonotonicTimeStamp!");
-                    
-                    buffers.get(i).add(evo);
+                    buffers[i].add(evo);
                 }
 
                 if (ev!=null)
@@ -221,78 +239,43 @@ public abstract class MultiSourceProcessor extends EventFilter2D {
             Logger.getLogger(MultiSourceProcessor.class.getName()).log(Level.SEVERE, null, ex);
         }
         
-        goToTime-=getMaxWaitTime();
+        // if no source delivered events, everything buffered is released up to the first source that runs out
+        goToTime = goToTime==Integer.MIN_VALUE ? Integer.MAX_VALUE : goToTime-getMaxWaitTime();
         
-        /* Step 2, if dead queues have received events, revive them, appendCopy their 
-         * elements back into the priority queue.
+        /* Step 2: merge the buffered events in timestamp order, up to goToTime.
+         * Sources without buffered events are skipped.  The merge stops when
+         * a source runs out of buffered events, since its next packet could
+         * still contain earlier events than those waiting in the other buffers.
          */
-        if (pq.size()<buffers.size())
-        {   for (int i=0; i<buffers.size(); i++)
-            {   if (!queueAlive[i] && !buffers.get(i).isEmpty())
-                {   BasicEvent ev=buffers.get(i).poll();
-                    ev.source=(byte)i;
-
-                    /*
-                    if (lastEventTime!=Integer.MIN_VALUE && ev.timestamp-lastEventTime<0)
-                    {   
-                        resynchronize();      
-                        throw new RuntimeException("The event-streams from your sources are out of synch. "
-                                + "by "+(ev.timestamp-lastEventTime)/1000+"ms, which is more than the max wait time of "+
-                                maxWaitTime/1000+"ms.  Either synchronize your sources or set a bigger maxWaitTime.");
-                    }
-                    */
-                    
-                    pq.add(ev);
-           
-                    queueAlive[i]=true;
-                }
-            }
+        int total=0;
+        for (int i=0; i<buffers.length; i++)
+        {   SourceBuffer b=buffers[i];
+            merger.setSource(i, b.timestamps, null, b.head, b.tail);
+            total+=b.tail-b.head;
         }
-                
-            
-        /* Step 3: pull ordered events from priority queue.  Replace each pulled
-         * event with an event originating from the same buffer as the pulled 
-         * event, ensuring that pq always contains 1 element from each source.  
-         * Run until one of the source buffers is empty.
-         */
+        if (mergedTimestamps.length<total)
+        {   mergedTimestamps=new int[total];
+            mergedIndices=new int[total];
+            mergedSources=new int[total];
+        }
+        int n=merger.merge(mergedTimestamps, mergedIndices, mergedSources, 0, total, goToTime, true);
+        
         if (out==null)// Why does this happen?
             out=new EventPacket();
         out.clear();
         OutputEventIterator<BasicEvent> outItr=out.outputIterator();
         
-        BasicEvent ev=null;
-        while(!pq.isEmpty())
-        {
-            
-            if (pq.peek().timestamp>goToTime)
-                break;
-            
-            // Pull next output event from head of Priority Queue, write to output
-            ev=pq.poll();
-                        
-            outItr.writeToNextOutput(ev);
-            
-            // If last-pulled-from-buffer is empty  
-            if (buffers.get(ev.source).isEmpty())
-            {   // If buffer did get input this round, return
-                if (queueAlive[ev.source])
-                {   // Mark the queue as dead, do not replace item polled from Priority Queue, return
-                    queueAlive[ev.source]=false;
-                    break;
-                }
-                
-            }
-            else 
-            {
-                // Replace event polled with event from same buffer
-                BasicEvent pulledFromBuffer=buffers.get(ev.source).poll();
-                
-                pq.add(pulledFromBuffer);
-            }
+        for (int k=0; k<n; k++)
+        {   SourceBuffer b=buffers[mergedSources[k]];
+            int idx=mergedIndices[k];
+            outItr.writeToNextOutput(b.events[idx]);
+            b.events[idx]=null;
         }
+        for (int i=0; i<buffers.length; i++)
+            buffers[i].head=merger.getPosition(i);
         
-        if (ev!=null)
-            lastEventTime=ev.timestamp;
+        if (n>0)
+            lastEventTime=mergedTimestamps[n-1];
         
         return out;
         
@@ -302,12 +285,10 @@ public abstract class MultiSourceProcessor extends EventFilter2D {
     public void resynchronize()
     {
         lastEventTime=Integer.MIN_VALUE;
-        for (int i=0;i<buffers.size();i++)
+        for (int i=0;i<buffers.length;i++)
         {   
             bufferStarts[i] = Integer.MIN_VALUE;
-            buffers.get(i).clear();
-            queueAlive[i]=false;
+            buffers[i].clear();
         }
-        pq.clear();
     }
 }
@@ -28,6 +28,7 @@ import net.sf.jaer.graphics.ChipCanvas;
 import net.sf.jaer.graphics.DisplayMethod2D;
 import net.sf.jaer.graphics.FrameAnnotater;
 import net.sf.jaer.util.EngineeringFormat;
+import ch.unizh.ini.jaer.projects.davis.frames.ApsFrame;
 import ch.unizh.ini.jaer.projects.davis.frames.ApsFrameExtractor;
 import com.jogamp.opengl.GLException;
 
@@ -52,6 +53,7 @@ import net.sf.jaer.graphics.MultilineAnnotationTextRenderer;
 public class ApsNoiseStatistics extends EventFilter2DMouseAdaptor implements FrameAnnotater, Observer, PropertyChangeListener {
 
     ApsFrameExtractor frameExtractor;
+    private long lastFrameNumber = -1;
     public boolean temporalNoiseEnabled = getBoolean("temporalNoiseEnabled", true);
     public boolean spatialHistogramEnabled = getBoolean("spatialHistogramEnabled", true);
     public boolean scaleHistogramsIncludingOverflow = getBoolean("scaleHistogramsIncludingOverflow", true);
@@ -115,14 +117,22 @@ public class ApsNoiseStatistics extends EventFilter2DMouseAdaptor implements Fra
     @Override
     synchronized public EventPacket<?> filterPacket(EventPacket<?> in) {
         frameExtractor.filterPacket(in);
-        if (frameExtractor.hasNewFrame()) {
-            if (resetCalled) {
+        ApsFrame frame = frameExtractor.acquireLatestFrame(); // no copy of the frame
+        if (frame == null) {
+            return in;
+        }
+        try {
+            if (frame.getFrameNumber() != lastFrameNumber) {
+                lastFrameNumber = frame.getFrameNumber();
+                if (resetCalled) {
 //                frameExtractor.resetFilter(); // TODO we cannot call this before getting frame, because then frame will be set to zero in the frameExtractor and we'll get zeros
-                stats.reset();
-                resetCalled = false;
+                    stats.reset();
+                    resetCalled = false;
+                }
+                stats.updateStatistics(frame.getRawPixels());
             }
-            float[] frame = frameExtractor.getDisplayBuffer();
-            stats.updateStatistics(frame);
+        } finally {
+            frame.release();
         }
         return in;
     }
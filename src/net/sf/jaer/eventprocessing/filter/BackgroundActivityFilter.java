@@ -4,13 +4,11 @@
 package net.sf.jaer.eventprocessing.filter;
 
 import java.util.Arrays;
-import java.util.Observable;
-import java.util.Observer;
 
 import net.sf.jaer.Description;
 import net.sf.jaer.DevelopmentStatus;
 import net.sf.jaer.chip.AEChip;
-import net.sf.jaer.chip.Chip2D;
+import net.sf.jaer.chip.ChipEventBus;
 import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.eventprocessing.EventFilter2D;
@@ -24,7 +22,7 @@ import net.sf.jaer.eventprocessing.EventFilter2D;
  */
 @Description("Filters out uncorrelated background activity noise")
 @DevelopmentStatus(DevelopmentStatus.Status.Stable)
-public class BackgroundActivityFilter extends AbstractNoiseFilter implements Observer {
+public class BackgroundActivityFilter extends AbstractNoiseFilter implements ChipEventBus.SizeListener {
 
     final int MAX_DT = 100000, MIN_DT = 10;
     final int DEFAULT_TIMESTAMP = Integer.MIN_VALUE;
@@ -48,10 +46,12 @@ public class BackgroundActivityFilter extends AbstractNoiseFilter implements Obs
     private int ts = 0; // used to reset filter
     private int sx;
     private int sy;
+    // the chip size last published on the chip event bus
+    private int lastChipSizeX = -1, lastChipSizeY = -1;
 
     public BackgroundActivityFilter(AEChip chip) {
         super(chip);
-        chip.addObserver(this);
+        chip.getEventBus().subscribeSize(this);
         initFilter();
         setPropertyTooltip("dt", "Events with less than this delta time in us to neighbors pass through");
         setPropertyTooltip("subsampleBy", "Past events are spatially subsampled (address right shifted) by this many bits");
@@ -127,8 +127,11 @@ public class BackgroundActivityFilter extends AbstractNoiseFilter implements Obs
     }
 
     @Override
-    public void update(Observable o, Object arg) {
-        if ((arg != null) && ((arg == Chip2D.EVENT_SIZEX) || (arg == Chip2D.EVENT_SIZEY))) {
+    public void chipSizeChanged(int sizeX, int sizeY, int numCellTypes) {
+        // like the chip Observer before, reset only for sizeX and sizeY; numCellTypes does not affect the maps
+        if ((sizeX != lastChipSizeX) || (sizeY != lastChipSizeY)) {
+            lastChipSizeX = sizeX;
+            lastChipSizeY = sizeY;
             resetFilter();
         }
     }
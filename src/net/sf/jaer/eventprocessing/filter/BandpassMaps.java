@@ -0,0 +1,274 @@
+package net.sf.jaer.eventprocessing.filter;
+
+import java.util.Arrays;
+
+import net.sf.jaer.aemonitor.AEConstants;
+import net.sf.jaer.event.BasicEvent;
+
+/**
+ * The surround maps of {@link SpatialBandpassFilter} and
+ * {@link SubSamplingBandpassFilter} in flat arrays, with the kernels that
+ * update them for a packet.
+ * <p>
+ * The maps hold a timestamp, and optionally a rate, per location, in columns
+ * of x major order. They are padded on all sides by the largest surround
+ * offset, so the surround of any location on the map can be written or read
+ * through precomputed linear offsets without bounds checks. The padding is
+ * written but never read as a location of its own, and rates in the padding
+ * stay 0.
+ * <p>
+ * A filter adds the events of a packet that it considers to a batch with
+ * {@link #addEvent}, runs the kernel over the batch, and then reads back
+ * with {@link #isPassed} which events pass. The kernels give the same results
+ * as the per event loops over 2D arrays that the filters used before.
+ * <p>
+ * Not thread safe; the filters synchronize.
+ */
+public final class BandpassMaps {
+
+    private final int sizeX, sizeY;
+    private final boolean withRates;
+    // the padded maps: column x holds the locations (x-pad,y-pad) at (x*height)+y
+    private int pad = 0, height;
+    private int[] timestamps;
+    private float[] rates;
+    // per location, the number of surround offsets that fall on the map
+    private int[] surroundCounts;
+    private int[] offsets = new int[0], offsetX = new int[0], offsetY = new int[0];
+
+    // the batch
+    private int batchSize = 0;
+    private int[] batchLocation = new int[256], batchTimestamp = new int[256];
+    private boolean[] batchPassed = new boolean[256];
+    private BasicEvent[] batchEvent = new BasicEvent[256];
+
+    /**
+     * Creates maps with all timestamps and rates 0 and no surround.
+     *
+     * @param sizeX the number of columns
+     * @param sizeY the number of rows
+     * @param withRates true to keep a rate map for
+     * {@link #subSampledBandpass}
+     */
+    public BandpassMaps(int sizeX, int sizeY, boolean withRates) {
+        if ((sizeX < 1) || (sizeY < 1)) {
+            throw new IllegalArgumentException("bad size " + sizeX + "x" + sizeY);
+        }
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.withRates = withRates;
+        height = sizeY;
+        timestamps = new int[sizeX * sizeY];
+        rates = withRates ? new float[sizeX * sizeY] : null;
+        surroundCounts = withRates ? new int[sizeX * sizeY] : null;
+    }
+
+    /** @return the number of columns */
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    /** @return the number of rows */
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    private int index(int x, int y) {
+        return ((x + pad) * height) + y + pad;
+    }
+
+    /**
+     * Sets the surround. The maps are padded again if the surround reaches
+     * further than before, keeping their contents.
+     *
+     * @param dx the x offsets of the surround locations
+     * @param dy the y offsets
+     * @param n the number of offsets
+     */
+    public void setSurround(int[] dx, int[] dy, int n) {
+        int reach = 0;
+        for (int i = 0; i < n; i++) {
+            reach = Math.max(reach, Math.max(Math.abs(dx[i]), Math.abs(dy[i])));
+        }
+        if (reach > pad) {
+            repad(reach);
+        }
+        offsetX = Arrays.copyOf(dx, n);
+        offsetY = Arrays.copyOf(dy, n);
+        offsets = new int[n];
+        for (int i = 0; i < n; i++) {
+            offsets[i] = (dx[i] * height) + dy[i];
+        }
+        if (withRates) {
+            countSurround();
+        }
+    }
+
+    private void repad(int newPad) {
+        int newHeight = sizeY + (2 * newPad), length = (sizeX + (2 * newPad)) * newHeight;
+        int[] t = new int[length];
+        float[] r = withRates ? new float[length] : null;
+        for (int x = 0; x < sizeX; x++) {
+            int from = index(x, 0), to = ((x + newPad) * newHeight) + newPad;
+            System.arraycopy(timestamps, from, t, to, sizeY);
+            if (withRates) {
+                System.arraycopy(rates, from, r, to, sizeY);
+            }
+        }
+        pad = newPad;
+        height = newHeight;
+        timestamps = t;
+        rates = r;
+        if (withRates) {
+            surroundCounts = new int[length];
+        }
+    }
+
+    private void countSurround() {
+        for (int x = 0; x < sizeX; x++) {
+            for (int y = 0; y < sizeY; y++) {
+                int count = 0;
+                for (int i = 0; i < offsets.length; i++) {
+                    int xx = x + offsetX[i], yy = y + offsetY[i];
+                    if ((xx >= 0) && (xx < sizeX) && (yy >= 0) && (yy < sizeY)) {
+                        count++;
+                    }
+                }
+                surroundCounts[index(x, y)] = count;
+            }
+        }
+    }
+
+    /**
+     * Sets all timestamps.
+     *
+     * @param timestamp the timestamp
+     */
+    public void fillTimestamps(int timestamp) {
+        Arrays.fill(timestamps, timestamp);
+    }
+
+    /** @return the timestamp of location x,y */
+    public int getTimestamp(int x, int y) {
+        return timestamps[index(x, y)];
+    }
+
+    /** @return the rate of location x,y */
+    public float getRate(int x, int y) {
+        return rates[index(x, y)];
+    }
+
+    /**
+     * Adds an event to the batch, at a location of the map, which is checked
+     * by the caller.
+     *
+     * @param e the event, whose timestamp is used
+     * @param x the x of the location, e.g. the x of the event
+     * @param y the y of the location
+     */
+    public void addEvent(BasicEvent e, int x, int y) {
+        if (batchSize == batchLocation.length) {
+            int c = 2 * batchSize;
+            batchLocation = Arrays.copyOf(batchLocation, c);
+            batchTimestamp = Arrays.copyOf(batchTimestamp, c);
+            batchPassed = Arrays.copyOf(batchPassed, c);
+            batchEvent = Arrays.copyOf(batchEvent, c);
+        }
+        batchLocation[batchSize] = index(x, y);
+        batchTimestamp[batchSize] = e.timestamp;
+        batchEvent[batchSize++] = e;
+    }
+
+    /** @return the number of events in the batch */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /** @return event k of the batch */
+    public BasicEvent getEvent(int k) {
+        return batchEvent[k];
+    }
+
+    /** @return true if event k of the batch passed the last kernel */
+    public boolean isPassed(int k) {
+        return batchPassed[k];
+    }
+
+    /** Empties the batch and lets go of its events. */
+    public void clearBatch() {
+        Arrays.fill(batchEvent, 0, batchSize, null);
+        batchSize = 0;
+    }
+
+    /**
+     * The kernel of {@link SpatialBandpassFilter}: an event passes if the
+     * last time its location was in the surround of an event is more than
+     * dtSurround before it, and then it writes its timestamp to its surround.
+     *
+     * @param dtSurround the time in timestamp ticks that an event inhibits
+     * its surround
+     * @return the number of events that passed
+     */
+    public int spatialBandpass(int dtSurround) {
+        final int[] ts = timestamps, off = offsets, loc = batchLocation, time = batchTimestamp;
+        final boolean[] passed = batchPassed;
+        int numPassed = 0;
+        for (int k = 0; k < batchSize; k++) {
+            int i = loc[k], t = time[k];
+            boolean p = (t - ts[i]) > dtSurround;
+            passed[k] = p;
+            if (p) {
+                numPassed++;
+            }
+            for (int o : off) {
+                ts[i + o] = t;
+            }
+        }
+        return numPassed;
+    }
+
+    /**
+     * The kernel of {@link SubSamplingBandpassFilter}. For each event it mixes
+     * the rate of its location with the instantaneous rate from the time
+     * since the last event there, decays the rates of its surround and
+     * passes the event if their average does not exceed the threshold, and
+     * then writes its timestamp to its location.
+     *
+     * @param rateMixingFactor the weight of the instantaneous rate
+     * @param surroundRateThresholdHz the largest average surround rate that
+     * passes an event
+     * @return the number of events that passed
+     */
+    public int subSampledBandpass(float rateMixingFactor, float surroundRateThresholdHz) {
+        final int[] ts = timestamps, off = offsets, counts = surroundCounts, loc = batchLocation, time = batchTimestamp;
+        final float[] r = rates;
+        final boolean[] passed = batchPassed;
+        final float mix = rateMixingFactor, mixMinus = 1 - rateMixingFactor;
+        int numPassed = 0;
+        for (int k = 0; k < batchSize; k++) {
+            int i = loc[k], t = time[k];
+            int dt = t - ts[i];
+            if (dt <= 0) {
+                dt = 1;
+            }
+            float instantaneousRate = (1e6f * AEConstants.TICK_DEFAULT_US) / dt;
+            r[i] = (mixMinus * r[i]) + (mix * instantaneousRate);
+            // since the surround won't be updated unless there is an event in it, it would act like a peak detector,
+            // thus we decay it toward zero rate anytime any event touches it; the padding stays 0 and adds nothing
+            float sumRate = 0;
+            for (int o : off) {
+                float s = r[i + o] * mixMinus;
+                r[i + o] = s;
+                sumRate += s;
+            }
+            sumRate /= counts[i];
+            boolean p = !(sumRate > surroundRateThresholdHz);
+            passed[k] = p;
+            if (p) {
+                numPassed++;
+            }
+            ts[i] = t;
+        }
+        return numPassed;
+    }
+}
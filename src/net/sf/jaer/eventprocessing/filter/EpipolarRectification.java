@@ -17,6 +17,7 @@ package net.sf.jaer.eventprocessing.filter;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Observable;
 import java.util.Observer;
@@ -212,6 +213,41 @@ public class EpipolarRectification extends EventFilter2D implements Observer  {
         return true;
     }
     
+    /**
+     * Builds a flat lookup table of the rectification applied by this filter,
+     * for consumers like StereoMatcher that rectify coordinates themselves
+     * instead of rewriting events. Loads the index tables if they are not
+     * loaded yet.
+     *
+     * @param sizeX the chip size x used for the flat indices
+     * @param sizeY the chip size y used for the flat indices
+     * @return table mapping y*sizeX+x to the corrected y*sizeX+x, or to -1 if
+     * the pixel cannot be corrected
+     */
+    synchronized public int[] getLookupTable(int sizeX, int sizeY) {
+        if (firstRun) {
+            firstRun = false;
+            resetIndexesLookup();
+        }
+        int[] table = new int[sizeX * sizeY];
+        Arrays.fill(table, -1);
+        for (int x = 0; x < Math.min(sizeX, x_size); x++) {
+            for (int y = 0; y < Math.min(sizeY, y_size); y++) {
+                Integer newInd = (Integer) indexLookup.get(new Integer(x * y_size + (y_size - y)));
+                if (newInd == null) {
+                    continue;
+                }
+                int newx = Math.abs(newInd.intValue() / y_size);
+                int newy = y_size - 1 - (newInd.intValue() - newx * y_size);
+                if (newx >= x_size || newx >= sizeX || newy < 0 || newy >= sizeY) {
+                    continue;
+                }
+                table[y * sizeX + x] = newy * sizeX + newx;
+            }
+        }
+        return table;
+    }
+
     // reset and reload pixel correspondances tables
     // there are four index tables per retina as for now
     // to allow for pixel interpolation
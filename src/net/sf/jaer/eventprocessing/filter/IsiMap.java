@@ -0,0 +1,139 @@
+package net.sf.jaer.eventprocessing.filter;
+
+import java.util.Arrays;
+
+/**
+ * The per cell map of {@link RepetitiousFilter} and {@link NotchFilter}, with
+ * the kernel that decides for an event whether it is repetitious and updates
+ * its cell.
+ * <p>
+ * A cell is a pixel and cell type. For each cell the map holds the timestamp
+ * of the last stored event and the average interspike interval (ISI), next to
+ * each other in one flat int array, cell (x*sizeY+y)*numTypes+type at 2*cell,
+ * so that an event touches a single cache line. The filters kept these in
+ * nested int[x][y][type][2] and int[x][y][type] arrays, which cost an array
+ * header and reference per pixel and per cell, about 100 bytes per pixel of a
+ * sensor with two cell types where this map needs 16, and also held the time
+ * of the event before the last one, which was never read.
+ * <p>
+ * Not thread safe; the filters synchronize.
+ */
+public final class IsiMap {
+
+    private final int sizeX, sizeY, numTypes;
+    // per cell: the last timestamp at 2*cell and the average ISI at 2*cell+1
+    private final int[] map;
+
+    private int minDtToStore = 1000, ratioShorter = 2, ratioLonger = 2;
+    private boolean excludeHarmonics = false, passRepetitiousEvents = false;
+    private float alpha = 1 / 3f, alphaMinus = 1 - alpha;
+
+    /**
+     * Creates a map with all timestamps and averages 0.
+     *
+     * @param sizeX the number of columns
+     * @param sizeY the number of rows
+     * @param numTypes the number of cell types
+     */
+    public IsiMap(int sizeX, int sizeY, int numTypes) {
+        if ((sizeX < 1) || (sizeY < 1) || (numTypes < 1)) {
+            throw new IllegalArgumentException("bad size " + sizeX + "x" + sizeY + "x" + numTypes);
+        }
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.numTypes = numTypes;
+        map = new int[2 * sizeX * sizeY * numTypes];
+    }
+
+    /** @return true if the map has this size */
+    public boolean hasSize(int sizeX, int sizeY, int numTypes) {
+        return (this.sizeX == sizeX) && (this.sizeY == sizeY) && (this.numTypes == numTypes);
+    }
+
+    /** Sets all timestamps and averages to 0. */
+    public void reset() {
+        Arrays.fill(map, 0);
+    }
+
+    /**
+     * @return the index of the cell of x,y,type, or -1 if it is outside the
+     * map
+     */
+    public int cell(int x, int y, int type) {
+        if ((x < 0) || (x >= sizeX) || (y < 0) || (y >= sizeY) || (type < 0) || (type >= numTypes)) {
+            return -1;
+        }
+        return (((x * sizeY) + y) * numTypes) + type;
+    }
+
+    /** @return the timestamp of the last stored event of a cell */
+    public int getLastTimestamp(int cell) {
+        return map[2 * cell];
+    }
+
+    /** @return the average ISI of a cell */
+    public int getAverageDt(int cell) {
+        return map[(2 * cell) + 1];
+    }
+
+    /**
+     * Sets the parameters of {@link #filterEvent}, see the filters for their
+     * meaning.
+     *
+     * @param minDtToStore events closer than this to the last one of their
+     * cell are dropped and not stored
+     * @param ratioShorter an ISI shorter than the average by this factor is
+     * not repetitious
+     * @param ratioLonger an ISI longer than the average by this factor is not
+     * repetitious
+     * @param excludeHarmonics true to also count ISIs near 2 or 3 times the
+     * average as repetitious
+     * @param passRepetitiousEvents true to pass the repetitious events rather
+     * than the others
+     * @param averagingSamples the number of events the average ISI is IIR
+     * averaged over
+     */
+    public void setParameters(int minDtToStore, int ratioShorter, int ratioLonger, boolean excludeHarmonics,
+            boolean passRepetitiousEvents, int averagingSamples) {
+        this.minDtToStore = minDtToStore;
+        this.ratioShorter = ratioShorter;
+        this.ratioLonger = ratioLonger;
+        this.excludeHarmonics = excludeHarmonics;
+        this.passRepetitiousEvents = passRepetitiousEvents;
+        alpha = 1 / (float) averagingSamples;
+        alphaMinus = 1 - alpha;
+    }
+
+    /**
+     * Decides whether an event passes and stores it in its cell if its ISI
+     * is longer than minDtToStore.
+     *
+     * @param cell the cell of the event
+     * @param timestamp the timestamp of the event
+     * @return true if the event passes
+     */
+    public boolean filterEvent(int cell, int timestamp) {
+        final int[] m = map;
+        int i = 2 * cell, lastt = m[i], avgDt = m[i + 1];
+        int thisdt = timestamp - lastt;
+        if (thisdt < minDtToStore) { // refractory period
+            return false;
+        }
+        boolean repetitious;
+        if (excludeHarmonics) {
+            double ratio = (double) thisdt / avgDt;
+            double rem = Math.IEEEremainder(ratio, 1);
+            repetitious = (ratio <= 3) && (Math.abs(rem) < (1. / ratioShorter));
+        } else {
+            repetitious = (thisdt < (avgDt * ratioLonger)) && (thisdt > (avgDt / ratioShorter));
+        }
+        if (thisdt < 0) { // only when minDtToStore is negative, e.g. after a timestamp wrap
+            m[i] = timestamp;
+            m[i + 1] = 0;
+        } else if (thisdt > minDtToStore) {
+            m[i] = timestamp;
+            m[i + 1] = (int) ((avgDt * alphaMinus) + (thisdt * alpha));
+        }
+        return repetitious == passRepetitiousEvents;
+    }
+}
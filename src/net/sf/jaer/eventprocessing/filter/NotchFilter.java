@@ -43,11 +43,8 @@ public class NotchFilter extends EventFilter2D implements Observer{
     /** true to enable passing repetitious events  */
     private boolean passRepetitiousEvents = getPrefs().getBoolean("NotchFilter.passRepetitiousEvents",false);
     private boolean excludeHarmonics = false;
-    /** Array of last event timestamps. */
-    private int[][][][] lastTimesMap;
-    /** Array of average ISIs: [chip.sizeX+][chip.sizeY+2][chip.numCellTypes] */
-    private int[][][] avgDtMap;
-    final int NUMTIMES = 2;
+    /** Last event timestamps and average ISIs of the cells */
+    private IsiMap map;
     /** the number of packets processed to average over */
     private int averagingSamples = getPrefs().getInt("NotchFilter.averagingSamples",3);
     private float tolerance=prefs().getFloat("NotchFilter.tolerance",.1f); // isi must be more than this off (+ or -) from notch interval or multiple to pass
@@ -66,52 +63,16 @@ public class NotchFilter extends EventFilter2D implements Observer{
         if ( n == 0 ){
             return in;
         }
-        float alpha = 1 / (float)averagingSamples; // the bigger averagingSamples, the smaller alpha
+        map.setParameters(minDtToStore,ratioShorter,ratioLonger,excludeHarmonics,passRepetitiousEvents,averagingSamples);
 
         // for each event only write it to the tmp buffers if it isn't boring
         // this means only write if the dt is sufficiently different than the previous dt
         OutputEventIterator o = out.outputIterator();
         for ( Object i:in ){
             TypedEvent e = (TypedEvent)i;
-            int[] lasttimes = lastTimesMap[e.x][e.y][e.type]; // avoid indexing again and again
-            int lastt = lasttimes[1];
-            int lastdt = lastt - lasttimes[0];
-            int thisdt = e.timestamp - lastt;
-            int avgDt = avgDtMap[e.x][e.y][e.type];
-            // refractory period
-
-            boolean repetitious=false;
-            if(thisdt<minDtToStore){
-                continue;
-            }
-            if(excludeHarmonics){
-                double ratio=(double)thisdt/avgDt;
-                double rem=Math.IEEEremainder(ratio,1);
-                repetitious=ratio<=3 && Math.abs(rem)<1./ratioShorter;
-            }else{
-            // if this dt is greater than last by threshold or less than last by threshold pass it
-                repetitious = thisdt < avgDt * ratioLonger && thisdt > avgDt / ratioShorter; // true if event is repetitious
-            }
-            if ( !passRepetitiousEvents ){
-                if ( !repetitious ){
-                    o.nextOutput().copyFrom(e);
-                }
-            } else{ // pass boring events
-                if ( repetitious ){
-                    o.nextOutput().copyFrom(e);
-                }
-            }
-            // update the map
-            if ( thisdt < 0 ){
-                lasttimes[0] = e.timestamp;
-                lasttimes[1] = e.timestamp;
-                avgDtMap[e.x][e.y][e.type] = 0;
-
-            } else if ( thisdt > minDtToStore ){
-                lasttimes[0] = lastt;
-                lasttimes[1] = e.timestamp;
-
-                avgDtMap[e.x][e.y][e.type] = (int)( avgDt * ( 1 - alpha ) + thisdt * ( alpha ) );
+            int cell = map.cell(e.x,e.y,e.type);
+            if ( cell >= 0 && map.filterEvent(cell,e.timestamp) ){
+                o.nextOutput().copyFrom(e);
             }
         }
         return out;
@@ -135,23 +96,17 @@ public class NotchFilter extends EventFilter2D implements Observer{
     }
 
     void checkMap (){
-        if ( lastTimesMap == null
-                || lastTimesMap.length != chip.getSizeX() + 2
-                || lastTimesMap[0].length != chip.getSizeY() + 2
-                || lastTimesMap[0][0].length != chip.getNumCellTypes()
-                || lastTimesMap[0][0][0].length != NUMTIMES ){
+        if ( map == null || !map.hasSize(chip.getSizeX(),chip.getSizeY(),chip.getNumCellTypes()) ){
             allocateMap();
         }
     }
 
     private void allocateMap (){
         if ( !isFilterEnabled() ){
-            lastTimesMap = null;
-            avgDtMap = null;
+            map = null;
         } else{
             log.info("NotchFilter.allocateMaps");
-            lastTimesMap = new int[ chip.getSizeX() + 2 ][ chip.getSizeY() + 2 ][ chip.getNumCellTypes() ][ NUMTIMES ];
-            avgDtMap = new int[ chip.getSizeX() + 2 ][ chip.getSizeY() + 2 ][ chip.getNumCellTypes() ];
+            map = new IsiMap(chip.getSizeX(),chip.getSizeY(),chip.getNumCellTypes());
         }
     }
 
@@ -44,6 +44,9 @@ public class RotateFilter extends EventFilter2D {
     private float sinAng = (float) Math.sin(angleDeg * Math.PI / 180);
     private boolean davisCamera = false;
     Point origFirstPixel = null, origLastPixel = null;
+    // per-pixel table of transformed addresses packed as x | y<<16, rebuilt when the transform or chip size changes
+    private int[] remap = null;
+    private int remapSizeX = 0, remapSizeY = 0;
 
     /**
      * Creates a new instance of RotateFilter
@@ -61,10 +64,12 @@ public class RotateFilter extends EventFilter2D {
     }
 
     public EventPacket<?> filterPacket(EventPacket<?> in) {
-        short tmp;
         final int sx = chip.getSizeX();
         final int sy = chip.getSizeY();
-        final int sx2 = sx / 2, sy2 = sy / 2;
+        int[] map = remap;
+        if (map == null || remapSizeX != sx || remapSizeY != sy) {
+            map = buildRemap(sx, sy);
+        }
         Iterator itr;
         boolean davisCamera;
         checkDavisApsHack();
@@ -81,31 +86,14 @@ public class RotateFilter extends EventFilter2D {
             if (e.isSpecial() || (davisCamera && (e.x == -1 && e.y == -1))) {
                 continue;  // TODO hack to avoid transforming "flag events"; see DavisBaseCamera line 617 createApsFlagEvent()
             }
-            if (swapXY) {
-                tmp = e.x;
-                e.x = e.y;
-                e.y = tmp;
-            }
-            if (rotate90deg) {
-                tmp = e.x;
-                e.x = (short) (sy - e.y - 1);
-                e.y = tmp;
-            }
-            if (invertY) {
-                e.y = (short) (sy - e.y - 1);
-
-            }
-            if (invertX) {
-                e.x = (short) (sx - e.x - 1);
-            }
-
-            if (angleDeg != 0) {
-                int x2 = e.x - sx2, y2 = e.y - sy2;
-                int x3 = (int) Math.round(+cosAng * (x2) - sinAng * (y2));
-                int y3 = (int) Math.round(+sinAng * (x2) + cosAng * (y2));
-                e.x = (short) (x3 + sx2);
-                e.y = (short) (y3 + sy2);
+            int t;
+            if (e.x >= 0 && e.y >= 0 && e.x < sx && e.y < sy) {
+                t = map[e.x + (sx * e.y)];
+            } else {
+                t = transform(e.x, e.y, sx, sy);
             }
+            e.x = (short) t;
+            e.y = (short) (t >> 16);
             if (e.x < 0 || e.x >= sx || e.y < 0 || e.y >= sy) {
                 e.setFilteredOut(true);
             }
@@ -113,6 +101,60 @@ public class RotateFilter extends EventFilter2D {
         return in;
     }
 
+    /**
+     * Transforms an address.
+     *
+     * @return the transformed address packed as x | y<<16, with x and y as
+     * shorts
+     */
+    private int transform(int x, int y, int sx, int sy) {
+        int tmp;
+        if (swapXY) {
+            tmp = x;
+            x = y;
+            y = tmp;
+        }
+        if (rotate90deg) {
+            tmp = x;
+            x = sy - y - 1;
+            y = tmp;
+        }
+        if (invertY) {
+            y = sy - y - 1;
+
+        }
+        if (invertX) {
+            x = sx - x - 1;
+        }
+
+        if (angleDeg != 0) {
+            final int sx2 = sx / 2, sy2 = sy / 2;
+            int x2 = x - sx2, y2 = y - sy2;
+            int x3 = (int) Math.round(+cosAng * (x2) - sinAng * (y2));
+            int y3 = (int) Math.round(+sinAng * (x2) + cosAng * (y2));
+            x = x3 + sx2;
+            y = y3 + sy2;
+        }
+        return (x & 0xffff) | (y << 16);
+    }
+
+    /**
+     * Builds the table of transformed addresses so that the combined
+     * transform costs one lookup per event.
+     */
+    private int[] buildRemap(int sx, int sy) {
+        int[] map = new int[sx * sy];
+        for (int y = 0; y < sy; y++) {
+            for (int x = 0; x < sx; x++) {
+                map[x + (sx * y)] = transform(x, y, sx, sy);
+            }
+        }
+        remapSizeX = sx;
+        remapSizeY = sy;
+        remap = map;
+        return map;
+    }
+
     public Object getFilterState() {
         return null;
     }
@@ -130,6 +172,7 @@ public class RotateFilter extends EventFilter2D {
     public void setSwapXY(boolean swapXY) {
         this.swapXY = swapXY;
         putBoolean("swapXY", swapXY);
+        remap = null;
     }
 
     public boolean isRotate90deg() {
@@ -139,6 +182,7 @@ public class RotateFilter extends EventFilter2D {
     public void setRotate90deg(boolean rotate90deg) {
         this.rotate90deg = rotate90deg;
         putBoolean("rotate90deg", rotate90deg);
+        remap = null;
     }
 
     public boolean isInvertY() {
@@ -148,6 +192,7 @@ public class RotateFilter extends EventFilter2D {
     public void setInvertY(boolean invertY) {
         this.invertY = invertY;
         putBoolean("invertY", invertY);
+        remap = null;
     }
 
     public boolean isInvertX() {
@@ -157,6 +202,7 @@ public class RotateFilter extends EventFilter2D {
     public void setInvertX(boolean invertX) {
         this.invertX = invertX;
         putBoolean("invertX", invertX);
+        remap = null;
     }
 
     /**
@@ -177,6 +223,7 @@ public class RotateFilter extends EventFilter2D {
         putFloat("angleDeg", angleDeg);
         cosAng = (float) Math.cos(angleDeg * Math.PI / 180);
         sinAng = (float) Math.sin(angleDeg * Math.PI / 180);
+        remap = null;
     }
 
     private void checkDavisApsHack() {
@@ -45,7 +45,8 @@ public class SpatialBandpassFilter extends EventFilter2D implements Observer {
      */
     private int dtSurround = getPrefs().getInt("SpatialBandpassFilter.dtSurround", 8000);
 
-    int[][] surroundTimestamps, centerTimestamps;
+    /** the surround timestamps, in a flat map that is padded for the surround */
+    BandpassMaps maps;
 
     /**
      * Creates a new instance of SpatialBandpassFilter
@@ -64,8 +65,7 @@ public class SpatialBandpassFilter extends EventFilter2D implements Observer {
         super.setFilterEnabled(yes);
         if (!yes) {
             // free memory
-            surroundTimestamps = null;
-            centerTimestamps = null;
+            maps = null;
         } else {
             initFilter();
         }
@@ -88,19 +88,16 @@ public class SpatialBandpassFilter extends EventFilter2D implements Observer {
     }
 
     void checkMaps() {
-        if (surroundTimestamps == null || surroundTimestamps.length != chip.getSizeX() || surroundTimestamps[0].length != chip.getSizeY()) {
+        if (maps == null || maps.getSizeX() != chip.getSizeX() || maps.getSizeY() != chip.getSizeY()) {
             allocateMaps();
         }
     }
 
     void allocateMaps() {
-//        if(chip!=null && isFilterEnabled()){
         sizex = chip.getSizeX() - 1;
-        sizey = chip.getSizeY() - 1; // minus 1 to avoid -1 in loop
-//        pad=(int)Math.max(centerRadius,surroundRadius);
-        surroundTimestamps = new int[sizex + 1][sizey + 1];
-        centerTimestamps = new int[sizex + 1][sizey + 1];
-//        }
+        sizey = chip.getSizeY() - 1;
+        maps = new BandpassMaps(sizex + 1, sizey + 1, false);
+        setSurround();
     }
 
     // Offset is a relative position
@@ -137,6 +134,24 @@ public class SpatialBandpassFilter extends EventFilter2D implements Observer {
         surroundOffsets = new Offset[1];
         surroundOffsets = (Offset[]) surList.toArray(surroundOffsets);
 //        log.info("splatting "+surroundOffsets.length+" neighbors for each event");
+        setSurround();
+    }
+
+    // passes the surround offsets to the maps, which turn them into linear offsets
+    private void setSurround() {
+        if (maps == null || surroundOffsets == null) {
+            return;
+        }
+        int n = surroundOffsets.length;
+        if (n == 1 && surroundOffsets[0] == null) {
+            n = 0; // toArray leaves the element after an empty list null
+        }
+        int[] dx = new int[n], dy = new int[n];
+        for (int k = 0; k < n; k++) {
+            dx[k] = surroundOffsets[k].x;
+            dy[k] = surroundOffsets[k].y;
+        }
+        maps.setSurround(dx, dy, n);
     }
 
 //    public int getDtCenter() {
@@ -215,42 +230,26 @@ public class SpatialBandpassFilter extends EventFilter2D implements Observer {
             return in;
         }
         OutputEventIterator o = out.outputIterator();
+        BandpassMaps m = maps;
         for (Object obj : in) {
             PolarityEvent e = (PolarityEvent) obj;
             if (e.isSpecial() || e.isFilteredOut()) {
                 continue;
             }
-
-            // if the event occurred too close after a surround spike don't pass it.
-            if ((e.timestamp - surroundTimestamps[e.x][e.y]) > dtSurround) {
-                o.nextOutput().copyFrom(e);
+            if (e.x < 0 || e.x > sizex || e.y < 0 || e.y > sizey) {
+                continue; // not on the chip, would write outside the map
             }
-            writeSurround(e);
-//            if(writeSurround(i)==false) return in;
+            m.addEvent(e, e.x, e.y);
         }
-//        if(true) throw new RuntimeException("fake exception");
-        return out;
-    }
-
-    final void writeSurround(PolarityEvent i) {// write surround
-        for (int k = 0; k < surroundOffsets.length; k++) {
-            Offset d = surroundOffsets[k];
-//            if(d==null){
-//                log.warning("null surroundOffset, disabling SpatialBandpassFilter");
-//                setFilterEnabled(false);
-//                return false;
-//            }
-            int kx = i.x + d.x;
-            if (kx < 0 || kx > sizex) {
-                continue;
+        // if an event occurred too close after a surround spike don't pass it; each event writes its surround
+        m.spatialBandpass(dtSurround);
+        for (int k = 0; k < m.getBatchSize(); k++) {
+            if (m.isPassed(k)) {
+                o.nextOutput().copyFrom(m.getEvent(k));
             }
-            int ky = i.y + d.y;
-            if (ky < 0 || ky > sizey) {
-                continue;
-            }
-            surroundTimestamps[kx][ky] = i.timestamp;
         }
-//        return true;
+        m.clearBatch();
+        return out;
     }
 
 }
@@ -8,13 +8,11 @@ import com.jogamp.opengl.GLAutoDrawable;
 import com.jogamp.opengl.util.gl2.GLUT;
 import java.beans.PropertyChangeEvent;
 import java.util.Arrays;
-import java.util.Observable;
-import java.util.Observer;
 
 import net.sf.jaer.Description;
 import net.sf.jaer.DevelopmentStatus;
 import net.sf.jaer.chip.AEChip;
-import net.sf.jaer.chip.Chip2D;
+import net.sf.jaer.chip.ChipEventBus;
 import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.eventio.AEInputStream;
@@ -32,7 +30,7 @@ import net.sf.jaer.graphics.FrameAnnotater;
  */
 @Description("Filters out uncorrelated noise events")
 @DevelopmentStatus(DevelopmentStatus.Status.Stable)
-public class SpatioTemporalCorrelationFilter extends AbstractNoiseFilter implements Observer {
+public class SpatioTemporalCorrelationFilter extends AbstractNoiseFilter implements ChipEventBus.SizeListener {
 
     private final int MAX_DT = 100000, MIN_DT = 10;
     private final int DEFAULT_TIMESTAMP = Integer.MIN_VALUE;
@@ -65,10 +63,12 @@ public class SpatioTemporalCorrelationFilter extends AbstractNoiseFilter impleme
 
     int[][] lastTimesMap;
     private int ts = 0, lastTimestamp = DEFAULT_TIMESTAMP; // used to reset filter
+    // the chip size last published on the chip event bus
+    private int lastChipSizeX = -1, lastChipSizeY = -1;
 
     public SpatioTemporalCorrelationFilter(AEChip chip) {
         super(chip);
-        chip.addObserver(this);
+        chip.getEventBus().subscribeSize(this);
         initFilter();
         String filt = "1. basic params", adap = "2. AdaptiveFiltering", disp = "Display";
         setPropertyTooltip(filt, "dt", "Events with less than this delta time in us to neighbors pass through");
@@ -194,8 +194,11 @@ public class SpatioTemporalCorrelationFilter extends AbstractNoiseFilter impleme
     }
 
     @Override
-    public void update(Observable o, Object arg) {
-        if ((arg != null) && ((arg == Chip2D.EVENT_SIZEX) || (arg == Chip2D.EVENT_SIZEY))) {
+    public void chipSizeChanged(int sizeX, int sizeY, int numCellTypes) {
+        // like the chip Observer before, reset only for sizeX and sizeY; numCellTypes does not affect the maps
+        if ((sizeX != lastChipSizeX) || (sizeY != lastChipSizeY)) {
+            lastChipSizeX = sizeX;
+            lastChipSizeY = sizeY;
             resetFilter();
         }
     }
@@ -27,6 +27,7 @@ import com.jogamp.opengl.GLAutoDrawable;
 
 import net.sf.jaer.Description;
 import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.ChipEventBus;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.event.PolarityEvent;
 import net.sf.jaer.eventprocessing.FilterChain;
@@ -70,7 +71,7 @@ import net.sf.jaer.graphics.ChipRendererDisplayMethodRGBA;
  */
 @Description("Compenstates global scene translation and rotation to stabilize scene like a SteadiCam, using built-in IMU or other methods of estimation of camera rotation.")
 @DevelopmentStatus(DevelopmentStatus.Status.Stable)
-public class Steadicam extends EventFilter2DMouseAdaptor implements FrameAnnotater, Observer, PropertyChangeListener {
+public class Steadicam extends EventFilter2DMouseAdaptor implements FrameAnnotater, Observer, PropertyChangeListener, ChipEventBus.TimestampResetListener {
 
     /**
      * Classes that compute camera rotationRad estimate based on scene shift and
@@ -97,6 +98,7 @@ public class Steadicam extends EventFilter2DMouseAdaptor implements FrameAnnotat
     private PanTilt panTilt = null;
     ArrayList<TransformAtTime> transformList = new ArrayList(); // holds list of transforms over update times commputed by enclosed filter update callbacks
     private TransformAtTime lastTransform = null, imageTransform = null;
+    private WarpTable warpTable = new WarpTable(); // remaps event addresses through lastTransform
 //    private double[] angular, acceleration;
     private float panRate = 0, tiltRate = 0, rollRate = 0; // in deg/sec
     private float panOffset = getFloat("panOffset", 0), tiltOffset = getFloat("tiltOffset", 0), rollOffset = getFloat("rollOffset", 0);
@@ -115,7 +117,6 @@ public class Steadicam extends EventFilter2DMouseAdaptor implements FrameAnnotat
     private volatile boolean resetCalled = false;
     private int lastTransformUpdateTimestamp = 0;
     private boolean initialized = false;
-    private boolean addTimeStampsResetPropertyChangeListener = false;
     private int transformResetLimitDegrees = getInt("transformResetLimitDegrees", 45);
     // deal with leftover IMU data after timestamps reset
     private static final int FLUSH_COUNT = 10;
@@ -156,6 +157,7 @@ public class Steadicam extends EventFilter2DMouseAdaptor implements FrameAnnotat
         super(chip);
         filterChain = new FilterChain(chip);
         chip.addObserver(this); // to get pixel array size updates
+        chip.getEventBus().subscribeTimestampReset(this, false);
         addObserver(this); // we appendCopy ourselves as observer so that our update() can be called during packet iteration periodically according to global FilterFrame update interval settting
 
         try {
@@ -238,10 +240,6 @@ public class Steadicam extends EventFilter2DMouseAdaptor implements FrameAnnotat
                 addedViewerPropertyChangeListener = true;
             }
         }
-        if (!addTimeStampsResetPropertyChangeListener) {
-            chip.getAeViewer().addPropertyChangeListener(AEViewer.EVENT_TIMESTAMPS_RESET, this);
-            addTimeStampsResetPropertyChangeListener = true;
-        }
         if (outputPacket == null) {
             outputPacket = new ApsDvsEventPacket(in.getEventClass());
         }
@@ -265,6 +263,8 @@ public class Steadicam extends EventFilter2DMouseAdaptor implements FrameAnnotat
             int cory = centerOfRotation == null ? this.sy2 : centerOfRotation.y;
             sxm1 = chip.getSizeX() - 1;
             sym1 = chip.getSizeY() - 1;
+            warpTable.setSize(chip.getSizeX(), chip.getSizeY());
+            warpTable.setTransform(lastTransform, corx, cory);
 
             OutputEventIterator outItr = outputPacket.outputIterator();
             if (!(in instanceof ApsDvsEventPacket)) {
@@ -293,6 +293,7 @@ public class Steadicam extends EventFilter2DMouseAdaptor implements FrameAnnotat
 //                            System.out.println("steadicam dt IMU="+(s.getTimestampUs()-lastImuTs));
 //                            lastImuTs=s.getTimestampUs();
                             lastTransform = updateTransform(s);
+                            warpTable.setTransform(lastTransform, corx, cory); // invalidates the remapped pixels; each is recomputed on its next event
                             if (transformImageEnabled && lastTransform != null && chip instanceof DavisChip && chip.getAeViewer() != null && chip.getCanvas() != null && chip.getCanvas().getDisplayMethod() instanceof ChipRendererDisplayMethodRGBA) {
                                 DavisChip apsDvsChip = (DavisChip) chip;
                                 int frameStartTimestamp = apsDvsChip.getFrameExposureStartTimestampUs();
@@ -320,10 +321,14 @@ public class Steadicam extends EventFilter2DMouseAdaptor implements FrameAnnotat
                             if (!(be.isImuSample())) {
                                 if (lastTransform != null) {
 
-                                    // apply transform Re+T. First center events from middle of array at 0,0, then transform, then move them back to their origin
-                                    int nx = be.x - corx, ny = be.y - cory;
-                                    be.x = (short) ((((lastTransform.cosAngle * nx) - (lastTransform.sinAngle * ny)) + lastTransform.translationPixels.x) + corx);
-                                    be.y = (short) (((lastTransform.sinAngle * nx) + (lastTransform.cosAngle * ny) + lastTransform.translationPixels.y) + cory);
+                                    // apply transform Re+T about the center of rotation, using the remap table of the current transform
+                                    int target = warpTable.warp(be.x, be.y);
+                                    if (target == WarpTable.OUTSIDE) {
+                                        be.setFilteredOut(true);
+                                        continue; // discard events outside chip limits for now, see below
+                                    }
+                                    be.x = (short) WarpTable.getX(target);
+                                    be.y = (short) WarpTable.getY(target);
                                     be.address = chip.getEventExtractor().getAddressFromCell(be.x, be.y, be.getType()); // so event is logged properly to disk
                                 }
 
@@ -1053,12 +1058,15 @@ public class Steadicam extends EventFilter2DMouseAdaptor implements FrameAnnotat
         radPerPixel = (float) Math.asin((getChip().getPixelWidthUm() * 1e-3f) / lensFocalLengthMm);
     }
 
+    @Override
+    public void timestampsReset() {
+        resetFilter();
+        flushCounter = FLUSH_COUNT;
+    }
+
     @Override
     public void propertyChange(PropertyChangeEvent evt) {
-        if (evt.getPropertyName() == AEViewer.EVENT_TIMESTAMPS_RESET) {
-            resetFilter();
-            flushCounter = FLUSH_COUNT;
-        } else if (evt.getPropertyName().equals(AEInputStream.EVENT_REWOUND)) {
+        if (evt.getPropertyName().equals(AEInputStream.EVENT_REWOUND)) {
             resetFilter();
             flushCounter = FLUSH_COUNT;
         } else if (evt.getPropertyName().equals(AEViewer.EVENT_FILEOPEN)) {
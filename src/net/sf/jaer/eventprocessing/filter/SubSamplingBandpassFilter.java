@@ -12,7 +12,6 @@
 package net.sf.jaer.eventprocessing.filter;
 import java.awt.Graphics2D;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -21,9 +20,7 @@ import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.GLAutoDrawable;
 
 import net.sf.jaer.Description;
-import net.sf.jaer.aemonitor.AEConstants;
 import net.sf.jaer.chip.AEChip;
-import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.event.OutputEventIterator;
 import net.sf.jaer.event.PolarityEvent;
@@ -53,14 +50,14 @@ public class SubSamplingBandpassFilter extends EventFilter2D implements Observer
 	private int surroundScale = getPrefs().getInt("SubSamplingBandpassFilter.surroundScale",1);
 	private int surroundRadius = getPrefs().getInt("SubSamplingBandpassFilter.surroundRadius",1);
 	private float surroundRateThresholdHz = getPrefs().getFloat("SubSamplingBandpassFilter.surroundRateThresholdHz",10);
-	private float rateMixingFactor = getPrefs().getFloat("SubSamplingBandpassFilter.rateMixingFactor",0.01f),  rateMixingFactorMinus = 1 - rateMixingFactor;
+	private float rateMixingFactor = getPrefs().getFloat("SubSamplingBandpassFilter.rateMixingFactor",0.01f);
 	private int surSizeX,  surSizeY; // size of subsampled surround timestamp array
 	/** the time in timestamp ticks (1us at present) that a spike in surround
     will inhibit a spike from center passing through.
 	 */
 	private int dtSurround = getPrefs().getInt("SubSamplingBandpassFilter.dtSurround",8000);
-	int[][] surroundTimestamps, centerTimestamps;
-	float[][] surroundRates;
+	/** the subsampled timestamp and rate maps, flat and padded for the surround */
+	BandpassMaps maps;
 
 	/**
 	 * Creates a new instance of SubSamplingBandpassFilter
@@ -83,8 +80,7 @@ public class SubSamplingBandpassFilter extends EventFilter2D implements Observer
 		super.setFilterEnabled(yes);
 		if ( !yes ){
 			// free memory
-			surroundTimestamps = null;
-			centerTimestamps = null;
+			maps = null;
 		} else{
 			initFilter();
 		}
@@ -96,10 +92,8 @@ public class SubSamplingBandpassFilter extends EventFilter2D implements Observer
 
 	@Override
 	public void resetFilter (){
-		if ( surroundTimestamps != null ){
-			for (int[] surroundTimestamp : surroundTimestamps) {
-				Arrays.fill(surroundTimestamp,Integer.MAX_VALUE);
-			}
+		if ( maps != null ){
+			maps.fillTimestamps(Integer.MAX_VALUE);
 		}
 		//        if(surroundRates!=null){
 		//            for(int i=0;i<surroundRates.length;i++){
@@ -124,17 +118,26 @@ public class SubSamplingBandpassFilter extends EventFilter2D implements Observer
 		computeOffsets();
 	}
 
+	/** @return the subsampled size, rounded up so that the last partial subfield is on the map */
+	private int subsampledSize (int size){
+		return ( size + ( 1 << surroundScale ) - 1 ) >> surroundScale;
+	}
+
 	void checkMaps (){
-		surSizeX = chip.getSizeX() / ( 1 << surroundScale );
-		surSizeY = chip.getSizeY() / ( 1 << surroundScale );
-		if ( (surroundTimestamps == null) || (surroundTimestamps.length != surSizeX) || (surroundTimestamps[0].length != surSizeY) ){
+		surSizeX = subsampledSize(chip.getSizeX());
+		surSizeY = subsampledSize(chip.getSizeY());
+		if ( (surSizeX == 0) || (surSizeY == 0) ){
+			maps = null;
+			return;
+		}
+		if ( (maps == null) || (maps.getSizeX() != surSizeX) || (maps.getSizeY() != surSizeY) ){
 			allocateMaps();
 		}
 	}
 
 	void allocateMaps (){
-		surroundTimestamps = new int[ surSizeX ][ surSizeY ];
-		surroundRates = new float[ surSizeX ][ surSizeY ];
+		maps = new BandpassMaps(surSizeX,surSizeY,true);
+		setSurround();
 	}
 	// Offset is a relative position
 	final class Offset{
@@ -180,6 +183,21 @@ public class SubSamplingBandpassFilter extends EventFilter2D implements Observer
 		surroundOffsets = new Offset[ 1 ];
 		surroundOffsets = surList.toArray(surroundOffsets);
 		//        log.info("checking "+surroundOffsets.length+" neighbors for each event");
+		setSurround();
+	}
+
+	/** passes the surround offsets to the maps, which turn them into linear offsets */
+	private void setSurround (){
+		if ( (maps == null) || (surroundOffsets == null) ){
+			return;
+		}
+		int n = surroundOffsets.length;
+		int[] dx = new int[ n ], dy = new int[ n ];
+		for ( int k = 0 ; k < n ; k++ ){
+			dx[k] = surroundOffsets[k].x;
+			dy[k] = surroundOffsets[k].y;
+		}
+		maps.setSurround(dx,dy,n);
 	}
 	//    public int getDtCenter() {
 	//        return dtCenter;
@@ -228,8 +246,8 @@ public class SubSamplingBandpassFilter extends EventFilter2D implements Observer
 		}
 		this.surroundScale = surroundScale;
 		//        subSampler.setBits(surroundScale);
-		surSizeX = chip.getSizeX() / ( 1 << surroundScale );
-		surSizeY = chip.getSizeY() / ( 1 << surroundScale );
+		surSizeX = subsampledSize(chip.getSizeX());
+		surSizeY = subsampledSize(chip.getSizeY());
 		getPrefs().putInt("SubSamplingBandpassFilter.surroundScale",surroundScale);
 		computeOffsets();
 	}
@@ -260,6 +278,24 @@ public class SubSamplingBandpassFilter extends EventFilter2D implements Observer
 		computeOffsets();
 	}
 
+	/**
+    For each event, has two functions: Updates subsampled event rate map, and checks event to see if
+    surround activity is low enough to pass it. The maps are updated for the whole packet by {@link BandpassMaps#subSampledBandpass}.
+    <p>
+    The surround activity and timestamp maps are subsampled
+    (that's why checking them is fast).
+    The instantaneous activity of this event is
+    computed from the difference between
+    this event's timestamp and any previous event in this subfield (location) in the
+    subsampled timestamp map. Thus the rate reflects the averarge rate of the pool
+    of cells in this subfield, not the rate of cells within the pool (all the cells are
+    lumped together).
+    The average rate in a subfield is computed by mixing it using a mixing factor with
+    prior estimates of rate. Therefore higher activity will update the rate
+    more quickly. Thus the time constant of this update is not constant. The mixing
+    factor defines the
+    "event constant".
+	 */
 	@Override
 	synchronized public EventPacket filterPacket (
 		EventPacket in){
@@ -269,10 +305,10 @@ public class SubSamplingBandpassFilter extends EventFilter2D implements Observer
 		checkOutputPacketEventType(in);
 		checkMaps();
 		int n = in.getSize();
-		if ( n == 0 ){
+		if ( (n == 0) || (maps == null) ){
 			return in;
 		}
-		int bits = surroundScale;
+		int bits = surroundScale, sizex = chip.getSizeX(), sizey = chip.getSizeY();
 
 		// for each event, we only output the event if there has NOT been an event in the subsampled map in the surround ring in the past dt.
 		// therefore we first check for a previous event in the surround, then we write the subsampled event to the map
@@ -281,81 +317,24 @@ public class SubSamplingBandpassFilter extends EventFilter2D implements Observer
 		OutputEventIterator o =
 			out.outputIterator();
 
+		BandpassMaps m = maps;
 		for ( Object obj:in ){
 			PolarityEvent i = (PolarityEvent)obj;
                         if(i.isSpecial()) continue;
-			// if the event occurred too close after a surround spike don't pass it.
-			if ( filterEvent(i) ){
-				o.nextOutput().copyFrom(i);
+			if ( (i.x < 0) || (i.x >= sizex) || (i.y < 0) || (i.y >= sizey) ){
+				continue; // not on the chip, would be outside the map
 			}
+			m.addEvent(i,i.x >> bits,i.y >> bits);
 		}
-		return out;
-	}
-
-	/**
-    Has two functions: Updates subsampled event rate map, and checks event to see if
-    surround activity is low enough to pass it.
-    <p>
-    The surround activity and timestamp maps are subsampled
-    (that's why checking them is fast).
-    The instantaneous activity of this event is
-    computed from the difference between
-    this event's timestamp and any previous event in this subfield (location) in the
-    subsampled timestamp map. Thus the rate reflects the averarge rate of the pool
-    of cells in this subfield, not the rate of cells within the pool (all the cells are
-    lumped together).
-    The average rate in a subfield is computed by mixing it using a mixing factor with
-    prior estimates of rate. Therefore higher activity will update the rate
-    more quickly. Thus the time constant of this update is not constant. The mixing
-    factor defines the
-    "event constant".
-
-    @return false to NOT let event through, true to pass it.
-	 */
-	private boolean filterEvent (BasicEvent i){
-		boolean ret = true;
-		int sx = i.x >> surroundScale; // getString subsampled x addr
-		int sy = i.y >> surroundScale; // subsampled y addr
-		int x = 0, y = 0, dt, st;
-		float sumRate = 0f;
-		float instanRate;
-		//        int sumdt=0;
-		int count = 0;
-		// first compute the subsampled rate estimate and store it for future event use
-		st = surroundTimestamps[sx][sy];
-		dt = i.timestamp - st;
-		if ( dt <= 0 ){
-			dt = 1;
-		}
-		instanRate = (1e6f * AEConstants.TICK_DEFAULT_US) / dt;
-		float r = surroundRates[sx][sy]; // stored avg rate in this subfield
-		r = (rateMixingFactorMinus * r) + (rateMixingFactor * instanRate);
-		surroundRates[sx][sy] = r;
-
-		// now check surround to see if we can pass this event
-		for ( Offset d:surroundOffsets ){
-			// for each offset compute lookup into surroundTimestamps
-			x = sx + d.x;
-			if ( (x < 0) || (x >= surSizeX) ){
-				continue;
+		// if an event occurred during too much surround activity don't pass it
+		m.subSampledBandpass(rateMixingFactor,surroundRateThresholdHz);
+		for ( int k = 0 ; k < m.getBatchSize() ; k++ ){
+			if ( m.isPassed(k) ){
+				o.nextOutput().copyFrom(m.getEvent(k));
 			}
-			y = sy + d.y;
-			if ( (y < 0) || (y >= surSizeY) ){
-				continue; // bounds checking
-			}            // since the surround won't be updated unless there is an event in it, it will act like a peak detector.
-			// thus we force an update towards zero rate anytime any event 'touches' a subfield
-			surroundRates[x][y] *= rateMixingFactorMinus;
-			sumRate += surroundRates[x][y]; // to compute avg surround rate
-			count++; // count num summed
-		}
-
-		sumRate /= count; // compute avg surround rate
-		if ( sumRate > surroundRateThresholdHz ){
-			ret = false;
 		}
-
-		surroundTimestamps[sx][sy] = i.timestamp; // save this events timestamp in the subsampled map
-		return ret;
+		m.clearBatch();
+		return out;
 	}
 
 	public void annotate (float[][][] frame){
@@ -422,6 +401,5 @@ public class SubSamplingBandpassFilter extends EventFilter2D implements Observer
 		}
 		this.rateMixingFactor = rateMixingFactor;
 		getPrefs().putFloat("SubSamplingBandpassFilter.rateMixingFactor",rateMixingFactor);
-		rateMixingFactorMinus = 1 - rateMixingFactor;
 	}
 }
@@ -13,8 +13,6 @@ import com.jogamp.opengl.util.awt.TextRenderer;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.geom.Rectangle2D;
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -27,11 +25,11 @@ import javax.swing.JOptionPane;
 import net.sf.jaer.Description;
 import net.sf.jaer.DevelopmentStatus;
 import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.ChipEventBus;
 import net.sf.jaer.event.ApsDvsEventPacket;
 import net.sf.jaer.event.BasicEvent;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.eventprocessing.EventFilter2D;
-import net.sf.jaer.graphics.AEViewer;
 import net.sf.jaer.graphics.AEViewer.PlayMode;
 import net.sf.jaer.graphics.FrameAnnotater;
 import net.sf.jaer.hardwareinterface.usb.USBInterface;
@@ -45,7 +43,7 @@ import net.sf.jaer.util.TobiLogger;
  */
 @Description("Measures and adjusts timestamps of events using the computer clock as the time base")
 @DevelopmentStatus(DevelopmentStatus.Status.Experimental)
-public class TimestampCalibrator extends EventFilter2D implements FrameAnnotater, PropertyChangeListener {
+public class TimestampCalibrator extends EventFilter2D implements FrameAnnotater, ChipEventBus.TimestampResetListener {
 
     private float ppmTimestampTooFastError = getFloat("ppmTimestampTooFastError", 0); // parts per million that the timestamp tick is too fast
     private long driftTsMinusClockMs = 0;
@@ -55,7 +53,6 @@ public class TimestampCalibrator extends EventFilter2D implements FrameAnnotater
     private boolean enableCalibration = false;
     private boolean correctTimestampEnabled = getBoolean("correctTimestampEnabled", true);
     int bigWraps = 0, lastPacketTs = Integer.MIN_VALUE; // number of times camera timestamp has wrapped around
-    boolean propertyChangeListenersAdded = false;
 
     private String lastLoggingFolder = getString("lastLoggingFolder", System.getProperty("user.home"));
     private String lastCalibrationFile = getString("lastCalibrationFile", System.getProperty("user.home"));
@@ -73,6 +70,7 @@ public class TimestampCalibrator extends EventFilter2D implements FrameAnnotater
         setPropertyTooltip("loggingIntervalS", "interval in seconds for logging calibration data after selecting logging folder");
         setPropertyTooltip("saveCalibration", "saves calbration data to JSON file");
         setPropertyTooltip("loadCalibration", "loads calbration data from JSON file");
+        chip.getEventBus().subscribeTimestampReset(this, false);
     }
 
     @Override
@@ -82,10 +80,6 @@ public class TimestampCalibrator extends EventFilter2D implements FrameAnnotater
                 ) {
             return in;
         }
-        if (!propertyChangeListenersAdded) {
-            propertyChangeListenersAdded = true;
-            chip.getAeViewer().addPropertyChangeListener(AEViewer.EVENT_TIMESTAMPS_RESET, this);
-        }
         int currentTs = in.getLastTimestamp();
         long currentClockNs = System.nanoTime();
         if (currentTs < lastPacketTs && !resetPending) {
@@ -182,11 +176,9 @@ public class TimestampCalibrator extends EventFilter2D implements FrameAnnotater
     }
 
     @Override
-    public void propertyChange(PropertyChangeEvent pce) {
-        if (pce.getPropertyName() == AEViewer.EVENT_TIMESTAMPS_RESET) {
-            resetFilter();
-            log.info("timestamps reset: resetting timestamp calibration");
-        }
+    public void timestampsReset() {
+        resetFilter();
+        log.info("timestamps reset: resetting timestamp calibration");
     }
 
     synchronized public void doSelectLoggingFolder() {
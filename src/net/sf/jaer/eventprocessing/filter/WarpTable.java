@@ -0,0 +1,145 @@
+package net.sf.jaer.eventprocessing.filter;
+
+import java.util.Arrays;
+
+/**
+ * Remaps pixel addresses through a rigid transform (rotation about a center
+ * followed by translation) using fixed-point coefficients and a per-pixel
+ * remap table.
+ * <p>
+ * Setting a new transform costs only the computation of the fixed-point
+ * coefficients; the table is not rebuilt but invalidated by bumping a
+ * generation counter. Each pixel's target is computed on its first event
+ * after the update and then reused for all later events at that pixel until
+ * the next update. Busy pixels therefore cost a table lookup, and the
+ * transform is evaluated at most once per pixel per update rather than once
+ * per event.
+ * <p>
+ * Targets are truncated toward zero, like the cast to short of the float
+ * transform this replaces. Targets outside the array are returned as
+ * {@link #OUTSIDE}.
+ */
+public final class WarpTable {
+
+    /** Returned by {@link #warp} for targets outside the pixel array */
+    public static final int OUTSIDE = -1;
+    private static final int FRACTION_BITS = 24;
+    private static final long ONE_FIXED = 1L << FRACTION_BITS;
+    private static final float ONE = ONE_FIXED;
+
+    private int sizeX = 0, sizeY = 0;
+    private int[] targets = new int[0];
+    private int[] generations = new int[0];
+    private int generation = 1;
+    // fixed-point affine coefficients; target = R * (p - center) + translation + center
+    private long cos = ONE_FIXED, sin = 0, tx = 0, ty = 0;
+    private int centerX = 0, centerY = 0;
+
+    /**
+     * Sets the size of the pixel array. Reallocates the table only if the
+     * size changed.
+     *
+     * @param sizeX
+     * @param sizeY
+     */
+    public void setSize(int sizeX, int sizeY) {
+        if (sizeX == this.sizeX && sizeY == this.sizeY) {
+            return;
+        }
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        targets = new int[sizeX * sizeY];
+        generations = new int[sizeX * sizeY];
+        generation = 1;
+    }
+
+    /**
+     * Sets the transform from a TransformAtTime.
+     *
+     * @param t the transform, null for identity
+     * @param centerX the x center of rotation
+     * @param centerY the y center of rotation
+     */
+    public void setTransform(TransformAtTime t, int centerX, int centerY) {
+        if (t == null) {
+            setTransform(1, 0, 0, 0, centerX, centerY);
+        } else {
+            setTransform(t.cosAngle, t.sinAngle, t.translationPixels.x, t.translationPixels.y, centerX, centerY);
+        }
+    }
+
+    /**
+     * Sets the transform and invalidates all remapped pixels.
+     *
+     * @param cosAngle cosine of rotation angle
+     * @param sinAngle sine of rotation angle
+     * @param translationX in pixels
+     * @param translationY in pixels
+     * @param centerX the x center of rotation
+     * @param centerY the y center of rotation
+     */
+    public void setTransform(float cosAngle, float sinAngle, float translationX, float translationY, int centerX, int centerY) {
+        cos = Math.round(cosAngle * ONE);
+        sin = Math.round(sinAngle * ONE);
+        tx = Math.round(translationX * ONE);
+        ty = Math.round(translationY * ONE);
+        this.centerX = centerX;
+        this.centerY = centerY;
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(generations, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Returns the remapped address of a pixel.
+     *
+     * @param x
+     * @param y
+     * @return the target packed as x | (y &lt;&lt; 16), see {@link #getX} and
+     * {@link #getY}, or {@link #OUTSIDE}
+     */
+    public int warp(int x, int y) {
+        if (x < 0 || y < 0 || x >= sizeX || y >= sizeY) {
+            return compute(x, y); // not cacheable
+        }
+        int i = x + (y * sizeX);
+        if (generations[i] != generation) {
+            targets[i] = compute(x, y);
+            generations[i] = generation;
+        }
+        return targets[i];
+    }
+
+    /**
+     * @param target a target returned by {@link #warp}
+     * @return the x address of target
+     */
+    public static int getX(int target) {
+        return target & 0xffff;
+    }
+
+    /**
+     * @param target a target returned by {@link #warp}
+     * @return the y address of target
+     */
+    public static int getY(int target) {
+        return target >>> 16;
+    }
+
+    private int compute(int x, int y) {
+        long nx = x - centerX, ny = y - centerY;
+        // the center is added before truncating, as in the float transform
+        long x2 = ((cos * nx) - (sin * ny)) + tx + ((long) centerX << FRACTION_BITS);
+        long y2 = ((sin * nx) + (cos * ny)) + ty + ((long) centerY << FRACTION_BITS);
+        // truncation toward zero maps (-1,0) to 0, so only values at or below -1 are outside
+        if (x2 <= -ONE_FIXED || y2 <= -ONE_FIXED) {
+            return OUTSIDE;
+        }
+        int xi = (int) (Math.max(0, x2) >> FRACTION_BITS), yi = (int) (Math.max(0, y2) >> FRACTION_BITS);
+        if (xi >= sizeX || yi >= sizeY) {
+            return OUTSIDE;
+        }
+        return xi | (yi << 16);
+    }
+}
@@ -15,6 +15,7 @@ import java.util.Random;
 import net.sf.jaer.Description;
 import net.sf.jaer.DevelopmentStatus;
 import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.event.BinocularEvent;
 import net.sf.jaer.event.EventPacket;
 import net.sf.jaer.event.orientation.DvsOrientationEvent;
 import net.sf.jaer.event.orientation.OrientationEventInterface;
@@ -83,26 +84,37 @@ abstract public class AbstractOrientationFilter extends EventFilter2D implements
      * time to neighbors (reduces # events)
      */
     protected boolean useAverageDtEnabled = getBoolean("useAverageDtEnabled", true);
+    /**
+     * set true to score all orientations in one pass over the union of their
+     * RFs, false to scan each RF separately (which allows early exit in max dt
+     * mode)
+     */
+    protected boolean singlePassScoringEnabled = getBoolean("singlePassScoringEnabled", false);
     protected int dtRejectThreshold = minDtThresholdUs * dtRejectMultiplier;
     protected int rfSize;
     protected Random r;
 
     /**
-     * Times of most recent input events: [x][y][polarity]
+     * Flat padded maps of most recent input event times with the precomputed
+     * linear RF offsets of each orientation
+     */
+    protected OrientationKernel kernel = new OrientationKernel();
+    /**
+     * Number of event types in the time map, 2 for polarity or 4 for polarity
+     * and eye
      */
-    protected int[][][] lastTimesMap; // x,y,polarity
+    private int numTimePlanes = 2;
     /**
      * Scalar map of past orientation values: [x][y]
      */
     protected float[][] oriHistoryMap;  // scalar orientation value x,y
     /**
-     * Delta times to neighbors in each direction.
+     * Average or max times to neighbors in each dir.
      */
-    protected int[][] dts = null; // new int[NUM_TYPES][length*2+1]; // delta times to neighbors in each direction
+    protected int[] oridts = new int[NUM_TYPES]; // average or max times to neighbors in each dir
     /**
-     * Max times to neighbors in each dir.
+     * Tie-breaker for oridts; variance of dts or second largest dt.
      */
-    protected int[] oridts = new int[NUM_TYPES]; // max times to neighbors in each dir
     protected int[] oriDecideHelper = new int[NUM_TYPES];
     /**
      * Historical orientation values.
@@ -170,13 +182,14 @@ abstract public class AbstractOrientationFilter extends EventFilter2D implements
         setPropertyTooltip(tim, "dtRejectThreshold", "reject delta times more than this time in us to reduce effect of very old events");
         setPropertyTooltip(tim, "useAverageDtEnabled", "Use averarge delta time instead of minimum");
         setPropertyTooltip(tim, "multiOriOutputEnabled", "Enables multiple event output for all events that pass test");
+        setPropertyTooltip(tim, "singlePassScoringEnabled", "Scores all orientations in one pass over the neighborhood instead of scanning each orientation RF separately");
         setPropertyTooltip(hist, "oriHistoryEnabled", "enable use of prior orientation values to filter out events not consistent with history");
         setPropertyTooltip(hist, "oriHistoryMixingFactor", "mixing factor for history of local orientation, increase to learn new orientations more quickly");
         setPropertyTooltip(hist, "oriHistoryDiffThreshold", "detected orientation must be within this value of historical value to pass. Value of 0.5 corresponds to 45degree with 4 directions.");
     }
 
     public Object getFilterState() {
-        return lastTimesMap;
+        return kernel.getTimes();
     }
 
     public boolean isGeneratingFilter() {
@@ -191,13 +204,7 @@ abstract public class AbstractOrientationFilter extends EventFilter2D implements
 
 //        allocateMaps(); // will allocate even if filter is enclosed and enclosing is not enabled
         oriHist.reset();
-        if (lastTimesMap != null) {
-            for (int[][] element : lastTimesMap) {
-                for (int[] element2 : element) {
-                    Arrays.fill(element2, 0);
-                }
-            }
-        }
+        kernel.reset();
         if (oriHistoryMap != null) {
             for (float[] element : oriHistoryMap) {
                 Arrays.fill(element, -1f);
@@ -214,16 +221,16 @@ abstract public class AbstractOrientationFilter extends EventFilter2D implements
         if (yes) {
             resetFilter();
         } else {
-            lastTimesMap = null;
+            kernel = new OrientationKernel();
             oriHistoryMap = null;
         }
     }
 
     protected void checkMaps(EventPacket packet) {
-        if ((lastTimesMap == null)
-                || (lastTimesMap.length != chip.getSizeX())
-                || (lastTimesMap[0].length != chip.getSizeY())
-                || (lastTimesMap[0][0].length != 2)) { // changed to 2 for PolarityEvents
+        int planes = (packet != null && packet.getEventClass() == BinocularEvent.class) ? 4 : 2; // polarity, and eye for binocular
+        if (oriHistoryMap == null || oriHistoryMap.length != chip.getSizeX() || oriHistoryMap[0].length != chip.getSizeY()
+                || kernel.isAllocationNeeded(chip.getSizeX(), chip.getSizeY(), planes, length, width, subSampleShift)) {
+            numTimePlanes = planes;
             allocateMaps();
         }
     }
@@ -234,16 +241,41 @@ abstract public class AbstractOrientationFilter extends EventFilter2D implements
         }
 
         if (chip != null) {
-            lastTimesMap = new int[chip.getSizeX()][chip.getSizeY()][2]; // fixed to 2 for PolarityEvents
+            kernel.allocate(chip.getSizeX(), chip.getSizeY(), numTimePlanes, length, width, subSampleShift);
             oriHistoryMap = new float[chip.getSizeX()][chip.getSizeY()];
             for (float[] element : oriHistoryMap) {
                 Arrays.fill(element, -1f);
             }
-            log.info(String.format("allocated int[%d][%d][%d] array for last event times and float[%d][%d] array for orientation history", chip.getSizeX(), chip.getSizeY(), 2, chip.getSizeX(), chip.getSizeY()));
+            log.info(String.format("allocated padded int[%d] map of %d types for last event times and float[%d][%d] array for orientation history", kernel.getTimes().length, numTimePlanes, chip.getSizeX(), chip.getSizeY()));
         }
         computeRFOffsets();
     }
 
+    /**
+     * Stores the event time and scores the RFs of all orientations around the
+     * event, filling oridts and oriDecideHelper. Orientations that cannot pass
+     * are scored Integer.MAX_VALUE.
+     *
+     * @param x subsampled x address
+     * @param y subsampled y address
+     * @param type the event type, i.e. polarity, or polarity + 2*eye
+     * @param timestamp the event timestamp
+     * @return false if the address is outside the map and nothing was scored
+     */
+    protected boolean scoreOrientations(int x, int y, int type, int timestamp) {
+        if (!kernel.contains(x, y) || type < 0 || type >= numTimePlanes) {
+            return false;
+        }
+        int index = kernel.index(x, y, type);
+        kernel.put(index, timestamp);
+        if (useAverageDtEnabled) {
+            kernel.scoreAverage(index, timestamp, dtRejectThreshold, minDtThresholdUs, singlePassScoringEnabled, oridts, oriDecideHelper);
+        } else {
+            kernel.scoreMax(index, timestamp, dtRejectThreshold, minDtThresholdUs, !multiOriOutputEnabled, singlePassScoringEnabled, oridts, oriDecideHelper);
+        }
+        return true;
+    }
+
     /**
      * @return the average orientation vector based on counts. A unit vector
      * pointing along each orientation is multiplied by the count of local
@@ -272,7 +304,8 @@ abstract public class AbstractOrientationFilter extends EventFilter2D implements
     }
 
     /**
-     * precomputes offsets for iterating over neighborhoods
+     * precomputes Dir offsets for iterating over neighborhoods; the
+     * orientation scoring itself uses the linear offsets of the kernel
      */
     protected void computeRFOffsets() {
         // compute array of Dir for each orientation
@@ -294,7 +327,6 @@ abstract public class AbstractOrientationFilter extends EventFilter2D implements
                 }
             }
         }
-        dts = new int[NUM_TYPES][rfSize]; // delta times to neighbors in each direction
     }
 
     @Override
@@ -448,6 +480,21 @@ abstract public class AbstractOrientationFilter extends EventFilter2D implements
     }
     // </editor-fold>
 
+    // <editor-fold defaultstate="collapsed" desc="getter/setter for --SinglePassScoringEnabled--">
+    synchronized public boolean isSinglePassScoringEnabled() {
+        return singlePassScoringEnabled;
+    }
+
+    /**
+     * @param singlePassScoringEnabled true to visit each neighbor once for all
+     * orientations, false to scan each orientation RF separately
+     */
+    synchronized public void setSinglePassScoringEnabled(boolean singlePassScoringEnabled) {
+        this.singlePassScoringEnabled = singlePassScoringEnabled;
+        putBoolean("singlePassScoringEnabled", singlePassScoringEnabled);
+    }
+    // </editor-fold>
+
     // <editor-fold defaultstate="collapsed" desc="getter/setter for --MultiOriOutputEnabled--">
     synchronized public boolean isMultiOriOutputEnabled() {
         return multiOriOutputEnabled;
@@ -0,0 +1,367 @@
+package net.sf.jaer.eventprocessing.label;
+
+import java.util.Arrays;
+
+/**
+ * Spatio-temporal correlation core shared by the orientation labelers.
+ * <p>
+ * The last event times are stored in a single flat <code>int[]</code> with one
+ * plane per event type (polarity, or polarity and eye for binocular input).
+ * Each plane is padded by the maximum receptive field (RF) reach on all sides
+ * so that the RF can be scanned without bounds checks; the padding is never
+ * written and holds {@link #NEVER}. The RF of each orientation is precomputed
+ * as a table of linear index offsets into a plane, and a second table holds
+ * the union of all RFs with a bit mask of the orientations that contain each
+ * offset, so that all orientations can be scored in a single pass over the
+ * neighborhood. The maps are built for the subsampled array size, so
+ * subsampling shrinks the RF along with the map.
+ * <p>
+ * The scoring methods fill the orientation delta time array and the
+ * tie-breaking helper array the same way the original
+ * <code>SimpleOrientationFilter</code> loops did: either the mean delta time
+ * and its variance, or the max delta time and the previous max. Orientations
+ * that cannot pass (or cannot win the WTA) are marked with
+ * <code>Integer.MAX_VALUE</code>, which allows the max delta time scoring to
+ * stop scanning an RF as soon as it is beaten.
+ */
+public final class OrientationKernel {
+
+    /**
+     * Time value of map cells that never had an event; delta times to it are
+     * rejected
+     */
+    public static final int NEVER = Integer.MIN_VALUE;
+
+    /**
+     * The number of orientations, must match
+     * AbstractOrientationFilter.NUM_TYPES
+     */
+    public static final int NUM_TYPES = 4;
+
+    /**
+     * The basic (x,y) steps along each orientation. The perpendicular to i is
+     * (i+2)%NUM_TYPES.
+     */
+    private static final int[][] BASE_STEPS = {
+        {1, 0}, // right
+        {1, 1}, // 45 up right
+        {0, 1}, // up
+        {-1, 1}, // up left
+    };
+
+    private int sizeX = 0, sizeY = 0, numPlanes = 0, length = 0, width = 0, subSampleShift = 0;
+    private int pad, rowStride, planeSize, rfSize;
+    private int[] times = null;
+    /**
+     * Linear offsets of RF pixels, [orientation][rf index]
+     */
+    private int[][] oriOffsets = null;
+    /**
+     * Linear offsets of the union of all RFs and the orientation bit mask of
+     * each of them
+     */
+    private int[] unionOffsets = null, unionMasks = null;
+
+    // scratch accumulators for single pass scoring
+    private final long[] sums = new long[NUM_TYPES], sumSqs = new long[NUM_TYPES];
+    private final int[] counts = new int[NUM_TYPES], maxs = new int[NUM_TYPES], prevMaxs = new int[NUM_TYPES];
+
+    /**
+     * Returns true if the maps need to be (re)allocated for these parameters.
+     *
+     * @param sizeX chip size x
+     * @param sizeY chip size y
+     * @param numPlanes number of event types stored per pixel
+     * @param length half length of RF
+     * @param width half width of RF
+     * @param subSampleShift spatial subsampling in bits
+     * @return true if allocate must be called
+     */
+    public boolean isAllocationNeeded(int sizeX, int sizeY, int numPlanes, int length, int width, int subSampleShift) {
+        return times == null || this.numPlanes != numPlanes || this.length != length || this.width != width
+                || this.subSampleShift != subSampleShift
+                || this.sizeX != mapSize(sizeX, subSampleShift) || this.sizeY != mapSize(sizeY, subSampleShift);
+    }
+
+    private static int mapSize(int chipSize, int subSampleShift) {
+        return ((chipSize - 1) >>> subSampleShift) + 1;
+    }
+
+    /**
+     * Allocates the padded time map and computes the RF offset tables.
+     *
+     * @param chipSizeX chip size x
+     * @param chipSizeY chip size y
+     * @param numPlanes number of event types stored per pixel
+     * @param length half length of RF
+     * @param width half width of RF
+     * @param subSampleShift spatial subsampling in bits; the map and the RF
+     * both live in the subsampled space
+     */
+    public void allocate(int chipSizeX, int chipSizeY, int numPlanes, int length, int width, int subSampleShift) {
+        this.sizeX = mapSize(chipSizeX, subSampleShift);
+        this.sizeY = mapSize(chipSizeY, subSampleShift);
+        this.numPlanes = numPlanes;
+        this.length = length;
+        this.width = width;
+        this.subSampleShift = subSampleShift;
+        pad = length + width;
+        rowStride = sizeY + 2 * pad;
+        planeSize = (sizeX + 2 * pad) * rowStride;
+        times = new int[planeSize * numPlanes];
+        computeOffsets();
+        reset();
+    }
+
+    private void computeOffsets() {
+        rfSize = 2 * length * ((2 * width) + 1);
+        oriOffsets = new int[NUM_TYPES][rfSize];
+        int[] allOffsets = new int[NUM_TYPES * rfSize];
+        int[] allMasks = new int[NUM_TYPES * rfSize];
+        int numUnion = 0;
+        for (int ori = 0; ori < NUM_TYPES; ori++) {
+            int[] d = BASE_STEPS[ori];
+            int[] pd = BASE_STEPS[(ori + 2) % NUM_TYPES]; // perpendicular direction
+            int ind = 0;
+            for (int s = -length; s <= length; s++) {
+                if (s == 0) {
+                    continue;
+                }
+                for (int w = -width; w <= width; w++) {
+                    int dx = (s * d[0]) + (w * pd[0]), dy = (s * d[1]) + (w * pd[1]);
+                    int off = (dx * rowStride) + dy;
+                    oriOffsets[ori][ind++] = off;
+                    int u = 0;
+                    while (u < numUnion && allOffsets[u] != off) {
+                        u++;
+                    }
+                    if (u == numUnion) {
+                        allOffsets[numUnion++] = off;
+                    }
+                    allMasks[u] |= 1 << ori;
+                }
+            }
+        }
+        unionOffsets = Arrays.copyOf(allOffsets, numUnion);
+        unionMasks = Arrays.copyOf(allMasks, numUnion);
+    }
+
+    /**
+     * Clears all times to NEVER.
+     */
+    public void reset() {
+        if (times != null) {
+            Arrays.fill(times, NEVER);
+        }
+    }
+
+    /**
+     * @param x subsampled x address
+     * @param y subsampled y address
+     * @return true if the address lies in the map
+     */
+    public boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < sizeX && y < sizeY;
+    }
+
+    /**
+     * @param x subsampled x address, must be contained in map
+     * @param y subsampled y address, must be contained in map
+     * @param plane the event type plane
+     * @return the linear index into the time map
+     */
+    public int index(int x, int y, int plane) {
+        return (plane * planeSize) + ((x + pad) * rowStride) + y + pad;
+    }
+
+    /**
+     * Stores the timestamp of an event
+     *
+     * @param index from {@link #index(int, int, int) }
+     * @param timestamp in us
+     */
+    public void put(int index, int timestamp) {
+        times[index] = timestamp;
+    }
+
+    /**
+     * Computes mean delta times to the RF of each orientation and the variance
+     * as the tie-breaker.
+     *
+     * @param index the center pixel from {@link #index(int, int, int) }
+     * @param timestamp the event timestamp
+     * @param rejectThresholdUs delta times larger than this (or negative) are
+     * not counted
+     * @param passThresholdUs orientations with mean at or above this are marked
+     * <code>Integer.MAX_VALUE</code> and their variance is not computed
+     * @param singlePass true to visit each neighbor once for all orientations
+     * @param oridts filled with the mean delta times
+     * @param helper filled with the delta time variances
+     */
+    public void scoreAverage(int index, int timestamp, int rejectThresholdUs, int passThresholdUs, boolean singlePass, int[] oridts, int[] helper) {
+        final int[] t = times;
+        if (singlePass) {
+            Arrays.fill(sums, 0);
+            Arrays.fill(sumSqs, 0);
+            Arrays.fill(counts, 0);
+            for (int k = 0; k < unionOffsets.length; k++) {
+                int dt = timestamp - t[index + unionOffsets[k]];
+                if (dt < 0 || dt > rejectThresholdUs) {
+                    continue;
+                }
+                long dt2 = (long) dt * dt;
+                int mask = unionMasks[k];
+                while (mask != 0) {
+                    int ori = Integer.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                    sums[ori] += dt;
+                    sumSqs[ori] += dt2;
+                    counts[ori]++;
+                }
+            }
+            for (int ori = 0; ori < NUM_TYPES; ori++) {
+                finishAverage(ori, sums[ori], sumSqs[ori], counts[ori], passThresholdUs, oridts, helper);
+            }
+        } else {
+            for (int ori = 0; ori < NUM_TYPES; ori++) {
+                final int[] d = oriOffsets[ori];
+                long sum = 0, sumSq = 0;
+                int count = 0;
+                for (int k = 0; k < d.length; k++) {
+                    int dt = timestamp - t[index + d[k]];
+                    if (dt < 0 || dt > rejectThresholdUs) {
+                        continue; // we're averaging delta times; this rejects outliers
+                    }
+                    sum += dt;
+                    sumSq += (long) dt * dt;
+                    count++;
+                }
+                finishAverage(ori, sum, sumSq, count, passThresholdUs, oridts, helper);
+            }
+        }
+    }
+
+    private static void finishAverage(int ori, long sum, long sumSq, int count, int passThresholdUs, int[] oridts, int[] helper) {
+        if (count == 0) {
+            // no samples, all outside outlier rejection threshold
+            oridts[ori] = Integer.MAX_VALUE;
+            helper[ori] = Integer.MAX_VALUE;
+            return;
+        }
+        long mean = sum / count;
+        if (mean >= passThresholdUs) {
+            oridts[ori] = Integer.MAX_VALUE; // cannot pass, skip the variance
+            helper[ori] = Integer.MAX_VALUE;
+            return;
+        }
+        oridts[ori] = (int) mean;
+        long var = (sumSq / count) - (mean * mean); // biased estimator of variance
+        helper[ori] = var > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) var;
+    }
+
+    /**
+     * Computes the max delta time to the RF of each orientation and the
+     * previous max as the tie-breaker.
+     *
+     * @param index the center pixel from {@link #index(int, int, int) }
+     * @param timestamp the event timestamp
+     * @param rejectThresholdUs delta times larger than this (or negative) are
+     * not counted
+     * @param passThresholdUs orientations with max at or above this are marked
+     * <code>Integer.MAX_VALUE</code>
+     * @param wta true if only the best orientation will be used; then the scan
+     * of an RF stops as soon as its max exceeds the best max found so far.
+     * Ignored for single pass.
+     * @param singlePass true to visit each neighbor once for all orientations
+     * @param oridts filled with the max delta times
+     * @param helper filled with the previous max delta times
+     */
+    public void scoreMax(int index, int timestamp, int rejectThresholdUs, int passThresholdUs, boolean wta, boolean singlePass, int[] oridts, int[] helper) {
+        final int[] t = times;
+        if (singlePass) {
+            Arrays.fill(maxs, Integer.MIN_VALUE);
+            Arrays.fill(prevMaxs, Integer.MIN_VALUE);
+            for (int k = 0; k < unionOffsets.length; k++) {
+                int dt = timestamp - t[index + unionOffsets[k]];
+                if (dt < 0 || dt > rejectThresholdUs) {
+                    continue; // reject old timestamps to better detect edges
+                }
+                int mask = unionMasks[k];
+                while (mask != 0) {
+                    int ori = Integer.numberOfTrailingZeros(mask);
+                    mask &= mask - 1;
+                    if (dt > maxs[ori]) {
+                        prevMaxs[ori] = maxs[ori]; // we need this if two oridts are equal
+                        maxs[ori] = dt;
+                    }
+                }
+            }
+            for (int ori = 0; ori < NUM_TYPES; ori++) {
+                if (maxs[ori] == Integer.MIN_VALUE || maxs[ori] >= passThresholdUs) {
+                    oridts[ori] = Integer.MAX_VALUE;
+                    helper[ori] = Integer.MAX_VALUE;
+                } else {
+                    oridts[ori] = maxs[ori];
+                    helper[ori] = prevMaxs[ori];
+                }
+            }
+            return;
+        }
+        int bound = passThresholdUs;
+        for (int ori = 0; ori < NUM_TYPES; ori++) {
+            final int[] d = oriOffsets[ori];
+            int max = Integer.MIN_VALUE, prevMax = Integer.MIN_VALUE;
+            for (int k = 0; k < d.length; k++) {
+                int dt = timestamp - t[index + d[k]];
+                if (dt < 0 || dt > rejectThresholdUs) {
+                    continue;
+                }
+                if (dt > max) {
+                    prevMax = max;
+                    max = dt;
+                    if (max >= passThresholdUs || (wta && max > bound)) {
+                        break; // already beaten, early exit
+                    }
+                }
+            }
+            if (max == Integer.MIN_VALUE || max >= passThresholdUs || (wta && max > bound)) {
+                oridts[ori] = Integer.MAX_VALUE;
+                helper[ori] = Integer.MAX_VALUE;
+            } else {
+                oridts[ori] = max;
+                helper[ori] = prevMax;
+                if (wta) {
+                    bound = max; // later orientations must be at least as good to win
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the subsampled map size in x
+     */
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    /**
+     * @return the subsampled map size in y
+     */
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    /**
+     * @return the number of pixels in the RF of each orientation
+     */
+    public int getRfSize() {
+        return rfSize;
+    }
+
+    /**
+     * @return the flat padded time map, for inspection
+     */
+    public int[] getTimes() {
+        return times;
+    }
+}
@@ -94,9 +94,6 @@ public class SimpleOrientationFilter extends AbstractOrientationFilter{
         EventPacket outputPacket = getOutputPacket();
         OutputEventIterator outItr = outputPacket.outputIterator();
 
-        int sizex = chip.getSizeX() - 1;
-        int sizey = chip.getSizeY() - 1;
-
         oriHist.reset();
         checkMaps(in);
 
@@ -129,96 +126,14 @@ public class SimpleOrientationFilter extends AbstractOrientationFilter{
                 }
             }
             if ( eye == 1 ){
-                type = type << 1;
+                type += 2; // right eye events have their own pair of polarity maps
             }
-            if(x<0||y<0||type<0||x>sizex||y>sizey){ // sizex and sizey are one less than number of cols and rows
+
+            // Store the event time and score each orientation, see OrientationKernel
+            if ( !scoreOrientations(x , y , type , e.timestamp) ){
                 log.warning("coordinate for event "+e.toString()+" is out of bounds");
                 continue;
             }
-            lastTimesMap[x][y][type] = e.timestamp;
-
-            // For each orientation and position in the receptive field compute
-            // the time to last event of the same type.
-            // TODO: Currently this is wrong as soon as subsampling is enabled.
-            //       The offset is not subsampled, so when subsampling, the 
-            //       offsets are still computed in the 'unsampled' space.
-            int xx, yy;
-            for ( int ori = 0 ; ori < NUM_TYPES ; ori++ ){
-                // 'd' is vector of spatial offsets for this orientation. It is
-                // precomputed for performance. Each element of 'd' is a offset
-                // direction to an element of the RF.
-                Dir[] d = offsets[ori]; 
-                for ( int i = 0 ; i < d.length ; i++ ){ 
-                    xx = x + d[i].x;
-                    yy = y + d[i].y;
-                    
-                    if ( xx < 0 || xx > sizex ) continue;
-                    if ( yy < 0 || yy > sizey ) continue; // indexing out of array
-                    
-                    dts[ori][i] = e.timestamp - lastTimesMap[xx][yy][type];
-                }
-            }
-            
-            //Compute the average or maximum time to last event within RF
-            if ( useAverageDtEnabled ){
-                // <editor-fold defaultstate="collapsed" desc="--compute the average dt's in each direction--">
-                for ( int ori = 0 ; ori < NUM_TYPES ; ori++ ){
-                    oridts[ori] = 0; 
-                    oriDecideHelper[ori] = 0;
-                    
-                    int count = 0;
-                    int[] dtList = new int[rfSize];
-                    for ( int k = 0 ; k < rfSize ; k++ ){
-                        int dt = dts[ori][k];
-                        if ( dt<0 || dt > dtRejectThreshold ){
-                            continue; // we're averaging delta times; this rejects outliers
-                        }
-                        oridts[ori] += dt; // average dt
-                        dtList[k] = dt;
-                        count++;
-                    }
-                    if ( count > 0 ){
-                        oridts[ori] /= count; // normalize by RF size
-                        for(int k =0;k<rfSize;k++) {
-                            if(dtList[k]>0) dtList[k] -= oridts[ori];
-                            oriDecideHelper[ori] += (dtList[k]*dtList[k]);
-                        }
-                        if(oriDecideHelper[ori]<0)oriDecideHelper[ori] = Integer.MAX_VALUE; //Happens when dtList[k]^2 is larger than maxint or the sum exceeds maxint.
-                        oriDecideHelper[ori] /= count; //biased estimator of variance
-                        
-                    } else {
-                        // no samples, all outside outlier rejection threshold
-                        oridts[ori] = Integer.MAX_VALUE;
-                        oriDecideHelper[ori] = Integer.MAX_VALUE;
-                    }
-                }
-                // </editor-fold>
-            } else { // use max dt
-                //bbeyer: I dont really see a situation in which the maxDt method
-                // would be preferred over the averageDt method. When is this useful?
-                // I find the maxDt method to be unreliable and unmeaningful, wheras
-                // I can understand the idea behind the averageDt method.
-                // <editor-fold defaultstate="collapsed" desc="--compute the max dt in each direction--">
-                for ( int ori = 0 ; ori < NUM_TYPES ; ori++ ){
-                    oridts[ori] = Integer.MIN_VALUE;
-                    oriDecideHelper[ori] = Integer.MIN_VALUE;
-
-                    for ( int k = 0 ; k < rfSize ; k++ ){  
-                        // iterate over RF and find maxdt to previous events, final orientation will be that orientation that has minimum maxdt
-                        // this has problem that pixels that do NOT fire an event still contribute a large dt from previous edges
-                        if ( dts[ori][k] > dtRejectThreshold ){
-                            continue; // reject old timestamps to better detect edges
-                        }
-                        if(dts[ori][k] > oridts[ori]){
-                            oriDecideHelper[ori] = oridts[ori];// we need this if two oridts are equal
-                            oridts[ori] = dts[ori][k];
-                        }
-                        //readability^^
-                        //maxdts[ori] = dts[ori][k] > oridts[ori] ? dts[ori][k] : oridts[ori]; // max dt to neighbor
-                    }
-                }
-                // </editor-fold>
-            }
 
             if ( !multiOriOutputEnabled ){
                 // <editor-fold defaultstate="collapsed" desc="--WTA to find the one best orientation per event--">
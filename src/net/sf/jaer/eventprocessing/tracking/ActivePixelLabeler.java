@@ -0,0 +1,376 @@
+package net.sf.jaer.eventprocessing.tracking;
+
+import java.util.Arrays;
+
+/**
+ * The pixel map and cluster labeling of {@link ParticleTracker}. It holds, in
+ * flat arrays indexed by x*sizeY+y, the timestamp of the last event and the
+ * cluster id of each pixel, and keeps a list of the pixels that got events
+ * recently, so that labeling costs time in proportion to the active pixels
+ * rather than to the pixel array.
+ * <p>
+ * {@link #labelComponents} finds the connected components of the alive
+ * pixels, where pixels within the given radius of each other are connected,
+ * with a union-find over the active pixels. It replaces a recursive flood
+ * fill, which needed a stack as deep as the largest blob and overflowed on
+ * large ones.
+ * <p>
+ * Cluster ids are also kept in a union-find with path compression: when the
+ * tracker merges clusters it joins their ids, so the cluster that owns the id
+ * of a pixel is found in near constant time rather than by searching the id
+ * lists of all clusters. Ids are numbered consecutively from the first id of
+ * the last labeling, which retires all older ids, and the table holds at most
+ * {@link #MAX_IDS} ids, after which the tracker relabels.
+ * <p>
+ * Not thread safe; the tracker synchronizes.
+ */
+public final class ActivePixelLabeler {
+
+    /** The number of cluster ids after which {@link #isIdTableFull} returns true */
+    public static final int MAX_IDS = 1 << 16;
+
+    final int sizeX, sizeY, radius;
+    /** Timestamp of the last event of each pixel, -1 if it had none */
+    final int[] lastEvent;
+    /** Cluster id of each pixel, -1 if it had none */
+    final int[] label;
+
+    // the pixels that got events since they were last found dead
+    private final boolean[] isActive;
+    private int[] active = new int[1024];
+    private int numActive = 0;
+
+    // per labeling: slot of each alive pixel in active[] and union-find parent and component of each slot
+    private final int[] slotOf;
+    private int[] slotParent = new int[0], slotComponent = new int[0];
+
+    // the components found by the last labeling
+    private int numComponents = 0;
+    private int[] componentLast = new int[64];
+    private float[] componentMass = new float[64];
+    private Object[] componentOwner = new Object[64];
+
+    // union-find of the ids idBase..idBase+numIds-1, and the owner of each root
+    private int idBase = 0, numIds = 0;
+    private int[] idParent = new int[256];
+    private Object[] idOwner = new Object[256];
+
+    /**
+     * @param sizeX the number of columns
+     * @param sizeY the number of rows
+     * @param radius pixels whose x and y differ by at most radius are
+     * connected
+     */
+    public ActivePixelLabeler(int sizeX, int sizeY, int radius) {
+        if ((sizeX < 1) || (sizeY < 1) || (radius < 0)) {
+            throw new IllegalArgumentException("bad size " + sizeX + "x" + sizeY + " or radius " + radius);
+        }
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.radius = radius;
+        int n = sizeX * sizeY;
+        lastEvent = new int[n];
+        label = new int[n];
+        isActive = new boolean[n];
+        slotOf = new int[n];
+        reset();
+    }
+
+    /** Clears the pixel map and all ids. */
+    public void reset() {
+        Arrays.fill(lastEvent, -1);
+        Arrays.fill(label, -1);
+        Arrays.fill(isActive, false);
+        numActive = 0;
+        Arrays.fill(componentOwner, null);
+        numComponents = 0;
+        resetIds(0, 0);
+    }
+
+    /** @return the index of pixel x,y in the pixel arrays */
+    public int index(int x, int y) {
+        return (x * sizeY) + y;
+    }
+
+    /**
+     * Records an event at a pixel. Its cluster id is set separately in
+     * {@link #label}.
+     *
+     * @param pixel the index of the pixel
+     * @param timestamp the timestamp of the event
+     */
+    public void setEvent(int pixel, int timestamp) {
+        lastEvent[pixel] = timestamp;
+        if (!isActive[pixel]) {
+            isActive[pixel] = true;
+            if (numActive == active.length) {
+                active = Arrays.copyOf(active, 2 * numActive);
+            }
+            active[numActive++] = pixel;
+        }
+    }
+
+    /**
+     * Lists again every pixel that has had an event. Pixels are dropped from
+     * the active list when a labeling finds them dead, which assumes that
+     * time moves forward; call this when it moves backwards, since those
+     * pixels may be alive at the earlier time.
+     */
+    public void activateAll() {
+        for (int p = 0; p < lastEvent.length; p++) {
+            if ((lastEvent[p] != -1) && !isActive[p]) {
+                isActive[p] = true;
+                if (numActive == active.length) {
+                    active = Arrays.copyOf(active, 2 * numActive);
+                }
+                active[numActive++] = p;
+            }
+        }
+    }
+
+    /** @return the number of pixels that are currently listed as active */
+    public int getNumActive() {
+        return numActive;
+    }
+
+    /**
+     * Labels the connected components of the pixels whose last event is at
+     * or after timeLimit. Component j gets the id firstId+j, which is written
+     * to the label of its pixels; components are numbered in the order of
+     * their first pixel in x major order. For each component the owner of the
+     * id that its first pixel had before, the latest timestamp and the mass,
+     * the sum over its pixels of exp(-(now-lastEvent)/lifetime), are kept.
+     * <p>
+     * Afterwards the id table holds only the new ids, without owners, and
+     * pixels that are dead are dropped from the active list.
+     *
+     * @param timeLimit the oldest timestamp of an alive pixel
+     * @param firstId the id of the first component
+     * @param now the time at which the mass is evaluated
+     * @param lifetime the time constant of the mass
+     * @return the number of components
+     */
+    public int labelComponents(int timeLimit, int firstId, float now, int lifetime) {
+        Arrays.fill(componentOwner, 0, numComponents, null);
+        // keep the alive pixels and bring them into x major order
+        int n = 0;
+        for (int i = 0; i < numActive; i++) {
+            int p = active[i];
+            if (lastEvent[p] >= timeLimit) {
+                active[n++] = p;
+            } else {
+                isActive[p] = false;
+            }
+        }
+        numActive = n;
+        Arrays.sort(active, 0, n);
+        if (slotParent.length < n) {
+            slotParent = new int[active.length];
+            slotComponent = new int[active.length];
+        }
+        for (int s = 0; s < n; s++) {
+            slotOf[active[s]] = s;
+            slotParent[s] = s;
+        }
+        // join each pixel with the alive pixels that precede it within the radius;
+        // the root of a component is always its first slot
+        final int r = radius;
+        for (int s = 0; s < n; s++) {
+            int p = active[s], x = p / sizeY, y = p - (x * sizeY);
+            for (int dx = -r; dx <= 0; dx++) {
+                int xx = x + dx;
+                if (xx < 0) {
+                    continue;
+                }
+                int dyMax = dx < 0 ? r : -1;
+                for (int dy = -r; dy <= dyMax; dy++) {
+                    int yy = y + dy;
+                    if ((yy < 0) || (yy >= sizeY)) {
+                        continue;
+                    }
+                    int q = (xx * sizeY) + yy;
+                    if (isActive[q]) {
+                        union(s, slotOf[q]);
+                    }
+                }
+            }
+        }
+        // number the components and relabel their pixels
+        int c = 0;
+        for (int s = 0; s < n; s++) {
+            int p = active[s], root = findSlot(s), comp;
+            if (root == s) {
+                comp = c++;
+                ensureComponents(c);
+                componentOwner[comp] = getOwner(label[p]);
+                componentLast[comp] = lastEvent[p];
+                componentMass[comp] = 0;
+            } else {
+                comp = slotComponent[root];
+            }
+            slotComponent[s] = comp;
+            label[p] = firstId + comp;
+            componentMass[comp] += (float) Math.exp(-(now - lastEvent[p]) / lifetime);
+            if (componentLast[comp] < lastEvent[p]) {
+                componentLast[comp] = lastEvent[p];
+            }
+        }
+        numComponents = c;
+        resetIds(firstId, c);
+        return c;
+    }
+
+    private int findSlot(int s) {
+        int[] parent = slotParent;
+        while (parent[s] != s) {
+            parent[s] = parent[parent[s]];
+            s = parent[s];
+        }
+        return s;
+    }
+
+    private void union(int a, int b) {
+        a = findSlot(a);
+        b = findSlot(b);
+        if (a < b) {
+            slotParent[b] = a;
+        } else if (b < a) {
+            slotParent[a] = b;
+        }
+    }
+
+    private void ensureComponents(int n) {
+        if (componentLast.length < n) {
+            int c = 2 * componentLast.length;
+            componentLast = Arrays.copyOf(componentLast, c);
+            componentMass = Arrays.copyOf(componentMass, c);
+            componentOwner = Arrays.copyOf(componentOwner, c);
+        }
+    }
+
+    /** @return the owner, before the labeling, of the id of the first pixel of component j */
+    public Object getComponentOwner(int j) {
+        return componentOwner[j];
+    }
+
+    /** @return the latest timestamp of the pixels of component j */
+    public int getComponentLast(int j) {
+        return componentLast[j];
+    }
+
+    /** @return the mass of component j */
+    public float getComponentMass(int j) {
+        return componentMass[j];
+    }
+
+    private void resetIds(int base, int n) {
+        Arrays.fill(idOwner, 0, numIds, null);
+        idBase = base;
+        numIds = 0;
+        ensureIds(n);
+        for (int i = 0; i < n; i++) {
+            idParent[i] = i;
+        }
+        numIds = n;
+    }
+
+    private void ensureIds(int n) {
+        if (idParent.length < n) {
+            int c = Math.max(n, 2 * idParent.length);
+            idParent = Arrays.copyOf(idParent, c);
+            idOwner = Arrays.copyOf(idOwner, c);
+        }
+    }
+
+    /**
+     * @return true if so many ids were added since the last labeling that
+     * the tracker should relabel
+     */
+    public boolean isIdTableFull() {
+        return numIds >= MAX_IDS;
+    }
+
+    /**
+     * Adds a new id, which must not be lower than the ids added before, with
+     * its owner.
+     *
+     * @param id the id
+     * @param owner the owner, e.g. a cluster
+     */
+    public void addId(int id, Object owner) {
+        int i = id - idBase;
+        if (i < numIds) {
+            throw new IllegalArgumentException("id " + id + " was already added");
+        }
+        ensureIds(i + 1);
+        for (int k = numIds; k <= i; k++) {
+            idParent[k] = k;
+            idOwner[k] = null;
+        }
+        numIds = i + 1;
+        idOwner[i] = owner;
+    }
+
+    /**
+     * Finds the representative of the ids that were joined with id.
+     *
+     * @return the representative id, or -1 if id is not in the table
+     */
+    public int findId(int id) {
+        int i = id - idBase;
+        if ((i < 0) || (i >= numIds)) {
+            return -1;
+        }
+        return findIdIndex(i) + idBase;
+    }
+
+    private int findIdIndex(int i) {
+        int[] parent = idParent;
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Joins the ids of other with those of keep. The owner of keep becomes
+     * the owner of all of them.
+     *
+     * @param keep an id whose owner is kept
+     * @param other an id whose owner is dropped
+     */
+    public void unionIds(int keep, int other) {
+        int k = findId(keep), o = findId(other);
+        if ((k < 0) || (o < 0) || (k == o)) {
+            return;
+        }
+        idParent[o - idBase] = k - idBase;
+        idOwner[o - idBase] = null;
+    }
+
+    /**
+     * @return the owner of the ids joined with id, or null if there is none
+     * or the id is not in the table
+     */
+    public Object getOwner(int id) {
+        int r = findId(id);
+        return r < 0 ? null : idOwner[r - idBase];
+    }
+
+    /** Sets the owner of the ids joined with id, if id is in the table. */
+    public void setOwner(int id, Object owner) {
+        int r = findId(id);
+        if (r >= 0) {
+            idOwner[r - idBase] = owner;
+        }
+    }
+
+    /** Removes the owner of the ids joined with id if it is owner. */
+    public void removeOwner(int id, Object owner) {
+        int r = findId(id);
+        if ((r >= 0) && (idOwner[r - idBase] == owner)) {
+            idOwner[r - idBase] = null;
+        }
+    }
+}
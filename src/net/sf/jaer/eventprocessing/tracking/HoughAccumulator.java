@@ -0,0 +1,278 @@
+package net.sf.jaer.eventprocessing.tracking;
+
+import java.util.Arrays;
+
+/**
+ * A decaying Hough accumulator over a flat array of cells that keeps track of
+ * its largest cells as votes come in, for {@link HoughCircleTracker} and
+ * {@link HoughLineTracker}. The trackers map their Hough parameters to cell
+ * indices and precompute which cells an event votes for.
+ * <p>
+ * The cells are the leaves of a tournament tree, a complete binary tree in
+ * which each node holds the largest cell below it, with the lower cell index
+ * winning among equal values, so the largest cell is at hand without
+ * rescanning the array for each packet. {@link #topCells} finds the k largest
+ * cells that pass a test, e.g. local maxima, by a best first search from the
+ * root. A vote only adds to its cell and marks the block of 64 cells that
+ * holds it, and the tree is brought up to date when it is next read, by
+ * rebuilding the subtrees of the marked blocks and the small tree above the
+ * blocks. So a packet costs time in proportion to the blocks it touches
+ * rather than to all cells, and when it touches all of them about one pass
+ * over the cells, where decaying and rescanning a plain array takes two.
+ * <p>
+ * Decay is lazy: the values are stored divided by a common scale, and
+ * decaying all cells only multiplies the scale, which does not change the
+ * order of the cells. The stored values are renormalized when the scale gets
+ * too small or too large for float precision.
+ * <p>
+ * Not thread safe; the trackers synchronize.
+ */
+public final class HoughAccumulator {
+
+    /** Test for cells in {@link #topCells}. */
+    public interface CellTest {
+
+        /**
+         * @param cell the cell index
+         * @return true to accept the cell
+         */
+        boolean accept(int cell);
+    }
+
+    private static final double MIN_SCALE = 1e-15, MAX_SCALE = 1e15;
+    private static final int BLOCK_BITS = 6;
+
+    private final int numCells, leaves, blockBits, numBlocks;
+    // per node, with the root at 1 and cell c at leaves+c: the largest cell below it and its stored value;
+    // the leaves after the last cell hold -infinity
+    private final int[] winner;
+    private final float[] value;
+    private double scale = 1;
+    private float inverseScale = 1;
+    // the blocks whose cells changed since the tree was last brought up to date
+    private final boolean[] dirty;
+    private boolean anyDirty = false;
+    // best first search in topCells over nodes
+    private int[] candidates = new int[64];
+
+    /**
+     * @param numCells the number of cells
+     */
+    public HoughAccumulator(int numCells) {
+        if (numCells < 1) {
+            throw new IllegalArgumentException("numCells=" + numCells + " must be positive");
+        }
+        this.numCells = numCells;
+        leaves = Integer.highestOneBit(((numCells - 1) << 1) | 1);
+        winner = new int[2 * leaves];
+        value = new float[2 * leaves];
+        blockBits = Math.min(BLOCK_BITS, Integer.numberOfTrailingZeros(leaves));
+        numBlocks = leaves >>> blockBits;
+        dirty = new boolean[numBlocks];
+        reset();
+    }
+
+    /** Sets all cells to 0. */
+    public void reset() {
+        for (int c = 0; c < leaves; c++) {
+            winner[leaves + c] = c;
+        }
+        clear();
+    }
+
+    private void clear() {
+        Arrays.fill(value, leaves, leaves + numCells, 0);
+        Arrays.fill(value, leaves + numCells, 2 * leaves, Float.NEGATIVE_INFINITY);
+        setScale(1);
+        Arrays.fill(dirty, true);
+        anyDirty = true;
+        update();
+    }
+
+    /** @return the number of cells */
+    public int getNumCells() {
+        return numCells;
+    }
+
+    /** @return the value of a cell */
+    public float get(int cell) {
+        return (float) (value[leaves + cell] * scale);
+    }
+
+    /**
+     * Adds a vote to a cell.
+     *
+     * @param cell the cell index
+     * @param weight the weight of the vote, may be negative
+     */
+    public void add(int cell, float weight) {
+        value[leaves + cell] += weight * inverseScale;
+        dirty[cell >>> blockBits] = true;
+        anyDirty = true;
+    }
+
+    /**
+     * Sets the value of a cell.
+     *
+     * @param cell the cell index
+     * @param value the new value
+     */
+    public void set(int cell, float value) {
+        this.value[leaves + cell] = (float) (value / scale);
+        dirty[cell >>> blockBits] = true;
+        anyDirty = true;
+    }
+
+    /**
+     * Multiplies all cells by a factor in constant time.
+     *
+     * @param factor the decay factor, not negative; values above 1 amplify
+     */
+    public void decay(float factor) {
+        if (!(factor >= 0) || Float.isInfinite(factor)) {
+            throw new IllegalArgumentException("decay factor " + factor + " must be finite and not negative");
+        }
+        if (factor == 0) {
+            clear();
+            return;
+        }
+        setScale(scale * factor);
+        if ((scale < MIN_SCALE) || (scale > MAX_SCALE)) {
+            for (int i = leaves; i < (leaves + numCells); i++) {
+                value[i] = (float) (value[i] * scale);
+            }
+            setScale(1);
+            Arrays.fill(dirty, true); // rounding may have made cells equal whose order was different
+            anyDirty = true;
+        }
+    }
+
+    private void setScale(double s) {
+        scale = s;
+        inverseScale = (float) (1 / s);
+    }
+
+    /** @return the index of the largest cell */
+    public int getMaxCell() {
+        update();
+        return winner[1];
+    }
+
+    /** @return the value of the largest cell */
+    public float getMaxValue() {
+        update();
+        return (float) (value[1] * scale);
+    }
+
+    /**
+     * Finds the largest cells that pass a test, in descending order, by a
+     * best first search from the root of the tree, which visits only the
+     * nodes whose largest cell is at least as large as the last one found.
+     *
+     * @param k the number of cells to find
+     * @param test the test, or null to accept all cells
+     * @param cells receives the found cells
+     * @return the number of cells found, at most k
+     */
+    public int topCells(int k, CellTest test, int[] cells) {
+        update();
+        int found = 0, n = 0;
+        candidates[n++] = 1;
+        while ((found < k) && (n > 0)) {
+            // pop the node with the largest cell from the candidates, a small heap of their own
+            int best = candidates[0];
+            candidates[0] = candidates[--n];
+            siftDownCandidates(n);
+            if (best >= leaves) {
+                int cell = best - leaves;
+                if ((cell < numCells) && ((test == null) || test.accept(cell))) {
+                    cells[found++] = cell;
+                }
+                continue;
+            }
+            if ((n + 2) > candidates.length) {
+                candidates = Arrays.copyOf(candidates, 2 * candidates.length);
+            }
+            candidates[n] = 2 * best;
+            siftUpCandidates(n++);
+            candidates[n] = (2 * best) + 1;
+            siftUpCandidates(n++);
+        }
+        return found;
+    }
+
+    /** Rebuilds the subtrees of the dirty blocks and the tree above the blocks. */
+    private void update() {
+        if (!anyDirty) {
+            return;
+        }
+        for (int b = 0; b < numBlocks; b++) {
+            if (dirty[b]) {
+                dirty[b] = false;
+                // level by level up to the root of the block
+                for (int lo = (leaves + (b << blockBits)) >>> 1, n = (1 << blockBits) >>> 1; n > 0; lo >>>= 1, n >>>= 1) {
+                    for (int node = lo; node < (lo + n); node++) {
+                        play(node);
+                    }
+                }
+            }
+        }
+        for (int node = numBlocks - 1; node > 0; node--) {
+            play(node);
+        }
+        anyDirty = false;
+    }
+
+    /** Sets the winner of a node from its children; the left child, which has the lower cells, wins ties. */
+    private void play(int node) {
+        int l = 2 * node, r = l + 1;
+        // r if value[l]-value[r] is negative, without a branch, which would be mispredicted half of the time;
+        // adding 0 turns -0 into 0, the difference of equal values is never negative
+        int w = l + (Float.floatToRawIntBits((value[l] - value[r]) + 0f) >>> 31);
+        winner[node] = winner[w];
+        value[node] = value[w];
+    }
+
+    /** @return true if the largest cell of node a comes before that of node b */
+    private boolean above(int a, int b) {
+        float va = value[a], vb = value[b];
+        return (va > vb) || ((va == vb) && (winner[a] < winner[b]));
+    }
+
+    private void siftUpCandidates(int i) {
+        int[] c = candidates;
+        int x = c[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!above(x, c[parent])) {
+                break;
+            }
+            c[i] = c[parent];
+            i = parent;
+        }
+        c[i] = x;
+    }
+
+    private void siftDownCandidates(int n) {
+        int[] c = candidates;
+        if (n == 0) {
+            return;
+        }
+        int i = 0, x = c[0];
+        while (true) {
+            int child = (2 * i) + 1;
+            if (child >= n) {
+                break;
+            }
+            if (((child + 1) < n) && above(c[child + 1], c[child])) {
+                child++;
+            }
+            if (!above(c[child], x)) {
+                break;
+            }
+            c[i] = c[child];
+            i = child;
+        }
+        c[i] = x;
+    }
+}
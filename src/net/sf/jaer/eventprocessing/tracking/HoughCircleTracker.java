@@ -12,6 +12,7 @@ import java.awt.Graphics;
 import java.awt.Toolkit;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.util.Arrays;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -37,10 +38,23 @@ import ch.unizh.ini.jaer.projects.labyrinthkalman.WeightedEvent;
 @Description("Circle tracker based on a hough transform")
 public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater, Observer {
 
-	// the Hough space
+	// the Hough space, cell x*cameraY+y
 	int cameraX;
 	int cameraY;
-	float[][] accumulatorArray;
+	HoughAccumulator accumulator;
+
+	// the cells that an event at 0,0 votes for, precomputed for the radius
+	int[] voteOffsetX = new int[0], voteOffsetY = new int[0];
+	int nrVotes = 0;
+
+	// the cells of the maxima found for the last packet
+	int[] peakCells;
+	final HoughAccumulator.CellTest localMaximum = new HoughAccumulator.CellTest() {
+		@Override
+		public boolean accept(int cell) {
+			return islocmax(cell / cameraY, cell % cameraY);
+		}
+	};
 
 	//for decay in Hough space
 	float timeStamp = 0;
@@ -124,7 +138,7 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 
 		System.out.println("HoughCircleTracker initialising...");
 
-		accumulatorArray = new float[chip.getSizeX()][chip.getSizeY()];
+		accumulator = new HoughAccumulator(Math.max(1, chip.getSizeX()*chip.getSizeY()));
 
 		if((chip.getSizeX()==0) || (chip.getSizeY()==0)){
 			return;
@@ -133,11 +147,7 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 		cameraX = chip.getSizeX();
 		cameraY = chip.getSizeY();
 
-		for(int i=0;i<chip.getSizeX();i++){
-			for(int j=0; j < chip.getSizeY();j++){
-				accumulatorArray[i][j]=0;
-			}
-		}
+		computeVoteOffsets();
 
 		eventHistory = new Coordinate[bufferLength];
 		for(int i=0;i<bufferLength;i++) {
@@ -146,6 +156,7 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 
 		bufferIndex = 0;
 		maxValue = new float[nrMax];
+		peakCells = new int[nrMax];
 		maxCoordinate = new Coordinate[nrMax];
 		for(int i = 0; i<nrMax; i++)
 		{
@@ -230,6 +241,7 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 		}
 
 		this.radius = radius;
+		computeVoteOffsets();
 	}
 
 	public float getDecay() {
@@ -302,7 +314,7 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 		cameraY=chip.getSizeY();
 		cameraX=chip.getSizeX();
 
-		if((accumulatorArray == null) || (maxValue == null) || (maxCoordinate == null)) {
+		if((accumulator == null) || (maxValue == null) || (maxCoordinate == null)) {
 			return;
 		}
 
@@ -314,7 +326,7 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 			for (int x = 0; x < cameraX; x++) {
 				for (int y = 0; y < cameraY; y++) {
 
-					float red   = accumulatorArray[x][y]/maxValue[0];
+					float red   = houghValue(x,y)/maxValue[0];
 					float green = 1.0f - red;
 
 					gl.glColor4f(red,green,0.0f,.3f);
@@ -350,12 +362,12 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 
 	// fast inclined ellipse drawing algorithm; ellipse eqn: A*x^2+B*y^2+C*x*y-1 = 0
 	// the algorithm is fast because it uses just integer addition and subtraction
-	void accumulate(Coordinate event, float weight){
+	// run once for the radius to record the cells around 0,0 that an event votes for
+	void computeVoteOffsets(){
 
 		// TODO: this is a little overhead here, since we only draw circles in
 		// Hough space (not ellipses)
-		int centerX = (int)event.x;
-		int centerY = (int)event.y;
+		nrVotes = 0;
 		int aa	  = Math.round(radius*radius);
 		int bb	  = aa;
 		int twoC	= 0;
@@ -372,8 +384,8 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 		// d(x,y+1)   = 2a^2y+a^2+2cx				= dx+aa
 		// d(x+1,y+1) = 2b^2x+b^2+2cy+2c+2a^2y+a^2+2cx = d(x,y+1)-dy+bb
 		while (dy > dx){
-			increaseHoughPoint(centerX+x,centerY+y,weight);
-			increaseHoughPoint(centerX-x,centerY-y,weight);
+			addVoteOffset(x,y);
+			addVoteOffset(-x,-y);
 			ellipseError = ellipseError + dx + aa;
 			dx = dx + twoaa;
 			dy = dy - twoC;
@@ -390,8 +402,8 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 		// d(x+1,y)   = 2b^2x+b^2+2cy				= -dy+bb
 		// d(x+1,y+1) = 2b^2x+b^2+2cy+2c+2a^2y+a^2+2cx = d(x+1,y)+dx+aa
 		while (dy > 0){
-			increaseHoughPoint(centerX+x,centerY+y,weight);
-			increaseHoughPoint(centerX-x,centerY-y,weight);
+			addVoteOffset(x,y);
+			addVoteOffset(-x,-y);
 			ellipseError = (ellipseError - dy) + bb;
 			dx = dx + twoC;
 			dy = dy - twobb;
@@ -408,8 +420,8 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 		// d(x+1,y)   = 2b^2x+b^2+2cy				= -dy+bb
 		// d(x+1,y-1) = 2b^2x+b^2+2cy-2c-2a^2y+a^2-2cx = d(x+1,y)-dx+aa
 		while (dy > - dx){
-			increaseHoughPoint(centerX+x,centerY+y,weight);
-			increaseHoughPoint(centerX-x,centerY-y,weight);
+			addVoteOffset(x,y);
+			addVoteOffset(-x,-y);
 			ellipseError = (ellipseError - dy) + bb;
 			dx = dx + twoC;
 			dy = dy - twobb;
@@ -426,8 +438,8 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 		// d(x,y-1)   = -2a^2y+a^2-2cx			   = -dx+aa
 		// d(x+1,y-1) = 2b^2x+b^2+2cy-2c-2a^2y+a^2-2cx = d(x+1,y)-dy+bb
 		while (dx > 0){
-			increaseHoughPoint(centerX+x,centerY+y,weight);
-			increaseHoughPoint(centerX-x,centerY-y,weight);
+			addVoteOffset(x,y);
+			addVoteOffset(-x,-y);
 			ellipseError = (ellipseError - dx) + aa;
 			dx = dx - twoaa;
 			dy = dy + twoC;
@@ -444,8 +456,8 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 		// d(x,y-1)   = -2a^2y+a^2-2cx				= -dx+aa
 		// d(x-1,y-1) = -2b^2x+b^2-2cy+2c-2a^2y+a^2-2cx = d(x+1,y)+dy+bb
 		while ((dy < dx)&& (x > 0)){
-			increaseHoughPoint(centerX+x,centerY+y,weight);
-			increaseHoughPoint(centerX-x,centerY-y,weight);
+			addVoteOffset(x,y);
+			addVoteOffset(-x,-y);
 			ellipseError = (ellipseError - dx) + aa;
 			dx = dx - twoaa;
 			dy = dy + twoC;
@@ -462,8 +474,8 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 		// d(x-1,y)   = -2b^2x+b^2-2cy				= dy+bb
 		// d(x-1,y-1) = -2b^2x+b^2-2cy+2c-2a^2y+a^2-2cx = d(x+1,y)-dx+aa
 		while ((dy < 0)&& (x > 0)){
-			increaseHoughPoint(centerX+x,centerY+y,weight);
-			increaseHoughPoint(centerX-x,centerY-y,weight);
+			addVoteOffset(x,y);
+			addVoteOffset(-x,-y);
 			ellipseError = ellipseError + dy + bb;
 			dx = dx - twoC;
 			dy = dy + twobb;
@@ -480,8 +492,8 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 		// d(x-1,y)   = -2b^2x+b^2-2cy				= dy+bb
 		// d(x-1,y+1) = -2b^2x+b^2-2cy-2c+2a^2y+a^2+2cx = d(x+1,y)-dx+aa
 		while ((dy < - dx)&& (x > 0)){
-			increaseHoughPoint(centerX+x,centerY+y,weight);
-			increaseHoughPoint(centerX-x,centerY-y,weight);
+			addVoteOffset(x,y);
+			addVoteOffset(-x,-y);
 			ellipseError = ellipseError + dy + bb;
 			dx = dx - twoC;
 			dy = dy + twobb;
@@ -498,8 +510,8 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 		// d(x,y+1)   = 2a^2y+a^2+2cx				 = dx+aa
 		// d(x-1,y+1) = -2b^2x+b^2-2cy-2c+2a^2y+a^2+2cx = d(x,y+1)+dy+bb
 		while (((dy > 0) && (dx < 0))&& (x > 0)){
-			increaseHoughPoint(centerX+x,centerY+y,weight);
-			increaseHoughPoint(centerX-x,centerY-y,weight);
+			addVoteOffset(x,y);
+			addVoteOffset(-x,-y);
 			ellipseError = ellipseError + dx + aa;
 			dx = dx + twoaa;
 			dy = dy - twoC;
@@ -513,6 +525,25 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 		}
 	}
 
+	private void addVoteOffset(int x, int y){
+		if(nrVotes == voteOffsetX.length){
+			voteOffsetX = Arrays.copyOf(voteOffsetX, Math.max(16, 2*nrVotes));
+			voteOffsetY = Arrays.copyOf(voteOffsetY, voteOffsetX.length);
+		}
+		voteOffsetX[nrVotes] = x;
+		voteOffsetY[nrVotes] = y;
+		nrVotes++;
+	}
+
+	// votes for all possible circle centers of an event
+	void accumulate(Coordinate event, float weight){
+		int centerX = (int)event.x;
+		int centerY = (int)event.y;
+		for(int i = 0; i < nrVotes; i++){
+			increaseHoughPoint(centerX+voteOffsetX[i],centerY+voteOffsetY[i],weight);
+		}
+	}
+
 	boolean islocmax(int x, int y)
 	{
 		int locMaxRad = 1;
@@ -521,28 +552,29 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 			|| ((y-locMaxRad) < 0) || ((y+locMaxRad) > (chip.getSizeY()-1))) {
 			return false;
 		}
-		if(accumulatorArray[x][y]<accumulatorArray[x][y+1]) {
+		float value = houghValue(x,y);
+		if(value<houghValue(x,y+1)) {
 			return false;
 		}
-		if(accumulatorArray[x][y]<accumulatorArray[x][y-1]) {
+		if(value<houghValue(x,y-1)) {
 			return false;
 		}
-		if(accumulatorArray[x][y]<accumulatorArray[x+1][y]) {
+		if(value<houghValue(x+1,y)) {
 			return false;
 		}
-		if(accumulatorArray[x][y]<accumulatorArray[x-1][y]) {
+		if(value<houghValue(x-1,y)) {
 			return false;
 		}
-		if(accumulatorArray[x][y]<accumulatorArray[x+1][y-1]) {
+		if(value<houghValue(x+1,y-1)) {
 			return false;
 		}
-		if(accumulatorArray[x][y]<accumulatorArray[x-1][y+1]) {
+		if(value<houghValue(x-1,y+1)) {
 			return false;
 		}
-		if(accumulatorArray[x][y]<accumulatorArray[x+1][y+1]) {
+		if(value<houghValue(x+1,y+1)) {
 			return false;
 		}
-		if(accumulatorArray[x][y]<accumulatorArray[x-1][y-1]) {
+		if(value<houghValue(x-1,y-1)) {
 			return false;
 		}
 
@@ -552,29 +584,23 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 
 	}
 
+	float houghValue(int x, int y) {
+		return accumulator.get((x*cameraY)+y);
+	}
+
+	void scaleHoughPoint(int x, int y, float factor) {
+		int cell = (x*cameraY)+y;
+		accumulator.set(cell, accumulator.get(cell)*factor);
+	}
+
 	void increaseHoughPoint(int x, int y, float weight) {
 
-		if ((x < 0) || (x > (chip.getSizeX() - 1)) || (y < 0) || (y > (chip.getSizeY() - 1))) {
+		if ((x < 0) || (x > (cameraX - 1)) || (y < 0) || (y > (cameraY - 1))) {
 			return;
 		}
 
-		// increase the value of the hough point
-		accumulatorArray[x][y] = accumulatorArray[x][y] + weight;
-
-		// check if this is a new maximum
-		for(int i=0; i<nrMax; i++)
-		{
-			if (accumulatorArray[x][y] >= maxValue[i]) {
-
-				maxValue[i] = accumulatorArray[x][y];
-
-				if ((maxValue[i] > threshold) && (maxCoordinate[i] != null)){
-					maxCoordinate[i].x = x;
-					maxCoordinate[i].y = y;
-				}
-				i += nrMax;
-			}
-		}
+		// increase the value of the hough point; the accumulator keeps its maxima up to date
+		accumulator.add((x*cameraY)+y, weight);
 	}
 
 	@Override
@@ -590,12 +616,9 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 			float delta_t = in.getLastTimestamp() - timeStamp;
 			float decay_factor = 1.0f/(0.0001f * decay * delta_t);
 
-			//for an exponentially decaying hough-space-weight.
-			for (int x = 0; x < cameraX; x++) {
-				for (int y = 0; y < cameraY; y++) {
-					accumulatorArray[x][y] *= decay_factor;
-
-				}
+			//for an exponentially decaying hough-space-weight; lazy, so it does not touch the cells
+			if ((decay_factor >= 0) && !Float.isInfinite(decay_factor)) {
+				accumulator.decay(decay_factor);
 			}
 		}
 		timeStamp = in.getLastTimestamp();
@@ -635,25 +658,16 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 		{
 			maxValue[i] = 0;
 		}
-		for (int x = 0; x < cameraX; x++) {
-			for (int y = 0; y < cameraY; y++) {
-
-				for(int i=0; i<nrMax; i++)
-				{
-					if ((accumulatorArray[x][y] >= maxValue[i])
-						&& islocmax(x,y)) {
-
-						maxValue[i] = accumulatorArray[x][y];
+		// the largest local maxima, in descending order, by a search down the accumulator's tournament tree
+		int nrFound = accumulator.topCells(nrMax, localMaximum, peakCells);
+		for(int i = 0; i<nrFound; i++)
+		{
+			maxValue[i] = accumulator.get(peakCells[i]);
 
-						if (maxValue[i] > threshold){
-							maxCoordinate[i].x = x;
-							maxCoordinate[i].y = y;
-						}
-						i += nrMax;
-					}
-				}
+			if (maxValue[i] > threshold){
+				maxCoordinate[i].x = peakCells[i] / cameraY;
+				maxCoordinate[i].y = peakCells[i] % cameraY;
 			}
-
 		}
 
 		OutputEventIterator itr = out.outputIterator();
@@ -667,15 +681,15 @@ public class HoughCircleTracker extends EventFilter2D implements FrameAnnotater,
 				if(((x-1) > 0) && ((x+1) < (chip.getSizeX()-1))
 					&& ((y-1) > 0) && ((y+1) < (chip.getSizeY()-1)))
 				{
-					accumulatorArray[x][y] *= 0.01f;
-					accumulatorArray[x][y+1] *= 0.1f;
-					accumulatorArray[x][y-1] *= 0.1f;
-					accumulatorArray[x+1][y] *= 0.1f;
-					accumulatorArray[x-1][y] *= 0.1f;
-					accumulatorArray[x+1][y+1] *= 0.1f;
-					accumulatorArray[x-1][y+1] *= 0.1f;
-					accumulatorArray[x-1][y-1] *= 0.1f;
-					accumulatorArray[x-1][y-1] *= 0.1f;
+					scaleHoughPoint(x,y,0.01f);
+					scaleHoughPoint(x,y+1,0.1f);
+					scaleHoughPoint(x,y-1,0.1f);
+					scaleHoughPoint(x+1,y,0.1f);
+					scaleHoughPoint(x-1,y,0.1f);
+					scaleHoughPoint(x+1,y+1,0.1f);
+					scaleHoughPoint(x-1,y+1,0.1f);
+					scaleHoughPoint(x-1,y-1,0.1f);
+					scaleHoughPoint(x-1,y-1,0.1f);
 				}
 
 			}
@@ -12,6 +12,7 @@
 package net.sf.jaer.eventprocessing.tracking;
 
 import java.awt.Dimension;
+import java.util.Arrays;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -73,11 +74,15 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
     private float rhoResPixels = getPrefs().getFloat("LineTracker.rhoResPixels", 6);
     private boolean showHoughWindow = false;
     private float rhoLimit;
-    private float[][] accumArray;
+    private HoughAccumulator accumulator; // cell thetaNumber*nRho+rhoNumber
     private int nTheta, nRho;
     private float tauMs = getPrefs().getFloat("LineTracker.tauMs", 10);
 
     float[] cos = null, sin = null;
+    // the x*cos and y*sin terms of rho, [thetaNumber*sizeX+e.x] and [thetaNumber*sizeY+e.y], and the allowed thetaNumbers
+    float[] xCos = null, ySin = null;
+    int[] allowedThetas = new int[0];
+    int sizeX, sizeY;
     int rhoMaxIndex, thetaMaxIndex;
     float accumMax;
     int[][] accumUpdateTime;
@@ -151,7 +156,7 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
         // rho can span this +/- limit after hough transform of event
         // coordinate which shifted so that middle of chip is zero
         nRho = (int) ((2 * rhoLimit) / rhoResPixels);
-        accumArray = new float[nTheta][nRho];
+        accumulator = new HoughAccumulator(Math.max(1, nTheta * nRho));
         //        accumUpdateTime=new int[nTheta][nRho];
         accumMax = Float.NEGATIVE_INFINITY;
         // precompute sin/cos for accumulator array updates for quantized angle values
@@ -162,12 +167,42 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
             // cos[i] is the cos of the i'th angle, runs from approx 0 to 2 Pi rad
             sin[i] = (float) Math.sin(((thetaResDeg * (i)) / 180) * Math.PI);
         }
+        // precompute the rho terms of each pixel column and row, so an event needs only an addition per angle
+        sizeX = chip.getSizeX();
+        sizeY = chip.getSizeY();
+        xCos = new float[nTheta * sizeX];
+        ySin = new float[nTheta * sizeY];
+        for (int i = 0; i < nTheta; i++) {
+            for (int x = 0; x < sizeX; x++) {
+                xCos[(i * sizeX) + x] = (x - sx2) * cos[i];
+            }
+            for (int y = 0; y < sizeY; y++) {
+                ySin[(i * sizeY) + y] = (y - sy2) * sin[i];
+            }
+        }
         rhoFilter = new LowpassFilter();
         //        thetaFilter=new LowpassFilter(); // periodic filter with period 180 degrees
         thetaFilter = new AngularLowpassFilter(180); // periodic filter with period 180 degrees
         rhoFilter.setTauMs(tauMs);
         thetaFilter.setTauMs(tauMs);
         allowedThetaNumber = getAllowedThetaNumber(favorVerticalAngleRangeDeg);
+        computeAllowedThetas();
+    }
+
+    /**
+     * Lists the angles that events vote for, those up to allowedThetaNumber on
+     * each side of 0.
+     */
+    private void computeAllowedThetas() {
+        int n = 0;
+        allowedThetas = new int[2 * nTheta];
+        for (int thetaNumber = 0; (thetaNumber < allowedThetaNumber) && (thetaNumber < nTheta); thetaNumber++) {
+            allowedThetas[n++] = thetaNumber;
+        }
+        for (int thetaNumber = Math.max(0, (nTheta - allowedThetaNumber) + 1); thetaNumber < nTheta; thetaNumber++) {
+            allowedThetas[n++] = thetaNumber;
+        }
+        allowedThetas = Arrays.copyOf(allowedThetas, n);
     }
 
     @Override
@@ -196,25 +231,13 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
     // http://rkb.home.cern.ch/rkb/AN16pp/node122.html
 
     private void addEvent(BasicEvent e) {
-        float x = e.x - sx2;
-        float y = e.y - sy2; // x,y relative to center of chip
-        // iterate over all angles included in allowedThetaNumber angles
-        for (int thetaNumber = 0; thetaNumber < allowedThetaNumber; thetaNumber++) {
-            // only iterate up to allowed angle, 0 is vertical line,
-            // iterate over theta, computing  rho, quantizing it, and integrating it into the Hough array
-            float rho = (((x * cos[thetaNumber]) + (y * sin[thetaNumber])));
-            int rhoNumber = (int) ((rho + rhoLimit) / rhoResPixels);
-            if ((rhoNumber < 0) || (rhoNumber >= nRho)) {
-                //                log.warning(String.format("e.x=%d, e.y=%d, x=%f, y=%f, rho=%f, rhoNumber=%d",e.x,e.y,x,y,rho,rhoNumber));
-                continue;
-            }
-            updateHoughAccumulator(thetaNumber, rhoNumber);
+        if ((e.x < 0) || (e.x >= sizeX) || (e.y < 0) || (e.y >= sizeY)) {
+            return;
         }
-        // iterate over all angles included in allowedThetaNumber angles, handle the angles from Pi-allowedThetaNumber to Pi
-        for (int thetaNumber = (nTheta - allowedThetaNumber) + 1; thetaNumber < nTheta; thetaNumber++) {
-            // only iterate up to allowed angle, 0 is vertical line,
-            // iterate over theta, computing  rho, quantizing it, and integrating it into the Hough array
-            float rho = (((x * cos[thetaNumber]) + (y * sin[thetaNumber])));
+        // iterate over all allowed angles, 0 is vertical line, those from 0 and those up to Pi,
+        // computing rho relative to center of chip, quantizing it, and integrating it into the Hough array
+        for (int thetaNumber : allowedThetas) {
+            float rho = xCos[(thetaNumber * sizeX) + e.x] + ySin[(thetaNumber * sizeY) + e.y];
             int rhoNumber = (int) ((rho + rhoLimit) / rhoResPixels);
             if ((rhoNumber < 0) || (rhoNumber >= nRho)) {
                 //                log.warning(String.format("e.x=%d, e.y=%d, x=%f, y=%f, rho=%f, rhoNumber=%d",e.x,e.y,x,y,rho,rhoNumber));
@@ -234,9 +257,7 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
      * @param rhoNumber the rho (radius) number. rho is spaced by rhoResPixels.
      */
     private void updateHoughAccumulator(int thetaNumber, int rhoNumber) {
-        float f = accumArray[thetaNumber][rhoNumber];
-        f++;
-        accumArray[thetaNumber][rhoNumber] = f; // update the accumulator
+        accumulator.add((thetaNumber * nRho) + rhoNumber, 1); // update the accumulator, which keeps its maximum up to date
     }
 
     @Override
@@ -301,7 +322,7 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
 
             @Override
             synchronized public void display(GLAutoDrawable drawable) {
-                if (accumArray == null) {
+                if (accumulator == null) {
                     return;
                 }
                 GL2 gl = drawable.getGL().getGL2();
@@ -311,7 +332,7 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
                 gl.glClear(GL.GL_COLOR_BUFFER_BIT);
                 for (int i = 0; i < nTheta; i++) {
                     for (int j = 0; j < nRho; j++) {
-                        float f = accumArray[i][j] / accumMax;
+                        float f = accumulator.get((i * nRho) + j) / accumMax;
                         gl.glColor3f(f, f, f);
                         gl.glRectf(i, j, i + 1, j + 1);
                     }
@@ -397,21 +418,19 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
     }
     // doesn't actually reset, but decays accumulator array according to houghDecayFactor
     // also determines maximum accumulator value and sets line estimate according to this
+    // the decay is lazy and the maximum is the root of the accumulator's tournament tree, which is only rebuilt
+    // over the blocks of cells that got votes, so neither rescans all cells;
+    // of equal cells the one with the lowest theta and then rho wins, as in a scan of the array
 
     private void decayAccumArray() {
         accumMax = 0;
-        for (int theta = 0; theta < nTheta; theta++) {
-            float[] f = accumArray[theta];
-            for (int rho = 0; rho < f.length; rho++) {
-                float fval = f[rho];
-                fval *= houghDecayFactor;
-                if (fval > accumMax) {
-                    accumMax = fval;
-                    thetaMaxIndex = theta;
-                    rhoMaxIndex = rho;
-                }
-                f[rho] = fval;
-            }
+        accumulator.decay(houghDecayFactor);
+        float max = accumulator.getMaxValue();
+        if (max > accumMax) {
+            int cell = accumulator.getMaxCell();
+            accumMax = max;
+            thetaMaxIndex = cell / nRho;
+            rhoMaxIndex = cell % nRho;
         }
     }
 
@@ -481,6 +500,7 @@ public class HoughLineTracker extends EventFilter2D implements FrameAnnotater, L
         }
         this.favorVerticalAngleRangeDeg = favorVerticalAngleRangeDeg;
         allowedThetaNumber = getAllowedThetaNumber(favorVerticalAngleRangeDeg);
+        computeAllowedThetas();
         getPrefs().putFloat("LineTracker.favorVerticalAngleRangeDeg", favorVerticalAngleRangeDeg);
     }
     //    public int getUpdateThresholdEvents() {
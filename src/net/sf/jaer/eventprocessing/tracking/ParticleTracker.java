@@ -34,15 +34,23 @@ import net.sf.jaer.eventprocessing.EventFilter2D;
 import net.sf.jaer.graphics.FrameAnnotater;
 /**
  * Tracks particles using a particle filter.
+ * <p>
+ * Events outside the pixel array of the chip are ignored. The connected
+ * alive pixels are relabeled with new cluster ids on every rendering, and
+ * also while tracking once {@link ActivePixelLabeler#MAX_IDS} ids have been
+ * handed out since the last relabeling, so that the id table stays bounded
+ * when nothing is rendered.
  *
  * @author Philipp <hafliger@ifi.uio.no>
  */
 @Description("Tracks multiple objects using a particle filter approach")
 public class ParticleTracker extends EventFilter2D implements FrameAnnotater,Observer{
 	private java.util.List<Cluster> clusters = new LinkedList<Cluster>();
-	private int[][] lastCluster = new int[ 240 ][ 180 ];
-	private int[][] lastEvent = new int[ 240 ][ 180 ];
+	private ActivePixelLabeler pixels = null; // last event and cluster id of each pixel, sized to the chip in resetFilter
 	private int next_cluster_id = 1;
+	private int lastTimestamp = Integer.MIN_VALUE;
+	private boolean timeMovedBackwards = false; // since the last event of an existing cluster
+	private int[] nextComponent = new int[ 64 ]; // links the components of the same old cluster in splitClusters
 	protected Random random = new Random();
 	private PrintStream logStream = null;
 	//Variables that will be set by the tracker parameter pop-up window:
@@ -228,6 +236,7 @@ public class ParticleTracker extends EventFilter2D implements FrameAnnotater,Obs
 			c = (Cluster)listScanner.next();
 			if ( ( c.last < time_limit ) || ( c.last > now ) ){ //check if cluster is dead or if time has moved backwards
 				listScanner.remove();
+				pixels.removeOwner(c.id[0],c);
 			} else{
 				if ( ( c.mass * weighEvent(c.last,now) ) > clusterMinMass4Display ){
 					if (0>=c.id.length){
@@ -268,14 +277,14 @@ public class ParticleTracker extends EventFilter2D implements FrameAnnotater,Obs
 		if ( n == 0 ){
 			return;
 		}
-		int l, k, i, ir, il, j, jr, jl;
+		int l, k, i, ir, il, j, jr, jl, p, q;
 		//int most_recent;
 		//LinkedList<Cluster> pruneList=new LinkedList<Cluster>();
 		int[] cluster_ids = new int[ maxClusters ];
 		Cluster thisCluster = null;
-		ListIterator listScanner;
-		Cluster c = null;
-		int sx = chip.getSizeX() - 1, sy = chip.getSizeY() - 1;
+		final int[] lastEvent = pixels.lastEvent, lastCluster = pixels.label; // flat pixel maps indexed by x*sizeY+y
+		final int sizeY = pixels.sizeY;
+		int sx = pixels.sizeX - 1, sy = sizeY - 1;
 		//int maxNumClusters=getMaxNumClusters();
 
 		// for each event, see which cluster it is closest to and appendCopy it to this cluster.
@@ -284,6 +293,17 @@ public class ParticleTracker extends EventFilter2D implements FrameAnnotater,Obs
 		for ( BasicEvent ev:ae ){
 			// check for if off-polarity is to be ignored
 			if ( !( onPolarityOnly && ( ev instanceof TypedEvent ) && ( ( (TypedEvent)ev ).type == 0 ) ) ){
+				if ( ( ev.x > sx ) || ( ev.y > sy ) ){
+					continue;
+				}
+				if ( ev.timestamp < lastTimestamp ){ // time has moved backwards; all clusters are pruned at the next event of an existing cluster
+					timeMovedBackwards = true;
+					pixels.activateAll();
+				}
+				lastTimestamp = ev.timestamp;
+				if ( pixels.isIdTableFull() ){ // relabel to retire old ids, so the id table stays bounded when nothing is rendered
+					splitClusters();
+				}
 				// *****************
 				if ( logDataEnabled && (logFrameIntervalUs > 0) ){
 					if ( ( (ev.timestamp - logFrameOffsetUs) / logFrameIntervalUs ) > logFrameNumber){
@@ -313,18 +333,20 @@ public class ParticleTracker extends EventFilter2D implements FrameAnnotater,Obs
 				//if (ev.y==0){jl=0;}else{jl=-1;}
 				//if (ev.y==sy){jr=0;}else{jr=1;}
 				//most_recent=-1;
+				p = (ev.x * sizeY) + ev.y;
 				k = 0;
 				search:
 					for ( i = il ; i <= ir ; i++ ){
 						for ( j = jl ; j <= jr ; j++ ){
-							if ( lastEvent[ev.x + i][ev.y + j] != -1 ){
+							q = ((ev.x + i) * sizeY) + ev.y + j;
+							if ( lastEvent[q] != -1 ){
 								//if (lastEvent[ev.x+i][ev.y+j]>most_recent){
 								//most_recent=lastEvent[ev.x+i][ev.y+j];
 								//lastCluster[ev.x][ev.y]=lastCluster[ev.x+i][ev.y+j];
 								//}
-								if ( lastEvent[ev.x + i][ev.y + j] >= (ev.timestamp - clusterUnsupportedLifetime) ){
-									lastCluster[ev.x][ev.y] = lastCluster[ev.x + i][ev.y + j];
-									cluster_ids[k] = lastCluster[ev.x + i][ev.y + j]; // an existing cluster id at or around the event
+								if ( lastEvent[q] >= (ev.timestamp - clusterUnsupportedLifetime) ){
+									lastCluster[p] = lastCluster[q];
+									cluster_ids[k] = lastCluster[q]; // an existing cluster id at or around the event
 									k++;
 									if ( k >= maxClusters ){
 										break search;
@@ -339,30 +361,25 @@ public class ParticleTracker extends EventFilter2D implements FrameAnnotater,Obs
 							}
 						}
 					}
-				lastEvent[ev.x][ev.y] = ev.timestamp;
+				pixels.setEvent(p,ev.timestamp);
 				/***************************************************************************************************************/
 				if ( k == 0 ){// new cluster
 					//if (next_cluster_id<200){
-					lastCluster[ev.x][ev.y] = next_cluster_id;
+					lastCluster[p] = next_cluster_id;
 					thisCluster = new Cluster(ev.x,ev.y,ev.timestamp);
 					clusters.add(thisCluster);
+					pixels.addId(thisCluster.id[0],thisCluster);
 					//}
 					/***************************************************************************************************************/
 				} else{// existing cluster: new event of one or several existing cluster
-					listScanner = clusters.listIterator();
-					while ( listScanner.hasNext() ){ // appendCopy new event to cluster
-						c = (Cluster)listScanner.next();
-						if ( ( c.last < (ev.timestamp - clusterUnsupportedLifetime) ) || ( c.last > ev.timestamp ) ){ //check if cluster is dead or if time has moved backwards
-							listScanner.remove();
-						} else{ //if cluster is still alive
-							for ( l = 0 ; l < c.id.length ; l++ ){
-								if ( c.id[l] == lastCluster[ev.x][ev.y] ){// check if this event belongs to this cluster
-									c.addEvent(ev);
-									thisCluster = c;
-									//break;
-								}
-							}
-						}
+					if ( timeMovedBackwards ){
+						pruneClusters(ev.timestamp);
+						timeMovedBackwards = false;
+					}
+					// the cluster that owns the id of this pixel, through the ids it merged with
+					thisCluster = aliveOwner(lastCluster[p],ev.timestamp);
+					if ( thisCluster != null ){
+						thisCluster.addEvent(ev);
 					}
 					/***************************************************************************************************************/
 					if ( k > 1 ){ //merge clusters if there has been more alive clusters in neighbourhood
@@ -380,56 +397,77 @@ public class ParticleTracker extends EventFilter2D implements FrameAnnotater,Obs
 		}
 	}
 
+	/**
+	 * Returns the alive cluster that owns an id at time now. A dead owner is pruned and null is returned.
+	 * <p>
+	 * Every event of an existing cluster used to prune all dead clusters. Since time only moves forward between calls of
+	 * {@link #pruneClusters} and a dead cluster gets no events, pruning each cluster when an event looks it up gives the same
+	 * clusters, without scanning all of them for every event. Clusters that no event looks up are pruned by splitClusters.
+	 */
+	private Cluster aliveOwner (int id,int now){
+		Cluster c = (Cluster)pixels.getOwner(id);
+		if ( ( c != null ) && ( ( c.last < (now - clusterUnsupportedLifetime) ) || ( c.last > now ) ) ){
+			clusters.remove(c);
+			pixels.removeOwner(c.id[0],c);
+			c = null;
+		}
+		return c;
+	}
+
+	/** Removes the clusters that are dead at time now, or whose last event is after now because time has moved backwards. */
+	private void pruneClusters (int now){
+		ListIterator<Cluster> listScanner = clusters.listIterator();
+		Cluster c;
+		while ( listScanner.hasNext() ){
+			c = listScanner.next();
+			if ( ( c.last < (now - clusterUnsupportedLifetime) ) || ( c.last > now ) ){
+				listScanner.remove();
+				pixels.removeOwner(c.id[0],c);
+			}
+		}
+	}
+
 	/**************************************************************************************************************************************/
 	public int mergeClusters (Cluster thisCluster,int[] cluster_ids,int n_ids,int now){
-		ListIterator listScanner;
 		Cluster c = null;
-		int i, j, l;
+		int j, l;
 		int c_count = 1;
 		int[] merged_ids;
 		float thisClusterWeight, thatClusterWeight;
 
 		if ( thisCluster != null ){
-			listScanner = clusters.listIterator();
-			while ( listScanner.hasNext() ){ // look for the clusters to be merged
-				c = (Cluster)listScanner.next();
-				if ( c != thisCluster ){
-					for ( i = 0 ; i < c.id.length ; i++ ){
-						for ( j = 0 ; j < n_ids ; j++ ){
-							if ( c.id[i] == cluster_ids[j] ){
-								c_count++;
-								merged_ids = new int[ c.id.length + thisCluster.id.length ];
-								//System.out.println("******cluster merging: "+(c.id.length+ thisCluster.id.length));
-								for ( l = 0 ; l < thisCluster.id.length ; l++ ){
-									merged_ids[l] = thisCluster.id[l];
-								}
-								for ( l = 0 ; l < ( c.id.length ) ; l++ ){
-									merged_ids[l + thisCluster.id.length] = c.id[l];
-								}
-								//for (l=0;l<(c.id.length+ thisCluster.id.length);l++){
-								//System.out.print(" "+merged_ids[l]);
-								//}
-								//System.out.println();
-								thisCluster.id = merged_ids;
-								c.mass = c.mass * weighEvent(c.last,now);
-								c.lifeForce = c.lifeForce * (float)Math.exp(-(float)( now - c.last ) / clusterUnsupportedLifetime);
-								thisClusterWeight = thisCluster.mass / ( thisCluster.mass + c.mass );
-								thatClusterWeight = 1 - thisClusterWeight;
-								thisCluster.location.x = (thisClusterWeight * thisCluster.location.x) + (thatClusterWeight * c.location.x);
-								thisCluster.location.y = (thisClusterWeight * thisCluster.location.y) + (thatClusterWeight * c.location.y);
-								thisCluster.velocity.x = (thisClusterWeight * thisCluster.velocity.x) + (thatClusterWeight * c.velocity.x);
-								thisCluster.velocity.y = (thisClusterWeight * thisCluster.velocity.y) + (thatClusterWeight * c.velocity.y);
-								if ( thisCluster.mass < c.mass ){
-									thisCluster.color = c.color;
-								}
-								thisCluster.mass = thisCluster.mass + c.mass;
-								thisCluster.lifeForce = thisCluster.lifeForce + c.lifeForce;
-								j = n_ids;
-								i = c.id.length;
-								listScanner.remove();
-							}
-						}
+			for ( j = 0 ; j < n_ids ; j++ ){ // look for the clusters to be merged
+				c = aliveOwner(cluster_ids[j],now);
+				if ( ( c != null ) && ( c != thisCluster ) ){
+					c_count++;
+					merged_ids = new int[ c.id.length + thisCluster.id.length ];
+					//System.out.println("******cluster merging: "+(c.id.length+ thisCluster.id.length));
+					for ( l = 0 ; l < thisCluster.id.length ; l++ ){
+						merged_ids[l] = thisCluster.id[l];
+					}
+					for ( l = 0 ; l < ( c.id.length ) ; l++ ){
+						merged_ids[l + thisCluster.id.length] = c.id[l];
+					}
+					//for (l=0;l<(c.id.length+ thisCluster.id.length);l++){
+					//System.out.print(" "+merged_ids[l]);
+					//}
+					//System.out.println();
+					thisCluster.id = merged_ids;
+					c.mass = c.mass * weighEvent(c.last,now);
+					c.lifeForce = c.lifeForce * (float)Math.exp(-(float)( now - c.last ) / clusterUnsupportedLifetime);
+					thisClusterWeight = thisCluster.mass / ( thisCluster.mass + c.mass );
+					thatClusterWeight = 1 - thisClusterWeight;
+					thisCluster.location.x = (thisClusterWeight * thisCluster.location.x) + (thatClusterWeight * c.location.x);
+					thisCluster.location.y = (thisClusterWeight * thisCluster.location.y) + (thatClusterWeight * c.location.y);
+					thisCluster.velocity.x = (thisClusterWeight * thisCluster.velocity.x) + (thatClusterWeight * c.velocity.x);
+					thisCluster.velocity.y = (thisClusterWeight * thisCluster.velocity.y) + (thatClusterWeight * c.velocity.y);
+					if ( thisCluster.mass < c.mass ){
+						thisCluster.color = c.color;
 					}
+					thisCluster.mass = thisCluster.mass + c.mass;
+					thisCluster.lifeForce = thisCluster.lifeForce + c.lifeForce;
+					pixels.unionIds(thisCluster.id[0],c.id[0]); // the ids of c now lead to thisCluster
+					clusters.remove(c);
 				}
 			}
 		} else{
@@ -457,123 +495,52 @@ public class ParticleTracker extends EventFilter2D implements FrameAnnotater,Obs
     }
 	 */
 	/**************************************************************************************************************************************/
-	public class DiffusedCluster{
-		int t;
-		Point2D.Float location = new Point2D.Float();
-		int n = 0;
-		float mass = 0;
-
-		public DiffusedCluster (){
-		}
-
-		public DiffusedCluster (int x,int y,int ti){
-			t = ti;
-			//t=-1;
-			location.x = x;
-			location.y = y;
-			n = 0;
-			mass = 0;
-		}
-	}
-
-	/**************************************************************************************************************************************/
-	public DiffusedCluster diffuseCluster (int x,int y,int id,int time_limit,int lowest_id,DiffusedCluster c){
-		int i, j, t, most_recent;
-		float new_event_weight;
-		//int surround=2;
-
-		if ( ( x >= 0 ) && ( x < 240 ) && ( y >= 0 ) && ( y < 180 ) && ( lastCluster[x][y] < lowest_id ) && ( lastEvent[x][y] >= time_limit ) ){
-			if ( c == null ){
-				c = new DiffusedCluster(0,0,lastEvent[x][y]);
-			}
-			lastCluster[x][y] = id;
-			c.n++;
-			//new_event_weight = (float)Math.exp( ((float)(lastEvent[x][y]-time_limit)) / (float)clusterUnsupportedLifetime - 1f);
-			new_event_weight = weighEvent(lastEvent[x][y],time_limit + clusterUnsupportedLifetime);
-			c.location.x = ( (c.location.x * c.mass) + (x * new_event_weight) ) / ( c.mass + new_event_weight );
-			c.location.y = ( (c.location.y * c.mass) + (y * new_event_weight) ) / ( c.mass + new_event_weight );
-			c.mass = c.mass + new_event_weight;
-			if ( c.t < lastEvent[x][y] ){
-				c.t = lastEvent[x][y];
-			}
-			for ( i = -surround ; i <= surround ; i++ ){
-				for ( j = -surround ; j <= surround ; j++ ){
-					c = diffuseCluster(x + i,y + j,id,time_limit,lowest_id,c);
-				}
-			}
-		}
-		return ( c );
-	}
-
-	/**************************************************************************************************************************************/
+	/**
+	 * Relabels the connected alive pixels and splits the clusters whose pixels are no longer connected. Each connected
+	 * group of pixels gets a new id; the first group of an old cluster keeps the cluster and the others become new clusters.
+	 *
+	 * @return the number of new clusters from splits
+	 */
 	public int splitClusters (){
 		int split_count = 0;
 		float max_new_mass = 0f;
 		int local_split_count = 0;
-		ListIterator clusterScanner, old_new_id_scanner;
+		ListIterator<Cluster> clusterScanner;
 		Cluster c, new_c;
 		int now = -1;
-		int new_clusters_from;
-		DiffusedCluster dc = null;
-		int x, y, time_limit, i/*,new_id*/, old_id,l,min_old_id;
-		float first_x = 0;
-		float first_y = 0;
-		//int[] old_cluster_id = new int[1];
+		int new_clusters_from, n_new;
+		int time_limit, j, new_id, l, min_old_id;
 		int[] old_ids;
-		//int[] new_ids;
-		class OldNewId{
-			int o;
-			int n;
-			DiffusedCluster c; //last event timestamp in this cluster, estimated location and mass
-		}
-		java.util.List<OldNewId> old_new_id_list = new java.util.LinkedList<OldNewId>();
-		OldNewId old_new_id;
-		int this_pixel_old_id;
-		boolean position_correction_necessary = false;
 		float old_mass;
 
-		clusterScanner = clusters.listIterator();
-		while ( clusterScanner.hasNext() ){ // check for the most recent event timestamp
-			c = (Cluster)clusterScanner.next();
-			if ( c.last > now ){
-				now = c.last;
+		for ( Cluster cl:clusters ){ // check for the most recent event timestamp
+			if ( cl.last > now ){
+				now = cl.last;
 			}
+			cl.firstComponent = -1;
 		}
 		time_limit = now - clusterUnsupportedLifetime;
 		if ( time_limit < 0 ){
 			time_limit = 0;
 		}
 		new_clusters_from = next_cluster_id;
-		// the next foor loop builds up a list of clusters based on all connected alive events in the pixels
-		// and assignes new cluster ids in the lastCluster array. This new id, the old id and the cluster are stored ina temporary list
-		for ( x = 0 ; x < 240 ; x++ ){
-			for ( y = 0 ; y < 180 ; y++ ){
-				this_pixel_old_id = lastCluster[x][y];
-				try{
-					dc = diffuseCluster(x,y,next_cluster_id,time_limit,new_clusters_from,null);
-				} catch ( java.lang.StackOverflowError e ){
-					log.warning(e.getMessage());
-					log.warning("Probably a stack overflow: resetting ParticleTracker");
-					dc = null;
-					initFilter();
-				}
-				if ( dc != null ){
-					//dc.mass = dc.mass * (float)Math.exp((float)(now-dc.t)/clusterUnsupportedLifetime);
-					// the above is not necessary since already right from the difuseCluster function
-					old_new_id = new OldNewId();
-					old_new_id.o = this_pixel_old_id;
-					old_new_id.n = next_cluster_id;
-					old_new_id.c = dc;
-					old_new_id_list.add(old_new_id);
-					next_cluster_id++;
-				} else{
-					//lastCluster[x][y]=-1;
-				}
+		// label all connected alive pixels with new cluster ids in the order of their first pixel; the labeler keeps for each
+		// connected group the cluster that owned the old id of its first pixel, its last event timestamp and its mass
+		n_new = pixels.labelComponents(time_limit,new_clusters_from,time_limit + clusterUnsupportedLifetime,clusterUnsupportedLifetime);
+		next_cluster_id += n_new;
+		if ( nextComponent.length < n_new ){
+			nextComponent = new int[ Math.max(n_new,2 * nextComponent.length) ];
+		}
+		for ( j = n_new - 1 ; j >= 0 ; j-- ){ // chain the new groups of each old cluster in ascending order
+			c = (Cluster)pixels.getComponentOwner(j);
+			if ( c != null ){
+				nextComponent[j] = c.firstComponent;
+				c.firstComponent = j;
 			}
 		}
 		clusterScanner = clusters.listIterator();
 		while ( clusterScanner.hasNext() ){ // getString all old clusters, assign new ids and split if necessary
-			c = (Cluster)clusterScanner.next();
+			c = clusterScanner.next();
 			if ( ( c.last < time_limit ) || ( c.last > now ) ){ //check if cluster is dead or if time has moved backwards
 				clusterScanner.remove();
 			} else{
@@ -581,61 +548,39 @@ public class ParticleTracker extends EventFilter2D implements FrameAnnotater,Obs
 				old_ids = c.id;
 				max_new_mass = 0;
 				local_split_count = 0;
-				//new_id=new_clusters_from;
-				first_x = -1; // dummy initialization : this variable should always be initialized in if (local_split_count >0){}else{...}
-				first_y = -1;
-				old_new_id_scanner = old_new_id_list.listIterator();
-				while ( old_new_id_scanner.hasNext() ){ // checking for all new clusters if they have been part of this old cluster
-					old_new_id = (OldNewId)old_new_id_scanner.next();
-					for ( i = 0 ; i < old_ids.length ; i++ ){
-						if ( old_ids[i] == old_new_id.o ){
-							//position_correction_necessary=
-							//(old_mass > 1000*old_new_id.c.mass);
-							// //((Math.abs(old_new_id.c.location.x-c.location.x) > 10)||
-							// //(Math.abs(old_new_id.c.location.y-c.location.y)>10 ));
-							if ( local_split_count > 0 ){// cluster has been split
-								new_c = new Cluster(old_new_id.n,c.location.x,c.location.y,c.velocity.x,c.velocity.y,old_new_id.c.t);
-								if ( old_new_id.c.mass > max_new_mass ){
-									max_new_mass = old_new_id.c.mass;
-									c.mass = 0f;
-									new_c.mass = old_mass;
-								} else{
-									new_c.mass = 0f;
-								}
-								//new_c.mass = old_new_id.c.mass; // not so good this, since various events in the same pixel can have contributed
-								new_c.color = c.color;
-								clusterScanner.add(new_c);
-							} else{ // found first old cluster and assigning the new id
-								max_new_mass = old_new_id.c.mass;
-								c.id = new int[ 1 ];
-								c.id[0] = old_new_id.n;
-								c.last = old_new_id.c.t;
-								new_c = c;
-							}
-							if ( logStream != null ){
-								min_old_id=Integer.MAX_VALUE;
-								for (l=0;l<old_ids.length;l++){
-									if (old_ids[l]<min_old_id){
-										min_old_id=old_ids[l];
-									}
-								}
-								logStream.println(String.format("%% %d <- %d",old_new_id.n,min_old_id)); //trying to make particles trackable from the log, logging their ID and logging changes of ID tags
+				for ( j = c.firstComponent ; j >= 0 ; j = nextComponent[j] ){ // all new clusters that have been part of this old cluster
+					new_id = new_clusters_from + j;
+					if ( local_split_count > 0 ){// cluster has been split
+						new_c = new Cluster(new_id,c.location.x,c.location.y,c.velocity.x,c.velocity.y,pixels.getComponentLast(j));
+						if ( pixels.getComponentMass(j) > max_new_mass ){
+							max_new_mass = pixels.getComponentMass(j);
+							c.mass = 0f;
+							new_c.mass = old_mass;
+						} else{
+							new_c.mass = 0f;
+						}
+						new_c.color = c.color;
+						clusterScanner.add(new_c);
+					} else{ // found first old cluster and assigning the new id
+						max_new_mass = pixels.getComponentMass(j);
+						c.id = new int[ 1 ];
+						c.id[0] = new_id;
+						c.last = pixels.getComponentLast(j);
+						new_c = c;
+					}
+					pixels.setOwner(new_id,new_c);
+					if ( logStream != null ){
+						min_old_id=Integer.MAX_VALUE;
+						for (l=0;l<old_ids.length;l++){
+							if (old_ids[l]<min_old_id){
+								min_old_id=old_ids[l];
 							}
-							//if (position_correction_necessary){
-							// //System.out.println("correcting position"
-							// //        +" "+(old_new_id.c.location.x-new_c.location.x)
-							// //        +" "+(old_new_id.c.location.y-new_c.location.y)
-							// //        +" "+(old_mass)
-							// //        +" "+(old_new_id.c.mass)
-							// //        );
-							//new_c.location.x= old_new_id.c.location.x;
-							//new_c.location.y= old_new_id.c.location.y;
-							//new_c.mass=0;
-							//}
-							local_split_count++;
 						}
+						logStream.println(String.format("%% %d <- %d",new_id,min_old_id)); //trying to make particles trackable from the log, logging their ID and logging changes of ID tags
 					}
+					local_split_count++;
 				}
+				c.firstComponent = -1;
 				if ( local_split_count < 1 ){
 					log.warning("could not associate an existing cluster with one of the still valid diffused clusters");
 					clusterScanner.remove();
@@ -658,6 +603,7 @@ public class ParticleTracker extends EventFilter2D implements FrameAnnotater,Obs
 		public float lifeForce = 0f;
 		public Color color = null;
 		public boolean em = false; //emphazise when drawing;
+		int firstComponent = -1; // first of the connected pixel groups of this cluster while splitting, -1 if none
 
 		//        public Cluster(){
 		//            location.x=(float)20.5;
@@ -776,14 +722,15 @@ public class ParticleTracker extends EventFilter2D implements FrameAnnotater,Obs
 
 	@Override
 	synchronized public void resetFilter (){
-		int i, j;
+		int sx = Math.max(1,chip.getSizeX()), sy = Math.max(1,chip.getSizeY());
 		clusters.clear();
 		next_cluster_id = 1;
-		for ( i = 0 ; i < 240 ; i++ ){
-			for ( j = 0 ; j < 180 ; j++ ){
-				lastCluster[i][j] = -1;
-				lastEvent[i][j] = -1;
-			}
+		lastTimestamp = Integer.MIN_VALUE;
+		timeMovedBackwards = false;
+		if ( ( pixels == null ) || ( pixels.sizeX != sx ) || ( pixels.sizeY != sy ) ){
+			pixels = new ActivePixelLabeler(sx,sy,surround);
+		} else{
+			pixels.reset();
 		}
 		logFrameNumber=Integer.MIN_VALUE;
 	}
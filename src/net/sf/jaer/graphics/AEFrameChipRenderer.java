@@ -16,6 +16,7 @@ import java.util.Random;
 
 import ch.unizh.ini.jaer.chip.retina.DvsDisplayConfigInterface;
 import eu.seebetter.ini.chips.DavisChip;
+import eu.seebetter.ini.chips.davis.AutoExposureController;
 import eu.seebetter.ini.chips.davis.DavisBaseCamera;
 import eu.seebetter.ini.chips.davis.DavisVideoContrastController;
 import net.sf.jaer.chip.AEChip;
@@ -120,8 +121,23 @@ public class AEFrameChipRenderer extends AEChipRenderer {
      * Boolean on whether to compute the histogram of gray levels
      */
     protected boolean computeHistograms = false;
+    // histogram sampling options from the AutoExposureController, read once per packet
+    private int histogramSubsampling = 1;
+    private boolean histogramCenterWeighted = false;
     private boolean displayAnnotation = false;
 
+    /**
+     * Rows of dvsEventsMap written since it was last reset, so that resetMaps
+     * only has to clear those rows. Valid only while lastResetMap and
+     * lastResetGrayValue match the current map and gray value; the full reset
+     * also fills grayBuffer with the gray value, which startFrame copies, so
+     * lastResetMap is cleared whenever grayBuffer is written otherwise.
+     */
+    private boolean[] dirtyDvsRows = new boolean[0];
+    private int dirtyDvsRowMin = Integer.MAX_VALUE, dirtyDvsRowMax = -1;
+    private float[] lastResetMap = null;
+    private float lastResetGrayValue = Float.NaN;
+
     /**
      * downsampling of DVS to speed up rendering at high frame rate
      */
@@ -201,6 +217,7 @@ public class AEFrameChipRenderer extends AEChipRenderer {
         pixmap.limit(n);
         pixBuffer.limit(n);
         setColors();
+        lastResetMap = null; // grayBuffer now holds the pixmap pattern, so resetMaps must fill it again
         resetMaps();
     }
 
@@ -210,12 +227,34 @@ public class AEFrameChipRenderer extends AEChipRenderer {
         final int n = 4 * textureWidth * textureHeight;
         if ((grayBuffer == null) || (grayBuffer.capacity() != n)) {
             grayBuffer = FloatBuffer.allocate(n); // BufferUtil.newFloatBuffer(n);
+            lastResetMap = null;
         }
 
         grayBuffer.rewind();
-        // Fill maps with fully transparent values
-        Arrays.fill(grayBuffer.array(), grayValue);
-        System.arraycopy(grayBuffer.array(), 0, dvsEventsMap.array(), 0, n);
+        final float[] map = dvsEventsMap.array();
+        if (isDirtyRowResetPossible() && (lastResetMap == map) && (lastResetGrayValue == grayValue) && (dirtyDvsRows.length == sizeY)) {
+            // only clear the rows that were rendered into since the last reset
+            final int rowLength = 4 * textureWidth;
+            for (int y = dirtyDvsRowMin; y <= dirtyDvsRowMax; y++) {
+                if (dirtyDvsRows[y]) {
+                    Arrays.fill(map, y * rowLength, (y + 1) * rowLength, grayValue);
+                    dirtyDvsRows[y] = false;
+                }
+            }
+        } else {
+            // Fill maps with fully transparent values
+            Arrays.fill(grayBuffer.array(), grayValue);
+            System.arraycopy(grayBuffer.array(), 0, map, 0, n);
+            if (dirtyDvsRows.length != sizeY) {
+                dirtyDvsRows = new boolean[sizeY];
+            } else {
+                Arrays.fill(dirtyDvsRows, false);
+            }
+            lastResetMap = map;
+            lastResetGrayValue = grayValue;
+        }
+        dirtyDvsRowMin = Integer.MAX_VALUE;
+        dirtyDvsRowMax = -1;
 //        System.arraycopy(grayBuffer.array(), 0, offMap.array(), 0, n);
         // if(displayAnnotation) Arrays.fill(annotateMap.array(), 0);
 
@@ -234,16 +273,9 @@ public class AEFrameChipRenderer extends AEChipRenderer {
     public synchronized void resetAnnotationFrame(final float resetValue) {
         checkPixmapAllocation();
         final int n = 4 * textureWidth * textureHeight;
-        if ((grayBuffer == null) || (grayBuffer.capacity() != n)) {
-            grayBuffer = FloatBuffer.allocate(n); // BufferUtil.newFloatBuffer(n);
-        }
-
-        grayBuffer.rewind();
-        // Fill maps with fully transparent values
-        Arrays.fill(grayBuffer.array(), resetValue);
-        System.arraycopy(grayBuffer.array(), 0, annotateMap.array(), 0, n);
+        // Fill maps with fully transparent values; grayBuffer is left alone since startFrame copies it as the gray frame
+        Arrays.fill(annotateMap.array(), 0, n, resetValue);
 
-        grayBuffer.rewind();
         annotateMap.rewind();
         annotateMap.limit(n);
     }
@@ -336,6 +368,11 @@ public class AEFrameChipRenderer extends AEChipRenderer {
     protected void renderApsDvsEvents(final EventPacket pkt) {
         if (getChip() instanceof DavisBaseCamera) {
             computeHistograms = ((DavisBaseCamera) chip).isShowImageHistogram() || ((DavisChip) chip).isAutoExposureEnabled();
+            final AutoExposureController autoExposureController = ((DavisChip) chip).getAutoExposureController();
+            if (computeHistograms && (autoExposureController != null)) {
+                histogramSubsampling = autoExposureController.getHistogramSubsampling();
+                histogramCenterWeighted = autoExposureController.isCenterWeighted();
+            }
         }
 
         if (!accumulateEnabled) {
@@ -475,20 +512,7 @@ public class AEFrameChipRenderer extends AEChipRenderer {
 
             // right here sample-reset value of this pixel is in val
             if (computeHistograms) {
-                if (!((DavisChip) chip).getAutoExposureController().isCenterWeighted()) {
-                    nextHist.add(val);
-                } else {
-                    // randomly appendCopy histogram values to histogram depending on distance from center of image
-                    // to implement a simple form of center weighting of the histogram
-                    float d = (1 - Math.abs(((float) e.x - (sizeX / 2)) / sizeX)) + Math.abs(((float) e.y - (sizeY / 2)) / sizeY);
-                    // d is zero at center, 1 at corners
-                    d *= d;
-
-                    final float r = random.nextFloat();
-                    if (r > d) {
-                        nextHist.add(val);
-                    }
-                }
+                addHistogramSample(e, val);
             }
 
             final float fval = normalizeFramePixel(val);
@@ -510,6 +534,34 @@ public class AEFrameChipRenderer extends AEChipRenderer {
         }
     }
 
+    /**
+     * Adds a CDS sample value to the histogram being collected for the
+     * current frame, skipping pixels off the subsampling grid and, with
+     * center weighting, randomly skipping pixels depending on their distance
+     * from the center of the image.
+     *
+     * @param e the signal read event
+     * @param val the reset minus signal value
+     */
+    protected void addHistogramSample(final ApsDvsEvent e, final int val) {
+        if ((histogramSubsampling > 1) && (((e.x % histogramSubsampling) != 0) || ((e.y % histogramSubsampling) != 0))) {
+            return;
+        }
+        if (histogramCenterWeighted) {
+            // randomly appendCopy histogram values to histogram depending on distance from center of image
+            // to implement a simple form of center weighting of the histogram
+            float d = (1 - Math.abs(((float) e.x - (sizeX / 2)) / sizeX)) + Math.abs(((float) e.y - (sizeY / 2)) / sizeY);
+            // d is zero at center, 1 at corners
+            d *= d;
+
+            final float r = random.nextFloat();
+            if (r <= d) {
+                return;
+            }
+        }
+        nextHist.add(val);
+    }
+
     protected void startFrame(final int ts) {
         timestampFrameStart = ts;
         maxValue = Float.MIN_VALUE;
@@ -527,6 +579,7 @@ public class AEFrameChipRenderer extends AEChipRenderer {
         }
 
         getSupport().firePropertyChange(AEFrameChipRenderer.EVENT_NEW_FRAME_AVAILBLE, null, this);
+        chip.getEventBus().publishFrame(timestampFrameStart, timestampFrameEnd);
     }
 
     /**
@@ -552,6 +605,7 @@ public class AEFrameChipRenderer extends AEChipRenderer {
         if ((index < 0) || (index >= map.length)) {
             return;
         }
+        markDvsRowDirty(e.y);
 
         if (packet.getNumCellTypes() > 2) {
             checkTypeColors(packet.getNumCellTypes());
@@ -632,6 +686,36 @@ public class AEFrameChipRenderer extends AEChipRenderer {
         }
     }
 
+    /**
+     * Records that row y of dvsEventsMap was rendered into.
+     *
+     * @param y the pixel row
+     */
+    protected final void markDvsRowDirty(final int y) {
+        if (y >= dirtyDvsRows.length) {
+            return; // map not reset since size change, next reset is a full one
+        }
+        dirtyDvsRows[y] = true;
+        if (y < dirtyDvsRowMin) {
+            dirtyDvsRowMin = y;
+        }
+        if (y > dirtyDvsRowMax) {
+            dirtyDvsRowMax = y;
+        }
+    }
+
+    /**
+     * Returns true if resetMaps may clear only the rows of dvsEventsMap that
+     * were marked with markDvsRowDirty. The base class marks every row it
+     * renders into; subclasses that write dvsEventsMap themselves inherit a
+     * full reset unless they override this method and mark their rows.
+     *
+     * @return true if all writes to dvsEventsMap are marked
+     */
+    protected boolean isDirtyRowResetPossible() {
+        return getClass() == AEFrameChipRenderer.class;
+    }
+
     protected final int INTERVAL_BETWEEEN_OUT_OF_BOUNDS_EXCEPTIONS_PRINTED_MS = 1000;
     protected long lastWarningPrintedTimeMs = Integer.MAX_VALUE;
     protected int badEventCount = 0;
@@ -1121,8 +1121,9 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
     }
 
     /**
-     * If the AEMonitor is open, tells it to resetTimestamps, and fires
-     * PropertyChange EVENT_TIMESTAMPS_RESET.
+     * If the AEMonitor is open, tells it to resetTimestamps, fires
+     * PropertyChange EVENT_TIMESTAMPS_RESET and publishes the reset on the
+     * chip event bus.
      *
      * @see AEMonitorInterface#resetTimestamps()
      */
@@ -1131,6 +1132,9 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
             aemon.resetTimestamps();
         }
         getSupport().firePropertyChange(EVENT_TIMESTAMPS_RESET, null, EVENT_TIMESTAMPS_RESET);
+        if (chip != null) {
+            chip.getEventBus().publishTimestampReset();
+        }
     }
 
     /**
@@ -1755,6 +1759,8 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
         //        volatile boolean renderImageEnabled=true;
         volatile boolean singleStepEnabled = false, doSingleStep = false;
         int numRawEvents, numFilteredEvents;
+        /** Reused to merge the packets from the blocking queue input, since the source packets are reused by their producers */
+        private final AEPacketRaw mergedQueuePacket = new AEPacketRaw();
         //                volatile boolean rerenderFlagDone=false; // used by view loop to signal to other methods that it has finished a rendering. view loop sets this true after each loop.
 
         public ViewLoop() {
@@ -2193,7 +2199,8 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
                                 }
                             }
                             //log.info(String.format("remote received %d cochlea and %d retina packets.",numOfCochleaPackets,numOfRetinaPackets));
-                            aeRaw = new AEPacketRaw(tempPackets);
+                            mergedQueuePacket.clear();
+                            aeRaw = mergedQueuePacket.appendAll(tempPackets);
 
                         }
                     }
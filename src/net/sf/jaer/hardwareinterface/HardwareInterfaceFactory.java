@@ -17,6 +17,7 @@ import java.util.logging.Logger;
 
 import net.sf.jaer.hardwareinterface.serial.SpiNNaker.SpiNNaker_InterfaceFactory;
 import net.sf.jaer.hardwareinterface.serial.eDVS128.eDVS128_InterfaceFactory;
+import net.sf.jaer.hardwareinterface.sim.SimulatedAEMonitorFactory;
 import net.sf.jaer.hardwareinterface.udp.UDPInterfaceFactory;
 import net.sf.jaer.hardwareinterface.usb.cypressfx2.USBIOHardwareInterfaceFactory;
 import net.sf.jaer.hardwareinterface.usb.cypressfx2libusb.LibUsbHardwareInterfaceFactory;
@@ -52,6 +53,7 @@ HardwareInterfaceFactoryInterface, PnPNotifyInterface {
 		UDPInterfaceFactory.class,
 		eDVS128_InterfaceFactory.class,
 		SpiNNaker_InterfaceFactory.class,
+		SimulatedAEMonitorFactory.class,
 	};
 	private static HardwareInterfaceFactory instance = new HardwareInterfaceFactory();
 
@@ -0,0 +1,67 @@
+package net.sf.jaer.hardwareinterface.sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.eventio.AEFileInputStream;
+
+/**
+ * Reads the raw events of a recorded data file (.aedat) for a
+ * {@link SimulatedAEMonitor}.
+ */
+public class FileEventSource implements SimulatedEventSource {
+
+    private static final Logger log = Logger.getLogger("FileEventSource");
+    private final File file;
+    private final AEFileInputStream in;
+
+    /**
+     * Opens a recording.
+     *
+     * @param file the data file
+     * @param chip the chip, used by AEFileInputStream for the event extractor
+     * of the file format
+     * @throws IOException if the file cannot be opened
+     */
+    public FileEventSource(File file, AEChip chip) throws IOException {
+        this.file = file;
+        in = new AEFileInputStream(file, chip);
+        in.setRepeat(false); // the monitor rewinds itself, so that it sees where the recording starts over
+        in.setNonMonotonicTimeExceptionsChecked(false); // otherwise packets are cut short at timestamp wraps
+    }
+
+    @Override
+    public int read(int[] addresses, int[] timestamps, int offset, int max) throws IOException {
+        long remaining = in.size() - in.position();
+        if (remaining <= 0) {
+            return -1;
+        }
+        AEPacketRaw packet = in.readPacketByNumber((int) Math.min(max, remaining)); // never read past the end, which throws EOFException
+        int n = packet.getNumEvents();
+        System.arraycopy(packet.getAddresses(), 0, addresses, offset, n);
+        System.arraycopy(packet.getTimestamps(), 0, timestamps, offset, n);
+        return n;
+    }
+
+    @Override
+    public void rewind() throws IOException {
+        in.rewind();
+    }
+
+    @Override
+    public void close() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            log.warning("closing " + file + ": " + e.toString());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.getName();
+    }
+}
@@ -0,0 +1,685 @@
+package net.sf.jaer.hardwareinterface.sim;
+
+import java.beans.PropertyChangeSupport;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+import java.util.prefs.Preferences;
+
+import net.sf.jaer.aemonitor.AEListener;
+import net.sf.jaer.aemonitor.AEMonitorInterface;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.aemonitor.AEPacketRawPool;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.hardwareinterface.HardwareInterfaceException;
+import net.sf.jaer.hardwareinterface.usb.ReaderBufferControl;
+
+/**
+ * A software AE monitor that plays back a {@link SimulatedEventSource}, e.g. a
+ * recorded .aedat file, as though it came from a camera. It allows load and
+ * soak tests of the live acquisition path (AEViewer, the filter chain,
+ * rendering) without a physical device.
+ * <p>
+ * A producer thread reads the source in transfers of
+ * {@link #getFifoSize()} bytes (8 bytes per event) and writes the events into
+ * the write buffer of an {@link AEPacketRawPool}, which
+ * {@link #acquireAvailableEventsFromDriver()} swaps exactly like the USB
+ * interfaces do. A transfer is also ended after {@link #FLUSH_INTERVAL_US} of
+ * device time, like the device timers that send short packets at low event
+ * rates. When the consumer does not collect the events in time and the write
+ * buffer holds {@link #getAEBufferSize()} events, the further events are
+ * discarded and {@link #overrunOccurred()} is true for the next packet.
+ * <p>
+ * The events are paced by the {@link PlaybackMode}:
+ * <ul>
+ * <li>RECORDED - the recorded timing, scaled by the speed factor
+ * <li>FIXED_RATE - a fixed event rate, optionally with periodic bursts at a
+ * higher rate. The timestamps are generated from this schedule; only the
+ * addresses come from the source.
+ * <li>MAX_RATE - as fast as the source can be read and the consumer keeps up,
+ * with the recorded timestamps
+ * </ul>
+ * Device timestamps are kept monotonic when the source is looped or its
+ * timestamps go backwards, and start from zero after
+ * {@link #resetTimestamps()}.
+ * <p>
+ * Fires PropertyChangeEvent on the following
+ * <ul>
+ * <li>{@link #PROPERTY_CHANGE_NEW_EVENTS} - on new events from driver
+ * <li>"readerStarted" - when the producer thread is started
+ * <li>"readerStopped" - when the producer thread is stopped
+ * </ul>
+ *
+ * @see SimulatedAEMonitorFactory
+ */
+public class SimulatedAEMonitor implements AEMonitorInterface, ReaderBufferControl {
+
+    /** Used to store preferences, e.g. the playback mode and rates. */
+    protected static Preferences prefs = Preferences.userNodeForPackage(SimulatedAEMonitor.class);
+    protected static final Logger log = Logger.getLogger("SimulatedAEMonitor");
+
+    /** Property change fired when new events are acquired */
+    public static final String PROPERTY_CHANGE_NEW_EVENTS = "NewEvents";
+    /** Default size of the raw packet buffers between producer and consumer */
+    public static final int AE_BUFFER_SIZE = 100000;
+    /** Bytes per event of a simulated transfer, as 32 bit address and 32 bit timestamp */
+    public static final int EVENT_SIZE_BYTES = 8;
+    /** Longest device time in us that events are held back before they are sent */
+    public static final int FLUSH_INTERVAL_US = 10000;
+
+    /** How the playback is paced */
+    public enum PlaybackMode {
+        RECORDED, FIXED_RATE, MAX_RATE
+    }
+
+    protected AEChip chip;
+    private final File file;
+    private SimulatedEventSource source;
+    private final String name;
+    private boolean isOpen = false;
+    /** This support can be used to register this interface for property change events */
+    private final PropertyChangeSupport support = new PropertyChangeSupport(this);
+
+    protected int aeBufferSize = prefs.getInt("SimulatedAEMonitor.aeBufferSize", AE_BUFFER_SIZE);
+    private final AEPacketRawPool aePacketRawPool = new AEPacketRawPool(this);
+    /** the last events from {@link #acquireAvailableEventsFromDriver}, This packet is reused. */
+    protected AEPacketRaw lastEventsAcquired = new AEPacketRaw();
+    private int estimatedEventRate = 0;
+
+    private int fifoSize = prefs.getInt("SimulatedAEMonitor.fifoSize", 8192);
+    private int numBuffers = prefs.getInt("SimulatedAEMonitor.numBuffers", 8);
+    private PlaybackMode playbackMode = PlaybackMode.valueOf(prefs.get("SimulatedAEMonitor.playbackMode", PlaybackMode.RECORDED.toString()));
+    private float speedFactor = prefs.getFloat("SimulatedAEMonitor.speedFactor", 1);
+    private int eventRateEps = prefs.getInt("SimulatedAEMonitor.eventRateEps", 1000000);
+    private int burstRateEps = prefs.getInt("SimulatedAEMonitor.burstRateEps", 10000000);
+    private int burstDurationMs = prefs.getInt("SimulatedAEMonitor.burstDurationMs", 0);
+    private int burstPeriodMs = prefs.getInt("SimulatedAEMonitor.burstPeriodMs", 1000);
+    private boolean loop = prefs.getBoolean("SimulatedAEMonitor.loop", true);
+
+    private volatile Producer producer = null;
+    private volatile boolean timestampResetPending = false;
+    private volatile long eventsProduced = 0, eventsDropped = 0, maxLagUs = 0;
+
+    /**
+     * Creates a monitor that plays back a recording. The file is opened by
+     * {@link #open()}.
+     *
+     * @param file the .aedat file
+     */
+    public SimulatedAEMonitor(File file) {
+        this.file = file;
+        this.name = file.getName();
+    }
+
+    /**
+     * Creates a monitor that plays back any source, e.g. a synthetic
+     * generator. The source is not closed by {@link #close()}.
+     *
+     * @param name the name shown for the device
+     * @param source the source
+     */
+    public SimulatedAEMonitor(String name, SimulatedEventSource source) {
+        this.file = null;
+        this.name = name;
+        this.source = source;
+    }
+
+    @Override
+    public String getTypeName() {
+        return "Simulated AE monitor";
+    }
+
+    @Override
+    synchronized public void open() throws HardwareInterfaceException {
+        if (isOpen) {
+            return;
+        }
+        if (file != null) {
+            try {
+                source = new FileEventSource(file, chip != null ? chip : new AEChip());
+            } catch (IOException e) {
+                throw new HardwareInterfaceException("could not open " + file + ": " + e.toString());
+            }
+        }
+        isOpen = true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return isOpen;
+    }
+
+    /** Stops the producer and closes the recording. Never throws an exception. */
+    @Override
+    synchronized public void close() {
+        if (!isOpen) {
+            return;
+        }
+        stopProducer();
+        if (file != null && source != null) {
+            source.close();
+            source = null;
+        }
+        isOpen = false;
+    }
+
+    @Override
+    public void setChip(AEChip chip) {
+        this.chip = chip;
+    }
+
+    @Override
+    public AEChip getChip() {
+        return chip;
+    }
+
+    @Override
+    public int getTimestampTickUs() {
+        return 1;
+    }
+
+    /**
+     * Gets the events written by the producer since the last call. Starts the
+     * playback if it is not running already. {@link #overrunOccurred} is
+     * reset by this call.
+     *
+     * @return packet of events acquired.
+     * @throws HardwareInterfaceException if the source cannot be opened
+     */
+    @Override
+    public AEPacketRaw acquireAvailableEventsFromDriver() throws HardwareInterfaceException {
+        if (!isOpen()) {
+            open();
+        }
+        if (!isEventAcquisitionEnabled()) {
+            setEventAcquisitionEnabled(true);
+        }
+        synchronized (aePacketRawPool) {
+            aePacketRawPool.swap();
+            lastEventsAcquired = aePacketRawPool.readBuffer();
+        }
+        computeEstimatedEventRate(lastEventsAcquired);
+        if (lastEventsAcquired.getNumEvents() != 0) {
+            support.firePropertyChange(PROPERTY_CHANGE_NEW_EVENTS, null, lastEventsAcquired);
+        }
+        return lastEventsAcquired;
+    }
+
+    /** computes the estimated event rate for a packet of events */
+    private void computeEstimatedEventRate(AEPacketRaw events) {
+        if ((events == null) || (events.getNumEvents() < 2)) {
+            estimatedEventRate = 0;
+        } else {
+            int[] ts = events.getTimestamps();
+            int n = events.getNumEvents();
+            int dt = ts[n - 1] - ts[0];
+            estimatedEventRate = dt > 0 ? (int) ((1e6f * n) / dt) : 0;
+        }
+    }
+
+    @Override
+    public int getNumEventsAcquired() {
+        return lastEventsAcquired.getNumEvents();
+    }
+
+    @Override
+    public AEPacketRaw getEvents() {
+        return lastEventsAcquired;
+    }
+
+    /** Makes the device timestamps start again from zero with the next event. */
+    @Override
+    public void resetTimestamps() {
+        timestampResetPending = true;
+    }
+
+    /**
+     * Is true if events were discarded because the write buffer was full
+     * during the period before the last time
+     * {@link #acquireAvailableEventsFromDriver} was called. As with the USB
+     * interfaces, the events kept are the most ancient ones.
+     *
+     * @return true if there was an overrun.
+     */
+    @Override
+    public boolean overrunOccurred() {
+        return lastEventsAcquired.overrunOccuredFlag;
+    }
+
+    @Override
+    public int getAEBufferSize() {
+        return aeBufferSize;
+    }
+
+    /**
+     * Sets the size of the raw event packet buffers. This call discards
+     * collected events.
+     *
+     * @param size of buffer in events
+     */
+    @Override
+    public void setAEBufferSize(int size) {
+        if ((size < 1000) || (size > 2000000)) {
+            log.warning("ignoring unreasonable aeBufferSize of " + size + ", choose a more reasonable size between 1000 and 2000000");
+            return;
+        }
+        aeBufferSize = size;
+        prefs.putInt("SimulatedAEMonitor.aeBufferSize", aeBufferSize);
+        synchronized (aePacketRawPool) {
+            aePacketRawPool.allocateMemory();
+            aePacketRawPool.reset();
+        }
+    }
+
+    /**
+     * Starts or stops the producer thread.
+     *
+     * @param enable true to start playback
+     * @throws HardwareInterfaceException if the source cannot be opened
+     */
+    @Override
+    synchronized public void setEventAcquisitionEnabled(boolean enable) throws HardwareInterfaceException {
+        if (enable) {
+            if (!isOpen) {
+                open();
+            }
+            if (producer == null) {
+                if (source == null) {
+                    throw new HardwareInterfaceException("no event source");
+                }
+                synchronized (aePacketRawPool) {
+                    aePacketRawPool.reset();
+                }
+                producer = new Producer(source);
+                producer.start();
+                support.firePropertyChange("readerStarted", false, true);
+            }
+        } else {
+            stopProducer();
+        }
+    }
+
+    private void stopProducer() {
+        Producer p = producer;
+        if (p == null) {
+            return;
+        }
+        producer = null;
+        p.running = false;
+        LockSupport.unpark(p); // not interrupt(), which would close the FileChannel of a recording being read
+        try {
+            p.join();
+        } catch (InterruptedException e) {
+            log.warning("interrupted while waiting for producer thread to stop");
+        }
+        support.firePropertyChange("readerStopped", false, true);
+    }
+
+    @Override
+    public boolean isEventAcquisitionEnabled() {
+        return producer != null;
+    }
+
+    @Override
+    public void addAEListener(AEListener listener) {
+        support.addPropertyChangeListener(listener);
+    }
+
+    @Override
+    public void removeAEListener(AEListener listener) {
+        support.removePropertyChangeListener(listener);
+    }
+
+    /** @return the highest rate of FIXED_RATE playback, or the capacity of a USB 3 camera otherwise */
+    @Override
+    public int getMaxCapacity() {
+        return playbackMode == PlaybackMode.FIXED_RATE ? Math.max(eventRateEps, burstRateEps) : 50000000;
+    }
+
+    @Override
+    public int getEstimatedEventRate() {
+        return estimatedEventRate;
+    }
+
+    /** @return the size in bytes of a simulated transfer */
+    @Override
+    public int getFifoSize() {
+        return fifoSize;
+    }
+
+    /**
+     * Sets the size in bytes of a simulated transfer. Small transfers wake the
+     * consumer more often with fewer events. Takes effect when the playback is
+     * next started.
+     *
+     * @param fifoSize the size in bytes
+     */
+    @Override
+    public void setFifoSize(int fifoSize) {
+        if (fifoSize < EVENT_SIZE_BYTES) {
+            fifoSize = EVENT_SIZE_BYTES;
+        }
+        this.fifoSize = fifoSize;
+        prefs.putInt("SimulatedAEMonitor.fifoSize", fifoSize);
+    }
+
+    /**
+     * The number of buffers is stored for the device menu but has no effect,
+     * since a simulated source has no queue of driver transfers.
+     */
+    @Override
+    public int getNumBuffers() {
+        return numBuffers;
+    }
+
+    @Override
+    public void setNumBuffers(int numBuffers) {
+        this.numBuffers = numBuffers;
+        prefs.putInt("SimulatedAEMonitor.numBuffers", numBuffers);
+    }
+
+    @Override
+    public PropertyChangeSupport getReaderSupport() {
+        return support;
+    }
+
+    /**
+     * @return the playbackMode
+     */
+    public PlaybackMode getPlaybackMode() {
+        return playbackMode;
+    }
+
+    /**
+     * Sets how playback is paced. Takes effect when the playback is next
+     * started.
+     *
+     * @param playbackMode the playbackMode to set
+     */
+    public void setPlaybackMode(PlaybackMode playbackMode) {
+        this.playbackMode = playbackMode;
+        prefs.put("SimulatedAEMonitor.playbackMode", playbackMode.toString());
+    }
+
+    /**
+     * @return the factor by which RECORDED playback is faster than the
+     * recording
+     */
+    public float getSpeedFactor() {
+        return speedFactor;
+    }
+
+    /**
+     * @param speedFactor the factor by which RECORDED playback is faster than
+     * the recording
+     */
+    public void setSpeedFactor(float speedFactor) {
+        if (speedFactor <= 0) {
+            log.warning("ignoring speedFactor=" + speedFactor + " which must be positive");
+            return;
+        }
+        this.speedFactor = speedFactor;
+        prefs.putFloat("SimulatedAEMonitor.speedFactor", speedFactor);
+    }
+
+    /**
+     * @return the event rate in events/s of FIXED_RATE playback outside of
+     * bursts
+     */
+    public int getEventRateEps() {
+        return eventRateEps;
+    }
+
+    /**
+     * @param eventRateEps the event rate in events/s of FIXED_RATE playback
+     * outside of bursts
+     */
+    public void setEventRateEps(int eventRateEps) {
+        this.eventRateEps = Math.max(1, eventRateEps);
+        prefs.putInt("SimulatedAEMonitor.eventRateEps", this.eventRateEps);
+    }
+
+    /**
+     * @return the event rate in events/s of FIXED_RATE playback during bursts
+     */
+    public int getBurstRateEps() {
+        return burstRateEps;
+    }
+
+    /**
+     * @param burstRateEps the event rate in events/s of FIXED_RATE playback
+     * during bursts
+     */
+    public void setBurstRateEps(int burstRateEps) {
+        this.burstRateEps = Math.max(1, burstRateEps);
+        prefs.putInt("SimulatedAEMonitor.burstRateEps", this.burstRateEps);
+    }
+
+    /**
+     * @return the duration in ms of a burst at the start of each burst
+     * period; 0 disables bursts
+     */
+    public int getBurstDurationMs() {
+        return burstDurationMs;
+    }
+
+    /**
+     * @param burstDurationMs the duration in ms of a burst at the start of
+     * each burst period; 0 disables bursts
+     */
+    public void setBurstDurationMs(int burstDurationMs) {
+        this.burstDurationMs = Math.max(0, burstDurationMs);
+        prefs.putInt("SimulatedAEMonitor.burstDurationMs", this.burstDurationMs);
+    }
+
+    /**
+     * @return the period in ms of the bursts
+     */
+    public int getBurstPeriodMs() {
+        return burstPeriodMs;
+    }
+
+    /**
+     * @param burstPeriodMs the period in ms of the bursts
+     */
+    public void setBurstPeriodMs(int burstPeriodMs) {
+        this.burstPeriodMs = Math.max(1, burstPeriodMs);
+        prefs.putInt("SimulatedAEMonitor.burstPeriodMs", this.burstPeriodMs);
+    }
+
+    /**
+     * @return true if the source is played again from its start when it ends
+     */
+    public boolean isLoop() {
+        return loop;
+    }
+
+    /**
+     * @param loop true to play the source again from its start when it ends,
+     * false to stop the producer
+     */
+    public void setLoop(boolean loop) {
+        this.loop = loop;
+        prefs.putBoolean("SimulatedAEMonitor.loop", loop);
+    }
+
+    /**
+     * @return the number of events produced since the monitor was created,
+     * including those discarded by overruns
+     */
+    public long getEventsProduced() {
+        return eventsProduced;
+    }
+
+    /**
+     * @return the number of events discarded by overruns since the monitor
+     * was created
+     */
+    public long getEventsDropped() {
+        return eventsDropped;
+    }
+
+    /**
+     * @return the largest delay in us of a transfer behind its schedule, e.g.
+     * because the source could not be read fast enough
+     */
+    public long getMaxLagUs() {
+        return maxLagUs;
+    }
+
+    @Override
+    public String toString() {
+        return "Simulated: " + name;
+    }
+
+    /**
+     * Writes events into the write buffer of the pool, discarding the events
+     * that do not fit.
+     */
+    private void deliver(int[] addresses, int[] timestamps, int offset, int n) {
+        int dropped = 0;
+        synchronized (aePacketRawPool) {
+            AEPacketRaw buffer = aePacketRawPool.writeBuffer();
+            int have = buffer.getNumEvents();
+            int room = buffer.overrunOccuredFlag ? 0 : aeBufferSize - have;
+            int m = Math.min(n, room);
+            if (m > 0) {
+                buffer.ensureCapacity(have + m);
+                System.arraycopy(addresses, offset, buffer.getAddresses(), have, m);
+                System.arraycopy(timestamps, offset, buffer.getTimestamps(), have, m);
+                buffer.setNumEvents(have + m);
+            }
+            if (m < n) {
+                buffer.overrunOccuredFlag = true;
+                dropped = n - m;
+            }
+        }
+        eventsProduced += n;
+        eventsDropped += dropped;
+    }
+
+    /**
+     * Reads the source, stamps and schedules the events and delivers each
+     * transfer when it is due.
+     */
+    private class Producer extends Thread {
+
+        volatile boolean running = true;
+        private final SimulatedEventSource src;
+        private final PlaybackMode mode = playbackMode;
+        private final double nsPerUs = 1000 / speedFactor;
+        private final long burstDurationNs = burstDurationMs * 1000000L, burstPeriodNs = burstPeriodMs * 1000000L;
+        private final double eventIntervalNs = 1e9 / eventRateEps, burstIntervalNs = 1e9 / burstRateEps;
+        private final int[] addresses, timestamps;
+        private final long[] dueNs;
+        private long startNs;
+        // source time made monotonic in us, and the device time at the last timestamp reset
+        private long sourceOffsetUs = 0, lastSourceUs = Long.MIN_VALUE, firstSourceUs = Long.MIN_VALUE, timestampZeroUs = 0;
+        private double scheduleNs = 0;
+
+        Producer(SimulatedEventSource src) {
+            super("SimulatedAEMonitor.Producer");
+            setDaemon(true);
+            this.src = src;
+            int transferEvents = Math.max(1, fifoSize / EVENT_SIZE_BYTES);
+            addresses = new int[transferEvents];
+            timestamps = new int[transferEvents];
+            dueNs = new long[transferEvents];
+        }
+
+        @Override
+        public void run() {
+            startNs = System.nanoTime();
+            boolean rewound = false;
+            try {
+                while (running) {
+                    int n = src.read(addresses, timestamps, 0, addresses.length);
+                    if (n < 0) {
+                        if (!loop || rewound) { // rewound but still nothing to read, i.e. an empty source
+                            log.info("end of " + name + ", stopping playback");
+                            break;
+                        }
+                        src.rewind();
+                        rewound = true;
+                        continue;
+                    }
+                    if (n == 0) {
+                        LockSupport.parkNanos(1000000);
+                        continue;
+                    }
+                    rewound = false;
+                    schedule(n);
+                    // send the events in transfers that span at most FLUSH_INTERVAL_US
+                    int i = 0;
+                    while (i < n && running) {
+                        int j = i + 1;
+                        long flushNs = dueNs[i] + (FLUSH_INTERVAL_US * 1000L);
+                        while (j < n && dueNs[j] <= flushNs) {
+                            j++;
+                        }
+                        waitUntil(dueNs[j - 1]);
+                        deliver(addresses, timestamps, i, j - i);
+                        i = j;
+                    }
+                }
+            } catch (IOException e) {
+                log.warning("stopping playback of " + name + ": " + e.toString());
+            }
+            // acquisition stays enabled after the end of the source, like a device that has nothing to send
+        }
+
+        /**
+         * Converts the source timestamps to device timestamps in place and
+         * computes the time relative to start at which each event is due.
+         */
+        private void schedule(int n) {
+            for (int i = 0; i < n; i++) {
+                long s = timestamps[i] + sourceOffsetUs;
+                if (lastSourceUs != Long.MIN_VALUE && s < lastSourceUs) {
+                    sourceOffsetUs += lastSourceUs - s; // looped or wrapped, continue from the last timestamp
+                    s = lastSourceUs;
+                }
+                if (firstSourceUs == Long.MIN_VALUE) {
+                    firstSourceUs = s;
+                }
+                lastSourceUs = s;
+                long deviceUs;
+                switch (mode) {
+                    case FIXED_RATE:
+                        deviceUs = (long) (scheduleNs / 1000);
+                        dueNs[i] = (long) scheduleNs;
+                        boolean burst = burstDurationNs > 0 && ((long) scheduleNs % burstPeriodNs) < burstDurationNs;
+                        scheduleNs += burst ? burstIntervalNs : eventIntervalNs;
+                        break;
+                    case MAX_RATE:
+                        deviceUs = s - firstSourceUs;
+                        dueNs[i] = Long.MIN_VALUE;
+                        break;
+                    default:
+                        deviceUs = s - firstSourceUs;
+                        dueNs[i] = (long) (deviceUs * nsPerUs);
+                }
+                if (timestampResetPending) {
+                    timestampResetPending = false;
+                    timestampZeroUs = deviceUs;
+                }
+                timestamps[i] = (int) (deviceUs - timestampZeroUs);
+            }
+        }
+
+        private void waitUntil(long due) {
+            if (due == Long.MIN_VALUE) {
+                return;
+            }
+            long wait;
+            while (running && (wait = (startNs + due) - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            long lagUs = (System.nanoTime() - (startNs + due)) / 1000;
+            if (lagUs > maxLagUs) {
+                maxLagUs = lagUs;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package net.sf.jaer.hardwareinterface.sim;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+import net.sf.jaer.hardwareinterface.HardwareInterface;
+import net.sf.jaer.hardwareinterface.HardwareInterfaceFactoryInterface;
+
+/**
+ * Lists a {@link SimulatedAEMonitor} for each recording named in the system
+ * property {@link #FILES_PROPERTY}, separated by the path separator, e.g.
+ * <pre>
+ * java -Djaer.simulatedDevices=/data/walk.aedat:/data/flicker.aedat ...
+ * </pre>
+ * Without the property no simulated devices are listed.
+ */
+public class SimulatedAEMonitorFactory implements HardwareInterfaceFactoryInterface {
+
+    private static final Logger log = Logger.getLogger("SimulatedAEMonitorFactory");
+    /** System property with the recordings to play back */
+    public static final String FILES_PROPERTY = "jaer.simulatedDevices";
+
+    private static SimulatedAEMonitorFactory instance = new SimulatedAEMonitorFactory();
+    private final ArrayList<File> files = new ArrayList<File>();
+
+    private SimulatedAEMonitorFactory() {
+    }
+
+    /** @return singleton instance */
+    public static HardwareInterfaceFactoryInterface instance() {
+        return instance;
+    }
+
+    private void buildFileList() {
+        files.clear();
+        String s = System.getProperty(FILES_PROPERTY);
+        if (s == null) {
+            return;
+        }
+        for (String path : s.split(File.pathSeparator)) {
+            if (path.trim().isEmpty()) {
+                continue;
+            }
+            File f = new File(path.trim());
+            if (f.canRead()) {
+                files.add(f);
+            } else {
+                log.warning("cannot read " + f + " given in " + FILES_PROPERTY);
+            }
+        }
+    }
+
+    @Override
+    synchronized public int getNumInterfacesAvailable() {
+        buildFileList();
+        return files.size();
+    }
+
+    @Override
+    synchronized public HardwareInterface getFirstAvailableInterface() {
+        return getInterface(0);
+    }
+
+    @Override
+    synchronized public HardwareInterface getInterface(int n) {
+        if (n >= files.size()) {
+            buildFileList();
+        }
+        if (n >= files.size()) {
+            return null;
+        }
+        return new SimulatedAEMonitor(files.get(n));
+    }
+
+    @Override
+    public String getGUID() {
+        return null;
+    }
+}
@@ -0,0 +1,35 @@
+package net.sf.jaer.hardwareinterface.sim;
+
+import java.io.IOException;
+
+/**
+ * A source of raw address-events for a {@link SimulatedAEMonitor}, e.g. a
+ * recorded data file or a synthetic generator. Sources are read from the
+ * producer thread of the monitor only, so they need not be thread safe.
+ */
+public interface SimulatedEventSource {
+
+    /**
+     * Reads the next events. Timestamps should be in us and nondecreasing;
+     * the monitor shifts later events forward if a timestamp goes backwards,
+     * e.g. when a recording wraps.
+     *
+     * @param addresses the raw addresses are written here
+     * @param timestamps the timestamps are written here
+     * @param offset the index of the first event to write
+     * @param max the maximum number of events to read
+     * @return the number of events read, or -1 at the end of the source
+     * @throws IOException if the source cannot be read
+     */
+    public int read(int[] addresses, int[] timestamps, int offset, int max) throws IOException;
+
+    /**
+     * Starts the source again from its beginning.
+     *
+     * @throws IOException if the source cannot be rewound
+     */
+    public void rewind() throws IOException;
+
+    /** Frees the resources of the source. Never throws an exception. */
+    public void close();
+}
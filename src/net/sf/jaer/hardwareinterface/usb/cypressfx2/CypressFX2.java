@@ -1750,22 +1750,16 @@ public class CypressFX2 implements UsbIoErrorCodes, PnPNotifyInterface, AEMonito
 
             // initialize packets
             if (realTimeRawPacket == null) {
-                realTimeRawPacket = new AEPacketRaw(nevents);  // TODO: expensive
-            } else {
-                realTimeRawPacket.ensureCapacity(nevents);//                // copy data to real time raw packet
-//                if(addresses==null || timestamps==null){
-//                    log.warning("realTimeFilter: addresses or timestamp array became null");
-//                }else{
+                realTimeRawPacket = new AEPacketRaw(); // reused; its arrays grow to the largest capture
             }
+            realTimeRawPacket.clear(); // copy data to real time raw packet
             try {
-                System.arraycopy(addresses, realTimeEventCounterStart, realTimeRawPacket.getAddresses(), 0, nevents);
-                System.arraycopy(timestamps, realTimeEventCounterStart, realTimeRawPacket.getTimestamps(), 0, nevents);
+                realTimeRawPacket.appendRange(addresses, timestamps, realTimeEventCounterStart, nevents);
             } catch (IndexOutOfBoundsException e) {
                 e.printStackTrace();
             }
             realTimeEventCounterStart = eventCounter;
             //   System.out.println("RealTimeEventCounterStart: " + realTimeEventCounterStart + " nevents " + nevents + " eventCounter " + eventCounter);
-            realTimeRawPacket.setNumEvents(nevents);
             // init extracted packet
             // if(realTimePacket==null)
             //   realTimePacket=new EventPacket(chip.getEventClass());
@@ -1135,19 +1135,11 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 
 			// initialize packets
 			if (realTimeRawPacket == null) {
-				realTimeRawPacket = new AEPacketRaw(nevents); // TODO: expensive
-			}
-			else {
-				realTimeRawPacket.ensureCapacity(nevents);// // copy data to
-				// real time raw
-				// packet
-				// if(addresses==null || timestamps==null){
-				// log.warning("realTimeFilter: addresses or timestamp array became null");
-				// }else{
+				realTimeRawPacket = new AEPacketRaw(); // reused; its arrays grow to the largest capture
 			}
+			realTimeRawPacket.clear(); // copy data to real time raw packet
 			try {
-				System.arraycopy(addresses, realTimeEventCounterStart, realTimeRawPacket.getAddresses(), 0, nevents);
-				System.arraycopy(timestamps, realTimeEventCounterStart, realTimeRawPacket.getTimestamps(), 0, nevents);
+				realTimeRawPacket.appendRange(addresses, timestamps, realTimeEventCounterStart, nevents);
 			}
 			catch (final IndexOutOfBoundsException e) {
 				e.printStackTrace();
@@ -1156,7 +1148,6 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
 			// System.out.println("RealTimeEventCounterStart: " +
 			// realTimeEventCounterStart + " nevents " + nevents +
 			// " eventCounter " + eventCounter);
-			realTimeRawPacket.setNumEvents(nevents);
 			// init extracted packet
 			// if(realTimePacket==null)
 			// realTimePacket=new EventPacket(chip.getEventClass());
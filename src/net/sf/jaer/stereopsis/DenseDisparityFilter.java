@@ -0,0 +1,350 @@
+package net.sf.jaer.stereopsis;
+
+import java.util.Observable;
+import java.util.Observer;
+
+import net.sf.jaer.Description;
+import net.sf.jaer.DevelopmentStatus;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.event.BinocularEvent;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.event.OutputEventIterator;
+import net.sf.jaer.event.PolarityEvent;
+import net.sf.jaer.event.orientation.BinocularDisparityEvent;
+import net.sf.jaer.event.orientation.BinocularOrientationEvent;
+import net.sf.jaer.eventprocessing.EventFilter2D;
+import net.sf.jaer.eventprocessing.FilterChain;
+import net.sf.jaer.eventprocessing.filter.EpipolarRectification;
+import net.sf.jaer.eventprocessing.label.SimpleOrientationFilter;
+
+/**
+ * Computes a disparity for every binocular event using the
+ * {@link StereoMatcher} engine. Unlike {@link DisparityFilter}, which smooths
+ * disparities over a sparse neighborhood, each event is matched directly
+ * against the recent events on its epipolar row(s) in the other eye, which
+ * makes dense event-based disparity feasible for high resolution stereo rigs.
+ * <p>
+ * If the enclosed SimpleOrientationFilter is enabled, events only match events
+ * of the same polarity and orientation, otherwise only polarity must agree.
+ * <p>
+ * If useEpipolarRectification is set, the rectification tables of the
+ * EpipolarRectification filters in the filter chain are used to rectify event
+ * coordinates inside the matcher. Those filters should then be disabled, since
+ * otherwise the events arrive already rectified.
+ */
+@Description("Dense event-driven stereo disparity by matching along epipolar rows")
+@DevelopmentStatus(DevelopmentStatus.Status.Experimental)
+public class DenseDisparityFilter extends EventFilter2D implements Observer {
+
+    private int maxDisp = getInt("maxDisp", 40);
+    private int rowTolerance = getInt("rowTolerance", 1);
+    private int maxDtUs = getInt("maxDtUs", 20000);
+    private float distFactor = getFloat("distFactor", 0.01f);
+    private float minScore = getFloat("minScore", 0.5f);
+    private int numBands = getInt("numBands", 1);
+    private boolean passUnmatchedEvents = getBoolean("passUnmatchedEvents", false);
+    private boolean useEpipolarRectification = getBoolean("useEpipolarRectification", false);
+
+    private StereoMatcher matcher = new StereoMatcher();
+    private SimpleOrientationFilter oriFilter;
+
+    // reused packet field arrays for the matcher
+    private byte[] eyes = new byte[0], tags = new byte[0];
+    private short[] xs = new short[0], ys = new short[0];
+    private int[] timestamps = new int[0], disparities = new int[0];
+
+    public DenseDisparityFilter(AEChip chip) {
+        super(chip);
+        oriFilter = new SimpleOrientationFilter(chip);
+        setEnclosedFilter(oriFilter);
+        chip.addObserver(this);
+        final String match = "Matching", perf = "Performance";
+        setPropertyTooltip(match, "maxDisp", "maximum disparity searched in pixels");
+        setPropertyTooltip(match, "rowTolerance", "number of rows above and below the epipolar row that are also searched");
+        setPropertyTooltip(match, "maxDtUs", "events in the other eye older than this in us are not matched");
+        setPropertyTooltip(match, "distFactor", "the larger this value, the more a time difference reduces matching");
+        setPropertyTooltip(match, "minScore", "the best disparity must score more than this to be a match; a simultaneous event scores 1");
+        setPropertyTooltip(match, "passUnmatchedEvents", "pass events that could not be matched with disparity 0");
+        setPropertyTooltip(match, "useEpipolarRectification", "rectify event coordinates with the tables of the EpipolarRectification filters in the filter chain");
+        setPropertyTooltip(perf, "numBands", "number of row bands matched in parallel for large packets, 1 to match on the event thread. Row tolerance is clipped at band borders.");
+        configureMatcher();
+    }
+
+    private void configureMatcher() {
+        matcher.setMaxDisp(maxDisp);
+        matcher.setRowTolerance(rowTolerance);
+        matcher.setMaxDtUs(maxDtUs);
+        matcher.setDistFactor(distFactor);
+        matcher.setMinScore(minScore);
+        matcher.setNumBands(numBands);
+    }
+
+    @Override
+    synchronized public EventPacket<?> filterPacket(EventPacket<?> in) {
+        if (enclosedFilter != null && enclosedFilter.isFilterEnabled()) {
+            in = enclosedFilter.filterPacket(in);
+        }
+        if (!(in.getEventPrototype() instanceof BinocularEvent)) {
+            return in;
+        }
+        if (in.isEmpty()) {
+            return in;
+        }
+        checkOutputPacketEventType(BinocularDisparityEvent.class);
+        int n = in.getSize();
+        if (eyes.length < n) {
+            eyes = new byte[n];
+            tags = new byte[n];
+            xs = new short[n];
+            ys = new short[n];
+            timestamps = new int[n];
+            disparities = new int[n];
+        }
+        int i = 0;
+        for (Object o : in) {
+            BinocularEvent e = (BinocularEvent) o;
+            if (e.isSpecial() || e.isFilteredOut()) {
+                continue;
+            }
+            int ori = -1;
+            if (e instanceof BinocularOrientationEvent) {
+                BinocularOrientationEvent oe = (BinocularOrientationEvent) e;
+                if (!oe.hasOrientation) {
+                    continue;
+                }
+                ori = oe.orientation;
+            }
+            eyes[i] = (byte) (e.eye == BinocularEvent.Eye.LEFT ? StereoMatcher.LEFT : StereoMatcher.RIGHT);
+            xs[i] = e.x;
+            ys[i] = e.y;
+            timestamps[i] = e.timestamp;
+            tags[i] = StereoMatcher.tag(e.polarity == PolarityEvent.Polarity.On, ori);
+            i++;
+        }
+        matcher.matchPacket(i, eyes, xs, ys, timestamps, tags, disparities);
+
+        OutputEventIterator outItr = out.outputIterator();
+        int k = 0;
+        for (Object o : in) {
+            BinocularEvent e = (BinocularEvent) o;
+            if (e.isSpecial() || e.isFilteredOut()) {
+                continue;
+            }
+            if (e instanceof BinocularOrientationEvent && !((BinocularOrientationEvent) e).hasOrientation) {
+                continue;
+            }
+            int d = disparities[k++];
+            if (d == StereoMatcher.NO_MATCH && !passUnmatchedEvents) {
+                continue;
+            }
+            BinocularDisparityEvent oe = (BinocularDisparityEvent) outItr.nextOutput();
+            oe.copyFrom(e);
+            oe.disparity = d == StereoMatcher.NO_MATCH ? 0 : (byte) Math.min(d, Byte.MAX_VALUE);
+        }
+        return out;
+    }
+
+    /**
+     * Loads the rectification tables of the EpipolarRectification filters in
+     * the chip's filter chain into the matcher.
+     */
+    private void loadRectification() {
+        matcher.setRectification(StereoMatcher.LEFT, null);
+        matcher.setRectification(StereoMatcher.RIGHT, null);
+        if (!useEpipolarRectification) {
+            return;
+        }
+        FilterChain chain = chip.getFilterChain();
+        if (chain == null) {
+            return;
+        }
+        for (EventFilter2D f : chain) {
+            if (!(f instanceof EpipolarRectification)) {
+                continue;
+            }
+            EpipolarRectification r = (EpipolarRectification) f;
+            if (r.isFilterEnabled()) {
+                log.warning(r + " is enabled, events would be rectified twice; disable it to let " + getClass().getSimpleName() + " rectify coordinates");
+            }
+            int eye = r.isLeft() ? StereoMatcher.LEFT : StereoMatcher.RIGHT;
+            matcher.setRectification(eye, r.getLookupTable(chip.getSizeX(), chip.getSizeY()));
+            log.info("using epipolar rectification of " + r + " for " + (eye == StereoMatcher.LEFT ? "left" : "right") + " eye");
+        }
+    }
+
+    @Override
+    synchronized public void resetFilter() {
+        matcher.reset();
+    }
+
+    @Override
+    synchronized public void initFilter() {
+        matcher.allocate(chip.getSizeX(), chip.getSizeY());
+        loadRectification();
+    }
+
+    @Override
+    public synchronized void setFilterEnabled(boolean yes) {
+        super.setFilterEnabled(yes);
+        if (yes) {
+            initFilter();
+        } else {
+            matcher.shutdown();
+        }
+    }
+
+    @Override
+    public void update(Observable o, Object arg) {
+        if (arg == AEChip.EVENT_SIZEX || arg == AEChip.EVENT_SIZEY) {
+            initFilter();
+        }
+    }
+
+    /**
+     * @return the maxDisp
+     */
+    public int getMaxDisp() {
+        return maxDisp;
+    }
+
+    /**
+     * @param maxDisp the maximum disparity searched in pixels
+     */
+    synchronized public void setMaxDisp(int maxDisp) {
+        if (maxDisp < 1) {
+            maxDisp = 1;
+        } else if (maxDisp > Byte.MAX_VALUE) {
+            maxDisp = Byte.MAX_VALUE; // disparity output is a byte
+        }
+        int old = this.maxDisp;
+        this.maxDisp = maxDisp;
+        putInt("maxDisp", maxDisp);
+        matcher.setMaxDisp(maxDisp);
+        getSupport().firePropertyChange("maxDisp", old, maxDisp);
+    }
+
+    /**
+     * @return the rowTolerance
+     */
+    public int getRowTolerance() {
+        return rowTolerance;
+    }
+
+    /**
+     * @param rowTolerance the number of rows above and below the epipolar row
+     * that are also searched
+     */
+    synchronized public void setRowTolerance(int rowTolerance) {
+        if (rowTolerance < 0) {
+            rowTolerance = 0;
+        }
+        this.rowTolerance = rowTolerance;
+        putInt("rowTolerance", rowTolerance);
+        matcher.setRowTolerance(rowTolerance);
+    }
+
+    /**
+     * @return the maxDtUs
+     */
+    public int getMaxDtUs() {
+        return maxDtUs;
+    }
+
+    /**
+     * @param maxDtUs events in the other eye older than this are not matched
+     */
+    synchronized public void setMaxDtUs(int maxDtUs) {
+        this.maxDtUs = maxDtUs;
+        putInt("maxDtUs", maxDtUs);
+        matcher.setMaxDtUs(maxDtUs);
+    }
+
+    /**
+     * @return the distFactor
+     */
+    public float getDistFactor() {
+        return distFactor;
+    }
+
+    /**
+     * @param distFactor the scaling factor for the event correlation depending
+     * on time difference
+     */
+    synchronized public void setDistFactor(float distFactor) {
+        this.distFactor = distFactor;
+        putFloat("distFactor", distFactor);
+        matcher.setDistFactor(distFactor);
+    }
+
+    /**
+     * @return the minScore
+     */
+    public float getMinScore() {
+        return minScore;
+    }
+
+    /**
+     * @param minScore the best disparity must score more than this
+     */
+    synchronized public void setMinScore(float minScore) {
+        this.minScore = minScore;
+        putFloat("minScore", minScore);
+        matcher.setMinScore(minScore);
+    }
+
+    /**
+     * @return the numBands
+     */
+    public int getNumBands() {
+        return numBands;
+    }
+
+    /**
+     * @param numBands the number of row bands matched in parallel
+     */
+    synchronized public void setNumBands(int numBands) {
+        if (numBands < 1) {
+            numBands = 1;
+        } else if (numBands > Runtime.getRuntime().availableProcessors()) {
+            numBands = Runtime.getRuntime().availableProcessors();
+        }
+        this.numBands = numBands;
+        putInt("numBands", numBands);
+        matcher.setNumBands(numBands);
+    }
+
+    /**
+     * @return the passUnmatchedEvents
+     */
+    public boolean isPassUnmatchedEvents() {
+        return passUnmatchedEvents;
+    }
+
+    /**
+     * @param passUnmatchedEvents true to pass events that could not be matched
+     * with disparity 0
+     */
+    public void setPassUnmatchedEvents(boolean passUnmatchedEvents) {
+        this.passUnmatchedEvents = passUnmatchedEvents;
+        putBoolean("passUnmatchedEvents", passUnmatchedEvents);
+    }
+
+    /**
+     * @return the useEpipolarRectification
+     */
+    public boolean isUseEpipolarRectification() {
+        return useEpipolarRectification;
+    }
+
+    /**
+     * @param useEpipolarRectification true to rectify event coordinates with
+     * the tables of the EpipolarRectification filters in the filter chain
+     */
+    synchronized public void setUseEpipolarRectification(boolean useEpipolarRectification) {
+        this.useEpipolarRectification = useEpipolarRectification;
+        putBoolean("useEpipolarRectification", useEpipolarRectification);
+        if (isFilterEnabled()) {
+            loadRectification();
+        }
+    }
+}
@@ -22,6 +22,7 @@ import net.sf.jaer.aemonitor.AEListener;
 import net.sf.jaer.aemonitor.AEMonitorInterface;
 import net.sf.jaer.aemonitor.AEPacketRaw;
 import net.sf.jaer.aemonitor.EventRaw;
+import net.sf.jaer.aemonitor.TimestampMerger;
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.event.MultiCameraApsDvsEvent;
 import net.sf.jaer.event.MultiCameraEvent;
@@ -64,7 +65,9 @@ public class MultiCameraHardwareInterface implements AEMonitorInterface, ReaderB
     /** Initial capacity of output buffer that is reused for outputting merged event stream */
     private AEFifo[] aeFifos = new AEFifo[NUM_CAMERAS];    // this packet is re-used for outputting the merged events
     public final int INITIAL_CAPACITY = CypressFX3.AE_BUFFER_SIZE;
-    private AEPacketRaw aeOut = new AEPacketRaw(INITIAL_CAPACITY * NUM_CAMERAS);//    AEPacketRaw bufLeft=new AEPacketRaw(BUFFER_CAPACITY); // holds events that arrive after the last event from the other packet.
+    private AEPacketRaw aeOut = new AEPacketRaw(INITIAL_CAPACITY * NUM_CAMERAS);
+    /** Merges the FIFOs in timestamp order */
+    private final TimestampMerger merger = new TimestampMerger(NUM_CAMERAS);
     boolean openMultipleView=true;
     
     public void setChip(AEChip chip) {
@@ -283,28 +286,15 @@ public class MultiCameraHardwareInterface implements AEMonitorInterface, ReaderB
 
         } else {
             // here we order the events and only pass out an event from an interface if there is a later event from the other interface
-            // each time we pop event we also check if fifo is empty. If so, we break from this loop since there is the possibility that an earlier event
+            // the merge stops as soon as one fifo is empty, since there is the possibility that an earlier event
             // could come from this stream than from another one.
-            boolean eventsAvailable = isEventsFromAllAvailable();
-            while (eventsAvailable) {
-                // while both packets still have events, pick the earliest event and write it out
-                int tsMin = Integer.MAX_VALUE;
-                int ind = 0;
+            if (isEventsFromAllAvailable()) {
                 for (int i = 0; i < aeFifos.length; i++) {
-                    AEFifo f = aeFifos[i];
-                    int t = f.peekNextTimestamp();
-                    if (t < tsMin) {
-                        tsMin = t;
-                        ind = i;                        
-                    }
+                    merger.setSource(i, aeFifos[i].ae, aeFifos[i].next);
                 }
-                if (count==timestamps.length) {
-                    break;
-                }
-                addEvent(aeFifos[ind]);
-                if (aeFifos[ind].isEmpty()) {
-                    eventsAvailable = false;
-                    break;
+                count += merger.merge(timestamps, addresses, null, count, timestamps.length - count, Integer.MAX_VALUE, true);
+                for (int i = 0; i < aeFifos.length; i++) {
+                    aeFifos[i].next = merger.getPosition(i);
                 }
             }
         }
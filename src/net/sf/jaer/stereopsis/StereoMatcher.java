@@ -0,0 +1,422 @@
+package net.sf.jaer.stereopsis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Event-driven stereo matching engine for binocular event streams.
+ * <p>
+ * For each eye, the engine keeps a map of the most recent event time and a
+ * small tag (polarity and optionally orientation) for every pixel, stored as
+ * flat row-major arrays so that each row is a contiguous buffer of recent
+ * events indexed by x. An incoming event is matched only against the rows of
+ * the other eye that lie on its epipolar line (its own row, plus
+ * <code>rowTolerance</code> rows above and below). Along these rows the
+ * disparity range is scanned as one contiguous index range, accumulating a
+ * branch-free temporal correlation cost <code>1/(distFactor*dt+1)</code> for
+ * every candidate disparity whose pixel has a matching tag. The disparity
+ * with the largest score wins.
+ * <p>
+ * Event coordinates can optionally be passed through per-eye rectification
+ * tables, e.g. those of {@link net.sf.jaer.eventprocessing.filter.EpipolarRectification},
+ * so that the rows really are epipolar lines.
+ * <p>
+ * Disparity convention follows {@link DisparityFilter}: a LEFT eye event at x
+ * matches a RIGHT eye event at x+d, and a RIGHT eye event at x matches a LEFT
+ * eye event at x-d.
+ * <p>
+ * For large packets the events can be matched in parallel by horizontal row
+ * bands. Each band processes its own events in time order and only reads and
+ * writes its own rows, so results are deterministic, but the epipolar row
+ * tolerance is clipped at the band borders.
+ */
+public class StereoMatcher {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+
+    /**
+     * Returned for events that could not be matched
+     */
+    public static final int NO_MATCH = Integer.MIN_VALUE;
+    /**
+     * Eye index of left eye, matching BinocularEvent.Eye.LEFT
+     */
+    public static final int LEFT = 0;
+    /**
+     * Eye index of right eye, matching BinocularEvent.Eye.RIGHT
+     */
+    public static final int RIGHT = 1;
+
+    private int sizeX = 0, sizeY = 0;
+    private int maxDisp = 40;
+    private int rowTolerance = 0;
+    private int maxDtUs = 100000;
+    private float distFactor = 0.01f;
+    private float minScore = 0.1f;
+    private int numBands = 1;
+    /**
+     * Packets with fewer events than this are matched on the calling thread
+     */
+    private int minEventsForParallel = 4096;
+
+    /**
+     * Last event times, [eye][y][x] flattened
+     */
+    private int[] lastTime;
+    /**
+     * Last event tags, [eye][y][x] flattened; 0 means no event yet
+     */
+    private byte[] lastTag;
+    /**
+     * Optional rectification tables per eye, from y*sizeX+x to rectified
+     * y*sizeX+x, or -1 if the pixel has no rectified location
+     */
+    private final int[][] rectification = new int[2][];
+
+    private ExecutorService executor = null;
+    /**
+     * Per-band score accumulators, so bands can run concurrently
+     */
+    private float[][] bandScores = new float[1][];
+    private int[] bandOf = new int[0];
+
+    /**
+     * Allocates the maps for a sensor of this size and clears them.
+     *
+     * @param sizeX the sensor width in pixels
+     * @param sizeY the sensor height in pixels
+     */
+    public synchronized void allocate(int sizeX, int sizeY) {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        lastTime = new int[2 * sizeX * sizeY];
+        lastTag = new byte[2 * sizeX * sizeY];
+        rectification[LEFT] = null;
+        rectification[RIGHT] = null;
+        allocateScores();
+    }
+
+    private void allocateScores() {
+        bandScores = new float[numBands][maxDisp + 1];
+    }
+
+    /**
+     * Clears the event maps.
+     */
+    public synchronized void reset() {
+        if (lastTime == null) {
+            return;
+        }
+        Arrays.fill(lastTime, 0);
+        Arrays.fill(lastTag, (byte) 0);
+    }
+
+    /**
+     * Makes a tag for an event that must be equal for two events to match.
+     *
+     * @param on true for ON polarity
+     * @param orientation the orientation type 0-3, or -1 to match on polarity
+     * only
+     * @return a nonzero tag
+     */
+    public static byte tag(boolean on, int orientation) {
+        return (byte) ((on ? 1 : 2) | ((orientation + 1) << 2));
+    }
+
+    /**
+     * Matches a single event against the recent events of the other eye and
+     * stores it.
+     *
+     * @param eye LEFT or RIGHT
+     * @param x the event x address
+     * @param y the event y address
+     * @param timestamp the event timestamp in us
+     * @param tag from {@link #tag(boolean, int) }
+     * @return the disparity in pixels, or NO_MATCH
+     */
+    public synchronized int match(int eye, int x, int y, int timestamp, byte tag) {
+        return matchEvent(eye, x, y, timestamp, tag, 0, sizeY, bandScores[0]);
+    }
+
+    /**
+     * Matches a packet of events in time order. The arrays hold the event
+     * fields in packet order.
+     *
+     * @param n the number of events
+     * @param eyes LEFT or RIGHT for each event
+     * @param xs x addresses
+     * @param ys y addresses
+     * @param timestamps the event timestamps
+     * @param tags the event tags from {@link #tag(boolean, int) }
+     * @param disparities filled with the disparity of each event, or NO_MATCH
+     */
+    public synchronized void matchPacket(final int n, final byte[] eyes, final short[] xs, final short[] ys, final int[] timestamps, final byte[] tags, final int[] disparities) {
+        if (numBands <= 1 || n < minEventsForParallel) {
+            final float[] scores = bandScores[0];
+            for (int i = 0; i < n; i++) {
+                disparities[i] = matchEvent(eyes[i], xs[i], ys[i], timestamps[i], tags[i], 0, sizeY, scores);
+            }
+            return;
+        }
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(numBands, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "StereoMatcher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        // assign each event to the band holding its (rectified) row
+        if (bandOf.length < n) {
+            bandOf = new int[n];
+        }
+        final int rowsPerBand = (sizeY + numBands - 1) / numBands;
+        for (int i = 0; i < n; i++) {
+            int y = rectifiedY(eyes[i], xs[i], ys[i]);
+            bandOf[i] = y < 0 ? -1 : y / rowsPerBand;
+        }
+        ArrayList<Future<?>> futures = new ArrayList<Future<?>>(numBands);
+        for (int b = 0; b < numBands; b++) {
+            final int band = b;
+            final int y0 = b * rowsPerBand, y1 = Math.min(sizeY, y0 + rowsPerBand);
+            final float[] scores = bandScores[b];
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < n; i++) {
+                        if (bandOf[i] == band) {
+                            disparities[i] = matchEvent(eyes[i], xs[i], ys[i], timestamps[i], tags[i], y0, y1, scores);
+                        } else if (bandOf[i] < 0 && band == 0) {
+                            disparities[i] = NO_MATCH;
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                log.warning("stereo matching band failed: " + e.getCause());
+            }
+        }
+    }
+
+    private int rectifiedY(int eye, int x, int y) {
+        if (x < 0 || y < 0 || x >= sizeX || y >= sizeY) {
+            return -1;
+        }
+        final int[] table = rectification[eye];
+        if (table == null) {
+            return y;
+        }
+        int r = table[(y * sizeX) + x];
+        return r < 0 ? -1 : r / sizeX;
+    }
+
+    /**
+     * The per-event kernel. Rows outside [y0,y1) are neither read nor
+     * written.
+     */
+    private int matchEvent(int eye, int x, int y, int timestamp, byte tag, int y0, int y1, float[] scores) {
+        if (x < 0 || y < 0 || x >= sizeX || y >= sizeY) {
+            return NO_MATCH;
+        }
+        final int[] table = rectification[eye];
+        if (table != null) {
+            int r = table[(y * sizeX) + x];
+            if (r < 0) {
+                return NO_MATCH;
+            }
+            y = r / sizeX;
+            x = r - (y * sizeX);
+        }
+        if (y < y0 || y >= y1) {
+            return NO_MATCH;
+        }
+        final int other = 1 - eye;
+        final int[] times = lastTime;
+        final byte[] tags = lastTag;
+        final float df = distFactor;
+        final int maxDt = maxDtUs;
+        // the disparity range that stays inside the sensor
+        final int dMax = eye == LEFT ? Math.min(maxDisp, sizeX - 1 - x) : Math.min(maxDisp, x);
+        Arrays.fill(scores, 0, dMax + 1, 0f);
+        final int rowStart = Math.max(y0, y - rowTolerance), rowEnd = Math.min(y1 - 1, y + rowTolerance);
+        for (int row = rowStart; row <= rowEnd; row++) {
+            final int base = (((other * sizeY) + row) * sizeX) + x;
+            if (eye == LEFT) {
+                for (int d = 0; d <= dMax; d++) {
+                    final int i = base + d;
+                    final int dt = timestamp - times[i];
+                    scores[d] += (tags[i] == tag && dt >= 0 && dt <= maxDt) ? 1f / ((df * dt) + 1f) : 0f;
+                }
+            } else {
+                for (int d = 0; d <= dMax; d++) {
+                    final int i = base - d;
+                    final int dt = timestamp - times[i];
+                    scores[d] += (tags[i] == tag && dt >= 0 && dt <= maxDt) ? 1f / ((df * dt) + 1f) : 0f;
+                }
+            }
+        }
+        float best = minScore;
+        int bestDisp = NO_MATCH;
+        for (int d = 0; d <= dMax; d++) {
+            if (scores[d] > best) {
+                best = scores[d];
+                bestDisp = d;
+            }
+        }
+        final int self = (((eye * sizeY) + y) * sizeX) + x;
+        times[self] = timestamp;
+        tags[self] = tag;
+        return bestDisp;
+    }
+
+    /**
+     * Sets the rectification table for one eye.
+     *
+     * @param eye LEFT or RIGHT
+     * @param table maps y*sizeX+x to the rectified y*sizeX+x, or to -1 for
+     * pixels that have no rectified location; null to disable rectification
+     * for this eye
+     */
+    public synchronized void setRectification(int eye, int[] table) {
+        if (table != null && table.length != sizeX * sizeY) {
+            throw new IllegalArgumentException("rectification table has " + table.length + " entries but sensor has " + (sizeX * sizeY) + " pixels");
+        }
+        rectification[eye] = table;
+    }
+
+    /**
+     * Shuts down the worker threads used for parallel matching.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the maxDisp
+     */
+    public int getMaxDisp() {
+        return maxDisp;
+    }
+
+    /**
+     * @param maxDisp the maximum disparity searched in pixels
+     */
+    public synchronized void setMaxDisp(int maxDisp) {
+        this.maxDisp = maxDisp < 0 ? 0 : maxDisp;
+        allocateScores();
+    }
+
+    /**
+     * @return the rowTolerance
+     */
+    public int getRowTolerance() {
+        return rowTolerance;
+    }
+
+    /**
+     * @param rowTolerance the number of rows above and below the epipolar row
+     * that are also searched
+     */
+    public synchronized void setRowTolerance(int rowTolerance) {
+        this.rowTolerance = rowTolerance < 0 ? 0 : rowTolerance;
+    }
+
+    /**
+     * @return the maxDtUs
+     */
+    public int getMaxDtUs() {
+        return maxDtUs;
+    }
+
+    /**
+     * @param maxDtUs events older than this in the other eye are not matched
+     */
+    public synchronized void setMaxDtUs(int maxDtUs) {
+        this.maxDtUs = maxDtUs;
+    }
+
+    /**
+     * @return the distFactor
+     */
+    public float getDistFactor() {
+        return distFactor;
+    }
+
+    /**
+     * @param distFactor the larger, the more a time difference reduces the
+     * matching score
+     */
+    public synchronized void setDistFactor(float distFactor) {
+        this.distFactor = distFactor;
+    }
+
+    /**
+     * @return the minScore
+     */
+    public float getMinScore() {
+        return minScore;
+    }
+
+    /**
+     * @param minScore the best disparity must score more than this to be a
+     * match
+     */
+    public synchronized void setMinScore(float minScore) {
+        this.minScore = minScore;
+    }
+
+    /**
+     * @return the numBands
+     */
+    public int getNumBands() {
+        return numBands;
+    }
+
+    /**
+     * @param numBands the number of row bands matched in parallel, 1 to match
+     * on the calling thread
+     */
+    public synchronized void setNumBands(int numBands) {
+        if (numBands < 1) {
+            numBands = 1;
+        }
+        if (numBands != this.numBands) {
+            shutdown();
+        }
+        this.numBands = numBands;
+        allocateScores();
+    }
+
+    /**
+     * @return the minEventsForParallel
+     */
+    public int getMinEventsForParallel() {
+        return minEventsForParallel;
+    }
+
+    /**
+     * @param minEventsForParallel packets with fewer events are matched on the
+     * calling thread
+     */
+    public synchronized void setMinEventsForParallel(int minEventsForParallel) {
+        this.minEventsForParallel = minEventsForParallel;
+    }
+}
@@ -9,6 +9,7 @@ package net.sf.jaer.util;
 import java.io.File;
 
 import net.sf.jaer.eventio.AEDataFile;
+import net.sf.jaer.eventio.Hdf5EventFileOutputStream;
 import net.sf.jaer.eventio.ros.RosbagFileInputStream;
 
 /**
@@ -31,7 +32,8 @@ public class DATFileFilter extends javax.swing.filechooser.FileFilter {
         
         String extension = getExtension(f);
         if (extension != null) {
-            if (extension.equals(EXTENSION)  || extension.equals(OLDEXTENSION) || extension.endsWith(RosbagFileInputStream.DATA_FILE_EXTENSION)){
+            if (extension.equals(EXTENSION)  || extension.equals(OLDEXTENSION) || extension.endsWith(RosbagFileInputStream.DATA_FILE_EXTENSION)
+                    || extension.equals(Hdf5EventFileOutputStream.DATA_FILE_EXTENSION)){
                 return true;
             } else {
                 return false;
@@ -52,7 +54,7 @@ public class DATFileFilter extends javax.swing.filechooser.FileFilter {
     }
 
     public String getDescription() {
-        return "AER raw binary data file or ROS bag file";
+        return "AER raw binary data file, ROS bag file or HDF5 event file";
     }
     
     /** The extension, including the dot, ".aedat"
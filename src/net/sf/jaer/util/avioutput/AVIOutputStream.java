@@ -997,33 +997,12 @@ public class AVIOutputStream {
 			}
 			break;
 		}
-		case JPG: {
-			videoFrameChunk = new DataChunk("00dc");
-			ImageWriter iw = ImageIO.getImageWritersByMIMEType("image/jpeg")
-					.next();
-			ImageWriteParam iwParam = iw.getDefaultWriteParam();
-			iwParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-			iwParam.setCompressionQuality(quality);
-			MemoryCacheImageOutputStream imgOut = new MemoryCacheImageOutputStream(
-					videoFrameChunk.getOutputStream());
-			iw.setOutput(imgOut);
-			IIOImage img = new IIOImage(image, null, null);
-			iw.write(null, img, iwParam);
-			iw.dispose();
-			break;
-		}
+		case JPG:
 		case PNG:
 		default: {
 			videoFrameChunk = new DataChunk("00dc");
-			ImageWriter iw = ImageIO.getImageWritersByMIMEType("image/png")
-					.next();
-			ImageWriteParam iwParam = iw.getDefaultWriteParam();
-			MemoryCacheImageOutputStream imgOut = new MemoryCacheImageOutputStream(
+			encodeImage(image, videoFormat, quality,
 					videoFrameChunk.getOutputStream());
-			iw.setOutput(imgOut);
-			IIOImage img = new IIOImage(image, null, null);
-			iw.write(null, img, iwParam);
-			iw.dispose();
 			break;
 		}
 		}
@@ -1038,6 +1017,110 @@ public class AVIOutputStream {
 		}
 	}
 
+	/**
+	 * Returns true if frames of a format are encoded independently of each
+	 * other, so that they can be encoded with
+	 * {@link #encodeImage encodeImage} on any thread and written with
+	 * {@link #writeEncodedFrame writeEncodedFrame}. RAW and RLE frames depend
+	 * on the palette and previous frame and must be written with writeFrame.
+	 * 
+	 * @param format
+	 *            the video format
+	 * @return true for JPG and PNG
+	 */
+	public static boolean isIndependentlyEncoded(VideoFormat format) {
+		return format == VideoFormat.JPG || format == VideoFormat.PNG;
+	}
+
+	/**
+	 * Encodes an image in the JPG or PNG format the same way as
+	 * writeFrame(BufferedImage) does. This method does not touch any stream
+	 * state and can be called concurrently.
+	 * 
+	 * @param image
+	 *            The frame image.
+	 * @param format
+	 *            JPG or PNG
+	 * @param quality
+	 *            the JPG compression quality
+	 * @param out
+	 *            receives the encoded image
+	 * @throws IOException
+	 *             if encoding failed.
+	 */
+	public static void encodeImage(BufferedImage image, VideoFormat format,
+			float quality, OutputStream out) throws IOException {
+		ImageWriter iw = ImageIO.getImageWritersByMIMEType(
+				format == VideoFormat.JPG ? "image/jpeg" : "image/png").next();
+		ImageWriteParam iwParam = iw.getDefaultWriteParam();
+		if (format == VideoFormat.JPG) {
+			iwParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			iwParam.setCompressionQuality(quality);
+		}
+		MemoryCacheImageOutputStream imgOut = new MemoryCacheImageOutputStream(
+				out);
+		iw.setOutput(imgOut);
+		IIOImage img = new IIOImage(image, null, null);
+		iw.write(null, img, iwParam);
+		iw.dispose();
+		imgOut.flush();
+	}
+
+	/**
+	 * Writes a frame that was encoded with {@link #encodeImage encodeImage} to
+	 * the video track.
+	 * <p>
+	 * If the dimension of the video track has not been specified yet, it is
+	 * set to the dimension of this frame.
+	 * 
+	 * @param data
+	 *            the encoded image
+	 * @param length
+	 *            the number of bytes of data to write
+	 * @param width
+	 *            the width of the encoded image
+	 * @param height
+	 *            the height of the encoded image
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the dimension of the frame does not match the dimension
+	 *             of the video track.
+	 * @throws IOException
+	 *             if writing the image failed.
+	 */
+	public void writeEncodedFrame(byte[] data, int length, int width,
+			int height) throws IOException {
+		ensureOpen();
+		ensureStarted();
+		if (imgWidth == -1) {
+			imgWidth = width;
+			imgHeight = height;
+		} else if (imgWidth != width || imgHeight != height) {
+			throw new IllegalArgumentException("Dimensions of image["
+					+ videoFrames.size() + "] (width=" + width + ", height="
+					+ height + ") differs from image[0] (width=" + imgWidth
+					+ ", height=" + imgHeight);
+		}
+		long offset = getRelativeStreamPosition();
+		DataChunk videoFrameChunk = new DataChunk("00dc");
+		videoFrameChunk.getOutputStream().write(data, 0, length);
+		long chunkLength = getRelativeStreamPosition() - offset;
+		moviChunk.add(videoFrameChunk);
+		videoFrameChunk.finish();
+		videoFrames.add(new Sample(videoFrameChunk.chunkType, frameRate,
+				offset, chunkLength - 8, true));
+		if (getRelativeStreamPosition() > 1L << 32) {
+			throw new IOException("AVI file is larger than 4 GB");
+		}
+	}
+
+	/**
+	 * Returns the video format of this stream.
+	 */
+	public VideoFormat getVideoFormat() {
+		return videoFormat;
+	}
+
 	/**
 	 * Writes a frame from a file to the video track.
 	 * <p>
@@ -48,6 +48,7 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
 
     protected final int LOG_EVERY_THIS_MANY_FRAMES = 100; // for logging concole messages
     private AVIOutputStream aviOutputStream = null;
+    private AsyncAviFrameWriter asyncWriter = null;
     protected static String DEFAULT_FILENAME = "jAER.avi";
     protected String lastFileName = getString("lastFileName", DEFAULT_FILENAME);
     protected File lastFile = null;
@@ -68,6 +69,10 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
     private boolean saveFramesAsIndividualImageFiles = getBoolean("saveFramesAsIndividualImageFiles", false);
     private boolean writeOnlyWhenMousePressed = getBoolean("writeOnlyWhenMousePressed", false);
     protected volatile boolean writeEnabled = true;
+    private boolean encodeAsynchronously = getBoolean("encodeAsynchronously", true);
+    private int encoderThreads = getInt("encoderThreads", 2);
+    private ByteBuffer glBB = null; // reused by toImage
+    private BufferedImage glImage = null;
 
     public AbstractAviWriter(AEChip chip) {
         super(chip);
@@ -87,6 +92,8 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
         setPropertyTooltip("saveFramesAsIndividualImageFiles", "If selected, then the frames are saved as individual image files in the selected folder");
         setPropertyTooltip("writeOnlyWhenMousePressed", "If selected, then the frames are are saved only when the mouse is pressed in the AEViewer window");
         setPropertyTooltip("writeEnabled", "Selects if writing frames is enabled. Use this to temporarily disable output, or in conjunction with writeOnlyWhenMousePressed");
+        setPropertyTooltip("encodeAsynchronously", "Encodes and writes frames on background threads so that rendering only pays for copying the frame; takes effect when the next file is opened");
+        setPropertyTooltip("encoderThreads", "Number of background threads that encode PNG or JPG frames when encodeAsynchronously is selected; RAW and RLE frames use a single thread");
         chip.getSupport().addPropertyChangeListener(this);
 
     }
@@ -204,7 +211,11 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
     synchronized public void doCloseFile() {
         if (getAviOutputStream() != null) {
             try {
-                getAviOutputStream().close();
+                if (asyncWriter != null) {
+                    asyncWriter.close(); // writes pending frames and closes the stream
+                } else {
+                    getAviOutputStream().close();
+                }
                 setAviOutputStream(null);
                 if (timecodeWriter != null) {
                     timecodeWriter.close();
@@ -233,12 +244,14 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
      *
      */
     public AVIOutputStream openAVIOutputStream(File f, String[] additionalComments) {
+        closeAsyncWriter();
         try {
             aviOutputStream = new AVIOutputStream(f, format);
 //            aviOutputStream.setFrameRate(chip.getAeViewer().getFrameRate());
             aviOutputStream.setFrameRate(frameRate);
             aviOutputStream.setVideoCompressionQuality(compressionQuality);
 //            aviOutputStream.setVideoDimension(chip.getSizeX(), chip.getSizeY());
+            asyncWriter = encodeAsynchronously ? new AsyncAviFrameWriter(aviOutputStream, encoderThreads) : null;
             lastFile = f;
             lastFileName = f.toString();
             putString("lastFileName", lastFileName);
@@ -324,7 +337,25 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
     }
 
     /**
-     * Turns gl to BufferedImage with fixed format
+     * Writes a frame to the open AVI file, through the background encoder if
+     * encodeAsynchronously was selected when the file was opened. The image
+     * can be reused by the caller as soon as this method returns.
+     *
+     * @param bi the frame
+     * @throws IOException if writing this or, when encoding asynchronously, an
+     * earlier frame failed
+     */
+    protected void writeFrame(BufferedImage bi) throws IOException {
+        if (asyncWriter != null) {
+            asyncWriter.writeFrame(bi);
+        } else {
+            getAviOutputStream().writeFrame(bi);
+        }
+    }
+
+    /**
+     * Turns gl to BufferedImage with fixed format. The returned image is
+     * reused by the next call.
      *
      * @param gl
      * @param w
@@ -334,10 +365,16 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
     protected BufferedImage toImage(GL2 gl, int w, int h) {
 
         gl.glReadBuffer(GL.GL_FRONT); // or GL.GL_BACK
-        ByteBuffer glBB = Buffers.newDirectByteBuffer(4 * w * h);
+        if (glBB == null || glBB.capacity() != 4 * w * h) {
+            glBB = Buffers.newDirectByteBuffer(4 * w * h);
+        }
+        glBB.clear();
         gl.glReadPixels(0, 0, w, h, GL2.GL_BGRA, GL.GL_BYTE, glBB);
 
-        BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_BGR);
+        if (glImage == null || glImage.getWidth() != w || glImage.getHeight() != h) {
+            glImage = new BufferedImage(w, h, BufferedImage.TYPE_INT_BGR);
+        }
+        BufferedImage bi = glImage;
         int[] bd = ((DataBufferInt) bi.getRaster().getDataBuffer()).getData();
 
         for (int y = 0; y < h; y++) {
@@ -562,6 +599,58 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
      */
     public void setAviOutputStream(AVIOutputStream aviOutputStream) {
         this.aviOutputStream = aviOutputStream;
+        if (asyncWriter != null && asyncWriter.getAviOutputStream() != aviOutputStream) {
+            closeAsyncWriter(); // stream was replaced or closed; frames go directly to the new one
+        }
+    }
+
+    /**
+     * Closes the asynchronous writer, if any, which writes its pending frames,
+     * stops its threads and closes its stream.
+     */
+    private void closeAsyncWriter() {
+        if (asyncWriter == null) {
+            return;
+        }
+        try {
+            asyncWriter.close();
+        } catch (IOException ex) {
+            log.warning("closing AVI writer: " + ex.toString());
+        }
+        asyncWriter = null;
+    }
+
+    /**
+     * @return the encodeAsynchronously
+     */
+    public boolean isEncodeAsynchronously() {
+        return encodeAsynchronously;
+    }
+
+    /**
+     * @param encodeAsynchronously the encodeAsynchronously to set
+     */
+    public void setEncodeAsynchronously(boolean encodeAsynchronously) {
+        this.encodeAsynchronously = encodeAsynchronously;
+        putBoolean("encodeAsynchronously", encodeAsynchronously);
+    }
+
+    /**
+     * @return the encoderThreads
+     */
+    public int getEncoderThreads() {
+        return encoderThreads;
+    }
+
+    /**
+     * @param encoderThreads the encoderThreads to set
+     */
+    public void setEncoderThreads(int encoderThreads) {
+        if (encoderThreads < 1) {
+            encoderThreads = 1;
+        }
+        this.encoderThreads = encoderThreads;
+        putInt("encoderThreads", encoderThreads);
     }
 
 }
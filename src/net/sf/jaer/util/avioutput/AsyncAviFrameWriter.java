@@ -0,0 +1,272 @@
+package net.sf.jaer.util.avioutput;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Writes frames to an {@link AVIOutputStream} from background threads so that
+ * the rendering or event processing thread only pays for a copy of the image.
+ * <p>
+ * JPG and PNG frames are encoded concurrently by a pool of encoder threads and
+ * then written to the stream strictly in submission order. RAW and RLE frames
+ * depend on the previous frame and palette, so they are written in order by a
+ * single background thread. The number of frames in flight is bounded; when
+ * the encoders fall behind, {@link #writeFrame} blocks rather than letting
+ * frames pile up in memory. Image copies and encode buffers are recycled.
+ * <p>
+ * The first IOException thrown by encoding or writing stops all further
+ * writing and is rethrown by every later call to writeFrame, {@link #flush}
+ * and {@link #close}, so a failure cannot leave a silent gap in the file.
+ */
+public class AsyncAviFrameWriter {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+    private final AVIOutputStream out;
+    private final AVIOutputStream.VideoFormat format;
+    private final boolean independent;
+    private final ExecutorService encoders;
+    private final int maxFramesInFlight;
+    private final Semaphore slots;
+    private final ArrayDeque<BufferedImage> freeImages = new ArrayDeque<BufferedImage>();
+    private final ArrayDeque<FrameBuffer> freeBuffers = new ArrayDeque<FrameBuffer>();
+    private final HashMap<Long, Frame> finished = new HashMap<Long, Frame>(); // guarded by itself, as is writing to out
+    private long nextSubmitted = 0, nextWritten = 0;
+    private volatile IOException error = null;
+    private boolean closed = false;
+
+    /**
+     * Creates a writer.
+     *
+     * @param out the stream, which must not be written to except through this
+     * writer until it is closed
+     * @param numThreads the number of encoder threads for JPG and PNG; RAW and
+     * RLE always use one thread
+     */
+    public AsyncAviFrameWriter(AVIOutputStream out, int numThreads) {
+        this.out = out;
+        this.format = out.getVideoFormat();
+        independent = AVIOutputStream.isIndependentlyEncoded(format);
+        int n = independent ? Math.max(1, numThreads) : 1;
+        maxFramesInFlight = 2 * n;
+        slots = new Semaphore(maxFramesInFlight);
+        encoders = Executors.newFixedThreadPool(n, new ThreadFactory() {
+            int count = 0;
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "AsyncAviFrameWriter-" + (count++));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Copies an image and queues it for encoding and writing. Returns as soon
+     * as the copy is made, unless the maximum number of frames is in flight,
+     * in which case it waits for the oldest frame to be written first. The
+     * image can be reused by the caller as soon as this method returns.
+     *
+     * @param image the frame
+     * @throws IOException if writing an earlier frame failed or the writer is
+     * closed
+     */
+    synchronized public void writeFrame(BufferedImage image) throws IOException {
+        checkError();
+        if (closed) {
+            throw new IOException("writer is closed");
+        }
+        slots.acquireUninterruptibly();
+        final BufferedImage copy = copyOf(image);
+        final long seq = nextSubmitted++;
+        encoders.execute(new Runnable() {
+            @Override
+            public void run() {
+                encode(seq, copy);
+            }
+        });
+    }
+
+    /**
+     * Waits until all submitted frames have been written to the stream.
+     *
+     * @throws IOException if encoding or writing a frame failed
+     */
+    synchronized public void flush() throws IOException {
+        slots.acquireUninterruptibly(maxFramesInFlight);
+        slots.release(maxFramesInFlight);
+        checkError();
+    }
+
+    /**
+     * Writes all submitted frames, stops the encoder threads and closes the
+     * stream. The stream is closed even if a frame failed.
+     *
+     * @throws IOException if encoding or writing a frame or closing the stream
+     * failed
+     */
+    synchronized public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+        } finally {
+            encoders.shutdown();
+            try {
+                encoders.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                log.warning("interrupted waiting for encoder threads to finish");
+            }
+            synchronized (finished) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * @return the stream written to
+     */
+    public AVIOutputStream getAviOutputStream() {
+        return out;
+    }
+
+    private void checkError() throws IOException {
+        IOException e = error;
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private void encode(long seq, BufferedImage image) {
+        Frame frame = new Frame(image);
+        if (independent && error == null) {
+            FrameBuffer buf = takeBuffer();
+            try {
+                AVIOutputStream.encodeImage(image, format, out.getVideoCompressionQuality(), buf);
+                frame.data = buf;
+            } catch (IOException ex) {
+                error = ex;
+                recycle(buf);
+            } catch (RuntimeException ex) {
+                error = new IOException(ex);
+                recycle(buf);
+            }
+        }
+        synchronized (finished) {
+            finished.put(seq, frame);
+            Frame f;
+            while ((f = finished.remove(nextWritten)) != null) {
+                nextWritten++;
+                try {
+                    if (error != null) {
+                        // skip all frames after a failure; the error is rethrown until the writer is closed
+                    } else if (independent) {
+                        if (f.data != null) {
+                            out.writeEncodedFrame(f.data.getBuffer(), f.data.size(), f.image.getWidth(), f.image.getHeight());
+                        }
+                    } else {
+                        out.writeFrame(f.image);
+                    }
+                } catch (IOException ex) {
+                    error = ex;
+                } catch (RuntimeException ex) {
+                    error = new IOException(ex);
+                } finally {
+                    recycle(f.image);
+                    recycle(f.data);
+                    slots.release();
+                }
+            }
+        }
+    }
+
+    private BufferedImage copyOf(BufferedImage image) {
+        int type = image.getType();
+        if (type == BufferedImage.TYPE_CUSTOM || (image.getColorModel() instanceof IndexColorModel)) {
+            // keep the exact color model, e.g. the palette of RLE and RAW 8 bit images
+            return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+        }
+        BufferedImage copy = null;
+        synchronized (freeImages) {
+            while (copy == null && !freeImages.isEmpty()) {
+                BufferedImage c = freeImages.poll();
+                if (c.getType() == type && c.getWidth() == image.getWidth() && c.getHeight() == image.getHeight()) {
+                    copy = c;
+                }
+            }
+        }
+        if (copy == null) {
+            copy = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        }
+        image.copyData(copy.getRaster());
+        return copy;
+    }
+
+    private void recycle(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_CUSTOM || (image.getColorModel() instanceof IndexColorModel)) {
+            return;
+        }
+        synchronized (freeImages) {
+            freeImages.add(image);
+        }
+    }
+
+    private FrameBuffer takeBuffer() {
+        synchronized (freeBuffers) {
+            FrameBuffer b = freeBuffers.poll();
+            if (b != null) {
+                b.reset();
+                return b;
+            }
+        }
+        return new FrameBuffer();
+    }
+
+    private void recycle(FrameBuffer buf) {
+        if (buf == null) {
+            return;
+        }
+        synchronized (freeBuffers) {
+            freeBuffers.add(buf);
+        }
+    }
+
+    /**
+     * A copied frame and its encoded bytes
+     */
+    private static class Frame {
+
+        final BufferedImage image;
+        FrameBuffer data;
+
+        Frame(BufferedImage image) {
+            this.image = image;
+        }
+    }
+
+    /**
+     * Exposes the internal array so the encoded frame is not copied again
+     */
+    private static class FrameBuffer extends ByteArrayOutputStream {
+
+        FrameBuffer() {
+            super(1 << 16);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import static net.sf.jaer.graphics.AEViewer.DEFAULT_CHIP_CLASS;
 import static net.sf.jaer.graphics.AEViewer.prefs;
 
 import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
@@ -164,7 +165,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                     try {
                         writeTimecode(e.timestamp);
                         writeTargetLocation(e.timestamp, framesWritten);
-                        getAviOutputStream().writeFrame(bi);
+                        writeFrame(bi);
                         incrementFramecountAndMaybeCloseOutput();
                     } catch (IOException ex) {
                         doCloseFile();
@@ -442,7 +443,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
     }
 
     synchronized public void maybeShowOutput(DvsFramerSingleFrame dvsFramer) {
-        if (!showOutput) {
+        if (!showOutput || GraphicsEnvironment.isHeadless()) {
             return;
         }
         if (frame == null) {
@@ -526,7 +527,7 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                 try {
                     writeTimecode(endOfFrameTimestamp);
                     writeTargetLocation(endOfFrameTimestamp, framesWritten);
-                    getAviOutputStream().writeFrame(bi);
+                    writeFrame(bi);
                     incrementFramecountAndMaybeCloseOutput();
                 } catch (IOException ex) {
                     log.warning(ex.toString());
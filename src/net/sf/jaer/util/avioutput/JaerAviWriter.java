@@ -68,7 +68,7 @@ public class JaerAviWriter extends AbstractAviWriter {
             BufferedImage bi = toImage(gl, drawable.getNativeSurface().getSurfaceWidth(), drawable.getNativeSurface().getSurfaceHeight());
 
             try {
-                getAviOutputStream().writeFrame(bi);
+                writeFrame(bi);
                 if (isWriteTimecodeFile()) {
                     writeTimecode(chip.getAeViewer().getAePlayer().getTime());
                 }
@@ -0,0 +1,368 @@
+package net.sf.jaer.util.filter.ParticleFilter;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A particle filter over 2D positions whose particles are kept in primitive
+ * arrays, one array per field, rather than in one object per particle.
+ * <p>
+ * The likelihoods of the particles are evaluated in parallel on a
+ * ForkJoinPool when there are many particles, so the {@link Likelihood} must
+ * be safe to call from several threads. Resampling is systematic: a single
+ * random number places m evenly spaced pointers on the cumulative weights,
+ * which takes time in proportion to the number of particles, needs no
+ * sorting and has lower variance than drawing each particle independently.
+ * The resampled particles are written to a second set of arrays that is then
+ * swapped with the first, so a filter of constant size does not allocate.
+ * <p>
+ * The weight bookkeeping follows {@link ParticleFilter}, which is an adapter
+ * of this class for particle objects: after resampling each particle has
+ * weight 1 and its previous weight as lastWeight, and copyCount counts the
+ * copies of the same particle that come before it.
+ */
+public class ArrayParticleFilter {
+
+    /** The likelihood of a particle given the current measurement. */
+    public interface Likelihood {
+
+        /**
+         * @param i the index of the particle
+         * @param x the x position of the particle
+         * @param y the y position of the particle
+         * @return the likelihood, not negative
+         */
+        double evaluate(int i, double x, double y);
+    }
+
+    /** Evaluation is split into tasks of at most this many particles */
+    public static final int PARALLEL_GRAIN = 512;
+
+    private int n = 0, nextParticleCount = 0;
+    private double[] x = new double[0], y = new double[0], weight = new double[0], lastWeight = new double[0], weightRatio = new double[0];
+    private int[] copyCount = new int[0];
+    // the second set of arrays that resampling writes to, and the source particle of each resampled particle
+    private double[] x2 = new double[0], y2 = new double[0], lastWeight2 = new double[0];
+    private int[] copyCount2 = new int[0], source = new int[0];
+    private boolean useWeightRatio = false;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /** Creates an empty filter. */
+    public ArrayParticleFilter() {
+    }
+
+    /**
+     * Creates a filter with n particles at x,y.
+     *
+     * @param n the number of particles
+     * @param x the x position
+     * @param y the y position
+     */
+    public ArrayParticleFilter(int n, double x, double y) {
+        for (int i = 0; i < n; i++) {
+            addParticle(x, y);
+        }
+    }
+
+    private void ensureCapacity(int c) {
+        if (x.length < c) {
+            c = Math.max(c, 2 * x.length);
+            x = Arrays.copyOf(x, c);
+            y = Arrays.copyOf(y, c);
+            weight = Arrays.copyOf(weight, c);
+            lastWeight = Arrays.copyOf(lastWeight, c);
+            weightRatio = Arrays.copyOf(weightRatio, c);
+            copyCount = Arrays.copyOf(copyCount, c);
+            x2 = new double[c];
+            y2 = new double[c];
+            lastWeight2 = new double[c];
+            copyCount2 = new int[c];
+            source = new int[c];
+        }
+    }
+
+    /**
+     * Adds a particle with weight and lastWeight 1, and makes the particle
+     * count after the next resampling the number of particles.
+     *
+     * @param px the x position
+     * @param py the y position
+     * @return the index of the particle
+     */
+    public int addParticle(double px, double py) {
+        ensureCapacity(n + 1);
+        x[n] = px;
+        y[n] = py;
+        weight[n] = 1;
+        lastWeight[n] = 1;
+        weightRatio[n] = 1;
+        copyCount[n] = 0;
+        nextParticleCount = n + 1;
+        return n++;
+    }
+
+    /** @return the number of particles */
+    public int getParticleCount() {
+        return n;
+    }
+
+    /**
+     * Sets the number of particles that the next resampling draws.
+     *
+     * @param value the number of particles
+     */
+    public void setParticleCount(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("particle count " + value + " must not be negative");
+        }
+        nextParticleCount = value;
+    }
+
+    /**
+     * The arrays are replaced when particles are added or resampled, so get
+     * them again afterwards.
+     *
+     * @return the x positions of the particles; only the first
+     * getParticleCount() are valid
+     */
+    public double[] getX() {
+        return x;
+    }
+
+    /** @return the y positions, see {@link #getX()} */
+    public double[] getY() {
+        return y;
+    }
+
+    /** @return the weights, see {@link #getX()} */
+    public double[] getWeight() {
+        return weight;
+    }
+
+    /** @return the weights before the last evaluation, see {@link #getX()} */
+    public double[] getLastWeight() {
+        return lastWeight;
+    }
+
+    /** @return the number of copies of the same particle before each particle after the last resampling */
+    public int[] getCopyCount() {
+        return copyCount;
+    }
+
+    /**
+     * @return the pool on which large filters are evaluated
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @param pool the pool on which large filters are evaluated, or null to
+     * evaluate on the calling thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public boolean isUsingWeightRatio() {
+        return useWeightRatio;
+    }
+
+    /**
+     * @param b true to resample on the ratio of the weight to the weight
+     * before the last evaluation rather than on the weight
+     */
+    public void useWeightRatio(boolean b) {
+        useWeightRatio = b;
+    }
+
+    /**
+     * Sets the weight of each particle to its likelihood, and its weight ratio
+     * to the likelihood divided by its lastWeight.
+     *
+     * @param likelihood the likelihood, which must be thread safe when a pool
+     * is set
+     */
+    public void evaluate(Likelihood likelihood) {
+        if ((pool == null) || (n <= PARALLEL_GRAIN) || (pool.getParallelism() < 2)) {
+            evaluate(likelihood, 0, n);
+        } else {
+            pool.invoke(new EvaluateTask(likelihood, 0, n));
+        }
+    }
+
+    private void evaluate(Likelihood likelihood, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double w = likelihood.evaluate(i, x[i], y[i]);
+            weightRatio[i] = lastWeight[i] == 0 ? w : w / lastWeight[i];
+            weight[i] = w;
+        }
+    }
+
+    private final class EvaluateTask extends RecursiveAction {
+
+        private final Likelihood likelihood;
+        private final int from, to;
+
+        EvaluateTask(Likelihood likelihood, int from, int to) {
+            this.likelihood = likelihood;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if ((to - from) <= PARALLEL_GRAIN) {
+                evaluate(likelihood, from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new EvaluateTask(likelihood, from, mid), new EvaluateTask(likelihood, mid, to));
+            }
+        }
+    }
+
+    /**
+     * Divides the weights by their sum.
+     *
+     * @return the sum of the weights before normalizing
+     */
+    public double normalize() {
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += useWeightRatio ? weightRatio[i] : weight[i];
+        }
+        for (int i = 0; i < n; i++) {
+            weight[i] = weight[i] / sum;
+        }
+        return sum;
+    }
+
+    /**
+     * @return the effective number of particles, 1/sum(weight^2), for
+     * normalized weights
+     */
+    public double calculateNeff() {
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += weight[i] * weight[i];
+        }
+        return 1 / sum;
+    }
+
+    /** Accumulates the weights without resampling: weight and lastWeight become weight*lastWeight. */
+    public void updateWeight() {
+        for (int i = 0; i < n; i++) {
+            weight[i] = weight[i] * lastWeight[i];
+            lastWeight[i] = weight[i];
+        }
+    }
+
+    private double selectionWeight(int i) {
+        double w = useWeightRatio ? weightRatio[i] : weight[i];
+        return w > 0 ? w : 0; // also NaN
+    }
+
+    /**
+     * Draws the particle count set by {@link #setParticleCount} of particles
+     * from the current ones with probability in proportion to their weights,
+     * or weight ratios, by systematic resampling. If all weights are 0 the
+     * particles are drawn evenly.
+     *
+     * @param r the source of the random offset of the pointers
+     */
+    public void resample(Random r) {
+        int m = nextParticleCount;
+        if (n == 0) {
+            return;
+        }
+        ensureCapacity(m);
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += selectionWeight(i);
+        }
+        if (!(total > 0) || Double.isInfinite(total)) {
+            for (int k = 0; k < m; k++) {
+                source[k] = (int) (((long) k * n) / m);
+            }
+        } else {
+            double step = total / m, pointer = r.nextDouble() * step, cumulative = selectionWeight(0);
+            int i = 0;
+            for (int k = 0; k < m; k++, pointer += step) {
+                while ((cumulative < pointer) && (i < (n - 1))) {
+                    cumulative += selectionWeight(++i);
+                }
+                source[k] = i;
+            }
+        }
+        for (int k = 0; k < m; k++) {
+            int s = source[k];
+            x2[k] = x[s];
+            y2[k] = y[s];
+            lastWeight2[k] = weight[s];
+            copyCount2[k] = ((k > 0) && (source[k - 1] == s)) ? copyCount2[k - 1] + 1 : 0;
+        }
+        resampled(source, m);
+        double[] t = x;
+        x = x2;
+        x2 = t;
+        t = y;
+        y = y2;
+        y2 = t;
+        t = lastWeight;
+        lastWeight = lastWeight2;
+        lastWeight2 = t;
+        int[] c = copyCount;
+        copyCount = copyCount2;
+        copyCount2 = c;
+        Arrays.fill(weight, 0, m, 1);
+        Arrays.fill(weightRatio, 0, m, 1);
+        n = m;
+    }
+
+    /**
+     * Called by {@link #resample} before the new particles replace the old
+     * ones, so that subclasses can rearrange their own per particle data.
+     *
+     * @param source the index of the old particle that each new particle is
+     * a copy of; ascending
+     * @param m the number of new particles
+     */
+    protected void resampled(int[] source, int m) {
+    }
+
+    /**
+     * Adds Gaussian noise to the positions of the particles that are not the
+     * first copy of their particle.
+     *
+     * @param r the source of the noise
+     * @param spread the standard deviation of the noise
+     */
+    public void disperseDistribution(Random r, double spread) {
+        for (int i = 0; i < n; i++) {
+            if (copyCount[i] > 0) {
+                x[i] += spread * r.nextGaussian();
+                y[i] += spread * r.nextGaussian();
+            }
+        }
+    }
+
+    /** @return the mean x position of the particles */
+    public double getAverageX() {
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += x[i];
+        }
+        return sum / n;
+    }
+
+    /** @return the mean y position of the particles */
+    public double getAverageY() {
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += y[i];
+        }
+        return sum / n;
+    }
+}
@@ -6,7 +6,6 @@
 package net.sf.jaer.util.filter.ParticleFilter;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
@@ -75,25 +74,17 @@ public class MeasurmentEvaluator implements ParticleEvaluator<SimpleParticle, Do
 	}
 	
 	public static double gaussian(double x, double y, List<Float> muX, List<Float> muY, List<Double> measurementWeight, double sigma) {
-		List<Double> d2 = new ArrayList<Double>();
-
+                // called for every particle from several threads, so it sums directly without a list of the distances
                 double evaluateVal = 0;
                 int visibleCount = 0;
                 for(int i = 0; i < muX.size(); i ++) {
                     // if(visibleFlg[i]) {
-                        double d = (x - muX.get(i)) * (x - muX.get(i)) + (y - muY.get(i)) * (y - muY.get(i));
-                        d2.add(i, d*measurementWeight.get(i));                        
+                        double dx = x - muX.get(i), dy = y - muY.get(i);
+                        evaluateVal +=  (Math.exp(-((dx * dx) + (dy * dy)) * measurementWeight.get(i) / (2* sigma * sigma)));
                         visibleCount += 1;
                     // }
                 }
                 
-                Collections.sort(d2); // Sort the distance list from small to big, smaller means closer
-                // d2.set(0, d2.get(0) / 10); // Make the closest measurment has the biggest weight 
-                
-                for(int i = 0; i < muX.size(); i ++) {
-                    evaluateVal +=  (Math.exp(-d2.get(i) / (2* sigma * sigma)));    
-                }
-                
                 if(visibleCount != 0) {
                     return evaluateVal/visibleCount;                    
                 } else {
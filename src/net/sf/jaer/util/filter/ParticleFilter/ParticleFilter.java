@@ -6,271 +6,176 @@
 package net.sf.jaer.util.filter.ParticleFilter;
 
 /**
+ * A particle filter over particle objects, evaluated with a motion model and
+ * a measurement model given as ParticleEvaluators. The weights and the
+ * resampling are those of {@link ArrayParticleFilter}, which keeps them in
+ * primitive arrays; this class keeps the particle objects in the same order.
+ * Resampling reuses the object of the first copy of each particle and clones
+ * only the further copies.
+ * <p>
+ * The measurement evaluator is called in parallel for large filters, so it
+ * must be thread safe, or the pool must be set to null.
  *
  * @author minliu and hongjie
  */
 
-import java.awt.geom.Point2D;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Random;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.ForkJoinPool;
 
 public class ParticleFilter<T extends Particle> {
 	private ParticleEvaluator<T, Double> estimateEvaluator; 
-        private ParticleEvaluator<T, double[]> dynamicEvaluator;
-        private ParticleEvaluator<T, double[]> averageEvaluator;
-        
-	private ArrayList<ParticleWeight<T> > particles = new ArrayList<ParticleWeight<T> >();
+	private ParticleEvaluator<T, double[]> dynamicEvaluator;
+	private ParticleEvaluator<T, double[]> averageEvaluator;
 
+	private Object[] data = new Object[16], nextData = new Object[16]; // the particles, in the order of the filter
 
-	private double[] selectionSum = new double[0];
-	private int nextParticleCount=0;
-	private boolean useWeightRatio = false;
-	private boolean recalculateWeightAfterDrift = false;
-	private Comparator<ParticleWeight<T> > strengthComparator = new Comparator<ParticleWeight<T> >() {
-		public int compare(ParticleWeight<T> arg0, ParticleWeight<T> arg1) {
-			double s0 = getSelectionWeight(arg0);
-			double s1 = getSelectionWeight(arg1);
-			if( s0 < s1) return -1;
-			else if( s0 > s1) return +1;
-			else return 0;
+	private final ArrayParticleFilter filter = new ArrayParticleFilter() {
+		@Override
+		protected void resampled(int[] source, int m) {
+			if( nextData.length < m ) {
+				nextData = new Object[Math.max(m, 2 * nextData.length)];
+			}
+			for(int k = 0; k < m; k++) {
+				Particle p = (Particle) data[source[k]];
+				nextData[k] = ( k > 0 && source[k - 1] == source[k] ) ? p.clone() : p;
+			}
+			Object[] t = data;
+			data = nextData;
+			nextData = t;
+			Arrays.fill(nextData, null); // don't keep dropped particles alive
+		}
+	};
+
+	private final ArrayParticleFilter.Likelihood likelihood = new ArrayParticleFilter.Likelihood() {
+		public double evaluate(int i, double x, double y) {
+			return estimateEvaluator.evaluate(get(i));
 		}
 	};
-        
-        public ArrayList<ParticleWeight<T>> getParticles() {
-            return particles;
-        }
-    
+
+	private boolean recalculateWeightAfterDrift = false;
+
 	public ParticleFilter(ParticleEvaluator<T, double[]> dynamic, ParticleEvaluator<T, Double> measurement, ParticleEvaluator<T, double[]> average) {
 		this.estimateEvaluator = measurement;
-                this.dynamicEvaluator = dynamic;
-                this.averageEvaluator = average;
+		this.dynamicEvaluator = dynamic;
+		this.averageEvaluator = average;
+	}
+
+	/**
+	 * @return the array filter that holds the weights and the positions
+	 */
+	public ArrayParticleFilter getArrayFilter() {
+		return filter;
 	}
-        
+
 	public void addParticle(T p) {
-		this.particles.add(new ParticleWeight<T>(p));
-		nextParticleCount++;
+		int i = filter.addParticle(p.getX(), p.getY());
+		if( data.length <= i ) {
+			data = Arrays.copyOf(data, 2 * data.length);
+		}
+		data[i] = p;
 	}
 
 	public int getParticleCount() {
-		return particles.size();
+		return filter.getParticleCount();
 	}
 
+	@SuppressWarnings("unchecked")
 	public T get(int i) {
-		return particles.get(i).data;
+		return (T) data[i];
 	}
 
+	/**
+	 * Moves each particle with the motion model and then weighs it with the
+	 * measurement model.
+	 */
 	public synchronized void evaluateStrength() {
-                File file = new File("afterDynamic_debug");
-                BufferedWriter out = null;
-                try {
-                    out = new BufferedWriter(new FileWriter(file));
-                } catch (IOException ex) {
-                    Logger.getLogger(ParticleFilter.class.getName()).log(Level.SEVERE, null, ex);
-                }
-		for(ParticleWeight<T> p : this.particles) {
-                    double[] noisePoint = new double[2];
-                    noisePoint = dynamicEvaluator.evaluate(p.data);           // Generate the proposal distribution by the motion model.
-
-                    p.data.setX(noisePoint[0]);
-                    p.data.setY(noisePoint[1]);
-                    try {
-                        out.write(String.format("%.10f %.10f %.10f",p.data.getX(), p.data.getY(), p.weight) + "\n");
-                    } catch (IOException ex) {
-                        Logger.getLogger(ParticleFilter.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-                    double weight = estimateEvaluator.evaluate(p.data);   // Evaluate it with the measurement value.
-                    if( p.lastWeight == 0 ) {
-                            p.weightRatio = weight;
-                    } else {
-                            p.weightRatio = weight / p.lastWeight;
-                    }
-                    p.weight = weight;
+		double[] x = filter.getX(), y = filter.getY();
+		for(int i = 0; i < getParticleCount(); i++) {
+			T p = get(i);
+			double[] noisePoint = dynamicEvaluator.evaluate(p);           // Generate the proposal distribution by the motion model.
+			p.setX(noisePoint[0]);
+			p.setY(noisePoint[1]);
+			x[i] = noisePoint[0];
+			y[i] = noisePoint[1];
 		}
-                try {
-                    out.close();
-                } catch (IOException ex) {
-                    Logger.getLogger(ParticleFilter.class.getName()).log(Level.SEVERE, null, ex);
-                }
+		filter.evaluate(likelihood);   // Evaluate it with the measurement value.
 	}
-        
-        // If we don't need resample, then we should update the weight.
-        public void updateWeight() {
-            for(int i = 0; i < particles.size(); i++) {
-                ParticleWeight<T> p = particles.get(i);
-                p.weight = p.weight * p.lastWeight;
-                p.lastWeight = p.weight;
-            }
-        }
 
-	@SuppressWarnings("unchecked")
-	public void resample(Random r) {
-                this.prepareResampling();
- 
-                int[] selectionDistribution = new int[this.particles.size()];
-                ArrayList<ParticleWeight<T> > nextDistribution = new ArrayList<ParticleWeight<T> >();
-                File file = new File("afterResample_debug");
-                BufferedWriter out = null;
-                try {
-                    out = new BufferedWriter(new FileWriter(file));
-                } catch (IOException ex) {
-                    Logger.getLogger(ParticleFilter.class.getName()).log(Level.SEVERE, null, ex);
-                }
-
-                for(int i = 0; i < nextParticleCount; i++) {
-                        double sel = r.nextDouble();
-                        int index = Arrays.binarySearch(this.selectionSum, sel);
-                        if( index < 0 ) {
-                                index = -(index+1);
-                        }
+	// If we don't need resample, then we should update the weight.
+	public void updateWeight() {
+		filter.updateWeight();
+	}
 
-                        ParticleWeight<T> p = particles.get(index);
-                        ParticleWeight<T> particleWeight = new ParticleWeight<T>((T)p.data.clone(), p.weight, selectionDistribution[index]);
-                        if(selectionDistribution[index] >= 7) {
-                            if(p.weight > 0.5) {
-                                System.out.println("Weight is:");
-                                System.out.println(p.weight);
-                                System.out.println("Index is:");
-                                System.out.println(selectionDistribution[index]);                                
-                            }
-                        }                      
-                        try {
-                            out.write(String.format("%.10f %.10f %.10f",p.data.getX(), p.data.getY(), p.weight) + "\n");
-                        } catch (IOException ex) {
-                            Logger.getLogger(ParticleFilter.class.getName()).log(Level.SEVERE, null, ex);
-                        }
-                        nextDistribution.add(particleWeight);
-                        selectionDistribution[index]++;
-                    }
-                    try {
-                        out.close();
-                    } catch (IOException ex) {
-                        Logger.getLogger(ParticleFilter.class.getName()).log(Level.SEVERE, null, ex);
-                    }
-//		System.out.println();
-                this.particles = nextDistribution;     
-                // disperseDistribution(r, 1);
-                              
+	public void resample(Random r) {
+		filter.resample(r);
 	}
 
-	private double prepareResampling() {
-		Collections.sort(this.particles, strengthComparator);
-		this.selectionSum = new double[getParticleCount()];
-		double sum = 0;
-		for(int i = 0; i < particles.size(); i++) {
-			ParticleWeight<T> p = particles.get(i);
-			sum += getSelectionWeight(p);
-			this.selectionSum[i] = sum;
-		}
-		return sum;
+	public double calculateNeff() {
+		return filter.calculateNeff();
 	}
 
-        public double calculateNeff() {
-            double retVal = 0;
-            for(int i = 0; i < particles.size(); i++) {
-                ParticleWeight<T> p = particles.get(i);
-                double weight = p.weight;
-                retVal += weight * weight;
-            }
-            return 1/retVal;
-        }
-        
 	public void disperseDistribution(Random r, double spread) {
-		for(ParticleWeight<T> p : this.particles) {
+		int[] copyCount = filter.getCopyCount();
+		double[] x = filter.getX(), y = filter.getY(), lastWeight = filter.getLastWeight();
+		for(int i = 0; i < getParticleCount(); i++) {
 			// do not add error to one copy of the particle
-			if( p.copyCount > 0 ) {
-				p.data.addNoise(r, spread);
+			if( copyCount[i] > 0 ) {
+				T p = get(i);
+				p.addNoise(r, spread);
+				x[i] = p.getX();
+				y[i] = p.getY();
 				if( recalculateWeightAfterDrift ) {
 					// The weight ratio depends on small changes in strength after noise is added.
 					// The filter can be made more accurate by finding the exact strength of the new particle for the previous timestep.
-					p.lastWeight = this.estimateEvaluator.evaluate(p.data);
+					lastWeight[i] = this.estimateEvaluator.evaluate(p);
 				}
 			}
 		}
 	}
-	
+
 	public void setParticleCount(int value) {
-		this.nextParticleCount = value;
+		filter.setParticleCount(value);
 	}
 
-        public double normalize() {
-            double originSum = 0;
+	public double normalize() {
+		return filter.normalize();
+	}
 
-            for(int i = 0; i < nextParticleCount; i++) {
-                ParticleWeight<T> p = particles.get(i);
-                originSum += getSelectionWeight(p);
-            }
+	public boolean isUsingWeightRatio() { return filter.isUsingWeightRatio(); }
+	public void useWeightRatio(boolean b) { filter.useWeightRatio(b); }
 
-            for(int i = 0; i < nextParticleCount; i++) {
-                ParticleWeight<T> p = particles.get(i);
-                p.weight = p.weight/originSum;
-            }
-            return originSum;
-        }
-        
-	public boolean isUsingWeightRatio() { return useWeightRatio; }
-	public void useWeightRatio(boolean b) { useWeightRatio = b; }
-	
-	private double getSelectionWeight(ParticleWeight<T> p) {
-		if( useWeightRatio )	return p.weightRatio;
-		else return p.weight;
+	/**
+	 * @param pool the pool on which the measurement evaluator is called for
+	 * large filters, or null to call it on the calling thread
+	 */
+	public void setPool(ForkJoinPool pool) {
+		filter.setPool(pool);
 	}
-	
-	private class ParticleWeight<T extends Particle> implements Cloneable {
-		public ParticleWeight(T p) {
-			this(p, 1.0, 0);
+
+	public double getAverageX() {
+		double sumX = 0;
+		for(int i = 0; i < getParticleCount(); i++) {
+			sumX += averageEvaluator.evaluate(get(i))[0];
 		}
-		public ParticleWeight(T p, double lastWeight, int copyCount) {
-			this.data = p;
-			this.lastWeight = lastWeight;
-			this.weight = 1.0;
-			this.weightRatio = 1.0;
-			this.copyCount = copyCount;
+		return sumX/getParticleCount();
+	}
+
+	public double getAverageY() {
+		double sumY = 0;
+		for(int i = 0; i < getParticleCount(); i++) {
+			sumY += averageEvaluator.evaluate(get(i))[1];
 		}
-		T data;
-		double lastWeight;
-		double weight;
-		double weightRatio;
-		int copyCount;
+		return sumY/getParticleCount();            
 	}
 
-        public double getAverageX() {
-            double sumX = 0;
-            for(ParticleWeight<T> p : this.particles) {
-                    sumX += averageEvaluator.evaluate(p.data)[0];
-            }
-            return sumX/particles.size();
-        }
-        
-        public double getAverageY() {
-            double sumY = 0;
-            for(ParticleWeight<T> p : this.particles) {
-                    sumY += averageEvaluator.evaluate(p.data)[1];
-            }
-            return sumY/particles.size();            
-        }
-        
 	public void setEvaluator(ParticleEvaluator<T, double[]>dynamic, ParticleEvaluator<T, Double> measurement) {
 		this.estimateEvaluator = measurement;
-                this.dynamicEvaluator = dynamic;
-        }
+		this.dynamicEvaluator = dynamic;
+	}
 
 	public void setReevaluateAfterNoise(boolean b) {
 		this.recalculateWeightAfterDrift = b;
 	}
-	
-}
 
+}
@@ -73,6 +73,14 @@ public class SimpleHistogram extends AbstractHistogram {
     public void add(int value) {
         if (this.start <= value && this.end >= value) {
             int index = (value - this.start) / step;
+            if (this.window == 0) { // no spreading, the single gaussian weight is 1
+                if (index >= this.nBins) {
+                    index = this.nBins - 1;
+                }
+                this.histogram[index]++;
+                this.N++;
+                return;
+            }
 
             for (int i = -this.window; i <= this.window; i++) {
                 int key = index + i;
@@ -189,6 +197,11 @@ public class SimpleHistogram extends AbstractHistogram {
          * The rounded mean bin
          */
         public int meanBin = 0;
+        /**
+         * The bin holding the median of the counts, or nBins/2 if there are
+         * no counts in any bin
+         */
+        public int medianBin = 0;
         /**
          * The maximum bin with any value in it. Persistent. Use reset() to
          * reset to zero, which is needed when bogus value causes very high
@@ -215,10 +228,9 @@ public class SimpleHistogram extends AbstractHistogram {
          */
         private float highBoundary = .9f;
 
-        // TODO add median stats
         public String toString() {
-            return String.format("Exposure statistics: nBins=%d maxCount=%.0f maxBin=%d meanBin=%d maxNonZeroBin=%d fracLow (<%%%2.0f)=%.2f fracHigh(>%%%2.0f)=%.2f",
-                    nBins, maxCount, maxBin, meanBin, maxNonZeroBin, lowBoundary * 100, fracLow, highBoundary * 100, fracHigh);
+            return String.format("Exposure statistics: nBins=%d maxCount=%.0f maxBin=%d meanBin=%d medianBin=%d maxNonZeroBin=%d fracLow (<%%%2.0f)=%.2f fracHigh(>%%%2.0f)=%.2f",
+                    nBins, maxCount, maxBin, meanBin, medianBin, maxNonZeroBin, lowBoundary * 100, fracLow, highBoundary * 100, fracHigh);
         }
 
         /**
@@ -252,8 +264,18 @@ public class SimpleHistogram extends AbstractHistogram {
             if (binSum <= 0) {
                 meanBin = nBins / 2;
                 maxBin = (int) meanBin;
+                medianBin = meanBin;
             } else {
                 meanBin = Math.round(weightedSum / binSum);
+                float half = binSum / 2, sum = 0;
+                medianBin = nBins - 1;
+                for (int i = 0; i < nBins; i++) {
+                    sum += histogram[i];
+                    if (sum >= half) {
+                        medianBin = i;
+                        break;
+                    }
+                }
             }
 
             int bin10 = Math.round(getLowBoundary() * maxNonZeroBin), bin90 = Math.round(getHighBoundary() * maxNonZeroBin);
@@ -66,7 +66,9 @@ public class DavisTextOutputWriter extends EventFilter2DMouseAdaptor implements
     private boolean imuSamples = getBoolean("imuSamples", false);
     protected final int LOG_EVERY_THIS_MANY_EVENTS = 1000; // for logging concole messages
     private ArrayList<PrintWriter> writers = new ArrayList();
-    private PrintWriter dvsWriter = null, imuWriter = null, apsWriter = null, timecodeWriter = null;
+    private PrintWriter imuWriter = null, apsWriter = null, timecodeWriter = null;
+    private DvsEventFileWriter dvsWriter = null;
+    private DvsEventFileWriter.Format dvsFormat = DvsEventFileWriter.Format.valueOf(getString("dvsFormat", DvsEventFileWriter.Format.TEXT.toString()));
     protected static String DEFAULT_FILENAME = "jAER.txt";
     protected String lastFileName = getString("lastFileName", DEFAULT_FILENAME);
     protected File lastFile = null;
@@ -97,6 +99,8 @@ public class DavisTextOutputWriter extends EventFilter2DMouseAdaptor implements
         setPropertyTooltip("dvsEvents", "write dvs events as one per line with format one per line timestamp(us) x y polarity(0=off,1=on)");
         setPropertyTooltip("imuSamples", "write IMU samples as one per line with format one measurement per line: timestamp(us) ax(g) ay(g) az(g) gx(d/s) gy(d/s) gz(d/s)");
         setPropertyTooltip("apsFrames", "write APS frames with format TBD");
+        setPropertyTooltip("dvsFormat", "<html>format of dvs events file:<ul><li>TEXT: one event per line as above<li>BINARY: packed little-endian records of int32 timestamp(us), uint16 x, uint16 y, uint8 polarity, no header"
+                + "<li>NPY: the same records as a numpy structured array, load with numpy.load()</ul>");
         setShowCrossHairCursor(false);
         additionalComments.add("jAER DAVIS/DVS camera text file output");
 
@@ -122,48 +126,49 @@ public class DavisTextOutputWriter extends EventFilter2DMouseAdaptor implements
             return in;
         }
         boolean davis = false;
-//        try {
-        Iterator itr = null;
-        if (in instanceof ApsDvsEventPacket) {
-            itr = ((ApsDvsEventPacket) in).fullIterator();
-            davis = true;
-        } else {
-            itr = in.inputIterator();
-            davis = false;
-        }
-        while (itr.hasNext()) { // skips events that have been filtered out
-            BasicEvent be = (BasicEvent) itr.next();
-            // we get all events, including IMU, DVS, and APS samples
-
-            if (!davis) { // pure DVS
-                PolarityEvent ae = (PolarityEvent) be;
-                if (dvsEvents && dvsWriter != null) {
-                    // One event per line (timestamp x y polarity) as in RPG events.txt
-                    dvsWriter.println(String.format("%d %d %d %d", ae.timestamp, ae.x, ae.y, ae.polarity == PolarityEvent.Polarity.Off ? 0 : 1));
-                    incrementCountAndMaybeCloseOutput(be);
-                }
-            } else { // davis type
-                ApsDvsEvent ae = (ApsDvsEvent) be;
-                if (dvsEvents && dvsWriter != null && ae.isDVSEvent()) {
-                    // One event per line (timestamp x y polarity) as in RPG events.txt
-                    dvsWriter.println(String.format("%d %d %d %d", ae.timestamp, ae.x, ae.y, ae.polarity == PolarityEvent.Polarity.Off ? 0 : 1));
-                    incrementCountAndMaybeCloseOutput(be);
-                    lastTimestampWritten = ae.timestamp;
-                } else if (imuSamples && imuWriter != null && ae.isImuSample()) {
-                    IMUSample i = ae.getImuSample();
-                    imuWriter.println(String.format("%d %f %f %f %f %f %f", ae.timestamp,
-                            i.getAccelX(), i.getAccelY(), i.getAccelZ(),
-                            i.getGyroTiltX(), i.getGyroYawY(), i.getGyroRollZ()));
-                    incrementCountAndMaybeCloseOutput(be);
-                }
+        try {
+            Iterator itr = null;
+            if (in instanceof ApsDvsEventPacket) {
+                itr = ((ApsDvsEventPacket) in).fullIterator();
+                davis = true;
+            } else {
+                itr = in.inputIterator();
+                davis = false;
             }
+            while (itr.hasNext()) { // skips events that have been filtered out
+                BasicEvent be = (BasicEvent) itr.next();
+                // we get all events, including IMU, DVS, and APS samples
+
+                if (!davis) { // pure DVS
+                    PolarityEvent ae = (PolarityEvent) be;
+                    if (dvsEvents && dvsWriter != null) {
+                        // One event per line (timestamp x y polarity) as in RPG events.txt
+                        dvsWriter.write(ae.timestamp, ae.x, ae.y, ae.polarity != PolarityEvent.Polarity.Off);
+                        incrementCountAndMaybeCloseOutput(be);
+                    }
+                } else { // davis type
+                    ApsDvsEvent ae = (ApsDvsEvent) be;
+                    if (dvsEvents && dvsWriter != null && ae.isDVSEvent()) {
+                        // One event per line (timestamp x y polarity) as in RPG events.txt
+                        dvsWriter.write(ae.timestamp, ae.x, ae.y, ae.polarity != PolarityEvent.Polarity.Off);
+                        incrementCountAndMaybeCloseOutput(be);
+                        lastTimestampWritten = ae.timestamp;
+                    } else if (imuSamples && imuWriter != null && ae.isImuSample()) {
+                        IMUSample i = ae.getImuSample();
+                        imuWriter.println(String.format("%d %f %f %f %f %f %f", ae.timestamp,
+                                i.getAccelX(), i.getAccelY(), i.getAccelZ(),
+                                i.getGyroTiltX(), i.getGyroYawY(), i.getGyroRollZ()));
+                        incrementCountAndMaybeCloseOutput(be);
+                    }
+                }
 
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(DavisTextOutputWriter.class.getName()).log(Level.SEVERE, null, ex);
+            showWarningDialogInSwingThread(ex.toString(), "Error writing");
+            doCloseFiles();
+            return in;
         }
-//        } catch (IOException ex) {
-//            Logger.getLogger(DavisTextOutputWriter.class.getName()).log(Level.SEVERE, null, ex);
-//            showWarningDialogInSwingThread(ex.toString(), "Error writing");
-//            doCloseFiles();
-//        }
         for (PrintWriter p : writers) {
             if (p.checkError()) {
                 log.warning("Eror occured writing to file, closing all files");
@@ -200,6 +205,30 @@ public class DavisTextOutputWriter extends EventFilter2DMouseAdaptor implements
         return writer;
     }
 
+    /**
+     * Opens the DVS event output file and writes the comment header, which is
+     * only kept in TEXT format.
+     *
+     * @param f the file
+     * @return the writer
+     * @throws IOException
+     */
+    public DvsEventFileWriter openDvsWriter(File f) throws IOException {
+        DvsEventFileWriter writer = new DvsEventFileWriter(f, dvsFormat);
+        lastFile = f;
+        setEventsWritten(0);
+        if (additionalComments != null) {
+            for (String s : additionalComments) {
+                writer.writeComment("# " + s);
+            }
+        }
+        writer.writeComment("# created " + new Date().toString());
+        writer.writeComment("# source-file: " + (chip.getAeInputStream() != null ? chip.getAeInputStream().getFile().toString() : "(live input)"));
+        writer.writeComment("# dvs-events: One event per line:  timestamp(us) x y polarity(0=off,1=on)");
+        log.info("Opened dvs event output file " + f.toString() + " with " + dvsFormat + " format");
+        return writer;
+    }
+
     /**
      * @return the dvsEvents
      */
@@ -215,6 +244,22 @@ public class DavisTextOutputWriter extends EventFilter2DMouseAdaptor implements
         putBoolean("dvsEvents", dvsEvents);
     }
 
+    /**
+     * @return the dvsFormat
+     */
+    public DvsEventFileWriter.Format getDvsFormat() {
+        return dvsFormat;
+    }
+
+    /**
+     * @param dvsFormat the dvsFormat to set; takes effect when the next file
+     * is opened
+     */
+    public void setDvsFormat(DvsEventFileWriter.Format dvsFormat) {
+        this.dvsFormat = dvsFormat;
+        putString("dvsFormat", dvsFormat.toString());
+    }
+
 //    /**
 //     * @return the apsFrames
 //     */
@@ -297,11 +342,9 @@ public class DavisTextOutputWriter extends EventFilter2DMouseAdaptor implements
 
         try {
             if (dvsEvents) {
-                String fn = basename + "-events.txt";
+                String fn = basename + "-events" + dvsFormat.getSuffix();
                 if (checkFileExists(fn)) {
-                    dvsWriter = openWriter(new File(fn));
-                    dvsWriter.println("# dvs-events: One event per line:  timestamp(us) x y polarity(0=off,1=on)");
-
+                    dvsWriter = openDvsWriter(new File(fn));
                 }
             }
             if (imuSamples) {
@@ -331,6 +374,11 @@ public class DavisTextOutputWriter extends EventFilter2DMouseAdaptor implements
             return;
         }
         try {
+            if (dvsWriter != null) {
+                DvsEventFileWriter w = dvsWriter;
+                dvsWriter = null;
+                w.close();
+            }
             for (PrintWriter f : getFileWriters()) {
                 f.close();
             }
@@ -338,13 +386,14 @@ public class DavisTextOutputWriter extends EventFilter2DMouseAdaptor implements
             dvsWriter = null;
             imuWriter = null;
             apsWriter = null;
-            log.info("total " + eventsWritten + " events were written to files " + lastFileName + "-XXX.txt");
+            log.info("total " + eventsWritten + " events were written to files " + lastFileName + "-XXX");
             showPlainMessageDialogInSwingThread("Closed files " + lastFileName + " after " + eventsWritten + " events were written", "Files closed");
             setEventsWritten(0);
         } catch (Exception ex) {
             log.warning(ex.toString());
             ex.printStackTrace();
             getFileWriters().clear();
+            dvsWriter = null;
         }
     }
 
@@ -417,7 +466,7 @@ public class DavisTextOutputWriter extends EventFilter2DMouseAdaptor implements
     }
 
     private boolean isFilesOpen() {
-        return !writers.isEmpty();
+        return !writers.isEmpty() || dvsWriter != null;
     }
 
     /**
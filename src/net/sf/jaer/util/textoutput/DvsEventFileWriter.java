@@ -0,0 +1,238 @@
+package net.sf.jaer.util.textoutput;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes DVS events to a file at high rate. Events are formatted directly into
+ * a large reusable buffer that is written to a FileChannel when full, so no
+ * String or formatter objects are created per event.
+ * <p>
+ * The formats are
+ * <ul>
+ * <li>TEXT: one event per line, "timestamp(us) x y polarity(0=off,1=on)", as
+ * in rpg.ifi.uzh.ch/davis_data.html. Comment lines start with #.
+ * <li>BINARY: headerless packed little-endian records of int32 timestamp(us),
+ * uint16 x, uint16 y, uint8 polarity; read in python with
+ * <code>numpy.fromfile(f, dtype=[('t','&lt;i4'),('x','&lt;u2'),('y','&lt;u2'),('p','u1')])</code>
+ * <li>NPY: the same records as a numpy structured array, read in python with
+ * <code>numpy.load(f)</code>. The array length is written in the header when
+ * the file is closed.
+ * </ul>
+ */
+public class DvsEventFileWriter {
+
+    /**
+     * Output file formats
+     */
+    public enum Format {
+        TEXT(".txt"), BINARY(".bin"), NPY(".npy");
+        private final String suffix;
+
+        Format(String suffix) {
+            this.suffix = suffix;
+        }
+
+        /**
+         * @return the file name suffix, including the dot
+         */
+        public String getSuffix() {
+            return suffix;
+        }
+    }
+
+    /** Bytes per event in the BINARY and NPY formats */
+    public static final int RECORD_SIZE = 9;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_TEXT_EVENT_SIZE = 40; // "-2147483648 -32768 -32768 1\n" with margin
+    private static final int NPY_HEADER_SIZE = 192; // multiple of 64 as numpy recommends, with room for any event count
+    private static final byte[] NPY_MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0};
+
+    private final Format format;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] digits = new byte[11];
+    private long eventCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Opens a file for writing, replacing any existing file.
+     *
+     * @param f the file
+     * @param format the format
+     * @throws IOException if the file cannot be opened
+     */
+    public DvsEventFileWriter(File f, Format format) throws IOException {
+        this.format = format;
+        channel = new FileOutputStream(f).getChannel();
+        if (format == Format.NPY) {
+            writeNpyHeader(); // placeholder, rewritten with the event count on close
+        }
+    }
+
+    /**
+     * Writes a comment line. Comments are only written in TEXT format and are
+     * ignored otherwise.
+     *
+     * @param comment the comment, prefixed by "# " if it does not start with #
+     * @throws IOException
+     */
+    public void writeComment(String comment) throws IOException {
+        if (format != Format.TEXT) {
+            return;
+        }
+        if (!comment.startsWith("#")) {
+            comment = "# " + comment;
+        }
+        byte[] b = (comment + "\n").getBytes(StandardCharsets.UTF_8);
+        ensureSpace(b.length);
+        if (b.length > buffer.capacity()) {
+            channel.write(ByteBuffer.wrap(b));
+        } else {
+            buffer.put(b);
+        }
+    }
+
+    /**
+     * Writes one DVS event.
+     *
+     * @param timestamp in us
+     * @param x
+     * @param y
+     * @param on true for ON polarity
+     * @throws IOException if writing the buffer failed
+     */
+    public void write(int timestamp, int x, int y, boolean on) throws IOException {
+        if (format == Format.TEXT) {
+            ensureSpace(MAX_TEXT_EVENT_SIZE);
+            putDecimal(timestamp);
+            buffer.put((byte) ' ');
+            putDecimal(x);
+            buffer.put((byte) ' ');
+            putDecimal(y);
+            buffer.put((byte) ' ');
+            buffer.put(on ? (byte) '1' : (byte) '0');
+            buffer.put((byte) '\n');
+        } else {
+            ensureSpace(RECORD_SIZE);
+            buffer.putInt(timestamp);
+            buffer.putShort((short) x);
+            buffer.putShort((short) y);
+            buffer.put(on ? (byte) 1 : (byte) 0);
+        }
+        eventCount++;
+    }
+
+    /**
+     * Writes a batch of DVS events held in columns.
+     *
+     * @param timestamps in us
+     * @param xs
+     * @param ys
+     * @param polarities 1 for ON, 0 for OFF
+     * @param n the number of events
+     * @throws IOException if writing the buffer failed
+     */
+    public void write(int[] timestamps, short[] xs, short[] ys, byte[] polarities, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            write(timestamps[i], xs[i], ys[i], polarities[i] != 0);
+        }
+    }
+
+    /**
+     * Writes buffered events to the file.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flushes, completes the NPY header if needed and closes the file.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            if (format == Format.NPY) {
+                channel.position(0);
+                writeNpyHeader();
+                flush();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return the number of events written
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return the format
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    private void ensureSpace(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            flush();
+        }
+    }
+
+    /**
+     * Formats an int in decimal into the buffer without allocating.
+     */
+    private void putDecimal(int v) {
+        long l = v; // so that -Integer.MIN_VALUE does not overflow
+        if (l < 0) {
+            buffer.put((byte) '-');
+            l = -l;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + (l % 10));
+            l /= 10;
+        } while (l != 0);
+        while (n > 0) {
+            buffer.put(digits[--n]);
+        }
+    }
+
+    /**
+     * Writes the NPY version 1.0 header padded to a fixed size so that it can
+     * be rewritten in place with the final shape.
+     */
+    private void writeNpyHeader() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{'descr': [('t', '<i4'), ('x', '<u2'), ('y', '<u2'), ('p', '|u1')], 'fortran_order': False, 'shape': (");
+        sb.append(eventCount).append(",), }");
+        int headerLength = NPY_HEADER_SIZE - NPY_MAGIC.length - 2;
+        while (sb.length() < headerLength - 1) {
+            sb.append(' ');
+        }
+        sb.append('\n');
+        buffer.put(NPY_MAGIC);
+        buffer.putShort((short) headerLength);
+        buffer.put(sb.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+}
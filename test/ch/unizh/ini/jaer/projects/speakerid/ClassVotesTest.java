@@ -0,0 +1,53 @@
+package ch.unizh.ini.jaer.projects.speakerid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Checks the decaying class votes of CochleaSVMTwoEars.
+ */
+public class ClassVotesTest {
+
+    private static final double TOLERANCE = 1e-12;
+
+    @Test
+    public void voteWeightsProbabilitiesByTheirMaximum() {
+        double[] pred = new double[3];
+        assertEquals(1, ClassVotes.vote(pred, new double[]{0.2, 0.5, 0.3}, 0.5));
+        assertArrayEquals(new double[]{0.1, 0.25, 0.15}, pred, TOLERANCE);
+    }
+
+    @Test
+    public void oldVotesDecay() {
+        double[] pred = {4, 0, 0};
+        assertEquals(2, ClassVotes.vote(pred, new double[]{0, 0, 1}, 0.25));
+        assertArrayEquals(new double[]{1, 0, 1}, pred, TOLERANCE);
+    }
+
+    @Test
+    public void historyOutvotesASingleDissentingPrediction() {
+        double[] pred = new double[2];
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, ClassVotes.vote(pred, new double[]{0.9, 0.1}, 1));
+        }
+        assertEquals("a single prediction for class 1 does not override the accumulated votes",
+                0, ClassVotes.vote(pred, new double[]{0.1, 0.9}, 1));
+    }
+
+    @Test
+    public void votingWithoutDecayForgetsTheHistory() {
+        double[] pred = {100, 0};
+        assertEquals(1, ClassVotes.vote(pred, new double[]{0.4, 0.6}, 0));
+        assertArrayEquals(new double[]{0.24, 0.36}, pred, TOLERANCE);
+    }
+
+    @Test
+    public void votesCoverOnlyTheModelClasses() {
+        double[] pred = new double[64];
+        pred[5] = 100;
+        assertEquals("classes beyond the model are left untouched", 5, ClassVotes.vote(pred, new double[]{0.3, 0.7}, 1));
+        assertEquals(0.49, pred[1], TOLERANCE);
+    }
+}
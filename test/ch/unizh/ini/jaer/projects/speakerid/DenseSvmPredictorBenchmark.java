@@ -0,0 +1,139 @@
+package ch.unizh.ini.jaer.projects.speakerid;
+
+import java.util.Random;
+
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm;
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm_model;
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm_node;
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm_parameter;
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm_print_interface;
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm_problem;
+
+/**
+ * Compares DenseSvmPredictor with svm.svm_predict_probability on a model
+ * trained on synthetic feature vectors shaped like those of
+ * CochleaSVMTwoEars (two ISI histograms plus per channel event rates). Prints
+ * the largest probability difference, the number of label disagreements and
+ * the prediction rate of both paths.
+ * <p>
+ * Lives in the test tree so that it is not shipped in the jar; the
+ * equivalence is asserted by DenseSvmPredictorTest. Run with
+ * <code>java ch.unizh.ini.jaer.projects.speakerid.DenseSvmPredictorBenchmark [numClasses numTrain numTest]</code>
+ */
+public class DenseSvmPredictorBenchmark {
+
+    private static final int NUM_BINS = 100, NUM_CHANNELS = 64;
+
+    public static void main(String[] args) {
+        int numClasses = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int numTrain = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        int numTest = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int numFeatures = (2 * NUM_BINS) + NUM_CHANNELS;
+        Random r = new Random(42);
+
+        // each class has its own mean feature profile, samples are noisy versions of it
+        double[][] means = new double[numClasses][numFeatures];
+        for (double[] m : means) {
+            for (int i = 0; i < numFeatures; i++) {
+                m[i] = r.nextDouble();
+            }
+        }
+        svm_problem prob = new svm_problem();
+        prob.l = numTrain;
+        prob.x = new svm_node[numTrain][];
+        prob.y = new double[numTrain];
+        for (int i = 0; i < numTrain; i++) {
+            int c = i % numClasses;
+            prob.x[i] = DenseSvmPredictor.toNodes(sample(means[c], r));
+            prob.y[i] = c;
+        }
+        svm_parameter param = new svm_parameter();
+        param.svm_type = svm_parameter.C_SVC;
+        param.kernel_type = svm_parameter.RBF;
+        param.degree = 3;
+        param.gamma = 1.0 / numFeatures;
+        param.C = 1024;
+        param.cache_size = 100;
+        param.eps = 1e-3;
+        param.shrinking = 1;
+        param.probability = 1;
+        param.nr_weight = 0;
+        param.weight_label = new int[0];
+        param.weight = new double[0];
+        svm.svm_set_print_string_function(new svm_print_interface() {
+            @Override
+            public void print(String s) {
+            }
+        });
+        System.out.println(String.format("training %d-class RBF model on %d vectors of %d features", numClasses, numTrain, numFeatures));
+        svm_model model = svm.svm_train(prob, param);
+        System.out.println(String.format("model has %d support vectors", model.l));
+
+        double[][] test = new double[numTest][];
+        svm_node[][] testNodes = new svm_node[numTest][];
+        for (int i = 0; i < numTest; i++) {
+            test[i] = sample(means[i % numClasses], r);
+            testNodes[i] = DenseSvmPredictor.toNodes(test[i]);
+        }
+
+        // equivalence
+        DenseSvmPredictor dense = new DenseSvmPredictor(model, numFeatures);
+        double[] pLib = new double[numClasses], pDense = new double[numClasses];
+        double maxDiff = 0;
+        int labelMismatches = 0;
+        for (int i = 0; i < numTest; i++) {
+            double lLib = svm.svm_predict_probability(model, testNodes[i], pLib);
+            double lDense = dense.predictProbability(test[i], pDense);
+            if (lLib != lDense) {
+                labelMismatches++;
+            }
+            for (int c = 0; c < numClasses; c++) {
+                maxDiff = Math.max(maxDiff, Math.abs(pLib[c] - pDense[c]));
+            }
+        }
+        System.out.println(String.format("max probability difference %.3g, %d of %d labels differ", maxDiff, labelMismatches, numTest));
+
+        // speed; the libsvm path includes building the svm_node vector as CochleaSVMTwoEars does
+        int reps = 5;
+        double sink = 0;
+        for (int warm = 0; warm < 2; warm++) {
+            long t0 = System.nanoTime();
+            for (int k = 0; k < reps; k++) {
+                for (int i = 0; i < numTest; i++) {
+                    sink += svm.svm_predict_probability(model, DenseSvmPredictor.toNodes(test[i]), pLib);
+                }
+            }
+            long t1 = System.nanoTime();
+            for (int k = 0; k < reps; k++) {
+                for (int i = 0; i < numTest; i++) {
+                    sink += dense.predictProbability(test[i], pDense);
+                }
+            }
+            long t2 = System.nanoTime();
+            double[] flat = new double[numTest * numFeatures];
+            for (int i = 0; i < numTest; i++) {
+                System.arraycopy(test[i], 0, flat, i * numFeatures, numFeatures);
+            }
+            double[] probs = new double[numTest * numClasses], labels = new double[numTest];
+            long t3 = System.nanoTime();
+            for (int k = 0; k < reps; k++) {
+                dense.predictProbabilityBatch(flat, numTest, probs, labels);
+            }
+            long t4 = System.nanoTime();
+            if (warm == 1) {
+                int n = reps * numTest;
+                System.out.println(String.format("libsvm: %.1f us/prediction, dense: %.1f us/prediction (%.1fx), dense batch: %.1f us/prediction (%.1fx)",
+                        (t1 - t0) * 1e-3 / n, (t2 - t1) * 1e-3 / n, (double) (t1 - t0) / (t2 - t1), (t4 - t3) * 1e-3 / n, (double) (t1 - t0) / (t4 - t3)));
+            }
+        }
+        System.out.println("label checksum " + sink); // keeps the JIT from removing the loops
+    }
+
+    private static double[] sample(double[] mean, Random r) {
+        double[] x = new double[mean.length];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = Math.max(0, mean[i] + (0.3 * r.nextGaussian()));
+        }
+        return x;
+    }
+}
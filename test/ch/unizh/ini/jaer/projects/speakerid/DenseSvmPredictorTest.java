@@ -0,0 +1,106 @@
+package ch.unizh.ini.jaer.projects.speakerid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm;
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm_model;
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm_node;
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm_parameter;
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm_print_interface;
+import ch.unizh.ini.jaer.projects.speakerid.libsvm320.svm_problem;
+
+/**
+ * Checks DenseSvmPredictor against svm.svm_predict_probability on a model
+ * trained on synthetic feature vectors shaped like those of
+ * CochleaSVMTwoEars (two ISI histograms plus per channel event rates).
+ */
+public class DenseSvmPredictorTest {
+
+    private static final int NUM_BINS = 100, NUM_CHANNELS = 64, NUM_CLASSES = 4, NUM_TRAIN = 400, NUM_TEST = 500;
+    private static final double TOLERANCE = 1e-9;
+
+    @Test
+    public void predictionsMatchLibsvm() {
+        int numFeatures = (2 * NUM_BINS) + NUM_CHANNELS;
+        Random r = new Random(42);
+
+        // each class has its own mean feature profile, samples are noisy versions of it
+        double[][] means = new double[NUM_CLASSES][numFeatures];
+        for (double[] m : means) {
+            for (int i = 0; i < numFeatures; i++) {
+                m[i] = r.nextDouble();
+            }
+        }
+        svm_problem prob = new svm_problem();
+        prob.l = NUM_TRAIN;
+        prob.x = new svm_node[NUM_TRAIN][];
+        prob.y = new double[NUM_TRAIN];
+        for (int i = 0; i < NUM_TRAIN; i++) {
+            int c = i % NUM_CLASSES;
+            prob.x[i] = DenseSvmPredictor.toNodes(sample(means[c], r));
+            prob.y[i] = c;
+        }
+        svm_parameter param = new svm_parameter();
+        param.svm_type = svm_parameter.C_SVC;
+        param.kernel_type = svm_parameter.RBF;
+        param.degree = 3;
+        param.gamma = 1.0 / numFeatures;
+        param.C = 1024;
+        param.cache_size = 100;
+        param.eps = 1e-3;
+        param.shrinking = 1;
+        param.probability = 1;
+        param.nr_weight = 0;
+        param.weight_label = new int[0];
+        param.weight = new double[0];
+        svm.svm_set_print_string_function(new svm_print_interface() {
+            @Override
+            public void print(String s) {
+            }
+        });
+        svm_model model = svm.svm_train(prob, param);
+
+        DenseSvmPredictor dense = new DenseSvmPredictor(model, numFeatures);
+        double[] flat = new double[NUM_TEST * numFeatures];
+        double[] pLib = new double[NUM_CLASSES], pDense = new double[NUM_CLASSES];
+        double[] expectedProbs = new double[NUM_TEST * NUM_CLASSES], expectedLabels = new double[NUM_TEST];
+        for (int i = 0; i < NUM_TEST; i++) {
+            double[] x = sample(means[i % NUM_CLASSES], r);
+            System.arraycopy(x, 0, flat, i * numFeatures, numFeatures);
+            double label = svm.svm_predict_probability(model, DenseSvmPredictor.toNodes(x), pLib);
+            assertEquals("label of vector " + i, label, dense.predictProbability(x, pDense), 0);
+            assertArrayEquals("probabilities of vector " + i, pLib, pDense, TOLERANCE);
+            expectedLabels[i] = label;
+            System.arraycopy(pLib, 0, expectedProbs, i * NUM_CLASSES, NUM_CLASSES);
+        }
+
+        double[] probs = new double[NUM_TEST * NUM_CLASSES], labels = new double[NUM_TEST];
+        dense.predictProbabilityBatch(flat, NUM_TEST, probs, labels);
+        assertArrayEquals("batch labels", expectedLabels, labels, 0);
+        assertArrayEquals("batch probabilities", expectedProbs, probs, TOLERANCE);
+    }
+
+    @Test
+    public void toDenseInvertsToNodes() {
+        double[] x = {0.5, 0, -2, 7};
+        double[] y = {9, 9, 9, 9};
+        assertArrayEquals(x, DenseSvmPredictor.toDense(DenseSvmPredictor.toNodes(x), y), 0);
+        svm_node sparse = new svm_node();
+        sparse.index = 3;
+        sparse.value = 1;
+        assertArrayEquals("missing features are 0", new double[]{0, 0, 1, 0}, DenseSvmPredictor.toDense(new svm_node[]{sparse}, y), 0);
+    }
+
+    private static double[] sample(double[] mean, Random r) {
+        double[] x = new double[mean.length];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = Math.max(0, mean[i] + (0.3 * r.nextGaussian()));
+        }
+        return x;
+    }
+}
@@ -0,0 +1,196 @@
+package eu.seebetter.ini.chips.davis.imu;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests lookup and interpolation of ImuSampleBuffer, including an empty
+ * buffer, the ends of the buffer, ring wraparound and out of order queries.
+ */
+public class ImuSampleBufferTest {
+
+    private static final float EPS = 1e-4f;
+
+    /**
+     * Appends a sample with all three gyro rates equal to rate.
+     */
+    private static void append(ImuSampleBuffer b, int timestampUs, float rate) {
+        b.append(timestampUs, 0, 0, 1, rate, rate, rate, 25);
+    }
+
+    /**
+     * Index of the last sample at or before timestampUs by linear search.
+     */
+    private static int linearIndexAtOrBefore(ImuSampleBuffer b, int timestampUs) {
+        int found = -1;
+        for (int i = 0; i < b.size(); i++) {
+            if (timestampUs - b.getTimestamp(i) >= 0) {
+                found = i;
+            }
+        }
+        return found;
+    }
+
+    @Test
+    public void emptyBufferAnswersNothing() {
+        ImuSampleBuffer b = new ImuSampleBuffer(16);
+        float[] r = {7, 7, 7};
+        assertTrue(b.isEmpty());
+        assertEquals(0, b.size());
+        assertEquals(-1, b.indexAtOrBefore(0));
+        assertFalse(b.getRatesAt(0, r));
+        assertFalse(b.getRotationDeg(0, 1000, r));
+        assertArrayEquals(new float[]{7, 7, 7}, r, 0);
+        append(b, 100, 1);
+        b.clear();
+        assertTrue(b.isEmpty());
+        assertFalse(b.getRatesAt(100, r));
+    }
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(16, new ImuSampleBuffer(16).getCapacity());
+        assertEquals(16, new ImuSampleBuffer(10).getCapacity());
+        assertEquals(2, new ImuSampleBuffer(2).getCapacity());
+        assertEquals(2, new ImuSampleBuffer(1).getCapacity());
+    }
+
+    @Test
+    public void ratesAreInterpolatedBetweenSamplesAndHeldAtTheEnds() {
+        ImuSampleBuffer b = new ImuSampleBuffer(16);
+        append(b, 1000, 10);
+        append(b, 2000, 20);
+        append(b, 3000, 40);
+        float[] r = new float[3];
+        assertTrue(b.getRatesAt(1000, r));
+        assertEquals(10, r[0], EPS);
+        assertTrue(b.getRatesAt(1500, r));
+        assertEquals(15, r[0], EPS);
+        assertEquals(15, r[1], EPS);
+        assertEquals(15, r[2], EPS);
+        assertTrue(b.getRatesAt(2750, r));
+        assertEquals(35, r[0], EPS);
+        assertTrue(b.getRatesAt(3000, r));
+        assertEquals(40, r[0], EPS);
+        assertTrue(b.getRatesAt(0, r)); // before the oldest sample
+        assertEquals(10, r[0], EPS);
+        assertTrue(b.getRatesAt(9000, r)); // after the newest sample
+        assertEquals(40, r[0], EPS);
+    }
+
+    @Test
+    public void singleSampleIsHeldEverywhere() {
+        ImuSampleBuffer b = new ImuSampleBuffer(4);
+        append(b, 1000, 3);
+        float[] r = new float[3];
+        assertEquals(-1, b.indexAtOrBefore(999));
+        assertEquals(0, b.indexAtOrBefore(1000));
+        assertEquals(0, b.indexAtOrBefore(5000));
+        assertTrue(b.getRatesAt(0, r));
+        assertEquals(3, r[0], EPS);
+        assertTrue(b.getRotationDeg(0, 1000000, r)); // 3 deg/s for 1s
+        assertEquals(3, r[0], EPS);
+    }
+
+    @Test
+    public void ringWraparoundKeepsNewestSamplesInOrder() {
+        ImuSampleBuffer b = new ImuSampleBuffer(8);
+        for (int i = 0; i < 21; i++) {
+            append(b, i * 1000, i);
+        }
+        assertEquals(8, b.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals((13 + i) * 1000, b.getTimestamp(i));
+            assertEquals(13 + i, b.getGyroTiltX(i), 0);
+        }
+        float[] r = new float[3];
+        // sample 15 is in the last physical slot and 16 in the first, so this interpolates across the end of the arrays
+        assertTrue(b.getRatesAt(15500, r));
+        assertEquals(15.5f, r[0], EPS);
+        assertTrue(b.getRatesAt(12500, r)); // overwritten samples are gone; the oldest retained one is held
+        assertEquals(13, r[0], EPS);
+        assertEquals(-1, b.indexAtOrBefore(12999));
+        assertEquals(0, b.indexAtOrBefore(13000));
+        assertEquals(7, b.indexAtOrBefore(20000));
+    }
+
+    @Test
+    public void lookupsFollowTheBufferAsItWraps() {
+        ImuSampleBuffer b = new ImuSampleBuffer(8);
+        float[] r = new float[3];
+        for (int i = 0; i < 40; i++) {
+            append(b, i * 100, i);
+            // each query moves forward from the last, so this exercises the lookup hint as samples are overwritten
+            int t = (i * 100) - 50;
+            assertEquals(linearIndexAtOrBefore(b, t), b.indexAtOrBefore(t));
+            if (i > 0) {
+                assertTrue(b.getRatesAt(t, r));
+                assertEquals(i - 0.5f, r[0], EPS);
+            }
+        }
+    }
+
+    @Test
+    public void outOfOrderQueriesMatchLinearSearch() {
+        ImuSampleBuffer b = new ImuSampleBuffer(64);
+        Random random = new Random(42);
+        int t = 0;
+        for (int i = 0; i < 100; i++) {
+            t += 1 + random.nextInt(2000);
+            append(b, t, random.nextFloat());
+        }
+        int first = b.getTimestamp(0), last = b.getTimestamp(b.size() - 1);
+        for (int q = 0; q < 2000; q++) {
+            int ts = first - 1000 + random.nextInt(last - first + 2000);
+            assertEquals("query " + ts, linearIndexAtOrBefore(b, ts), b.indexAtOrBefore(ts));
+        }
+        // backwards through the buffer
+        for (int i = b.size() - 1; i >= 0; i--) {
+            assertEquals(i, b.indexAtOrBefore(b.getTimestamp(i)));
+        }
+    }
+
+    @Test
+    public void rotationIntegratesInterpolatedRates() {
+        ImuSampleBuffer b = new ImuSampleBuffer(16);
+        append(b, 0, 0);
+        append(b, 1000000, 10); // rate ramps from 0 to 10 deg/s over 1s
+        append(b, 2000000, 10);
+        float[] rot = new float[3];
+        assertTrue(b.getRotationDeg(0, 1000000, rot));
+        assertEquals(5, rot[0], EPS);
+        assertTrue(b.getRotationDeg(500000, 1000000, rot)); // from 5 to 10 deg/s for 0.5s
+        assertEquals(3.75f, rot[1], EPS);
+        assertTrue(b.getRotationDeg(1000000, 3000000, rot)); // 10 deg/s held past the newest sample
+        assertEquals(20, rot[2], EPS);
+        assertTrue(b.getRotationDeg(1000000, 0, rot));
+        assertEquals(-5, rot[0], EPS);
+    }
+
+    @Test
+    public void olderSampleOrTimestampResetClearsBuffer() {
+        ImuSampleBuffer b = new ImuSampleBuffer(16);
+        append(b, 1000, 1);
+        append(b, 2000, 2);
+        append(b, 500, 5); // e.g. after a rewind
+        assertEquals(1, b.size());
+        assertEquals(500, b.getTimestamp(0));
+        b.timestampsReset();
+        assertTrue(b.isEmpty());
+    }
+
+    @Test
+    public void timestampOverflowIsHandled() {
+        ImuSampleBuffer b = new ImuSampleBuffer(8);
+        int t0 = Integer.MAX_VALUE - 1500;
+        for (int i = 0; i < 4; i++) {
+            append(b, t0 + (i * 1000), i);
+        }
+        assertEquals(4, b.size());
+        float[] r = new float[3];
+        assertEquals(2, b.indexAtOrBefore(t0 + 2500));
+        assertTrue(b.getRatesAt(t0 + 2500, r));
+        assertEquals(2.5f, r[0], EPS);
+    }
+}
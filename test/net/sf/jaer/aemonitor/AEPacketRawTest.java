@@ -0,0 +1,97 @@
+package net.sf.jaer.aemonitor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * Checks that the ways of filling AEPacketRaw, adding events through an
+ * EventRaw or as primitives, appending ranges, and merging packets into a new
+ * or a reused packet, give the same events.
+ */
+public class AEPacketRawTest {
+
+    private static final int N = 20000, SOURCES = 4, CHUNK = 500;
+
+    private final int[] addr = new int[N], ts = new int[N];
+
+    public AEPacketRawTest() {
+        for (int i = 0; i < N; i++) {
+            addr[i] = i * 7;
+            ts[i] = i;
+        }
+    }
+
+    @Test
+    public void addEventsGiveSourceEvents() {
+        AEPacketRaw p = new AEPacketRaw();
+        EventRaw e = new EventRaw();
+        for (int i = 0; i < N; i++) {
+            e.address = addr[i];
+            e.timestamp = ts[i];
+            p.addEvent(e);
+        }
+        assertEvents(p, 1);
+        p.clear();
+        for (int i = 0; i < N; i++) {
+            p.addEvent(addr[i], ts[i]);
+        }
+        assertEvents(p, 1);
+    }
+
+    @Test
+    public void appendRangesGiveSourceEvents() {
+        AEPacketRaw p = new AEPacketRaw();
+        for (int i = 0; i < N; i += CHUNK) {
+            p.appendRange(addr, ts, i, Math.min(CHUNK, N - i));
+        }
+        assertEvents(p, 1);
+        ByteBuffer buf = ByteBuffer.allocate(8 * N);
+        for (int i = 0; i < N; i++) {
+            buf.putInt(addr[i]).putInt(ts[i]);
+        }
+        buf.rewind();
+        p.clear();
+        p.appendRange(buf, N);
+        assertEvents(p, 1);
+    }
+
+    @Test
+    public void mergesConcatenateSources() {
+        ArrayList<AEPacketRaw> sources = new ArrayList<AEPacketRaw>();
+        for (int s = 0; s < SOURCES; s++) {
+            sources.add(new AEPacketRaw().appendRange(addr, ts, 0, N));
+        }
+        assertEvents(new AEPacketRaw(sources), SOURCES);
+        AEPacketRaw reused = new AEPacketRaw().appendRange(addr, ts, 0, CHUNK);
+        reused.clear();
+        assertEvents(reused.appendAll(sources), SOURCES);
+        assertEvents(new AEPacketRaw(sources.get(0), sources.get(1)), 2);
+    }
+
+    @Test
+    public void jaer3ArraysAreAllocatedOnlyWhenAsked() {
+        AEPacketRaw p = new AEPacketRaw().appendRange(addr, ts, 0, N);
+        assertNull(p.eventtypes);
+        assertNull(p.pixelDataArray);
+        assertTrue(p.getEventtypes().length >= p.getCapacity());
+        p.appendRange(addr, ts, 0, N); // growing keeps them as long as the capacity
+        assertTrue(p.eventtypes.length >= p.getCapacity());
+        assertNull(p.pixelDataArray);
+    }
+
+    /** Asserts that the packet holds the source events the given number of times. */
+    private void assertEvents(AEPacketRaw p, int copies) {
+        assertEquals(copies * N, p.getNumEvents());
+        int[] a = p.getAddresses(), t = p.getTimestamps();
+        for (int i = 0; i < (copies * N); i++) {
+            assertEquals(addr[i % N], a[i]);
+            assertEquals(ts[i % N], t[i]);
+        }
+    }
+}
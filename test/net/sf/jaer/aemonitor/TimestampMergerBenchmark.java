@@ -0,0 +1,94 @@
+package net.sf.jaer.aemonitor;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the merge rate of TimestampMerger with the per-event scan of all
+ * sources for the minimum timestamp, through AEPacketRaw.getEvent(), that
+ * MultiCameraHardwareInterface used before, for 2 to 8 synthetic Poisson
+ * sources. In the interleaved case all sources have the same rate. In the
+ * bursty case each source alternates between bursts and quiet periods, so
+ * that long runs come from a single source.
+ * <p>
+ * This is a manual benchmark, not a test; TimestampMergerTest checks that
+ * the two merges agree. Run with
+ * <code>java net.sf.jaer.aemonitor.TimestampMergerBenchmark [eventsPerSource]</code>
+ */
+public class TimestampMergerBenchmark {
+
+    public static void main(String[] args) {
+        int eventsPerSource = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        Random r = new Random(42);
+        for (int bursty = 0; bursty < 2; bursty++) {
+            System.out.println(bursty == 0 ? "interleaved sources of equal rate" : "bursty sources");
+            for (int k = 2; k <= 8; k++) {
+                AEPacketRaw[] packets = new AEPacketRaw[k];
+                for (int s = 0; s < k; s++) {
+                    packets[s] = new AEPacketRaw(eventsPerSource);
+                    packets[s].setNumEvents(eventsPerSource);
+                    int[] ts = packets[s].getTimestamps(), addr = packets[s].getAddresses();
+                    int t = 0;
+                    for (int i = 0; i < eventsPerSource; i++) {
+                        if (bursty == 1 && (i % 1000) == 0) {
+                            t += r.nextInt(10000 * k); // quiet period, during which the other sources are active
+                        }
+                        t += 1 + (int) (-10 * Math.log(1 - r.nextDouble()));
+                        ts[i] = t;
+                        addr[i] = (s << 24) | i;
+                    }
+                }
+                int n = k * eventsPerSource;
+                int[] outTs = new int[n], outAddr = new int[n], refTs = new int[n], refAddr = new int[n];
+                TimestampMerger merger = new TimestampMerger(k);
+                int[] next = new int[k];
+                double sink = 0;
+                long scanNs = Long.MAX_VALUE, mergeNs = Long.MAX_VALUE;
+                for (int rep = 0; rep < 10; rep++) { // best of 10 after JIT warmup
+                    long t0 = System.nanoTime();
+                    int count = linearScanMerge(packets, next, refTs, refAddr);
+                    long t1 = System.nanoTime();
+                    for (int s = 0; s < k; s++) {
+                        merger.setSource(s, packets[s], 0);
+                    }
+                    int m = merger.merge(outTs, outAddr, null, 0, n, Integer.MAX_VALUE, false);
+                    long t2 = System.nanoTime();
+                    scanNs = Math.min(scanNs, t1 - t0);
+                    mergeNs = Math.min(mergeNs, t2 - t1);
+                    sink += count + m;
+                }
+                System.out.println(String.format("%d sources: scan %.1f Mev/s, merger %.1f Mev/s (%.1fx) (checksum %.0f)",
+                        k, n * 1e3 / scanNs, n * 1e3 / mergeNs, (double) scanNs / mergeNs, sink));
+            }
+        }
+    }
+
+    /**
+     * Merges as MultiCameraHardwareInterface did before, by peeking at the head
+     * event of every source for each output event, preferring the lower source
+     * index on ties.
+     */
+    private static int linearScanMerge(AEPacketRaw[] packets, int[] next, int[] outTs, int[] outAddr) {
+        int k = packets.length;
+        Arrays.fill(next, 0);
+        int count = 0;
+        while (true) {
+            int tsMin = Integer.MAX_VALUE, ind = -1;
+            for (int s = 0; s < k; s++) {
+                if (next[s] < packets[s].getNumEvents()) {
+                    int t = packets[s].getEvent(next[s]).timestamp;
+                    if (t < tsMin) {
+                        tsMin = t;
+                        ind = s;
+                    }
+                }
+            }
+            if (ind < 0) {
+                return count;
+            }
+            EventRaw e = packets[ind].getEvent(next[ind]++);
+            outTs[count] = e.timestamp;
+            outAddr[count++] = e.address;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package net.sf.jaer.aemonitor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks TimestampMerger against the per-event scan of all sources for the
+ * minimum timestamp that MultiCameraHardwareInterface used before, for 2 to 8
+ * synthetic Poisson sources, both interleaved and bursty so that long runs
+ * come from a single source.
+ */
+public class TimestampMergerTest {
+
+    private static final int EVENTS_PER_SOURCE = 20000;
+
+    @Test
+    public void interleavedSourcesMergeLikeLinearScan() {
+        checkMerge(false);
+    }
+
+    @Test
+    public void burstySourcesMergeLikeLinearScan() {
+        checkMerge(true);
+    }
+
+    /**
+     * The two source merge does not use the tree; checks it against the tree
+     * merge of the same sources plus an empty third one, with ties, output
+     * limits, a timestamp limit and stopping when a source runs out.
+     */
+    @Test
+    public void twoSourceMergeMatchesTreeMerge() {
+        Random r = new Random(7);
+        for (int trial = 0; trial < 200; trial++) {
+            int[][] ts = new int[2][], addr = new int[2][];
+            for (int s = 0; s < 2; s++) {
+                int len = r.nextInt(200);
+                ts[s] = new int[len];
+                addr[s] = new int[len];
+                int t = r.nextInt(50);
+                for (int i = 0; i < len; i++) {
+                    t += r.nextInt(4) == 0 ? r.nextInt(100) : r.nextInt(3); // many ties and some runs
+                    ts[s][i] = t;
+                    addr[s][i] = (s << 24) | i;
+                }
+            }
+            TimestampMerger two = new TimestampMerger(2), three = new TimestampMerger(3);
+            for (int s = 0; s < 2; s++) {
+                two.setSource(s, ts[s], addr[s], 0, ts[s].length);
+                three.setSource(s, ts[s], addr[s], 0, ts[s].length);
+            }
+            three.setSource(2, null, null, 0, 0);
+            boolean stop = r.nextBoolean();
+            int n = ts[0].length + ts[1].length;
+            int[] outTs2 = new int[n], outAddr2 = new int[n], outSrc2 = new int[n];
+            int[] outTs3 = new int[n], outAddr3 = new int[n], outSrc3 = new int[n];
+            int n2 = 0, n3 = 0;
+            for (int call = 0; call < 10; call++) {
+                int max = 1 + r.nextInt(50), until = r.nextInt(10) == 0 ? Integer.MAX_VALUE : r.nextInt(2000);
+                int m2 = two.merge(outTs2, outAddr2, outSrc2, n2, Math.min(max, n - n2), until, stop);
+                int m3 = three.merge(outTs3, outAddr3, outSrc3, n3, Math.min(max, n - n3), until, stop);
+                assertEquals("trial " + trial + " call " + call, m3, m2);
+                n2 += m2;
+                n3 += m3;
+                for (int s = 0; s < 2; s++) {
+                    assertEquals(three.getPosition(s), two.getPosition(s));
+                }
+            }
+            assertArrayEquals(outTs3, outTs2);
+            assertArrayEquals(outAddr3, outAddr2);
+            assertArrayEquals(outSrc3, outSrc2);
+        }
+    }
+
+    private static void checkMerge(boolean bursty) {
+        Random r = new Random(42);
+        for (int k = 2; k <= 8; k++) {
+            AEPacketRaw[] packets = new AEPacketRaw[k];
+            for (int s = 0; s < k; s++) {
+                packets[s] = new AEPacketRaw(EVENTS_PER_SOURCE);
+                packets[s].setNumEvents(EVENTS_PER_SOURCE);
+                int[] ts = packets[s].getTimestamps(), addr = packets[s].getAddresses();
+                int t = 0;
+                for (int i = 0; i < EVENTS_PER_SOURCE; i++) {
+                    if (bursty && ((i % 1000) == 0)) {
+                        t += r.nextInt(10000 * k); // quiet period, during which the other sources are active
+                    }
+                    t += 1 + (int) (-10 * Math.log(1 - r.nextDouble()));
+                    ts[i] = t;
+                    addr[i] = (s << 24) | i;
+                }
+            }
+            int n = k * EVENTS_PER_SOURCE;
+            int[] outTs = new int[n], outAddr = new int[n], refTs = new int[n], refAddr = new int[n];
+            assertEquals(n, linearScanMerge(packets, refTs, refAddr));
+            TimestampMerger merger = new TimestampMerger(k);
+            for (int s = 0; s < k; s++) {
+                merger.setSource(s, packets[s], 0);
+            }
+            assertEquals(n, merger.merge(outTs, outAddr, null, 0, n, Integer.MAX_VALUE, false));
+            assertArrayEquals(k + " sources", refTs, outTs);
+            assertArrayEquals(k + " sources", refAddr, outAddr);
+        }
+    }
+
+    /**
+     * Merges as MultiCameraHardwareInterface did before, by peeking at the head
+     * event of every source for each output event, preferring the lower source
+     * index on ties.
+     */
+    private static int linearScanMerge(AEPacketRaw[] packets, int[] outTs, int[] outAddr) {
+        int k = packets.length;
+        int[] next = new int[k];
+        int count = 0;
+        while (true) {
+            int tsMin = Integer.MAX_VALUE, ind = -1;
+            for (int s = 0; s < k; s++) {
+                if (next[s] < packets[s].getNumEvents()) {
+                    int t = packets[s].getEvent(next[s]).timestamp;
+                    if (t < tsMin) {
+                        tsMin = t;
+                        ind = s;
+                    }
+                }
+            }
+            if (ind < 0) {
+                return count;
+            }
+            EventRaw e = packets[ind].getEvent(next[ind]++);
+            outTs[count] = e.timestamp;
+            outAddr[count++] = e.address;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package net.sf.jaer.chip;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests subscription, cancellation and delivery order of ChipEventBus.
+ */
+public class ChipEventBusTest {
+
+    /**
+     * Records the frame end timestamps it receives, tagged with its name.
+     */
+    private static class FrameRecorder implements ChipEventBus.FrameListener {
+
+        final String name;
+        final List<String> log;
+
+        FrameRecorder(String name, List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+
+        @Override
+        public void frameCompleted(int startTimestampUs, int endTimestampUs) {
+            log.add(name + endTimestampUs);
+        }
+    }
+
+    @Test
+    public void synchronousListenersAreCalledInSubscriptionOrder() {
+        ChipEventBus bus = new ChipEventBus();
+        List<String> log = new ArrayList<String>();
+        bus.subscribeFrames(new FrameRecorder("a", log));
+        bus.subscribeFrames(new FrameRecorder("b", log));
+        bus.subscribeFrames(new FrameRecorder("c", log));
+        bus.publishFrame(0, 10);
+        bus.publishFrame(10, 20);
+        assertEquals(Arrays.asList("a10", "b10", "c10", "a20", "b20", "c20"), log);
+    }
+
+    @Test
+    public void cancelledListenerIsNotCalled() {
+        ChipEventBus bus = new ChipEventBus();
+        List<String> log = new ArrayList<String>();
+        bus.subscribeFrames(new FrameRecorder("a", log));
+        ChipEventBus.Subscription b = bus.subscribeFrames(new FrameRecorder("b", log));
+        bus.subscribeFrames(new FrameRecorder("c", log));
+        assertTrue(bus.hasFrameSubscriptions());
+        b.cancel();
+        assertTrue(b.isCancelled());
+        bus.publishFrame(0, 10);
+        assertEquals(Arrays.asList("a10", "c10"), log);
+    }
+
+    @Test
+    public void cancellingLastSubscriptionLeavesNoSubscribers() {
+        ChipEventBus bus = new ChipEventBus();
+        final int[] count = new int[1];
+        ChipEventBus.Subscription s = bus.subscribeImu(new ChipEventBus.ImuListener() {
+            @Override
+            public void imuSample(int timestampUs, float accelX, float accelY, float accelZ, float gyroTiltX, float gyroYawY, float gyroRollZ, float temperature) {
+                count[0]++;
+            }
+        });
+        assertTrue(bus.hasImuSubscriptions());
+        bus.publishImu(0, 0, 0, 1, 0, 0, 0, 25);
+        s.cancel();
+        s.cancel(); // cancelling twice is harmless
+        assertFalse(bus.hasImuSubscriptions());
+        bus.publishImu(1000, 0, 0, 1, 0, 0, 0, 25);
+        assertEquals(1, count[0]);
+    }
+
+    @Test
+    public void throwingListenerDoesNotStopDelivery() {
+        ChipEventBus bus = new ChipEventBus();
+        List<String> log = new ArrayList<String>();
+        bus.subscribeFrames(new ChipEventBus.FrameListener() {
+            @Override
+            public void frameCompleted(int startTimestampUs, int endTimestampUs) {
+                throw new IllegalStateException("test");
+            }
+        });
+        bus.subscribeFrames(new FrameRecorder("b", log));
+        bus.publishFrame(0, 10);
+        assertEquals(Collections.singletonList("b10"), log);
+    }
+
+    @Test
+    public void minIntervalSkipsEventsAndRestartsAfterReset() {
+        ChipEventBus bus = new ChipEventBus();
+        List<String> log = new ArrayList<String>();
+        bus.subscribeFrames(new FrameRecorder("a", log), 100, false);
+        bus.publishFrame(0, 1000);
+        bus.publishFrame(0, 1050); // skipped, too soon
+        bus.publishFrame(0, 1100);
+        bus.publishFrame(0, 500); // earlier than the last one, e.g. rewind, so delivered
+        bus.publishTimestampReset();
+        bus.publishFrame(0, 520); // first after reset
+        bus.publishFrame(0, 530);
+        assertEquals(Arrays.asList("a1000", "a1100", "a500", "a520"), log);
+    }
+
+    @Test
+    public void sizeAndTimestampResetAreDelivered() {
+        ChipEventBus bus = new ChipEventBus();
+        final List<String> log = new ArrayList<String>();
+        bus.subscribeSize(new ChipEventBus.SizeListener() {
+            @Override
+            public void chipSizeChanged(int sizeX, int sizeY, int numCellTypes) {
+                log.add("size" + sizeX + "x" + sizeY + "x" + numCellTypes);
+            }
+        });
+        bus.subscribeTimestampReset(new ChipEventBus.TimestampResetListener() {
+            @Override
+            public void timestampsReset() {
+                log.add("reset");
+            }
+        }, false);
+        bus.publishSize(346, 260, 2);
+        bus.publishTimestampReset();
+        assertEquals(Arrays.asList("size346x260x2", "reset"), log);
+    }
+
+    @Test
+    public void asynchronousEventsAreDeliveredInPublishOrder() throws InterruptedException {
+        ChipEventBus bus = new ChipEventBus();
+        final int n = 1000;
+        final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread publisher = Thread.currentThread();
+        final Thread[] deliveryThread = new Thread[1];
+        ChipEventBus.Subscription s = bus.subscribeImu(new ChipEventBus.ImuListener() {
+            @Override
+            public void imuSample(int timestampUs, float accelX, float accelY, float accelZ, float gyroTiltX, float gyroYawY, float gyroRollZ, float temperature) {
+                deliveryThread[0] = Thread.currentThread();
+                received.add(timestampUs);
+            }
+        }, 0, true);
+        bus.subscribeTimestampReset(new ChipEventBus.TimestampResetListener() {
+            @Override
+            public void timestampsReset() {
+                done.countDown();
+            }
+        }, true);
+        for (int i = 0; i < n; i++) {
+            bus.publishImu(i, 0, 0, 1, 0, 0, 0, 25);
+        }
+        bus.publishTimestampReset(); // queued behind the samples
+        assertTrue("async delivery timed out", done.await(10, TimeUnit.SECONDS));
+        assertNotSame(publisher, deliveryThread[0]);
+        assertEquals(n - s.getDroppedCount(), received.size());
+        for (int i = 1; i < received.size(); i++) {
+            assertTrue("out of order at " + i, received.get(i) > received.get(i - 1));
+        }
+    }
+}
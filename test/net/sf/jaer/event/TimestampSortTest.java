@@ -0,0 +1,106 @@
+package net.sf.jaer.event;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks TimestampSort against Arrays.sort with a timestamp Comparator, which
+ * EventPacket.sortByTimeStamp used before, on packets that are in order, made
+ * of 4 concatenated ordered packets, ordered except for jitter of the
+ * timestamps and in random order, including the order of events with equal
+ * timestamps.
+ */
+public class TimestampSortTest {
+
+    private static final Comparator<BasicEvent> COMPARATOR = new Comparator<BasicEvent>() {
+        @Override
+        public int compare(BasicEvent e1, BasicEvent e2) {
+            return e1.timestamp - e2.timestamp;
+        }
+    };
+    private static final String[] KINDS = {"sorted", "4 merged runs", "jittered", "random"};
+    // the largest size takes the parallel path
+    private static final int[] SIZES = {1, 1000, 20000, TimestampSort.PARALLEL_MIN + 1000};
+
+    @Test
+    public void eventsSortLikeComparator() {
+        for (int n : SIZES) {
+            for (String kind : KINDS) {
+                BasicEvent[] a = make(kind, n, new Random(42)), b = a.clone();
+                Arrays.sort(a, COMPARATOR);
+                TimestampSort.sort(b, 0, n);
+                assertArrayEquals(kind + ", " + n + " events", a, b);
+                assertTrue(TimestampSort.isSorted(b, 0, n));
+            }
+        }
+    }
+
+    @Test
+    public void rangeSortLeavesRestAlone() {
+        BasicEvent[] a = make("random", 1000, new Random(42)), b = a.clone();
+        Arrays.sort(a, 100, 900, COMPARATOR);
+        TimestampSort.sort(b, 100, 900);
+        assertArrayEquals(a, b);
+    }
+
+    @Test
+    public void rawEventsSortLikeComparator() {
+        for (int n : SIZES) {
+            for (String kind : KINDS) {
+                BasicEvent[] events = make(kind, n, new Random(42));
+                final int[] ts = new int[n];
+                int[] addr = new int[n];
+                Integer[] order = new Integer[n];
+                for (int i = 0; i < n; i++) {
+                    ts[i] = events[i].timestamp;
+                    addr[i] = i;
+                    order[i] = i;
+                }
+                Arrays.sort(order, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer i1, Integer i2) {
+                        return ts[i1] - ts[i2];
+                    }
+                });
+                int[] expectedTs = new int[n], expectedAddr = new int[n];
+                for (int i = 0; i < n; i++) {
+                    expectedTs[i] = ts[order[i]];
+                    expectedAddr[i] = order[i];
+                }
+                TimestampSort.sort(ts, addr, 0, n);
+                assertArrayEquals(kind + ", " + n + " events", expectedTs, ts);
+                assertArrayEquals(kind + ", " + n + " events", expectedAddr, addr);
+            }
+        }
+    }
+
+    /** Makes events with about 1 event per us and some equal timestamps */
+    private static BasicEvent[] make(String kind, int n, Random r) {
+        BasicEvent[] events = new BasicEvent[n];
+        int t = 0;
+        for (int i = 0; i < n; i++) {
+            events[i] = new BasicEvent();
+            if (kind.equals("4 merged runs") && ((i % Math.max(1, n / 4)) == 0)) {
+                t = r.nextInt(100);
+            }
+            t += r.nextInt(3); // about 1 event per us, with equal timestamps
+            events[i].timestamp = t;
+        }
+        if (kind.equals("jittered")) {
+            for (BasicEvent e : events) {
+                e.timestamp += r.nextInt(20);
+            }
+        } else if (kind.equals("random")) {
+            for (BasicEvent e : events) {
+                e.timestamp = r.nextInt(100000);
+            }
+        }
+        return events;
+    }
+}
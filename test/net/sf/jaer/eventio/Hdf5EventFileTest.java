@@ -0,0 +1,161 @@
+package net.sf.jaer.eventio;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import ncsa.hdf.hdf5lib.H5;
+import ncsa.hdf.hdf5lib.HDF5Constants;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Round trip of Hdf5EventFileOutputStream and Hdf5EventFileInputStream.
+ * Skipped if the HDF5 native library is not available.
+ */
+public class Hdf5EventFileTest {
+
+    private static final int NUM_EVENTS = (2 * Hdf5EventFileOutputStream.CHUNK_SIZE) + 1234;
+    private static final int DT = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void checkNativeLibrary() {
+        boolean available;
+        try {
+            H5.H5open();
+            available = true;
+        } catch (Throwable t) {
+            available = false;
+        }
+        assumeTrue("HDF5 native library not available", available);
+    }
+
+    private static int[] timestamps() {
+        int[] ts = new int[NUM_EVENTS];
+        for (int i = 0; i < ts.length; i++) {
+            ts[i] = 1000 + (i * DT);
+        }
+        return ts;
+    }
+
+    private static int[] addresses() {
+        int[] addr = new int[NUM_EVENTS];
+        for (int i = 0; i < addr.length; i++) {
+            addr[i] = i * 31;
+        }
+        return addr;
+    }
+
+    private File write(String name) throws IOException {
+        File f = folder.newFile(name);
+        Hdf5EventFileOutputStream os = new Hdf5EventFileOutputStream(f);
+        int[] ts = timestamps(), addr = addresses();
+        // uneven packets, so that packets straddle chunks
+        for (int i = 0; i < NUM_EVENTS; i += 5000) {
+            int n = Math.min(5000, NUM_EVENTS - i);
+            os.write(Arrays.copyOfRange(ts, i, i + n), Arrays.copyOfRange(addr, i, i + n), n);
+        }
+        os.close();
+        assertEquals(NUM_EVENTS, os.getNumEventsWritten());
+        return f;
+    }
+
+    private static void assertContents(Hdf5EventFileInputStream in) throws IOException {
+        assertEquals(NUM_EVENTS, in.size());
+        int[] ts = new int[NUM_EVENTS], addr = new int[NUM_EVENTS];
+        int k = 0;
+        while (k < NUM_EVENTS) {
+            AEPacketRaw p = in.readPacketByNumber(7777);
+            System.arraycopy(p.getTimestamps(), 0, ts, k, p.getNumEvents());
+            System.arraycopy(p.getAddresses(), 0, addr, k, p.getNumEvents());
+            k += p.getNumEvents();
+        }
+        assertArrayEquals(timestamps(), ts);
+        assertArrayEquals(addresses(), addr);
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        File f = write("events.h5");
+        assertTrue(Hdf5EventFileInputStream.isEventFile(f));
+        Hdf5EventFileInputStream in = new Hdf5EventFileInputStream(f);
+        try {
+            assertEquals(1000, in.getFirstTimestamp());
+            assertEquals(1000 + ((NUM_EVENTS - 1) * DT), in.getLastTimestamp());
+            assertContents(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void seekLandsOnFirstEventAtOrAfterTimestamp() throws IOException {
+        Hdf5EventFileInputStream in = new Hdf5EventFileInputStream(write("seek.h5"));
+        try {
+            int target = 1000 + (Hdf5EventFileOutputStream.CHUNK_SIZE * DT) + 1; // just after the start of the second chunk
+            in.seekToTimestamp(target);
+            assertEquals(Hdf5EventFileOutputStream.CHUNK_SIZE + 1, in.position());
+            AEPacketRaw p = in.readPacketByTime(10 * DT);
+            assertEquals(10, p.getNumEvents());
+            assertEquals(target + DT - 1, p.getTimestamps()[0]);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void convertCopiesAllEvents() throws IOException {
+        Hdf5EventFileInputStream src = new Hdf5EventFileInputStream(write("source.h5"));
+        File copy = new File(folder.getRoot(), "copy.h5");
+        try {
+            src.readPacketByNumber(100); // conversion starts from the rewind position regardless
+            assertEquals(NUM_EVENTS, Hdf5EventFileConverter.convert(src, copy));
+            assertTrue("repeat is restored", src.isRepeat());
+        } finally {
+            src.close();
+        }
+        Hdf5EventFileInputStream in = new Hdf5EventFileInputStream(copy);
+        try {
+            assertContents(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void foreignLayoutIsRejected() throws Exception {
+        // a DDD17 style file: a /dvs/data dataset but no jAER event columns
+        File f = folder.newFile("ddd17.h5");
+        int file_id = H5.H5Fcreate(f.getPath(), HDF5Constants.H5F_ACC_TRUNC, HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT);
+        int group_id = H5.H5Gcreate(file_id, "/dvs", HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT);
+        int space_id = H5.H5Screate_simple(1, new long[]{4}, null);
+        int dataset_id = H5.H5Dcreate(file_id, "/dvs/data", HDF5Constants.H5T_STD_I64LE, space_id,
+                HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT, HDF5Constants.H5P_DEFAULT);
+        H5.H5Dclose(dataset_id);
+        H5.H5Sclose(space_id);
+        H5.H5Gclose(group_id);
+        H5.H5Fclose(file_id);
+
+        assertFalse(Hdf5EventFileInputStream.isEventFile(f));
+        assertFalse("not an HDF5 file", Hdf5EventFileInputStream.isEventFile(folder.newFile("empty.h5")));
+        try {
+            new Hdf5EventFileInputStream(f).close();
+            fail("opened a file without event columns");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package net.sf.jaer.eventio.synthetic;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import net.sf.jaer.aemonitor.AEPacketRaw;
+
+/**
+ * Checks that SyntheticEventGenerator is reproducible from its seed and
+ * after a rewind, that its timestamps do not go backwards and that it
+ * produces the requested DVS event rate, for a DAVIS346-sized array with and
+ * without frames and IMU samples.
+ */
+public class SyntheticEventGeneratorTest {
+
+    private static final int SIZE_X = 346, SIZE_Y = 260, PACKET_US = 10000, PACKETS = 20;
+    private static final float RATE_EPS = 1e6f;
+
+    @Test
+    public void sameSeedGivesSameStream() {
+        for (boolean davis : new boolean[]{false, true}) {
+            AEPacketRaw a = generate(make(davis), PACKETS), b = generate(make(davis), PACKETS);
+            assertEquals(a.getNumEvents(), b.getNumEvents());
+            assertArrayEquals(Arrays.copyOf(a.getAddresses(), a.getNumEvents()), Arrays.copyOf(b.getAddresses(), b.getNumEvents()));
+            assertArrayEquals(Arrays.copyOf(a.getTimestamps(), a.getNumEvents()), Arrays.copyOf(b.getTimestamps(), b.getNumEvents()));
+        }
+    }
+
+    @Test
+    public void rewindRestartsTheStream() {
+        SyntheticEventGenerator g = make(true);
+        AEPacketRaw a = generate(g, PACKETS);
+        g.rewind();
+        AEPacketRaw b = generate(g, PACKETS);
+        assertEquals(a.getNumEvents(), b.getNumEvents());
+        assertArrayEquals(Arrays.copyOf(a.getAddresses(), a.getNumEvents()), Arrays.copyOf(b.getAddresses(), b.getNumEvents()));
+        assertArrayEquals(Arrays.copyOf(a.getTimestamps(), a.getNumEvents()), Arrays.copyOf(b.getTimestamps(), b.getNumEvents()));
+    }
+
+    @Test
+    public void timestampsDoNotGoBackwards() {
+        AEPacketRaw p = generate(make(true), PACKETS);
+        int[] ts = p.getTimestamps();
+        for (int i = 1; i < p.getNumEvents(); i++) {
+            assertTrue("timestamp went backwards at event " + i, ts[i] >= ts[i - 1]);
+        }
+        assertTrue(ts[p.getNumEvents() - 1] < (PACKETS * PACKET_US));
+    }
+
+    @Test
+    public void dvsEventRateMatchesStimuli() {
+        SyntheticEventGenerator g = make(false);
+        assertEquals(RATE_EPS, g.getEventRateEps(), 1);
+        int n = generate(g, PACKETS).getNumEvents();
+        double expected = (RATE_EPS * PACKETS * PACKET_US) * 1e-6;
+        assertEquals(expected, n, 5 * Math.sqrt(expected)); // Poisson count, 5 standard deviations
+    }
+
+    private static SyntheticEventGenerator make(boolean davis) {
+        SyntheticEventGenerator g = new SyntheticEventGenerator(SIZE_X, SIZE_Y, 42);
+        g.addStimulus(new SyntheticStimulus.Noise(RATE_EPS * 0.1f));
+        g.addStimulus(new SyntheticStimulus.MovingEdge(RATE_EPS * 0.4f, 30, 500, 2, true));
+        g.addStimulus(new SyntheticStimulus.MovingBlob(RATE_EPS * 0.3f, 20, 100, 100, 300, -200));
+        g.addStimulus(new SyntheticStimulus.Flicker(RATE_EPS * 0.2f, 10, 10, 40, 30, 100));
+        if (davis) {
+            g.setFrames(40000, 10000, 5000);
+            g.setImu(1000, 10, -5, 2);
+        }
+        return g;
+    }
+
+    private static AEPacketRaw generate(SyntheticEventGenerator g, int packets) {
+        AEPacketRaw out = new AEPacketRaw();
+        for (int p = 0; p < packets; p++) {
+            g.nextPacketByTime(out, PACKET_US);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,183 @@
+package net.sf.jaer.eventprocessing.filter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import net.sf.jaer.aemonitor.AEConstants;
+import net.sf.jaer.event.BasicEvent;
+
+/**
+ * Checks the kernels of BandpassMaps against the per event loops over 2D
+ * arrays that SpatialBandpassFilter and SubSamplingBandpassFilter used before,
+ * on a 240x180 stream of events from a few moving blobs and noise. The passed
+ * events and the maps must be identical, the rates bit for bit.
+ */
+public class BandpassMapsTest {
+
+    private static final int SX = 240, SY = 180, PACKET = 4096, PACKETS = 50;
+
+    private final BasicEvent[] events = makeEvents(new Random(42));
+
+    @Test
+    public void spatialBandpassMatchesOldLoop() {
+        for (int[] radii : new int[][]{{0, 1}, {1, 2}, {2, 5}}) {
+            checkSpatial(radii[0], radii[1]);
+        }
+    }
+
+    @Test
+    public void subSampledBandpassMatchesOldLoop() {
+        for (int[] scaleRadius : new int[][]{{0, 1}, {1, 1}, {2, 3}, {3, 2}}) {
+            checkSubSampled(scaleRadius[0], scaleRadius[1]);
+        }
+    }
+
+    private static BasicEvent[] makeEvents(Random r) {
+        BasicEvent[] events = new BasicEvent[PACKET * PACKETS];
+        int t = 0;
+        for (int i = 0; i < events.length; i++) {
+            BasicEvent e = new BasicEvent();
+            t += r.nextInt(20);
+            e.timestamp = t;
+            if (r.nextInt(4) == 0) {
+                e.x = (short) r.nextInt(SX);
+                e.y = (short) r.nextInt(SY);
+            } else {
+                int blob = r.nextInt(3);
+                double cx = (SX / 2) + ((SX / 3) * Math.sin((t * 1e-6) + (2 * blob))), cy = (SY / 2) + ((SY / 3) * Math.cos((t * 1.3e-6) + blob));
+                e.x = (short) Math.max(0, Math.min(SX - 1, (int) (cx + (r.nextGaussian() * (2 + (3 * blob))))));
+                e.y = (short) Math.max(0, Math.min(SY - 1, (int) (cy + (r.nextGaussian() * (2 + (3 * blob))))));
+            }
+            events[i] = e;
+        }
+        return events;
+    }
+
+    private void checkSpatial(int centerRadius, int surroundRadius) {
+        String name = "spatial center " + centerRadius + " surround " + surroundRadius;
+        int n = 0;
+        int[] dx = new int[((2 * surroundRadius) + 1) * ((2 * surroundRadius) + 1)], dy = new int[dx.length];
+        for (int x = -surroundRadius; x <= surroundRadius; x++) {
+            for (int y = -surroundRadius; y <= surroundRadius; y++) {
+                if (!((x <= centerRadius) && (x >= -centerRadius) && (y <= centerRadius) && (y >= -centerRadius))) {
+                    dx[n] = x;
+                    dy[n++] = y;
+                }
+            }
+        }
+        int dtSurround = 8000;
+        // the old loop
+        int[][] surroundTimestamps = new int[SX][SY];
+        boolean[] oldPassed = new boolean[events.length];
+        for (int k = 0; k < events.length; k++) {
+            BasicEvent e = events[k];
+            oldPassed[k] = (e.timestamp - surroundTimestamps[e.x][e.y]) > dtSurround;
+            for (int j = 0; j < n; j++) {
+                int kx = e.x + dx[j];
+                if ((kx < 0) || (kx > (SX - 1))) {
+                    continue;
+                }
+                int ky = e.y + dy[j];
+                if ((ky < 0) || (ky > (SY - 1))) {
+                    continue;
+                }
+                surroundTimestamps[kx][ky] = e.timestamp;
+            }
+        }
+        BandpassMaps maps = new BandpassMaps(SX, SY, false);
+        maps.setSurround(dx, dy, n);
+        for (int p = 0; p < PACKETS; p++) {
+            for (int k = p * PACKET; k < ((p + 1) * PACKET); k++) {
+                maps.addEvent(events[k], events[k].x, events[k].y);
+            }
+            maps.spatialBandpass(dtSurround);
+            for (int k = 0; k < PACKET; k++) {
+                assertEquals(name + ", event " + ((p * PACKET) + k), oldPassed[(p * PACKET) + k], maps.isPassed(k));
+            }
+            maps.clearBatch();
+        }
+        for (int x = 0; x < SX; x++) {
+            for (int y = 0; y < SY; y++) {
+                assertEquals(name + ", timestamp at " + x + "," + y, surroundTimestamps[x][y], maps.getTimestamp(x, y));
+            }
+        }
+    }
+
+    private void checkSubSampled(int scale, int radius) {
+        String name = "subsampled scale " + scale + " radius " + radius;
+        int n = 0;
+        int[] dx = new int[8 * radius], dy = new int[dx.length];
+        // march around CCW like SubSamplingBandpassFilter
+        for (int x = -radius; x < radius; x++) {
+            dx[n] = x;
+            dy[n++] = -radius;
+        }
+        for (int y = -radius; y < radius; y++) {
+            dx[n] = radius;
+            dy[n++] = y;
+        }
+        for (int x = radius; x > -radius; x--) {
+            dx[n] = x;
+            dy[n++] = radius;
+        }
+        for (int y = radius; y > -radius; y--) {
+            dx[n] = -radius;
+            dy[n++] = y;
+        }
+        float rateMixingFactor = 0.01f, rateMixingFactorMinus = 1 - rateMixingFactor, surroundRateThresholdHz = 10;
+        int surSizeX = (SX + (1 << scale) - 1) >> scale, surSizeY = (SY + (1 << scale) - 1) >> scale; // rounded up like the filter
+        // the old loop
+        int[][] surroundTimestamps = new int[surSizeX][surSizeY];
+        float[][] surroundRates = new float[surSizeX][surSizeY];
+        boolean[] oldPassed = new boolean[events.length];
+        for (int k = 0; k < events.length; k++) {
+            BasicEvent e = events[k];
+            int sx = e.x >> scale, sy = e.y >> scale;
+            int dt = e.timestamp - surroundTimestamps[sx][sy];
+            if (dt <= 0) {
+                dt = 1;
+            }
+            float instanRate = (1e6f * AEConstants.TICK_DEFAULT_US) / dt;
+            surroundRates[sx][sy] = (rateMixingFactorMinus * surroundRates[sx][sy]) + (rateMixingFactor * instanRate);
+            float sumRate = 0;
+            int count = 0;
+            for (int j = 0; j < n; j++) {
+                int x = sx + dx[j];
+                if ((x < 0) || (x >= surSizeX)) {
+                    continue;
+                }
+                int y = sy + dy[j];
+                if ((y < 0) || (y >= surSizeY)) {
+                    continue;
+                }
+                surroundRates[x][y] *= rateMixingFactorMinus;
+                sumRate += surroundRates[x][y];
+                count++;
+            }
+            sumRate /= count;
+            oldPassed[k] = !(sumRate > surroundRateThresholdHz);
+            surroundTimestamps[sx][sy] = e.timestamp;
+        }
+        BandpassMaps maps = new BandpassMaps(surSizeX, surSizeY, true);
+        maps.setSurround(dx, dy, n);
+        for (int p = 0; p < PACKETS; p++) {
+            for (int k = p * PACKET; k < ((p + 1) * PACKET); k++) {
+                maps.addEvent(events[k], events[k].x >> scale, events[k].y >> scale);
+            }
+            maps.subSampledBandpass(rateMixingFactor, surroundRateThresholdHz);
+            for (int k = 0; k < PACKET; k++) {
+                assertEquals(name + ", event " + ((p * PACKET) + k), oldPassed[(p * PACKET) + k], maps.isPassed(k));
+            }
+            maps.clearBatch();
+        }
+        for (int x = 0; x < surSizeX; x++) {
+            for (int y = 0; y < surSizeY; y++) {
+                assertEquals(name + ", timestamp at " + x + "," + y, surroundTimestamps[x][y], maps.getTimestamp(x, y));
+                assertEquals(name + ", rate at " + x + "," + y, Float.floatToIntBits(surroundRates[x][y]), Float.floatToIntBits(maps.getRate(x, y)));
+            }
+        }
+    }
+}
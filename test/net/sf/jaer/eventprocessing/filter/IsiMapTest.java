@@ -0,0 +1,113 @@
+package net.sf.jaer.eventprocessing.filter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks IsiMap against the per event loop over nested arrays that
+ * RepetitiousFilter and NotchFilter used before, on a 640x480 stream of two
+ * cell types with flickering pixels at 100 Hz and noise. The passed events,
+ * last timestamps and average ISIs must be identical.
+ */
+public class IsiMapTest {
+
+    private static final int SX = 640, SY = 480, TYPES = 2, EVENTS = 500000;
+
+    private final short[] x = new short[EVENTS], y = new short[EVENTS];
+    private final byte[] type = new byte[EVENTS];
+    private final int[] timestamp = new int[EVENTS];
+
+    public IsiMapTest() {
+        Random r = new Random(42);
+        int t = 0;
+        for (int k = 0; k < EVENTS; k++) {
+            t += r.nextInt(4);
+            timestamp[k] = t;
+            type[k] = (byte) r.nextInt(TYPES);
+            if (r.nextInt(3) == 0) {
+                x[k] = (short) r.nextInt(SX);
+                y[k] = (short) r.nextInt(SY);
+            } else { // a flickering patch: each pixel fires about every 10 ms
+                int p = (t / 10000) + r.nextInt(8);
+                x[k] = (short) (200 + ((p * 37) % 64));
+                y[k] = (short) (100 + ((p * 11) % 64));
+            }
+        }
+    }
+
+    @Test
+    public void matchesOldLoop() {
+        checkFilter(false);
+    }
+
+    @Test
+    public void matchesOldLoopExcludingHarmonics() {
+        checkFilter(true);
+    }
+
+    @Test
+    public void cellsOutsideMapAreRejected() {
+        IsiMap map = new IsiMap(SX, SY, TYPES);
+        assertEquals(-1, map.cell(-1, 0, 0));
+        assertEquals(-1, map.cell(SX, 0, 0));
+        assertEquals(-1, map.cell(0, SY, 0));
+        assertEquals(-1, map.cell(0, 0, TYPES));
+        assertEquals((((SX * SY) - 1) * TYPES) + 1, map.cell(SX - 1, SY - 1, 1));
+    }
+
+    private void checkFilter(boolean excludeHarmonics) {
+        int ratioShorter = 2, ratioLonger = 2, minDtToStore = 1000, averagingSamples = 3;
+        boolean passRepetitiousEvents = false;
+        // the old loop
+        int[][][][] lastTimesMap = new int[SX + 2][SY + 2][TYPES][2];
+        int[][][] avgDtMap = new int[SX + 2][SY + 2][TYPES];
+        boolean[] oldPassed = new boolean[EVENTS];
+        float alpha = 1 / (float) averagingSamples;
+        for (int k = 0; k < EVENTS; k++) {
+            int[] lasttimes = lastTimesMap[x[k]][y[k]][type[k]];
+            int lastt = lasttimes[1];
+            int thisdt = timestamp[k] - lastt;
+            int avgDt = avgDtMap[x[k]][y[k]][type[k]];
+            boolean repetitious = false;
+            if (thisdt < minDtToStore) {
+                continue;
+            }
+            if (excludeHarmonics) {
+                double ratio = (double) thisdt / avgDt;
+                double rem = Math.IEEEremainder(ratio, 1);
+                repetitious = ratio <= 3 && Math.abs(rem) < 1. / ratioShorter;
+            } else {
+                repetitious = thisdt < avgDt * ratioLonger && thisdt > avgDt / ratioShorter;
+            }
+            oldPassed[k] = repetitious == passRepetitiousEvents;
+            if (thisdt < 0) {
+                lasttimes[0] = timestamp[k];
+                lasttimes[1] = timestamp[k];
+                avgDtMap[x[k]][y[k]][type[k]] = 0;
+            } else if (thisdt > minDtToStore) {
+                lasttimes[0] = lastt;
+                lasttimes[1] = timestamp[k];
+                avgDtMap[x[k]][y[k]][type[k]] = (int) (avgDt * (1 - alpha) + thisdt * (alpha));
+            }
+        }
+        IsiMap map = new IsiMap(SX, SY, TYPES);
+        map.setParameters(minDtToStore, ratioShorter, ratioLonger, excludeHarmonics, passRepetitiousEvents, averagingSamples);
+        for (int k = 0; k < EVENTS; k++) {
+            int cell = map.cell(x[k], y[k], type[k]);
+            boolean passed = (cell >= 0) && map.filterEvent(cell, timestamp[k]);
+            assertEquals("event " + k, oldPassed[k], passed);
+        }
+        for (int xx = 0; xx < SX; xx++) {
+            for (int yy = 0; yy < SY; yy++) {
+                for (int tt = 0; tt < TYPES; tt++) {
+                    int cell = map.cell(xx, yy, tt);
+                    assertEquals(lastTimesMap[xx][yy][tt][1], map.getLastTimestamp(cell));
+                    assertEquals(avgDtMap[xx][yy][tt], map.getAverageDt(cell));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package net.sf.jaer.eventprocessing.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks WarpTable against the per-event float transform of Steadicam that
+ * it replaces.
+ */
+public class WarpTableTest {
+
+    private static final int SX = 346, SY = 260;
+
+    @Test
+    public void matchesFloatTransform() {
+        Random r = new Random(7);
+        WarpTable table = new WarpTable();
+        table.setSize(SX, SY);
+        int n = 0, differ = 0;
+        for (int k = 0; k < 20; k++) {
+            float angle = (float) ((r.nextDouble() - 0.5) * 0.5);
+            float cos = (float) Math.cos(angle), sin = (float) Math.sin(angle);
+            float tx = (float) ((r.nextDouble() - 0.5) * 40), ty = (float) ((r.nextDouble() - 0.5) * 40);
+            int cx = SX / 2, cy = SY / 2;
+            table.setTransform(cos, sin, tx, ty, cx, cy);
+            for (int y = 0; y < SY; y++) {
+                for (int x = 0; x < SX; x++) {
+                    int nx = x - cx, ny = y - cy;
+                    int ex = (short) ((((cos * nx) - (sin * ny)) + tx) + cx);
+                    int ey = (short) (((sin * nx) + (cos * ny) + ty) + cy);
+                    boolean expectedOutside = ex < 0 || ey < 0 || ex >= SX || ey >= SY;
+                    int t = table.warp(x, y);
+                    assertEquals("cached target of " + x + "," + y, t, table.warp(x, y));
+                    n++;
+                    if (expectedOutside != (t == WarpTable.OUTSIDE) || (!expectedOutside && (ex != WarpTable.getX(t) || ey != WarpTable.getY(t)))) {
+                        // only float rounding at pixel boundaries may differ
+                        differ++;
+                        if (t != WarpTable.OUTSIDE && !expectedOutside) {
+                            assertTrue("target of " + x + "," + y, Math.abs(ex - WarpTable.getX(t)) <= 1 && Math.abs(ey - WarpTable.getY(t)) <= 1);
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(differ + " of " + n + " targets differ", differ < n / 10000);
+    }
+
+    @Test
+    public void identityAndOutside() {
+        WarpTable table = new WarpTable();
+        table.setSize(4, 3);
+        table.setTransform(null, 2, 1);
+        int t = table.warp(3, 2);
+        assertEquals(3, WarpTable.getX(t));
+        assertEquals(2, WarpTable.getY(t));
+        table.setTransform(1, 0, 1.5f, 0, 2, 1);
+        assertEquals("3+1.5 is outside", WarpTable.OUTSIDE, table.warp(3, 2));
+        t = table.warp(0, 0);
+        assertEquals("0+1.5 truncates to 1", 1, WarpTable.getX(t));
+        table.setTransform(1, 0, -0.5f, 0, 2, 1);
+        assertEquals("0-0.5 truncates toward zero", 0, WarpTable.getX(table.warp(0, 0)));
+        table.setTransform(1, 0, -1f, 0, 2, 1);
+        assertEquals(WarpTable.OUTSIDE, table.warp(0, 0));
+    }
+}
@@ -0,0 +1,232 @@
+package net.sf.jaer.eventprocessing.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks ActivePixelLabeler against the recursive flood fill and the cluster
+ * id lists that ParticleTracker used before. Clusters are modeled by their id
+ * lists; they are merged, pruned and split as the tracker does, and after
+ * each step the owner of every id, the new labels of the pixels, the
+ * components and the new ids of each old cluster must be the same as with the
+ * old code. One of the labelings follows a step back in time.
+ */
+public class ActivePixelLabelerTest {
+
+    private static final int SX = 24, SY = 18, RADIUS = 2, LIFETIME = 1000;
+
+    /** A cluster, with the id list the old code kept */
+    private static final class Owner {
+
+        int[] ids;
+
+        Owner(int id) {
+            ids = new int[]{id};
+        }
+    }
+
+    /** A connected group found by the flood fill, like the old DiffusedCluster and OldNewId */
+    private static final class Group {
+
+        int oldId, newId, t, n;
+        float mass;
+    }
+
+    @Test
+    public void matchesFloodFillAndIdLists() {
+        for (int seed = 0; seed < 50; seed++) {
+            checkTrial(new Random(seed));
+        }
+    }
+
+    @Test
+    public void largeBlobNeedsNoRecursion() {
+        int s = 1000;
+        ActivePixelLabeler labeler = new ActivePixelLabeler(s, s, RADIUS);
+        for (int p = 0; p < (s * s); p++) {
+            labeler.setEvent(p, 100);
+        }
+        assertEquals(1, labeler.labelComponents(0, 1, LIFETIME, LIFETIME));
+        assertEquals(1, labeler.label[0]);
+        assertEquals(1, labeler.label[(s * s) - 1]);
+    }
+
+    private void checkTrial(Random r) {
+        ActivePixelLabeler labeler = new ActivePixelLabeler(SX, SY, RADIUS);
+        int[][] lastEvent = new int[SX][SY], lastCluster = new int[SX][SY];
+        for (int x = 0; x < SX; x++) {
+            for (int y = 0; y < SY; y++) {
+                lastEvent[x][y] = -1;
+                lastCluster[x][y] = -1;
+            }
+        }
+        List<Owner> owners = new ArrayList<Owner>();
+        int nextId = 1, now = 0;
+        int[] times = {3000, 4500, 6000, 5200, 7000}; // the fourth step goes back in time
+        for (int step = 0; step < times.length; step++) {
+            int from = now;
+            now = times[step];
+            if (now < from) {
+                labeler.activateAll(); // as the tracker does when time moves backwards
+            }
+            // new clusters from events
+            int firstNew = nextId, numNew = 1 + r.nextInt(8);
+            for (int i = 0; i < numNew; i++) {
+                Owner o = new Owner(nextId);
+                owners.add(o);
+                labeler.addId(nextId, o);
+                nextId++;
+            }
+            // events at random pixels, labeled with a new id or with an id that is still in the table
+            int numEvents = 100 + r.nextInt(150);
+            for (int i = 0; i < numEvents; i++) {
+                int x = r.nextInt(SX), y = r.nextInt(SY);
+                int t = Math.max(0, now - LIFETIME - 300) + r.nextInt(LIFETIME + 300);
+                int id = r.nextInt(3) == 0 || owners.isEmpty() ? firstNew + r.nextInt(numNew) : randomId(r, owners);
+                lastEvent[x][y] = t;
+                lastCluster[x][y] = id;
+                int p = labeler.index(x, y);
+                labeler.setEvent(p, t);
+                labeler.label[p] = id;
+            }
+            // merges and prunes
+            for (int i = 0; i < 10; i++) {
+                if (owners.size() < 2) {
+                    break;
+                }
+                Owner a = owners.get(r.nextInt(owners.size())), b = owners.get(r.nextInt(owners.size()));
+                if (a == b) {
+                    owners.remove(a);
+                    labeler.removeOwner(a.ids[0], a);
+                    continue;
+                }
+                int[] merged = new int[a.ids.length + b.ids.length];
+                System.arraycopy(a.ids, 0, merged, 0, a.ids.length);
+                System.arraycopy(b.ids, 0, merged, a.ids.length, b.ids.length);
+                a.ids = merged;
+                owners.remove(b);
+                labeler.unionIds(a.ids[0], b.ids[0]);
+            }
+            for (int id = 0; id < nextId; id++) {
+                assertSame("owner of id " + id, ownerOf(owners, id), labeler.getOwner(id));
+            }
+
+            // relabel as splitClusters does
+            int timeLimit = Math.max(0, now - LIFETIME);
+            float massTime = timeLimit + LIFETIME;
+            List<Group> groups = floodFill(lastEvent, lastCluster, nextId, timeLimit);
+            int n = labeler.labelComponents(timeLimit, nextId, massTime, LIFETIME);
+            assertEquals(groups.size(), n);
+            for (int x = 0; x < SX; x++) {
+                for (int y = 0; y < SY; y++) {
+                    assertEquals("label of " + x + "," + y, lastCluster[x][y], labeler.label[labeler.index(x, y)]);
+                }
+            }
+            for (int j = 0; j < n; j++) {
+                Group g = groups.get(j);
+                assertEquals(nextId + j, g.newId);
+                assertSame(ownerOf(owners, g.oldId), labeler.getComponentOwner(j));
+                assertEquals(g.t, labeler.getComponentLast(j));
+                assertEquals(g.mass, labeler.getComponentMass(j), 1e-4f * g.mass);
+            }
+            // the new ids of each old cluster; the first keeps the cluster and the others become new clusters
+            List<Owner> split = new ArrayList<Owner>();
+            for (Owner o : owners) {
+                List<Integer> oldWay = new ArrayList<Integer>(), newWay = new ArrayList<Integer>();
+                for (Group g : groups) {
+                    for (int id : o.ids) {
+                        if (id == g.oldId) {
+                            oldWay.add(g.newId);
+                        }
+                    }
+                }
+                for (int j = 0; j < n; j++) {
+                    if (labeler.getComponentOwner(j) == o) {
+                        newWay.add(nextId + j);
+                    }
+                }
+                assertEquals(oldWay, newWay);
+                for (int k = 0; k < newWay.size(); k++) {
+                    Owner c = o;
+                    if (k == 0) {
+                        o.ids = new int[]{newWay.get(0)};
+                    } else {
+                        c = new Owner(newWay.get(k));
+                    }
+                    split.add(c);
+                    labeler.setOwner(newWay.get(k), c);
+                }
+            }
+            owners = split;
+            nextId += n;
+        }
+    }
+
+    private static int randomId(Random r, List<Owner> owners) {
+        int[] ids = owners.get(r.nextInt(owners.size())).ids;
+        return ids[r.nextInt(ids.length)];
+    }
+
+    /** The cluster whose id list holds id, found as the old code did by searching all clusters */
+    private static Owner ownerOf(List<Owner> owners, int id) {
+        for (Owner o : owners) {
+            for (int i : o.ids) {
+                if (i == id) {
+                    return o;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The labeling loop of the old splitClusters: scans the pixels in x major
+     * order and gives each connected group of alive pixels that are not yet
+     * relabeled the next id.
+     */
+    private static List<Group> floodFill(int[][] lastEvent, int[][] lastCluster, int firstId, int timeLimit) {
+        List<Group> groups = new ArrayList<Group>();
+        int id = firstId;
+        for (int x = 0; x < SX; x++) {
+            for (int y = 0; y < SY; y++) {
+                int oldId = lastCluster[x][y];
+                Group g = diffuse(lastEvent, lastCluster, x, y, id, timeLimit, firstId, null);
+                if (g != null) {
+                    g.oldId = oldId;
+                    g.newId = id++;
+                    groups.add(g);
+                }
+            }
+        }
+        return groups;
+    }
+
+    /** The old recursive diffuseCluster */
+    private static Group diffuse(int[][] lastEvent, int[][] lastCluster, int x, int y, int id, int timeLimit, int lowestId, Group g) {
+        if ((x >= 0) && (x < SX) && (y >= 0) && (y < SY) && (lastCluster[x][y] < lowestId) && (lastEvent[x][y] >= timeLimit)) {
+            if (g == null) {
+                g = new Group();
+                g.t = lastEvent[x][y];
+            }
+            lastCluster[x][y] = id;
+            g.n++;
+            float now = timeLimit + LIFETIME, tEv = lastEvent[x][y];
+            g.mass += (float) Math.exp(-(now - tEv) / LIFETIME);
+            if (g.t < lastEvent[x][y]) {
+                g.t = lastEvent[x][y];
+            }
+            for (int i = -RADIUS; i <= RADIUS; i++) {
+                for (int j = -RADIUS; j <= RADIUS; j++) {
+                    g = diffuse(lastEvent, lastCluster, x + i, y + j, id, timeLimit, lowestId, g);
+                }
+            }
+        }
+        return g;
+    }
+}
@@ -0,0 +1,161 @@
+package net.sf.jaer.eventprocessing.tracking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks HoughAccumulator against a dense float array that is decayed and
+ * scanned for its local maxima after each packet, as HoughCircleTracker did
+ * before, on the Hough space of the circle tracker for a 240x180 chip. Each
+ * event votes for a ring of radius 10 around it; the events lie on four
+ * circles, with some noise. The decay factor is a power of two so that the
+ * lazy decay rounds exactly like the dense one, and the largest local maxima
+ * and their order must be identical.
+ */
+public class HoughAccumulatorTest {
+
+    private static final int SX = 240, SY = 180, RADIUS = 10, NR_MAX = 4, PACKETS = 200;
+    private static final float DECAY = 0.5f;
+
+    @Test
+    public void matchesDenseArray() {
+        for (int eventsPerPacket : new int[]{5, 50, 500}) {
+            checkPackets(eventsPerPacket);
+        }
+    }
+
+    @Test
+    public void setAndClear() {
+        HoughAccumulator a = new HoughAccumulator(100);
+        a.set(7, 3);
+        a.set(42, 3);
+        a.add(13, 2);
+        assertEquals(7, a.getMaxCell()); // the lower cell wins ties
+        assertEquals(3, a.getMaxValue(), 0);
+        a.decay(0.25f);
+        assertEquals(0.75f, a.get(42), 0);
+        assertEquals(0.5f, a.get(13), 0);
+        a.decay(0);
+        assertEquals(0, a.getMaxValue(), 0);
+        assertEquals(0, a.getMaxCell());
+    }
+
+    private static void checkPackets(int eventsPerPacket) {
+        // the ring of offsets, like the votes of HoughCircleTracker
+        int n = (int) Math.round(2 * Math.PI * RADIUS * 1.3);
+        int[] dx = new int[n], dy = new int[n];
+        for (int i = 0; i < n; i++) {
+            double a = (2 * Math.PI * i) / n;
+            dx[i] = (int) Math.round(RADIUS * Math.cos(a));
+            dy[i] = (int) Math.round(RADIUS * Math.sin(a));
+        }
+        Random r = new Random(42);
+        float[] dense = new float[SX * SY];
+        final HoughAccumulator accumulator = new HoughAccumulator(SX * SY);
+        HoughAccumulator.CellTest localMaximum = new HoughAccumulator.CellTest() {
+            @Override
+            public boolean accept(int cell) {
+                return isLocalMaximum(accumulator, cell);
+            }
+        };
+        int[] cells = new int[NR_MAX];
+        for (int p = 0; p < PACKETS; p++) {
+            for (int i = 0; i < eventsPerPacket; i++) {
+                int ex, ey;
+                if (r.nextInt(5) == 0) {
+                    ex = r.nextInt(SX);
+                    ey = r.nextInt(SY);
+                } else {
+                    double a = r.nextDouble() * 2 * Math.PI;
+                    int cx = r.nextBoolean() ? 60 : 170, cy = r.nextBoolean() ? 50 : 120;
+                    ex = (int) (cx + (RADIUS * Math.cos(a)));
+                    ey = (int) (cy + (RADIUS * Math.sin(a)));
+                }
+                for (int k = 0; k < n; k++) {
+                    int x = ex + dx[k], y = ey + dy[k];
+                    if ((x >= 0) && (x < SX) && (y >= 0) && (y < SY)) {
+                        dense[(x * SY) + y]++;
+                        accumulator.add((x * SY) + y, 1);
+                    }
+                }
+            }
+            for (int c = 0; c < dense.length; c++) {
+                dense[c] *= DECAY;
+            }
+            accumulator.decay(DECAY);
+            int found = accumulator.topCells(NR_MAX, localMaximum, cells);
+            int[] expected = largestLocalMaxima(dense);
+            String where = eventsPerPacket + " events/packet, packet " + p;
+            assertEquals(where, expected.length, found);
+            for (int i = 0; i < found; i++) {
+                assertEquals(where, expected[i], cells[i]);
+            }
+        }
+        float[] values = new float[dense.length];
+        for (int c = 0; c < values.length; c++) {
+            values[c] = accumulator.get(c);
+        }
+        assertArrayEquals(dense, values, Float.MIN_NORMAL); // the dense array underflows to subnormals sooner
+    }
+
+    /** @return the NR_MAX largest local maxima, lower cells first among equal values */
+    private static int[] largestLocalMaxima(final float[] a) {
+        List<Integer> maxima = new ArrayList<Integer>();
+        for (int c = 0; c < a.length; c++) {
+            if (isLocalMaximum(a, c)) {
+                maxima.add(c);
+            }
+        }
+        Collections.sort(maxima, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer c1, Integer c2) {
+                int byValue = Float.compare(a[c2], a[c1]);
+                return byValue != 0 ? byValue : c1 - c2;
+            }
+        });
+        int[] top = new int[Math.min(NR_MAX, maxima.size())];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = maxima.get(i);
+        }
+        return top;
+    }
+
+    private static boolean isLocalMaximum(float[] a, int c) {
+        int x = c / SY, y = c % SY;
+        if ((x < 1) || (x >= (SX - 1)) || (y < 1) || (y >= (SY - 1))) {
+            return false;
+        }
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                if (a[c] < a[c + (i * SY) + j]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLocalMaximum(HoughAccumulator a, int c) {
+        int x = c / SY, y = c % SY;
+        if ((x < 1) || (x >= (SX - 1)) || (y < 1) || (y >= (SY - 1))) {
+            return false;
+        }
+        float v = a.get(c);
+        for (int i = -1; i <= 1; i++) {
+            for (int j = -1; j <= 1; j++) {
+                if (v < a.get(c + (i * SY) + j)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+package net.sf.jaer.hardwareinterface.sim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.hardwareinterface.sim.SimulatedAEMonitor.PlaybackMode;
+
+/**
+ * Plays back a synthetic source at MAX_RATE and collects the events like a
+ * rendering loop, checking that every produced event is either delivered or
+ * counted as dropped and that the device timestamps stay monotonic when the
+ * source is looped.
+ */
+public class SimulatedAEMonitorTest {
+
+    private static final int EVENTS = 50000;
+
+    private SimulatedAEMonitor monitor;
+    // the settings are stored in the preferences, so they are restored after each test
+    private PlaybackMode savedPlaybackMode;
+    private boolean savedLoop;
+
+    @Before
+    public void setUp() {
+        monitor = new SimulatedAEMonitor("test", new CountingSource(EVENTS));
+        savedPlaybackMode = monitor.getPlaybackMode();
+        savedLoop = monitor.isLoop();
+        monitor.setPlaybackMode(PlaybackMode.MAX_RATE);
+    }
+
+    @After
+    public void tearDown() {
+        monitor.close();
+        monitor.setPlaybackMode(savedPlaybackMode);
+        monitor.setLoop(savedLoop);
+    }
+
+    @Test(timeout = 10000)
+    public void allEventsDeliveredOrDropped() throws Exception {
+        monitor.setLoop(false);
+        long delivered = 0;
+        int lastAddress = -1;
+        while (monitor.getEventsProduced() < EVENTS) {
+            AEPacketRaw p = monitor.acquireAvailableEventsFromDriver();
+            int[] a = p.getAddresses();
+            for (int i = 0; i < p.getNumEvents(); i++) {
+                assertTrue("addresses out of order", a[i] > lastAddress);
+                lastAddress = a[i];
+            }
+            delivered += p.getNumEvents();
+            Thread.sleep(1);
+        }
+        delivered += monitor.acquireAvailableEventsFromDriver().getNumEvents();
+        assertEquals(EVENTS, monitor.getEventsProduced());
+        assertEquals(EVENTS, delivered + monitor.getEventsDropped());
+    }
+
+    @Test(timeout = 10000)
+    public void loopedTimestampsAreMonotonic() throws Exception {
+        monitor.setLoop(true);
+        int lastTimestamp = Integer.MIN_VALUE;
+        while (monitor.getEventsProduced() < (3 * EVENTS)) {
+            AEPacketRaw p = monitor.acquireAvailableEventsFromDriver();
+            int[] ts = p.getTimestamps();
+            for (int i = 0; i < p.getNumEvents(); i++) {
+                assertTrue("timestamp went backwards", ts[i] >= lastTimestamp);
+                lastTimestamp = ts[i];
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /** Emits addresses 0 to n-1 with timestamps 10us apart. */
+    private static class CountingSource implements SimulatedEventSource {
+
+        private final int n;
+        private int next = 0;
+
+        CountingSource(int n) {
+            this.n = n;
+        }
+
+        @Override
+        public int read(int[] addresses, int[] timestamps, int offset, int max) {
+            if (next >= n) {
+                return -1;
+            }
+            int m = Math.min(max, n - next);
+            for (int i = 0; i < m; i++) {
+                addresses[offset + i] = next;
+                timestamps[offset + i] = 10 * next;
+                next++;
+            }
+            return m;
+        }
+
+        @Override
+        public void rewind() {
+            next = 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
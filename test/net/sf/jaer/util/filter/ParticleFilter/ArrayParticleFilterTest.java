@@ -0,0 +1,124 @@
+package net.sf.jaer.util.filter.ParticleFilter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Checks that ArrayParticleFilter evaluates the same weights in parallel as
+ * on the calling thread, that systematic resampling copies the particles in
+ * proportion to their weights with the bookkeeping of ParticleFilter, and that
+ * the filter follows a target with a Gaussian likelihood.
+ */
+public class ArrayParticleFilterTest {
+
+    private static final double TOLERANCE = 1e-12;
+
+    @Test
+    public void parallelEvaluationMatchesSerial() {
+        Random r = new Random(1);
+        ArrayParticleFilter serial = new ArrayParticleFilter(), parallel = new ArrayParticleFilter();
+        for (int i = 0; i < 20000; i++) {
+            double x = 120 + (10 * r.nextGaussian()), y = 90 + (10 * r.nextGaussian());
+            serial.addParticle(x, y);
+            parallel.addParticle(x, y);
+        }
+        serial.setPool(null);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            parallel.setPool(pool);
+            ArrayParticleFilter.Likelihood likelihood = gaussian(100, 80, 10);
+            serial.evaluate(likelihood);
+            parallel.evaluate(likelihood);
+        } finally {
+            pool.shutdown();
+        }
+        int n = serial.getParticleCount();
+        assertArrayEquals(Arrays.copyOf(serial.getWeight(), n), Arrays.copyOf(parallel.getWeight(), n), 0);
+    }
+
+    @Test
+    public void resampleCopiesInProportionToWeights() {
+        final double[] w = {0.1, 0.2, 0.3, 0.4};
+        ArrayParticleFilter f = new ArrayParticleFilter();
+        for (int i = 0; i < w.length; i++) {
+            f.addParticle(i, -i);
+        }
+        f.evaluate(new ArrayParticleFilter.Likelihood() {
+            @Override
+            public double evaluate(int i, double x, double y) {
+                return w[i];
+            }
+        });
+        assertEquals(1, f.normalize(), TOLERANCE);
+        int m = 1000;
+        f.setParticleCount(m);
+        f.resample(new Random(1));
+        assertEquals(m, f.getParticleCount());
+        int[] copies = new int[w.length];
+        double[] x = f.getX(), y = f.getY();
+        for (int k = 0; k < m; k++) {
+            int s = (int) x[k];
+            assertEquals(-s, y[k], 0);
+            assertEquals(w[s], f.getLastWeight()[k], TOLERANCE);
+            assertEquals(1, f.getWeight()[k], 0);
+            assertEquals(copies[s]++, f.getCopyCount()[k]);
+            assertTrue("copies are not in order", (k == 0) || (x[k] >= x[k - 1]));
+        }
+        for (int i = 0; i < w.length; i++) { // systematic resampling is off by at most one copy
+            assertEquals(w[i] * m, copies[i], 1);
+        }
+    }
+
+    @Test
+    public void zeroWeightsResampleEvenly() {
+        ArrayParticleFilter f = new ArrayParticleFilter();
+        for (int i = 0; i < 10; i++) {
+            f.addParticle(i, 0);
+        }
+        f.evaluate(gaussian(1e6, 1e6, 1)); // underflows to 0 for every particle
+        f.setParticleCount(20);
+        f.resample(new Random(1));
+        double[] x = f.getX();
+        for (int k = 0; k < 20; k++) {
+            assertEquals(k / 2, x[k], 0);
+        }
+    }
+
+    @Test
+    public void followsTarget() {
+        Random r = new Random(1);
+        ArrayParticleFilter f = new ArrayParticleFilter(2000, 120, 90);
+        ArrayParticleFilter.Likelihood likelihood = gaussian(100, 80, 5);
+        for (int s = 0; s < 50; s++) {
+            double[] x = f.getX(), y = f.getY();
+            for (int i = 0; i < f.getParticleCount(); i++) {
+                x[i] += 2 * r.nextGaussian();
+                y[i] += 2 * r.nextGaussian();
+            }
+            f.evaluate(likelihood);
+            f.normalize();
+            f.resample(r);
+        }
+        assertEquals(100, f.getAverageX(), 1);
+        assertEquals(80, f.getAverageY(), 1);
+    }
+
+    /** A Gaussian likelihood around a single target */
+    private static ArrayParticleFilter.Likelihood gaussian(double muX, double muY, double sigma) {
+        final double mx = muX, my = muY, s = sigma;
+        return new ArrayParticleFilter.Likelihood() {
+            @Override
+            public double evaluate(int i, double x, double y) {
+                double dx = x - mx, dy = y - my;
+                return Math.exp(-((dx * dx) + (dy * dy)) / (2 * s * s));
+            }
+        };
+    }
+}